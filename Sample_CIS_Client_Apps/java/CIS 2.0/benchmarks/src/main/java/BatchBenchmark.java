@@ -0,0 +1,90 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+// End-to-end time for a mix of many small files and a few large ones, submitted as one job, one job per file, and
+// as planner batches. The mock adds processing time per uploaded megabyte, so one giant job is processed serially.
+// Usage: BatchBenchmark [smallFiles] [largeFiles] [maxFilesPerJob] [maxMegabytesPerJob]
+public class BatchBenchmark {
+    public static void main(String[] args) throws Exception {
+        int smallFiles = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int largeFiles = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int maxFilesPerJob = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int maxMegabytesPerJob = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        Path workDir = Files.createTempDirectory("batch-benchmark");
+        try (MockCisServer server = new MockCisServer()) {
+            server.setJobDurationMillis(() -> 200);
+            server.setMillisPerMegabyte(50);
+            server.setPayloadBytes(1024);
+            List<String> files = createFiles(workDir, smallFiles, largeFiles);
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+
+            List<List<String>> single = List.of(files);
+            List<List<String>> separate = new ArrayList<>();
+            for (String file : files) {
+                separate.add(List.of(file));
+            }
+            List<List<String>> batched = new ArrayList<>();
+            long smallestBatch = Long.MAX_VALUE;
+            long largestBatch = 0;
+            long planStart = System.nanoTime();
+            List<BatchPlanner.Batch> plan = new BatchPlanner(maxFilesPerJob, maxMegabytesPerJob * 1024L * 1024L).plan(files);
+            double planMillis = (System.nanoTime() - planStart) / 1e6;
+            for (BatchPlanner.Batch batch : plan) {
+                batched.add(batch.files());
+                smallestBatch = Math.min(smallestBatch, batch.bytes());
+                largestBatch = Math.max(largestBatch, batch.bytes());
+            }
+            System.out.printf("Planned %d batches in %.1f ms, %.1f - %.1f MB each%n",
+                    plan.size(), planMillis, smallestBatch / 1_048_576.0, largestBatch / 1_048_576.0);
+
+            run("single job", single, server, client, repositoryId, workDir);
+            run("job per file", separate, server, client, repositoryId, workDir);
+            run("batched", batched, server, client, repositoryId, workDir);
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static List<String> createFiles(Path workDir, int smallFiles, int largeFiles) throws Exception {
+        Path dir = Files.createDirectories(workDir.resolve("input"));
+        Random random = new Random(42);
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < smallFiles + largeFiles; i++) {
+            int size = i < smallFiles ? 10 * 1024 + random.nextInt(190 * 1024) : 20 * 1024 * 1024 + random.nextInt(30 * 1024 * 1024);
+            Path file = dir.resolve("input" + i + ".pdf");
+            Files.write(file, new byte[size]);
+            files.add(file.toString());
+        }
+        return files;
+    }
+
+    private static void run(String name, List<List<String>> jobs, MockCisServer server, ApiClient client, UUID repositoryId,
+                            Path workDir) throws Exception {
+        server.resetRequestCounts();
+        Path output = Files.createDirectories(workDir.resolve(name.replace(' ', '-')));
+        PollingStrategy strategy = new AdaptivePollingStrategy(250, 30_000, 2.0, 0.2);
+        JobRunner.JobLog noLog = (message, id) -> {
+        };
+        long start = System.nanoTime();
+        try (JobRunner runner = new JobRunner(client, strategy, output.toString(), noLog, "fixed", 8, 4)) {
+            CompletableFuture.allOf(runner.runJobs(repositoryId, jobs).toArray(new CompletableFuture[0])).join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long requests = 0;
+        for (String endpoint : List.of("Submit", "Status", "Download", "Release")) {
+            requests += server.getRequestCount(endpoint);
+        }
+        System.out.printf("%-13s jobs=%-6d elapsed=%6.1fs requests=%-6d%n", name, jobs.size(), seconds, requests);
+    }
+}
@@ -0,0 +1,221 @@
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+// Runs the same inputs twice against the mock server, the second time mixed with new files, and reports how many
+// requests and how much time the output cache saved. Then reopens the cache as a restarted run would and fills it
+// past a small MaxMegabytes to check that the least recently used entries are evicted, and checks that with
+// post-processing on a hit gets a manifest and an index line for its own inputs.
+// Exits with status 1 if a hit reaches the server, a restored output differs from the original, a renamed input shares
+// its key or the size limit is broken.
+// Usage: CacheBenchmark [files] [duplicatePercent] [fileKb]
+public class CacheBenchmark {
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int duplicatePercent = args.length > 1 ? Integer.parseInt(args[1]) : 80;
+        int fileKb = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        boolean passed = true;
+
+        Path workDir = Files.createTempDirectory("cache-benchmark");
+        try (MockCisServer server = new MockCisServer()) {
+            server.setJobDurationMillis(() -> 300);
+            server.setPayloadBytes(64 * 1024);
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+
+            List<String> first = createFiles(workDir.resolve("input"), "input", files, fileKb, 1);
+            int duplicates = files * duplicatePercent / 100;
+            List<String> second = new ArrayList<>(first.subList(0, duplicates));
+            second.addAll(createFiles(workDir.resolve("input"), "new", files - duplicates, fileKb, 2));
+
+            CacheSettings settings = new CacheSettings();
+            settings.setEnabled(true);
+            settings.setDirectory(workDir.resolve("store").toString());
+            ContentCache cache = ContentCache.open(settings);
+            run("no cache", first, null, null, server, client, repositoryId, workDir);
+            run("cold cache", first, cache, null, server, client, repositoryId, workDir);
+            long submits = run("warm cache", second, cache, null, server, client, repositoryId, workDir);
+            System.out.println("Cache: " + cache.describe());
+            if (submits != files - duplicates) {
+                System.out.println("FAILED: expected " + (files - duplicates) + " submissions but the server saw " + submits);
+                passed = false;
+            }
+            if (!restoredMatchOriginals(workDir.resolve("warm-cache"), duplicates)) {
+                System.out.println("FAILED: restored outputs differ from the downloaded ones");
+                passed = false;
+            }
+            // The outputs are named after the inputs, so the same content under another name must not share an entry
+            Path renamed = Files.copy(Path.of(first.get(0)), workDir.resolve("renamed.pdf"));
+            if (cache.key(repositoryId, first.subList(0, 1)).equals(cache.key(repositoryId, List.of(renamed.toString())))) {
+                System.out.println("FAILED: a renamed input has the same cache key");
+                passed = false;
+            }
+
+            // A restarted run finds the same entries on disk
+            ContentCache reopened = ContentCache.open(settings);
+            submits = run("after restart", first, reopened, null, server, client, repositoryId, workDir);
+            if (submits != 0) {
+                System.out.println("FAILED: " + submits + " submissions after reopening the cache");
+                passed = false;
+            }
+
+            // 64 KB outputs against a 1 MB limit: only the most recent 16 fit
+            settings.setDirectory(workDir.resolve("small-store").toString());
+            settings.setMaxMegabytes(1);
+            ContentCache small = ContentCache.open(settings);
+            run("small cache", first.subList(0, 24), small, null, server, client, repositoryId, workDir);
+            run("small cache", first.subList(24, 40), small, null, server, client, repositoryId, workDir);
+            submits = run("small cache", first.subList(24, 40), small, null, server, client, repositoryId, workDir);
+            long cached = directorySize(workDir.resolve("small-store"));
+            System.out.println("Small cache: " + small.describe());
+            if (submits != 0 || cached > 1024 * 1024 + 64 * 1024) {
+                System.out.printf("FAILED: expected the last 16 outputs to stay cached in 1 MB, got %d submissions and %d KB%n", submits, cached / 1024);
+                passed = false;
+            }
+
+            passed &= postProcessesHits(first.subList(0, 4), settings, server, client, repositoryId, workDir);
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static List<String> createFiles(Path dir, String prefix, int count, int fileKb, long seed) throws Exception {
+        Files.createDirectories(dir);
+        Random random = new Random(seed);
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] content = new byte[fileKb * 1024];
+            random.nextBytes(content);
+            files.add(Files.write(dir.resolve(prefix + i + ".pdf"), content).toString());
+        }
+        return files;
+    }
+
+    // Returns the number of submissions the server saw
+    private static long run(String name, List<String> files, ContentCache cache, PostProcessSettings postProcess,
+                            MockCisServer server, ApiClient client, UUID repositoryId, Path workDir) throws Exception {
+        server.resetRequestCounts();
+        Path output = Files.createDirectories(workDir.resolve(name.replace(' ', '-')));
+        PollingStrategy strategy = new AdaptivePollingStrategy(100, 30_000, 2.0, 0.2);
+        JobRunner.JobLog noLog = (message, id) -> {
+        };
+        long start = System.nanoTime();
+        try (JobRunner runner = new JobRunner(client, strategy, output.toString(), noLog, "fixed", 8, 4)) {
+            runner.setCache(cache);
+            if (postProcess != null) {
+                runner.setPostProcessing(postProcess);
+            }
+            CompletableFuture.allOf(runner.runSeparateJobs(repositoryId, files).toArray(new CompletableFuture[0])).join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long requests = 0;
+        for (String endpoint : List.of("Submit", "Status", "Download", "Release")) {
+            requests += server.getRequestCount(endpoint);
+        }
+        System.out.printf("%-13s jobs=%-5d elapsed=%5.2fs requests=%-5d submitted=%d%n", name, files.size(), seconds, requests,
+                server.getRequestCount("Submit"));
+        return server.getRequestCount("Submit");
+    }
+
+    // With post-processing on, a hit gets a manifest and an index line for its own inputs; the cache holds no manifest,
+    // and the original job's manifest is left as it was
+    private static boolean postProcessesHits(List<String> files, CacheSettings settings, MockCisServer server, ApiClient client,
+                                             UUID repositoryId, Path workDir) throws Exception {
+        settings.setDirectory(workDir.resolve("post-process-store").toString());
+        settings.setMaxMegabytes(1024);
+        ContentCache cache = ContentCache.open(settings);
+        PostProcessSettings postProcess = new PostProcessSettings();
+        postProcess.setEnabled(true);
+        run("processed", files, cache, postProcess, server, client, repositoryId, workDir);
+        Path original = workDir.resolve("processed");
+        List<String> before = manifests(original);
+
+        // The same documents sent again from another folder
+        List<String> moved = new ArrayList<>();
+        Path copies = Files.createDirectories(workDir.resolve("moved-input"));
+        for (String file : files) {
+            moved.add(Files.copy(Path.of(file), copies.resolve(Path.of(file).getFileName())).toString());
+        }
+        long submits = run("processed hit", moved, cache, postProcess, server, client, repositoryId, workDir);
+        Path restored = workDir.resolve("processed-hit");
+        List<String> lines = Files.readAllLines(restored.resolve(postProcess.getIndexFile()));
+        int described = 0;
+        for (String line : lines) {
+            JsonNode entry = JsonReaders.MAPPER.readTree(line);
+            JsonNode manifest = JsonReaders.MAPPER.readTree(restored.resolve(entry.get("manifest").asText()).toFile());
+            String input = manifest.get("inputs").get(0).asText();
+            boolean matched = manifest.get("outputs").size() == 1 && manifest.get("outputs").get(0).get("input").asInt() == 0;
+            if (entry.get("manifest").asText().startsWith("cached-") && !manifest.has("jobId") && moved.contains(input) && matched) {
+                described++;
+            }
+        }
+        long cachedManifests;
+        try (Stream<Path> stored = Files.walk(workDir.resolve("post-process-store"))) {
+            cachedManifests = stored.filter(p -> p.getFileName().toString().equals(postProcess.getManifestFile())).count();
+        }
+        System.out.printf("Post-processed hits: %d of %d described by their own manifest and index line, %d manifests cached%n",
+                described, files.size(), cachedManifests);
+        return check("hits are post-processed for their own inputs", submits == 0 && described == files.size()
+                && lines.size() == files.size() && cachedManifests == 0 && before.equals(manifests(original)));
+    }
+
+    private static List<String> manifests(Path output) throws Exception {
+        try (Stream<Path> files = Files.walk(output)) {
+            List<Path> found = files.filter(p -> p.getFileName().toString().equals(new PostProcessSettings().getManifestFile())).sorted().toList();
+            List<String> contents = new ArrayList<>();
+            for (Path manifest : found) {
+                contents.add(Files.readString(manifest));
+            }
+            return contents;
+        }
+    }
+
+    private static boolean check(String name, boolean ok) {
+        if (!ok) {
+            System.out.println("FAILED: " + name);
+        }
+        return ok;
+    }
+
+    // Every restored folder must hold the same files as a downloaded one
+    private static boolean restoredMatchOriginals(Path output, int expected) throws Exception {
+        List<Path> restored;
+        try (Stream<Path> dirs = Files.list(output)) {
+            restored = dirs.filter(p -> p.getFileName().toString().startsWith("cached-")).toList();
+        }
+        if (restored.size() != expected) {
+            return false;
+        }
+        for (Path dir : restored) {
+            try (Stream<Path> outputs = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) outputs.filter(Files::isRegularFile)::iterator) {
+                    byte[] content = Files.readAllBytes(file);
+                    for (int i = 0; i < content.length; i++) {
+                        if (content[i] != MockCisServer.payloadByte(i)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long directorySize(Path dir) throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+}
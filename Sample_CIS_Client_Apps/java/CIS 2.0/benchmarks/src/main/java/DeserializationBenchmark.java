@@ -0,0 +1,111 @@
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+
+// Parses Status and Environment response bodies taken from the mock server the way the clients used to, through the
+// ObjectMapper from a String (ApiClient) or the bytes (AsyncApiClient), and the way they do now, through the cached
+// ObjectReaders from the entity's stream or the bytes with the status read by StatusDeserializer. Reports operations per
+// second (mean and standard deviation over the measured iterations, after warm-up iterations for the JIT) and bytes
+// allocated per call.
+// Usage: DeserializationBenchmark [iterations] [iterationMillis]
+public class DeserializationBenchmark {
+    private interface Parse {
+        Object parse(byte[] body) throws Exception;
+    }
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        long iterationMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        // Without annotations the status is read as a new String, as before StatusDeserializer
+        ObjectMapper mapper = JsonMapper.builder().addModule(new JavaTimeModule()).disable(MapperFeature.USE_ANNOTATIONS).build();
+
+        byte[] status;
+        byte[] environment;
+        Path workDir = Files.createTempDirectory("deserialization-benchmark");
+        try (MockCisServer server = new MockCisServer();
+             CloseableHttpClient rawClient = HttpClients.createDefault()) {
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+            UUID jobId = client.submit(repositoryId, List.of(Files.write(workDir.resolve("input.pdf"), new byte[16]).toString()));
+            status = body(rawClient, server.getBaseUrl() + "/api/v2/ClientIntegration/Status/" + jobId);
+            environment = body(rawClient, server.getBaseUrl() + "/api/v2/ClientIntegration/Environment");
+        } finally {
+            Files.deleteIfExists(workDir.resolve("input.pdf"));
+            Files.delete(workDir);
+        }
+
+        measure("Status, String, mapper (before)", iterations, iterationMillis,
+                body -> mapper.readValue(new String(body, StandardCharsets.UTF_8), JobStatusResponse.class), status);
+        measure("Status, stream, reader (ApiClient)", iterations, iterationMillis,
+                body -> JsonReaders.STATUS.readValue(new ByteArrayInputStream(body)), status);
+        measure("Status, bytes, mapper (before)", iterations, iterationMillis,
+                body -> mapper.readValue(body, JobStatusResponse.class), status);
+        measure("Status, bytes, reader (AsyncApiClient)", iterations, iterationMillis,
+                body -> JsonReaders.STATUS.readValue(body), status);
+        measure("Environment, String, mapper (before)", iterations, iterationMillis,
+                body -> mapper.readValue(new String(body, StandardCharsets.UTF_8), EnvironmentResponse.class), environment);
+        measure("Environment, stream, reader (ApiClient)", iterations, iterationMillis,
+                body -> JsonReaders.ENVIRONMENT.readValue(new ByteArrayInputStream(body)), environment);
+    }
+
+    private static byte[] body(CloseableHttpClient client, String url) throws Exception {
+        try (CloseableHttpResponse response = client.execute(new HttpGet(url))) {
+            return EntityUtils.toByteArray(response.getEntity());
+        }
+    }
+
+    private static void measure(String name, int iterations, long iterationMillis, Parse parse, byte[] body) throws Exception {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        // Two warm-up iterations, then the measured ones
+        double[] rates = new double[iterations];
+        long allocated = 0;
+        long calls = 0;
+        for (int i = -2; i < iterations; i++) {
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long deadline = start + iterationMillis * 1_000_000;
+            long count = 0;
+            long now;
+            do {
+                for (int j = 0; j < 256; j++) {
+                    sink = parse.parse(body);
+                }
+                count += 256;
+                now = System.nanoTime();
+            } while (now < deadline);
+            if (i >= 0) {
+                rates[i] = count / ((now - start) / 1e9);
+                allocated += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                calls += count;
+            }
+        }
+
+        double mean = 0;
+        for (double rate : rates) {
+            mean += rate / iterations;
+        }
+        double variance = 0;
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean) / Math.max(1, iterations - 1);
+        }
+        System.out.printf("%-40s %10.0f ops/s +- %7.0f  %6.0f B/op  (%d byte body)%n",
+                name, mean, Math.sqrt(variance), (double) allocated / calls, body.length);
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+
+// Download throughput and allocation of the previous Files.copy path against DownloadEngine variants.
+// Usage: DownloadBenchmark [payloadMb] [iterations]
+public class DownloadBenchmark {
+    public static void main(String[] args) throws Exception {
+        long payloadMb = args.length > 0 ? Long.parseLong(args[0]) : 1024;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        Path workDir = Files.createTempDirectory("download-benchmark");
+        try (MockCisServer server = new MockCisServer();
+             CloseableHttpClient rawClient = HttpClients.createDefault()) {
+            server.setPayloadBytes(payloadMb * 1024 * 1024);
+            ApiClient setupClient = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            Path input = Files.write(workDir.resolve("input.pdf"), new byte[1024]);
+            UUID jobId = setupClient.submit(setupClient.getEnvironment().getRepositories().get(0).getId(), java.util.List.of(input.toString()));
+
+            ApiClient heap = clientWith(server, false, "CRC32C");
+            ApiClient direct = clientWith(server, true, "CRC32C");
+            ApiClient sha = clientWith(server, false, "SHA-256");
+
+            for (int i = 0; i <= iterations; i++) {
+                // The first round only warms up the JIT
+                boolean report = i > 0;
+                Path dir = Files.createDirectories(workDir.resolve("run" + i));
+
+                measure(report, "Files.copy (previous)", payloadMb, threads, () -> {
+                    HttpGet get = new HttpGet(server.getBaseUrl() + "/api/v2/ClientIntegration/Download/" + jobId);
+                    try (CloseableHttpResponse response = rawClient.execute(get);
+                         InputStream is = response.getEntity().getContent()) {
+                        Files.copy(is, dir.resolve("legacy.bin"));
+                    }
+                });
+                measure(report, "engine heap+CRC32C", payloadMb, threads, () -> heap.download(jobId, Files.createDirectories(dir.resolve("heap")).toString()));
+                measure(report, "engine direct+CRC32C", payloadMb, threads, () -> direct.download(jobId, Files.createDirectories(dir.resolve("direct")).toString()));
+                measure(report, "engine heap+SHA-256", payloadMb, threads, () -> sha.download(jobId, Files.createDirectories(dir.resolve("sha")).toString()));
+
+                try (Stream<Path> paths = Files.walk(dir)) {
+                    paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+
+            if (!emptyDownloads(server, jobId, Files.createDirectories(workDir.resolve("empty")))) {
+                System.out.println("FAILED");
+                System.exit(1);
+            }
+            System.out.println("OK");
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    // A 204 reaches the async consumer without a body or any data() call; both clients must write an empty file
+    private static boolean emptyDownloads(MockCisServer server, UUID jobId, Path dir) throws Exception {
+        server.setPayloadBytes(0);
+        DownloadResult classic = clientWith(server, false, "CRC32C").download(jobId, Files.createDirectories(dir.resolve("classic")).toString());
+        DownloadResult async;
+        try (AsyncApiClient asyncClient = new AsyncApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false)) {
+            async = asyncClient.download(jobId, Files.createDirectories(dir.resolve("async")).toString()).get();
+        }
+        boolean ok = true;
+        for (DownloadResult result : new DownloadResult[]{classic, async}) {
+            boolean written = result != null && Files.size(result.path()) == 0 && result.bytes() == 0;
+            long leftovers;
+            try (Stream<Path> paths = Files.walk(dir)) {
+                leftovers = paths.filter(p -> p.toString().endsWith(".part")).count();
+            }
+            System.out.println("Empty download: " + (result != null ? result.path().getFileName() + ", " + result.bytes() + " bytes" : "no result")
+                    + ", partial files left " + leftovers);
+            ok &= written && leftovers == 0;
+        }
+        return ok;
+    }
+
+    private static ApiClient clientWith(MockCisServer server, boolean directBuffers, String checksum) {
+        DownloadSettings settings = new DownloadSettings();
+        settings.setDirectBuffers(directBuffers);
+        settings.setChecksumAlgorithm(checksum);
+        return new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false, new ConnectionPoolSettings(), settings);
+    }
+
+    private static void measure(boolean report, String name, long payloadMb, com.sun.management.ThreadMXBean threads,
+                                BenchmarkAction action) throws Exception {
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        action.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (report) {
+            System.out.printf("%-22s %8.1f MB/s  %10.1f KB allocated per GB%n",
+                    name, payloadMb / seconds, allocated / 1024.0 / (payloadMb / 1024.0));
+        }
+    }
+
+    interface BenchmarkAction {
+        void run() throws Exception;
+    }
+}
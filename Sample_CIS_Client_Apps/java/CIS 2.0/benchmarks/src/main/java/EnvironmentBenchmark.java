@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+// Cost of resolving a repository with a request to Environment per lookup against EnvironmentCache, and startup time
+// with and without the cache file. Then checks that a refresh with an unchanged lastChanged does not rebuild the
+// indexes, that a changed environment is picked up, that a repository missing from or recreated since a stale cache
+// file is fetched, and that a cache file saved for another server or API key is not used.
+// The mock delays every response by latencyMillis. Exits with status 1 if a check fails.
+// Usage: EnvironmentBenchmark [repositories] [latencyMillis]
+public class EnvironmentBenchmark {
+    public static void main(String[] args) throws Exception {
+        int repositories = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        boolean passed = true;
+
+        Path workDir = Files.createTempDirectory("environment-benchmark");
+        try (MockCisServer server = new MockCisServer()) {
+            server.setRepositoryCount(repositories);
+            server.setLatencyMillis(latencyMillis);
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            String lastName = "Mock Repository " + repositories;
+            client.getEnvironment();
+
+            int requests = 50;
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                EnvironmentResponse environment = client.getEnvironment();
+                environment.getRepositories().stream().filter(r -> r.getName().equals(lastName)).findFirst().orElseThrow();
+            }
+            double requestMicros = (System.nanoTime() - start) / 1e3 / requests;
+
+            EnvironmentSettings settings = new EnvironmentSettings();
+            settings.setCacheFile(workDir.resolve("environment.json").toString());
+            settings.setRepository(lastName);
+            start = System.nanoTime();
+            EnvironmentCache cold = EnvironmentCache.open(client::getEnvironment, settings, server.getBaseUrl(), "benchmark");
+            double coldMillis = (System.nanoTime() - start) / 1e6;
+            UUID expected = cold.getDefaultRepository().getId();
+
+            int lookups = 5_000_000;
+            Object found = null;
+            for (int round = 0; round < 2; round++) {
+                start = System.nanoTime();
+                for (int i = 0; i < lookups; i++) {
+                    found = cold.findByName(lastName);
+                }
+            }
+            double lookupNanos = (double) (System.nanoTime() - start) / lookups;
+            passed &= check("lookup finds " + lastName, found != null && ((RepositoryDto) found).getId().equals(expected));
+
+            System.out.printf("Resolve %s of %d repositories: request per lookup %.0f us, cache %.1f ns%n", lastName, repositories,
+                    requestMicros, lookupNanos);
+
+            passed &= check("refresh with the same lastChanged keeps the indexes", !cold.refresh());
+            server.setRepositoryCount(repositories + 1);
+            passed &= check("refresh with a new lastChanged rebuilds the indexes", cold.refresh()
+                    && cold.findByName("Mock Repository " + (repositories + 1)) != null);
+            System.out.println("  " + cold.describe());
+            cold.close();
+
+            // Warm start: the file written above is used while the first fetch runs in the background
+            start = System.nanoTime();
+            EnvironmentCache warm = EnvironmentCache.open(client::getEnvironment, settings, server.getBaseUrl(), "benchmark");
+            UUID warmId = warm.getDefaultRepository().getId();
+            double warmMillis = (System.nanoTime() - start) / 1e6;
+            passed &= check("warm start resolves the same repository", warmId.equals(expected));
+            System.out.printf("Startup until the repository is resolved: fetch %.1f ms, cache file %.1f ms%n", coldMillis, warmMillis);
+            warm.close();
+
+            // A repository added since the file was saved is fetched rather than reported missing
+            server.setRepositoryCount(repositories + 2);
+            settings.setRepository("Mock Repository " + (repositories + 2));
+            settings.setRefreshSeconds(0);
+            EnvironmentCache stale = EnvironmentCache.open(() -> {
+                // Holds the background refresh back so the lookup sees the stale file
+                Thread.sleep(200);
+                return client.getEnvironment();
+            }, settings, server.getBaseUrl(), "benchmark");
+            passed &= check("repository missing from the cache file is fetched",
+                    stale.getDefaultRepository().getId().equals(MockCisServer.repositoryId(repositories + 1)));
+            stale.close();
+
+            // A repository recreated under the same name since the file was saved resolves to its new ID, even though
+            // the file still lists the old one
+            UUID recreatedId = UUID.randomUUID();
+            String recreatedName = settings.getRepository();
+            EnvironmentCache recreated = EnvironmentCache.open(() -> {
+                Thread.sleep(200);
+                EnvironmentResponse environment = client.getEnvironment();
+                environment.getRepositories().stream().filter(r -> r.getName().equals(recreatedName)).findFirst().orElseThrow()
+                        .setId(recreatedId);
+                environment.setLastChanged(Instant.now());
+                return environment;
+            }, settings, server.getBaseUrl(), "benchmark");
+            passed &= check("repository recreated since the cache file was saved resolves to its new ID",
+                    recreated.getDefaultRepository().getId().equals(recreatedId));
+            recreated.close();
+
+            // The file is only used for the server and key it was saved with; with nothing to fall back on, a failed
+            // fetch fails the start
+            Callable<EnvironmentResponse> unreachable = () -> {
+                throw new IOException("unreachable");
+            };
+            passed &= check("cache file saved for another server is ignored", failsToOpen(unreachable, settings, "http://localhost:1/", "benchmark"));
+            passed &= check("cache file saved with another API key is ignored", failsToOpen(unreachable, settings, server.getBaseUrl(), "another key"));
+            EnvironmentCache sameServer = EnvironmentCache.open(unreachable, settings, server.getBaseUrl(), "benchmark");
+            passed &= check("cache file is used for the same server and key while it cannot be reached",
+                    sameServer.getDefaultRepository().getId().equals(recreatedId));
+            sameServer.close();
+        } finally {
+            Files.deleteIfExists(workDir.resolve("environment.json"));
+            Files.delete(workDir);
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean failsToOpen(Callable<EnvironmentResponse> fetcher, EnvironmentSettings settings, String baseUrl,
+                                       String apiKey) {
+        try {
+            EnvironmentCache cache = EnvironmentCache.open(fetcher, settings, baseUrl, apiKey);
+            cache.close();
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private static boolean check(String name, boolean ok) {
+        if (!ok) {
+            System.out.println("FAILED: " + name);
+        }
+        return ok;
+    }
+}
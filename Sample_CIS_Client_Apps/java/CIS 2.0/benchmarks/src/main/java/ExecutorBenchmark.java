@@ -0,0 +1,66 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+// Throughput of the separate-jobs workflow for each executor mode. The extra mode "async" runs the same workflow on
+// AsyncApiClient with a fixed pool for continuations. A download delay makes the download step the bottleneck, which
+// is where "pipeline" differs from the shared worker pool.
+// Usage: ExecutorBenchmark [fileCounts, e.g. 100,1000,10000] [modes, e.g. forkjoin,fixed,virtual,pipeline,async] [jobThreads]
+//        [downloadDelayMillis]
+public class ExecutorBenchmark {
+    public static void main(String[] args) throws Exception {
+        String[] fileCounts = (args.length > 0 ? args[0] : "100,1000,10000").split(",");
+        String[] modes = (args.length > 1 ? args[1] : "forkjoin,fixed,virtual").split(",");
+        int jobThreads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long downloadDelayMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        Path workDir = Files.createTempDirectory("executor-benchmark");
+        Path input = workDir.resolve("input.pdf");
+        Files.write(input, new byte[1024]);
+
+        try (MockCisServer server = new MockCisServer()) {
+            server.setJobDurationMillis(() -> ThreadLocalRandom.current().nextLong(200, 2000));
+            server.setPayloadBytes(1024);
+            server.setDownloadDelayMillis(downloadDelayMillis);
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            AsyncApiClient asyncClient = new AsyncApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+            // Every pipeline stage gets as many threads as the shared pool of the other modes
+            PipelineSettings pipelineSettings = new PipelineSettings();
+            pipelineSettings.setSubmitThreads(jobThreads);
+            pipelineSettings.setDownloadThreads(jobThreads);
+            pipelineSettings.setReleaseThreads(jobThreads);
+            pipelineSettings.setStatsIntervalSeconds(0);
+
+            for (String count : fileCounts) {
+                List<String> files = Collections.nCopies(Integer.parseInt(count.trim()), input.toString());
+                for (String mode : modes) {
+                    Path output = Files.createDirectories(workDir.resolve(mode + "-" + count.trim()));
+                    PollingStrategy strategy = new AdaptivePollingStrategy(250, 30_000, 2.0, 0.2);
+                    long start = System.nanoTime();
+                    JobRunner.JobLog noLog = (message, id) -> {
+                    };
+                    try (JobRunner runner = "async".equals(mode.trim())
+                            ? new JobRunner(asyncClient, strategy, output.toString(), noLog, "fixed", jobThreads)
+                            : new JobRunner(client, strategy, output.toString(), noLog, mode.trim(), jobThreads, 4, pipelineSettings)) {
+                        CompletableFuture.allOf(runner.runSeparateJobs(repositoryId, files).toArray(new CompletableFuture[0])).join();
+                    }
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("mode=%-8s files=%-6d elapsed=%.1fs throughput=%.1f files/s%n",
+                            mode.trim(), files.size(), seconds, files.size() / seconds);
+                }
+            }
+            asyncClient.close();
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
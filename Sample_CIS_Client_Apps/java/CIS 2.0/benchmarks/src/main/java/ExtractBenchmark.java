@@ -0,0 +1,253 @@
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+// Extracts one archive of many entries, first one entry after the other through a ZipInputStream and then through a
+// PostProcessor at each thread count, and reports MB/s of extracted output. Then runs jobs whose downloads are zips
+// against the mock server and checks that every job's folder holds the extracted outputs and a manifest matching
+// them to their inputs, that the index has a line per job, that an entry pointing outside the job's folder is
+// refused, and that entries whose names collide with the manifest, the archive or each other are all kept. Exits with
+// status 1 if a check fails.
+// Usage: ExtractBenchmark [entries] [entryKb] [threadCounts]
+public class ExtractBenchmark {
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int entryKb = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        String[] threadCounts = (args.length > 2 ? args[2] : "1,2,4,8").split(",");
+        boolean passed = true;
+
+        Path workDir = Files.createTempDirectory("extract-benchmark");
+        try {
+            Path archive = createArchive(workDir.resolve("outputs.zip"), entries, entryKb);
+            long bytes = (long) entries * entryKb * 1024;
+            System.out.printf("Archive: %d entries of %d KB, %.1f MB compressed to %.1f MB%n", entries, entryKb,
+                    bytes / 1_048_576.0, Files.size(archive) / 1_048_576.0);
+
+            // Warms up the JIT and the page cache, so the first timed run is not the slowest for that alone
+            extractSequentially(archive, Files.createDirectories(workDir.resolve("warm-up")));
+            Path target = Files.createDirectories(workDir.resolve("stream"));
+            long start = System.nanoTime();
+            extractSequentially(archive, target);
+            report("stream, one by one", bytes, System.nanoTime() - start);
+            passed &= check("sequential extraction writes every entry", countFiles(target) == entries);
+
+            for (String count : threadCounts) {
+                int threads = Integer.parseInt(count.trim());
+                PostProcessSettings settings = new PostProcessSettings();
+                settings.setEnabled(true);
+                settings.setThreads(threads);
+                settings.setKeepArchives(true);
+                settings.setIndexFile("");
+                Path jobDir = Files.createDirectories(workDir.resolve("threads-" + threads));
+                Path copy = Files.copy(archive, jobDir.resolve("outputs.zip"));
+                try (PostProcessor processor = new PostProcessor(settings, workDir)) {
+                    start = System.nanoTime();
+                    PostProcessor.Manifest manifest = processor.process(UUID.randomUUID(), jobDir, copy, List.of());
+                    report("PostProcessor, " + threads + " threads", bytes, System.nanoTime() - start);
+                    passed &= check("every entry is extracted with " + threads + " threads", manifest.outputs().size() == entries
+                            && manifest.outputs().stream().mapToLong(PostProcessor.Output::bytes).sum() == bytes);
+                }
+            }
+
+            passed &= runJobs(workDir);
+            passed &= refusesEscapingEntries(workDir);
+            passed &= renamesCollidingEntries(workDir);
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // 16 files as 3 jobs of 4 and 4 jobs of one
+    private static boolean runJobs(Path workDir) throws Exception {
+        boolean passed = true;
+        Path inputDir = Files.createDirectories(workDir.resolve("input"));
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            files.add(Files.write(inputDir.resolve("document" + i + ".docx"), new byte[4096]).toString());
+        }
+        List<List<String>> jobs = new ArrayList<>();
+        for (int i = 0; i < 12; i += 4) {
+            jobs.add(files.subList(i, i + 4));
+        }
+        for (int i = 12; i < 16; i++) {
+            jobs.add(List.of(files.get(i)));
+        }
+
+        Path output = Files.createDirectories(workDir.resolve("Output"));
+        try (MockCisServer server = new MockCisServer()) {
+            server.setJobDurationMillis(() -> 300);
+            server.setPayloadBytes(256 * 1024);
+            server.setArchiveOutputs(true);
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+            PostProcessSettings settings = new PostProcessSettings();
+            settings.setEnabled(true);
+            JobRunner.JobLog noLog = (message, id) -> {
+            };
+            try (JobRunner runner = new JobRunner(client, new FixedPollingStrategy(100), output.toString(), noLog, "fixed", 4, 2)) {
+                runner.setPostProcessing(settings);
+                CompletableFuture.allOf(runner.runJobs(repositoryId, jobs, 0).toArray(new CompletableFuture[0])).join();
+            }
+        }
+
+        List<String> lines = Files.readAllLines(output.resolve(new PostProcessSettings().getIndexFile()));
+        passed &= check("the index has a line per job", lines.size() == jobs.size());
+        int matched = 0;
+        int checked = 0;
+        for (String line : lines) {
+            JsonNode entry = JsonReaders.MAPPER.readTree(line);
+            Path manifestFile = output.resolve(entry.get("manifest").asText());
+            Path jobDir = manifestFile.getParent();
+            JsonNode manifest = JsonReaders.MAPPER.readTree(manifestFile.toFile());
+            List<String> inputs = new ArrayList<>();
+            manifest.get("inputs").forEach(input -> inputs.add(input.asText()));
+            passed &= check("the manifest lists the job's inputs", jobs.contains(inputs));
+            passed &= check("the archive is removed", countFiles(jobDir) == manifest.get("outputs").size() + 1);
+            for (JsonNode out : manifest.get("outputs")) {
+                String path = out.get("path").asText();
+                if (!out.has("input")) {
+                    passed &= check("only job.log is unmatched", path.equals("job.log") && inputs.size() > 1);
+                    continue;
+                }
+                String input = Path.of(inputs.get(out.get("input").asInt())).getFileName().toString();
+                passed &= check(path + " is matched to its input", path.equals("job.log") || input.equals(path.replace(".pdf", ".docx")));
+                if (path.endsWith(".pdf")) {
+                    matched++;
+                    checked += matchesPayload(jobDir.resolve(path)) ? 1 : 0;
+                }
+            }
+        }
+        System.out.printf("Jobs: %d, outputs matched to their inputs: %d of %d, with the served content: %d%n",
+                lines.size(), matched, files.size(), checked);
+        passed &= check("every input has its output", matched == files.size() && checked == files.size());
+        return passed;
+    }
+
+    private static boolean refusesEscapingEntries(Path workDir) throws Exception {
+        Path jobDir = Files.createDirectories(workDir.resolve("escape").resolve("job"));
+        Path archive = jobDir.resolve("outputs.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("../escaped.txt"));
+            zip.write(1);
+            zip.closeEntry();
+        }
+        PostProcessSettings settings = new PostProcessSettings();
+        settings.setEnabled(true);
+        boolean refused = false;
+        try (PostProcessor processor = new PostProcessor(settings, workDir.resolve("escape"))) {
+            processor.process(UUID.randomUUID(), jobDir, archive, List.of());
+        } catch (IOException e) {
+            refused = true;
+        }
+        return check("an entry outside the job's folder is refused", refused && !Files.exists(jobDir.resolveSibling("escaped.txt")));
+    }
+
+    private static boolean renamesCollidingEntries(Path workDir) throws Exception {
+        Path jobDir = Files.createDirectories(workDir.resolve("collisions").resolve("job"));
+        Path archive = jobDir.resolve("outputs.zip");
+        List<String> names = List.of("manifest.json", "outputs.zip", "report.pdf", "REPORT.pdf", "pages/../report.pdf");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (String name : names) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(name.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        PostProcessSettings settings = new PostProcessSettings();
+        settings.setEnabled(true);
+        settings.setIndexFile("");
+        PostProcessor.Manifest manifest;
+        try (PostProcessor processor = new PostProcessor(settings, workDir.resolve("collisions"))) {
+            manifest = processor.process(UUID.randomUUID(), jobDir, archive, List.of());
+        }
+        Set<String> contents = new HashSet<>();
+        for (PostProcessor.Output output : manifest.outputs()) {
+            contents.add(Files.readString(jobDir.resolve(output.path())));
+        }
+        JsonNode written = JsonReaders.MAPPER.readTree(jobDir.resolve(settings.getManifestFile()).toFile());
+        System.out.println("Colliding entries extracted as " + manifest.outputs().stream().map(PostProcessor.Output::path).toList());
+        return check("entries colliding with the manifest, the archive or each other are all kept",
+                contents.equals(new HashSet<>(names)) && written.get("outputs").size() == names.size()
+                        && countFiles(jobDir) == names.size() + 1);
+    }
+
+    // Half random bytes and half repeated text, so the archive is compressed about as much as rendered documents
+    private static Path createArchive(Path archive, int entries, int entryKb) throws IOException {
+        Random random = new Random(1);
+        byte[] content = new byte[entryKb * 1024];
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (int i = 0; i < entries; i++) {
+                random.nextBytes(content);
+                for (int j = content.length / 2; j < content.length; j++) {
+                    content[j] = (byte) ('a' + j % 26);
+                }
+                zip.putNextEntry(new ZipEntry("pages/output" + i + ".pdf"));
+                zip.write(content);
+                zip.closeEntry();
+            }
+        }
+        return archive;
+    }
+
+    private static void extractSequentially(Path archive, Path target) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                Path file = target.resolve(entry.getName());
+                Files.createDirectories(file.getParent());
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    zip.transferTo(out);
+                }
+            }
+        }
+    }
+
+    private static boolean matchesPayload(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] content = in.readAllBytes();
+            for (int i = 0; i < content.length; i++) {
+                if (content[i] != MockCisServer.payloadByte(i)) {
+                    return false;
+                }
+            }
+            return content.length > 0;
+        }
+    }
+
+    private static long countFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static void report(String name, long bytes, long nanos) {
+        System.out.printf("%-26s %7.1f ms %8.1f MB/s%n", name, nanos / 1e6, bytes / 1_048_576.0 / (nanos / 1e9));
+    }
+
+    private static boolean check(String name, boolean ok) {
+        if (!ok) {
+            System.out.println("FAILED: " + name);
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Cuts download responses off part-way through and checks that the client resumes them into a byte-exact file.
+// Exits with status 1 if any scenario fails.
+// Usage: InterruptedDownloadCheck [payloadMb]
+public class InterruptedDownloadCheck {
+    public static void main(String[] args) throws Exception {
+        long payloadBytes = (args.length > 0 ? Long.parseLong(args[0]) : 16) * 1024 * 1024;
+        boolean passed = true;
+
+        Path workDir = Files.createTempDirectory("interrupted-download");
+        try (MockCisServer server = new MockCisServer()) {
+            server.setPayloadBytes(payloadBytes);
+            ApiClient setupClient = new ApiClient(server.getBaseUrl(), "X-Api-Key", "check", false);
+            Path input = Files.write(workDir.resolve("input.pdf"), new byte[1024]);
+            UUID jobId = setupClient.submit(setupClient.getEnvironment().getRepositories().get(0).getId(), List.of(input.toString()));
+
+            passed &= run(server, workDir, jobId, "single stream, one cut", true, 1, 1, payloadBytes / 3, 2);
+            passed &= run(server, workDir, jobId, "single stream, two cuts", true, 1, 2, payloadBytes / 4, 3);
+            passed &= run(server, workDir, jobId, "4 segments, two cuts", true, 4, 2, payloadBytes / 16, 1 + 4 + 2);
+            passed &= run(server, workDir, jobId, "4 segments, no cuts", true, 4, 0, 0, 1 + 4);
+            passed &= run(server, workDir, jobId, "no range support, one cut", false, 4, 1, payloadBytes / 3, 2);
+            // Downloading into the same directory again finds the file committed by the first run and keeps it
+            passed &= run(server, workDir, jobId, "target already in place", true, 1, 0, 0, 1);
+            passed &= run(server, workDir, jobId, "target already in place", true, 1, 1, payloadBytes / 3, 2);
+            passed &= oversizedPart(server, workDir, jobId, payloadBytes);
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean run(MockCisServer server, Path workDir, UUID jobId, String name, boolean ranges, int segments,
+                               int failures, long failAfterBytes, long expectedRequests) throws Exception {
+        DownloadSettings settings = new DownloadSettings();
+        settings.setParallelSegments(segments);
+        settings.setParallelThresholdMb(0);
+        ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "check", false, new ConnectionPoolSettings(), settings);
+
+        server.setSupportsRanges(ranges);
+        server.failDownloads(failures, failAfterBytes);
+        server.resetRequestCounts();
+        Path dir = Files.createDirectories(workDir.resolve(name.replaceAll("[^a-z0-9]+", "-")));
+
+        String problem = null;
+        try {
+            DownloadResult result = client.download(jobId, dir.toString());
+            long requests = server.getRequestCount("Download");
+            try (Stream<Path> leftovers = Files.list(dir)) {
+                long extra = leftovers.filter(p -> !p.equals(result.path())).count();
+                if (extra > 0) {
+                    problem = extra + " leftover file(s) in the download directory";
+                }
+            }
+            if (problem == null) {
+                problem = verify(result.path());
+            }
+            if (problem == null && requests != expectedRequests) {
+                problem = requests + " download requests, expected " + expectedRequests;
+            }
+        } catch (Exception e) {
+            problem = e.toString();
+        }
+
+        System.out.printf("%-28s %s%n", name, problem == null ? "OK" : "FAILED: " + problem);
+        return problem == null;
+    }
+
+    // A ".part" file longer than the output gets 416 to its Range request and is downloaded again in full
+    private static boolean oversizedPart(MockCisServer server, Path workDir, UUID jobId, long payloadBytes) throws Exception {
+        String name = "part longer than the file";
+        Path dir = Files.createDirectories(workDir.resolve("oversized-part"));
+        DownloadSettings settings = new DownloadSettings();
+        settings.setResumeAttempts(0);
+        ResilienceSettings noRetries = new ResilienceSettings();
+        noRetries.setRetryAttempts(0);
+        ApiClient failing = new ApiClient(server.getBaseUrl(), "X-Api-Key", "check", false, new ConnectionPoolSettings(), settings,
+                new UploadSettings(), noRetries);
+        server.setSupportsRanges(true);
+        server.failDownloads(1, 1024 * 1024);
+        String problem = null;
+        try {
+            failing.download(jobId, dir.toString());
+            problem = "the first download did not fail";
+        } catch (Exception expected) {
+            // Leaves the ".part" file behind
+        }
+        if (problem == null) {
+            try (Stream<Path> parts = Files.list(dir)) {
+                Path part = parts.filter(p -> p.toString().endsWith(DownloadEngine.PART_SUFFIX)).findFirst().orElse(null);
+                if (part == null) {
+                    problem = "no .part file was left behind";
+                } else {
+                    Files.write(part, new byte[(int) payloadBytes], StandardOpenOption.APPEND);
+                }
+            }
+        }
+        if (problem == null) {
+            server.failDownloads(0, 0);
+            server.resetRequestCounts();
+            try {
+                DownloadResult result = new ApiClient(server.getBaseUrl(), "X-Api-Key", "check", false).download(jobId, dir.toString());
+                problem = verify(result.path());
+                if (problem == null && Files.size(result.path()) != payloadBytes) {
+                    problem = Files.size(result.path()) + " bytes, expected " + payloadBytes;
+                }
+                if (problem == null && server.getRequestCount("Download") != 2) {
+                    problem = server.getRequestCount("Download") + " download requests, expected 2";
+                }
+            } catch (Exception e) {
+                problem = e.toString();
+            }
+        }
+        System.out.printf("%-28s %s%n", name, problem == null ? "OK" : "FAILED: " + problem);
+        return problem == null;
+    }
+
+    private static String verify(Path file) throws Exception {
+        byte[] buffer = new byte[64 * 1024];
+        long offset = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != MockCisServer.payloadByte(offset + i)) {
+                        return "content differs at byte " + (offset + i);
+                    }
+                }
+                offset += read;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// End-to-end latency of single jobs run one after another through JobRunner.processJob, split into the submit,
+// wait, download and release phases using the job log messages. The wait is reported beyond the job duration the mock
+// assigned, which is the time lost to the polling interval. The mock delays every response by latencyMillis.
+// Usage: JobLatencyBenchmark [jobs] [latencyMillis] [jobMillis] [payloadKb]
+public class JobLatencyBenchmark {
+    private static final String[] PHASES = {"submit", "wait beyond job", "download", "release", "total"};
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        long jobMillis = args.length > 2 ? Long.parseLong(args[2]) : 500;
+        long payloadKb = args.length > 3 ? Long.parseLong(args[3]) : 1024;
+
+        Path workDir = Files.createTempDirectory("job-latency-benchmark");
+        try (MockCisServer server = new MockCisServer()) {
+            server.setJobDurationMillis(() -> jobMillis);
+            server.setPayloadBytes(payloadKb * 1024);
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+            server.setLatencyMillis(latencyMillis);
+            String input = Files.write(workDir.resolve("input.pdf"), new byte[64 * 1024]).toString();
+            Path output = Files.createDirectories(workDir.resolve("output"));
+
+            run("fixed 1s", new FixedPollingStrategy(1000), client, server, repositoryId, input, output, jobs);
+            run("adaptive", new AdaptivePollingStrategy(250, 30_000, 2.0, 0.2), client, server, repositoryId, input, output, jobs);
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(String name, PollingStrategy strategy, ApiClient client, MockCisServer server, UUID repositoryId,
+                            String input, Path output, int jobs) throws Exception {
+        List<List<Long>> phases = new ArrayList<>();
+        for (int i = 0; i < PHASES.length; i++) {
+            phases.add(new ArrayList<>());
+        }
+        long[] marks = new long[5];
+        long[] jobMillis = new long[1];
+        UUID[] jobId = new UUID[1];
+        JobRunner.JobLog log = (message, id) -> {
+            if (message.startsWith("Submitted. Job ID: ")) {
+                marks[1] = System.nanoTime();
+                jobId[0] = UUID.fromString(message.substring("Submitted. Job ID: ".length(), "Submitted. Job ID: ".length() + 36));
+            } else if (message.endsWith("completed successfully.\n")) {
+                marks[2] = System.nanoTime();
+                // Read now, since the mock forgets the job once it is released
+                jobMillis[0] = server.getJobDurationMillis(jobId[0]);
+            } else if (message.startsWith("Download complete.")) {
+                marks[3] = System.nanoTime();
+            } else if (message.startsWith("Job Released.")) {
+                marks[4] = System.nanoTime();
+            }
+        };
+
+        try (JobRunner runner = new JobRunner(client, strategy, output.toString(), log, "fixed", 1, 1)) {
+            // The first job only warms up the JIT and the connection pool
+            for (int i = -1; i < jobs; i++) {
+                marks[0] = System.nanoTime();
+                runner.processJob(repositoryId, List.of(input), 0);
+                if (i < 0) {
+                    continue;
+                }
+                long jobNanos = jobMillis[0] * 1_000_000;
+                phases.get(0).add(marks[1] - marks[0]);
+                phases.get(1).add(marks[2] - marks[1] - jobNanos);
+                phases.get(2).add(marks[3] - marks[2]);
+                phases.get(3).add(marks[4] - marks[3]);
+                phases.get(4).add(marks[4] - marks[0]);
+            }
+        }
+
+        System.out.println(name + " polling, " + jobs + " jobs:");
+        for (int i = 0; i < PHASES.length; i++) {
+            List<Long> values = phases.get(i);
+            values.sort(Comparator.naturalOrder());
+            System.out.printf("  %-16s p50=%7.1f ms  p99=%7.1f ms  max=%7.1f ms%n", PHASES[i],
+                    values.get(values.size() / 2) / 1e6, values.get(Math.min(values.size() - 1, values.size() * 99 / 100)) / 1e6,
+                    values.get(values.size() - 1) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Job state changes per second through JobJournal with group commit against one fsync per record, then replay time,
+// the journal's size after many jobs with compaction, and recovery from a torn last record.
+// Exits with status 1 if a replayed journal does not match what was written.
+// Usage: JournalBenchmark [jobs] [threads] [segmentMb] [syncIntervalMillis]
+public class JournalBenchmark {
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int segmentMb = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int syncIntervalMillis = args.length > 3 ? Integer.parseInt(args[3]) : new JournalSettings().getSyncIntervalMillis();
+        boolean passed = true;
+
+        Path workDir = Files.createTempDirectory("journal-benchmark");
+        try {
+            List<String> inputs = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                inputs.add(Files.write(workDir.resolve("input" + i + ".pdf"), new byte[16]).toString());
+            }
+
+            fsyncPerRecord(workDir.resolve("naive.log"), Math.min(jobs, 2000), threads);
+
+            JournalSettings settings = new JournalSettings();
+            settings.setDirectory(workDir.resolve("journal").toString());
+            settings.setSegmentMb(segmentMb);
+            settings.setSyncIntervalMillis(syncIntervalMillis);
+            // Every job is finished except the last few, which stay in flight for the replay check
+            int inFlight = 10;
+            try (JobJournal journal = JobJournal.open(settings)) {
+                AtomicInteger next = new AtomicInteger();
+                long start = System.nanoTime();
+                runThreads(threads, () -> {
+                    int job;
+                    while ((job = next.getAndIncrement()) < jobs) {
+                        UUID jobId = UUID.randomUUID();
+                        journal.submitted(jobId, List.of(inputs.get(job % inputs.size())));
+                        if (job < jobs - inFlight) {
+                            journal.completed(jobId, "CompletedSuccessful");
+                            journal.downloaded(jobId, workDir.resolve(jobId + ".pdf"));
+                            journal.released(jobId);
+                        }
+                    }
+                });
+                double seconds = (System.nanoTime() - start) / 1e9;
+                long records = (jobs - inFlight) * 4L + inFlight;
+                System.out.printf("Group commit:      %8.0f records/s (%s)%n", records / seconds, journal.describe());
+            }
+            System.out.printf("Journal size after %d jobs: %d KB in %d segment(s)%n", jobs, directorySize(workDir.resolve("journal")) / 1024,
+                    segmentCount(workDir.resolve("journal")));
+
+            long start = System.nanoTime();
+            try (JobJournal journal = JobJournal.open(settings)) {
+                System.out.printf("Replay: %.1f ms (%s)%n", (System.nanoTime() - start) / 1e6, journal.describe());
+                if (journal.getPendingJobs().size() != inFlight || !journal.isProcessed(inputs.get(0))) {
+                    System.out.println("FAILED: expected " + inFlight + " pending jobs and processed inputs after replay");
+                    passed = false;
+                }
+            }
+
+            // A crash in the middle of a write leaves part of a record at the end of the last segment
+            Path last;
+            try (Stream<Path> segments = Files.list(workDir.resolve("journal"))) {
+                last = segments.max(Comparator.naturalOrder()).orElseThrow();
+            }
+            Files.writeString(last, "0badc0de {\"type\":\"released\",\"jobId\":\"", StandardOpenOption.APPEND);
+            try (JobJournal journal = JobJournal.open(settings)) {
+                if (journal.getPendingJobs().size() != inFlight) {
+                    System.out.println("FAILED: torn record changed the replayed state");
+                    passed = false;
+                }
+                journal.released(journal.getPendingJobs().get(0).jobId());
+            }
+            try (JobJournal journal = JobJournal.open(settings)) {
+                if (journal.getPendingJobs().size() != inFlight - 1) {
+                    System.out.println("FAILED: record written after the repaired tear was lost");
+                    passed = false;
+                } else {
+                    System.out.println("Torn record discarded, later records replayed");
+                }
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // What a journal without group commit does: every record is written and forced before the next one
+    private static void fsyncPerRecord(Path file, int jobs, int threads) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            byte[] record = ("00000000 {\"type\":\"submitted\",\"jobId\":\"" + UUID.randomUUID() + "\"}\n").getBytes(StandardCharsets.UTF_8);
+            AtomicInteger next = new AtomicInteger();
+            long start = System.nanoTime();
+            runThreads(threads, () -> {
+                while (next.getAndIncrement() < jobs * 4) {
+                    synchronized (channel) {
+                        channel.write(ByteBuffer.wrap(record));
+                        channel.force(false);
+                    }
+                }
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("fsync per record:  %8.0f records/s%n", jobs * 4 / seconds);
+        }
+    }
+
+    private interface Work {
+        void run() throws Exception;
+    }
+
+    private static void runThreads(int threads, Work work) throws Exception {
+        List<Thread> running = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            running.add(Thread.ofPlatform().start(() -> {
+                try {
+                    work.run();
+                } catch (Exception e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+    }
+
+    private static long directorySize(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    private static long segmentCount(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
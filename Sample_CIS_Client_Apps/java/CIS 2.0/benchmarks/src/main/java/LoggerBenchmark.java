@@ -0,0 +1,105 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Log calls per second and caller latency with many job threads logging at once, for the previous Main.log (a new
+// formatter and an open, append and close of the job's file per line) against AsyncLogger in text and JSON format.
+// Console output is discarded so only the file logging is measured. Checks that every line reaches its file.
+// Exits with status 1 if a line is lost.
+// Usage: LoggerBenchmark [threads] [linesPerThread]
+public class LoggerBenchmark {
+    private interface JobLogger {
+        void log(Path file, int id, String message);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int linesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        boolean passed = true;
+
+        Path workDir = Files.createTempDirectory("logger-benchmark");
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        try {
+            passed &= run("per-line writeString", workDir.resolve("previous"), threads, linesPerThread, (file, id, message) -> {
+                String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+                discard.println("Thread: " + id + ", " + message);
+                try {
+                    Files.writeString(file, timestamp + ": " + message.trim() + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, null);
+
+            for (String format : List.of("text", "json")) {
+                LogSettings settings = new LogSettings();
+                settings.setFormat(format);
+                try (AsyncLogger logger = new AsyncLogger(settings, discard)) {
+                    passed &= run("AsyncLogger " + format, workDir.resolve(format), threads, linesPerThread,
+                            (file, id, message) -> logger.log(file, "INFO", id, message.trim(), "Thread: " + id + ", " + message), logger);
+                    System.out.println("  " + logger.describe());
+                }
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean run(String name, Path dir, int threads, int linesPerThread, JobLogger jobLogger, AsyncLogger logger)
+            throws Exception {
+        Files.createDirectories(dir);
+        long[][] latencies = new long[threads][linesPerThread];
+        List<Thread> running = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Path file = dir.resolve("joblog_" + id + ".txt");
+            running.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < linesPerThread; i++) {
+                    String message = "Status: Processing. ID: 3f2c9a1e-4b7d-4c1a-9e8f-" + String.format("%012d", i) + "\n";
+                    long before = System.nanoTime();
+                    jobLogger.log(file, id, message);
+                    latencies[id][i] = System.nanoTime() - before;
+                }
+            }));
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        long returned = System.nanoTime();
+        if (logger != null) {
+            logger.flush();
+        }
+        long flushed = System.nanoTime();
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        long calls = (long) threads * linesPerThread;
+        System.out.printf("%-21s %9.0f calls/s  written in %6.0f ms  caller p50=%6.1f us p99=%8.1f us max=%8.1f us%n", name,
+                calls / ((returned - start) / 1e9), (flushed - start) / 1e6, all[all.length / 2] / 1e3, all[(int) (all.length * 0.99)] / 1e3,
+                all[all.length - 1] / 1e3);
+
+        for (int t = 0; t < threads; t++) {
+            long lines;
+            try (Stream<String> file = Files.lines(dir.resolve("joblog_" + t + ".txt"))) {
+                lines = file.count();
+            }
+            if (lines != linesPerThread) {
+                System.out.println("FAILED: " + name + " wrote " + lines + " of " + linesPerThread + " lines for thread " + t);
+                return false;
+            }
+        }
+        return true;
+    }
+}
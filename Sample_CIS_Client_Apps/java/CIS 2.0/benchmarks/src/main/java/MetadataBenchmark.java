@@ -0,0 +1,285 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Loads a metadata CSV with a row per file into a MetadataIndex, then builds the Submit body of one job of all the files
+// `rounds` times: once with every part header built from strings as before, with field names like
+// "InputFiles[i].FileMetadata[j].Name" concatenated for the length and again for the body, and once through
+// MultipartUploadEntity. Reports the time and heap allocated per body and checks both bodies are byte for byte the same.
+// Then checks against the mock server that Defaults, a CSV row and a sidecar combine as documented, that {{Name}} takes
+// a global variable, that an unknown variable is refused, that a sidecar replaced or removed after it was read is
+// followed, that only the last 4,096 sidecars are kept and that the cache key follows a file's metadata.
+// Exits with status 1 if a check fails.
+// Usage: MetadataBenchmark [files] [fields] [rounds]
+public class MetadataBenchmark {
+    public static void main(String[] args) throws Exception {
+        int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int fields = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 15;
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        boolean passed = true;
+
+        Path workDir = Files.createTempDirectory("metadata-benchmark");
+        try {
+            Path input = Files.createDirectories(workDir.resolve("Input"));
+            List<String> files = new ArrayList<>();
+            StringBuilder csv = new StringBuilder("File");
+            for (int j = 0; j < fields; j++) {
+                csv.append(",Field").append(j);
+            }
+            csv.append(",Region\n");
+            for (int i = 0; i < fileCount; i++) {
+                String name = "document-" + i + ".pdf";
+                files.add(Files.write(input.resolve(name), new byte[]{(byte) i}).toString());
+                csv.append(name);
+                for (int j = 0; j < fields; j++) {
+                    csv.append(",value ").append(j).append('-').append(i % 8);
+                }
+                csv.append(",\"{{Region}}, \"\"east\"\"\"\n");
+            }
+            Path csvFile = Files.writeString(workDir.resolve("metadata.csv"), csv);
+
+            MetadataSettings settings = new MetadataSettings();
+            settings.setEnabled(true);
+            settings.setCsvFile(csvFile.toString());
+            List<GlobalVariableDto> variables = List.of(variable("Region", "EMEA"), variable("Team", "Records"));
+            long start = System.nanoTime();
+            MetadataIndex index = MetadataIndex.open(settings, input, variables);
+            System.out.printf("Index: %d files loaded in %.1f ms (%s)%n", fileCount, (System.nanoTime() - start) / 1e6, index.describe());
+            passed &= check("rows with the same values share a list", index.describe().contains(fileCount + " CSV rows (8 distinct)"));
+
+            UploadSettings uploadSettings = new UploadSettings();
+            UUID repositoryId = MockCisServer.repositoryId(0);
+            System.out.printf("%-22s %10s %10s %14s%n", "variant", "length ms", "body ms", "KB allocated");
+            for (int round = 0; round <= rounds; round++) {
+                // The first round only warms up the JIT
+                boolean report = round == rounds;
+                long allocated = threads.getCurrentThreadAllocatedBytes();
+                start = System.nanoTime();
+                MultipartUploadEntity entity = new MultipartUploadEntity(repositoryId, files, index, uploadSettings);
+                long lengthNanos = System.nanoTime() - start;
+                entity.writeTo(OutputStream.nullOutputStream());
+                long bodyNanos = System.nanoTime() - start - lengthNanos;
+                long entityAllocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+                String boundary = boundary(entity);
+                allocated = threads.getCurrentThreadAllocatedBytes();
+                start = System.nanoTime();
+                LegacyBody legacy = new LegacyBody(boundary, repositoryId, files, index);
+                long legacyLengthNanos = System.nanoTime() - start;
+                legacy.writeTo(OutputStream.nullOutputStream());
+                long legacyBodyNanos = System.nanoTime() - start - legacyLengthNanos;
+                long legacyAllocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+                if (report) {
+                    System.out.printf("%-22s %10.1f %10.1f %14d%n", "strings per part", legacyLengthNanos / 1e6, legacyBodyNanos / 1e6, legacyAllocated / 1024);
+                    System.out.printf("%-22s %10.1f %10.1f %14d%n", "MultipartUploadEntity", lengthNanos / 1e6, bodyNanos / 1e6, entityAllocated / 1024);
+                    passed &= check("lengths match", legacy.length == entity.getContentLength());
+                }
+            }
+
+            List<String> sample = files.subList(0, Math.min(50, files.size()));
+            MultipartUploadEntity entity = new MultipartUploadEntity(repositoryId, sample, index, uploadSettings);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            entity.writeTo(body);
+            ByteArrayOutputStream legacyBody = new ByteArrayOutputStream();
+            new LegacyBody(boundary(entity), repositoryId, sample, index).writeTo(legacyBody);
+            passed &= check("both bodies are the same bytes", Arrays.equals(body.toByteArray(), legacyBody.toByteArray())
+                    && body.size() == entity.getContentLength());
+
+            passed &= checkSubmissions(workDir);
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // Three files: one with Defaults only, one with a CSV row, one with a CSV row and a sidecar
+    private static boolean checkSubmissions(Path workDir) throws Exception {
+        boolean passed = true;
+        Path input = Files.createDirectories(workDir.resolve("submit"));
+        List<String> files = new ArrayList<>();
+        for (String name : List.of("plain.pdf", "listed.pdf", "both.pdf")) {
+            files.add(Files.write(input.resolve(name), new byte[1024]).toString());
+        }
+        Path csvFile = Files.writeString(workDir.resolve("submit.csv"), "File,Department,Owner\nlisted.pdf,Finance,\nboth.pdf,Legal,Ana\n");
+        Files.writeString(Path.of(files.get(2) + ".metadata.json"), "{\"Owner\": \"{{Team}} team\", \"Source\": null, \"Pages\": 12}");
+
+        MetadataSettings settings = new MetadataSettings();
+        settings.setEnabled(true);
+        settings.setCsvFile(csvFile.toString());
+        settings.setDefaults(List.of(MetadataIndex.metadata("Source", "{{Team}} scanner")));
+
+        try (MockCisServer server = new MockCisServer()) {
+            server.setGlobalVariables(Map.of("Team", "Records"));
+            server.setCaptureMetadata(true);
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            EnvironmentResponse environment = client.getEnvironment();
+            MetadataIndex index = MetadataIndex.open(settings, input, environment.getGlobalVariables());
+            client.setMetadata(index);
+            client.submit(environment.getRepositories().get(0).getId(), files);
+            List<Map<String, String>> received = server.getLastSubmitMetadata();
+            System.out.println("Received: " + received + " (" + index.describe() + ")");
+            passed &= check("a file without a row or sidecar gets Defaults", received.get(0).equals(Map.of("Source", "Records scanner")));
+            passed &= check("a CSV row adds to Defaults and an empty cell is left out",
+                    received.get(1).equals(Map.of("Source", "Records scanner", "Department", "Finance")));
+            passed &= check("a sidecar replaces, removes and adds names",
+                    received.get(2).equals(Map.of("Department", "Legal", "Owner", "Records team", "Pages", "12")));
+
+            // A different size, so the change is seen even where modification times are coarse
+            Path sidecar = Path.of(files.get(2) + ".metadata.json");
+            Files.writeString(sidecar, "{\"Owner\": \"Ben\"}");
+            passed &= check("a replaced sidecar is read again",
+                    toMap(index.forFile(files.get(2))).equals(Map.of("Source", "Records scanner", "Department", "Legal", "Owner", "Ben")));
+            Files.delete(sidecar);
+            passed &= check("a removed sidecar is no longer applied",
+                    toMap(index.forFile(files.get(2))).equals(Map.of("Source", "Records scanner", "Department", "Legal", "Owner", "Ana")));
+            Path many = Files.createDirectories(workDir.resolve("sidecars"));
+            for (int i = 0; i < 5000; i++) {
+                Path file = Files.write(many.resolve(i + ".pdf"), new byte[0]);
+                Files.writeString(Path.of(file + ".metadata.json"), "{\"Index\": " + i + "}");
+                index.forFile(file.toString());
+            }
+            System.out.println("After 5000 more sidecars: " + index.describe());
+            passed &= check("only the last 4,096 sidecars are kept", index.describe().contains("(4096 kept)"));
+
+            settings.setDefaults(List.of(MetadataIndex.metadata("Source", "{{Missing}}")));
+            boolean refused = false;
+            try {
+                MetadataIndex.open(settings, input, environment.getGlobalVariables());
+            } catch (IOException e) {
+                refused = e.getMessage().contains("{{Missing}}");
+            }
+            passed &= check("an unknown global variable is refused", refused);
+
+            CacheSettings cacheSettings = new CacheSettings();
+            cacheSettings.setDirectory(workDir.resolve("Cache").toString());
+            ContentCache cache = ContentCache.open(cacheSettings);
+            UUID repositoryId = environment.getRepositories().get(0).getId();
+            String plain = cache.key(repositoryId, List.of(files.get(0)));
+            String listed = cache.key(repositoryId, List.of(files.get(1)));
+            cache.setMetadata(index);
+            passed &= check("a cache key changes with the file's metadata", !plain.equals(cache.key(repositoryId, List.of(files.get(0))))
+                    && !listed.equals(cache.key(repositoryId, List.of(files.get(1)))));
+            settings.setDefaults(new ArrayList<>(MetadataIndex.SAMPLE));
+            settings.setCsvFile("");
+            cache.setMetadata(MetadataIndex.open(settings, input, List.of()));
+            passed &= check("and stays the same with the same metadata", plain.equals(cache.key(repositoryId, List.of(files.get(0)))));
+        }
+        return passed;
+    }
+
+    private static Map<String, String> toMap(List<MetadataDto> metadata) {
+        Map<String, String> map = new HashMap<>();
+        metadata.forEach(field -> map.put(field.getName(), field.getValue()));
+        return map;
+    }
+
+    private static String boundary(MultipartUploadEntity entity) {
+        String contentType = entity.getContentType();
+        return contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+    }
+
+    private static GlobalVariableDto variable(String key, String value) {
+        GlobalVariableDto variable = new GlobalVariableDto();
+        variable.setKey(key);
+        variable.setValue(value);
+        return variable;
+    }
+
+    private static boolean check(String name, boolean ok) {
+        if (!ok) {
+            System.out.println("FAILED: " + name);
+        }
+        return ok;
+    }
+
+    // The body as MultipartUploadEntity wrote it before, generalised to any number of fields: each part header is
+    // concatenated and encoded once to sum the length and once more to write it
+    private static final class LegacyBody {
+        private final String boundary;
+        private final UUID repositoryId;
+        private final List<String> files;
+        private final List<List<MetadataDto>> metadata = new ArrayList<>();
+        private final byte[] buffer = new byte[64 * 1024];
+        private final long length;
+
+        LegacyBody(String boundary, UUID repositoryId, List<String> files, MetadataIndex index) throws IOException {
+            this.boundary = boundary;
+            this.repositoryId = repositoryId;
+            this.files = files;
+            long length = textPartLength("RepositoryId", repositoryId.toString());
+            for (int i = 0; i < files.size(); i++) {
+                Path path = Path.of(files.get(i));
+                metadata.add(index.forFile(files.get(i)));
+                length += utf8(filePartHeader(i, path)).length + Files.size(path) + 2;
+                for (int j = 0; j < metadata.get(i).size(); j++) {
+                    length += textPartLength("InputFiles[" + i + "].FileMetadata[" + j + "].Name", metadata.get(i).get(j).getName());
+                    length += textPartLength("InputFiles[" + i + "].FileMetadata[" + j + "].Value", metadata.get(i).get(j).getValue());
+                }
+            }
+            this.length = length + utf8("--" + boundary + "--").length + 2;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            writeTextPart(out, "RepositoryId", repositoryId.toString());
+            for (int i = 0; i < files.size(); i++) {
+                Path path = Path.of(files.get(i));
+                out.write(utf8(filePartHeader(i, path)));
+                try (InputStream in = Files.newInputStream(path)) {
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+                out.write(utf8("\r\n"));
+                for (int j = 0; j < metadata.get(i).size(); j++) {
+                    writeTextPart(out, "InputFiles[" + i + "].FileMetadata[" + j + "].Name", metadata.get(i).get(j).getName());
+                    writeTextPart(out, "InputFiles[" + i + "].FileMetadata[" + j + "].Value", metadata.get(i).get(j).getValue());
+                }
+            }
+            out.write(utf8("--" + boundary + "--\r\n"));
+        }
+
+        private void writeTextPart(OutputStream out, String name, String value) throws IOException {
+            out.write(utf8(textPartHeader(name)));
+            out.write(utf8(value));
+            out.write(utf8("\r\n"));
+        }
+
+        private String filePartHeader(int index, Path path) {
+            return "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"InputFiles[" + index + "].InputFile\"; filename=\"" + path.getFileName() + "\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n";
+        }
+
+        private String textPartHeader(String name) {
+            return "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + name + "\"\r\n"
+                    + "Content-Type: text/plain; charset=UTF-8\r\n\r\n";
+        }
+
+        private long textPartLength(String name, String value) {
+            return utf8(textPartHeader(name)).length + utf8(value).length + 2;
+        }
+
+        private static byte[] utf8(String text) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
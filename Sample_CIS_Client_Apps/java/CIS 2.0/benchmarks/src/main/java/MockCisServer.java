@@ -0,0 +1,558 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// In-process stand-in for the /api/v2/ClientIntegration/ endpoints, used by the benchmarks
+public class MockCisServer implements AutoCloseable {
+    private static final String BASE_PATH = "/api/v2/ClientIntegration/";
+    private static final UUID REPOSITORY_ID = UUID.fromString("68ac01e1-263b-4437-8b59-f1c40a07610a");
+
+    private static final byte[] PATTERN = new byte[65521];
+    private static final Pattern FILE_NAME = Pattern.compile("filename=\"([^\"]*)\"");
+    private static final Pattern METADATA_PART = Pattern.compile(
+            "name=\"InputFiles\\[(\\d+)]\\.FileMetadata\\[(\\d+)]\\.(Name|Value)\"\r\n[^\r]*\r\n\r\n(.*?)\r\n--", Pattern.DOTALL);
+
+    static {
+        for (int i = 0; i < PATTERN.length; i++) {
+            PATTERN[i] = (byte) (i * 131 ^ (i >>> 8));
+        }
+    }
+
+    private final HttpServer server;
+    // Platform threads: the JDK server writes responses while holding a monitor, which would pin virtual threads
+    // and starve a client running on virtual threads in the same JVM
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<UUID, MockJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private volatile LongSupplier jobDurationMillis = () -> 1000;
+    private volatile double millisPerMegabyte;
+    private volatile long downloadDelayMillis;
+    private volatile long latencyMillis;
+    private volatile double queueFraction = 0.3;
+    private volatile long payloadBytes = 64 * 1024;
+    private volatile boolean supportsRanges = true;
+    // Download responses are cut off after this many bytes while the counter is above zero
+    private volatile long failAfterBytes = -1;
+    private final AtomicInteger failuresRemaining = new AtomicInteger();
+    private volatile long failSubmitAfterBytes;
+    private final AtomicInteger submitFailuresRemaining = new AtomicInteger();
+    private volatile long lastSubmitBytes;
+    private final Map<String, InjectedFailure> injectedFailures = new ConcurrentHashMap<>();
+    private volatile Semaphore capacity;
+    private volatile long serviceMillis;
+    private volatile int maxQueued;
+    private final LongAdder rejected = new LongAdder();
+    private volatile int repositoryCount = 1;
+    private volatile boolean completedEndpoint = true;
+    private volatile String lastChanged = "2025-01-01T00:00:00Z";
+    private volatile boolean archiveOutputs;
+    private volatile String globalVariables = "[]";
+    private volatile boolean captureMetadata;
+    private volatile List<Map<String, String>> lastSubmitMetadata = List.of();
+    // When each busy processing slot frees up, in System.nanoTime; empty while jobs have no slots to wait for
+    private final PriorityQueue<Long> slotsFreeAt = new PriorityQueue<>();
+    private volatile int jobSlots;
+    private final Map<UUID, byte[]> archives = new ConcurrentHashMap<>();
+
+    public MockCisServer() throws IOException {
+        this(0);
+    }
+
+    public MockCisServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext(BASE_PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    // Runs the mock standalone so the sample app can be pointed at it.
+    // Usage: MockCisServer [port] [jobMillis] [payloadKb] [latencyMillis] [zip]
+    public static void main(String[] args) throws Exception {
+        MockCisServer mock = new MockCisServer(args.length > 0 ? Integer.parseInt(args[0]) : 60204);
+        long jobMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        mock.setJobDurationMillis(() -> jobMillis);
+        if (args.length > 2) {
+            mock.setPayloadBytes(Long.parseLong(args[2]) * 1024);
+        }
+        if (args.length > 3) {
+            mock.setLatencyMillis(Long.parseLong(args[3]));
+        }
+        mock.setArchiveOutputs(args.length > 4 && args[4].equalsIgnoreCase("zip"));
+        System.out.println("Mock CIS server listening on " + mock.getBaseUrl());
+        Thread.currentThread().join();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setJobDurationMillis(LongSupplier jobDurationMillis) {
+        this.jobDurationMillis = jobDurationMillis;
+    }
+
+    // Delays every download response, standing in for a slow link or disk on the client side
+    public void setDownloadDelayMillis(long downloadDelayMillis) {
+        this.downloadDelayMillis = downloadDelayMillis;
+    }
+
+    // Delays every response, standing in for the round trip to a remote server
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    // Adds processing time proportional to the size of the submitted body, on top of the job duration
+    public void setMillisPerMegabyte(double millisPerMegabyte) {
+        this.millisPerMegabyte = millisPerMegabyte;
+    }
+
+    // Share of each job's duration spent queued before it starts processing
+    public void setQueueFraction(double queueFraction) {
+        this.queueFraction = queueFraction;
+    }
+
+    public void setPayloadBytes(long payloadBytes) {
+        this.payloadBytes = payloadBytes;
+    }
+
+    public void setSupportsRanges(boolean supportsRanges) {
+        this.supportsRanges = supportsRanges;
+    }
+
+    // Lists this many repositories: "Mock Repository" followed by "Mock Repository 2", "Mock Repository 3", ...
+    // Moves the environment's lastChanged to now.
+    public void setRepositoryCount(int repositoryCount) {
+        this.repositoryCount = repositoryCount;
+        this.lastChanged = Instant.now().toString();
+    }
+
+    // Without it Completed answers 404, like a server that does not offer it
+    public void setCompletedEndpoint(boolean completedEndpoint) {
+        this.completedEndpoint = completedEndpoint;
+    }
+
+    // Downloads a zip instead: one payload-sized entry per submitted file, named after it with a .pdf extension, and a
+    // job.log. Submissions are then read into memory to find the file names.
+    public void setArchiveOutputs(boolean archiveOutputs) {
+        this.archiveOutputs = archiveOutputs;
+    }
+
+    // Global variables the Environment endpoint lists, key to value
+    public void setGlobalVariables(Map<String, String> variables) {
+        StringBuilder json = new StringBuilder("[");
+        variables.forEach((key, value) -> json.append(json.length() > 1 ? "," : "").append("{\"key\":\"").append(key)
+                .append("\",\"value\":\"").append(value).append("\"}"));
+        globalVariables = json.append(']').toString();
+    }
+
+    // Reads submissions into memory to keep the metadata sent with each of their files, see getLastSubmitMetadata
+    public void setCaptureMetadata(boolean captureMetadata) {
+        this.captureMetadata = captureMetadata;
+    }
+
+    // Name to value for every file of the last submission, in the order the files were sent
+    public List<Map<String, String>> getLastSubmitMetadata() {
+        return lastSubmitMetadata;
+    }
+
+    // Models a server that processes at most `slots` jobs at once: a job waits for the earliest slot to free up, in
+    // the order submitted, before its duration starts. A slots of 0 lets every job start when it is submitted.
+    public void setJobSlots(int slots) {
+        synchronized (slotsFreeAt) {
+            jobSlots = slots;
+            slotsFreeAt.clear();
+        }
+    }
+
+    public static UUID repositoryId(int index) {
+        return index == 0 ? REPOSITORY_ID : UUID.nameUUIDFromBytes(("mock-repository-" + index).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Drops the connection after the given number of body bytes for the next count downloads longer than that
+    public void failDownloads(int count, long afterBytes) {
+        failAfterBytes = afterBytes;
+        failuresRemaining.set(count);
+    }
+
+    // Closes the connection after reading the given number of request body bytes for the next count submissions
+    public void failSubmits(int count, long afterBytes) {
+        failSubmitAfterBytes = afterBytes;
+        submitFailuresRemaining.set(count);
+    }
+
+    // Answers the next count requests to the endpoint with the status code, and a Retry-After header unless it is null
+    public void failRequests(String endpoint, int count, int code, String retryAfter) {
+        injectedFailures.put(endpoint, new InjectedFailure(new AtomicInteger(count), code, retryAfter));
+    }
+
+    // Models a server that works on at most `slots` requests at once for serviceMillis each. Further requests queue,
+    // so latency climbs with load, and beyond maxQueued waiting requests they are turned away with 503 and
+    // Retry-After: 1. A slots of 0 removes the limit.
+    public void setCapacity(int slots, long serviceMillis, int maxQueued) {
+        this.serviceMillis = serviceMillis;
+        this.maxQueued = maxQueued;
+        this.capacity = slots > 0 ? new Semaphore(slots, true) : null;
+    }
+
+    // Requests answered with 503 because the capacity set with setCapacity was exhausted
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    // Request body size of the last successful submission
+    public long getLastSubmitBytes() {
+        return lastSubmitBytes;
+    }
+
+    // Byte the mock serves at a given offset of every download; lets callers verify content and ordering.
+    // The pattern repeats every 65521 bytes (a prime), so misplaced chunks and segments do not line up by accident.
+    public static byte payloadByte(long offset) {
+        return PATTERN[(int) (offset % PATTERN.length)];
+    }
+
+    public long getRequestCount(String endpoint) {
+        LongAdder count = requestCounts.get(endpoint);
+        return count == null ? 0 : count.sum();
+    }
+
+    public void resetRequestCounts() {
+        requestCounts.clear();
+    }
+
+    // Wall-clock duration the mock assigned to a job, in milliseconds
+    public long getJobDurationMillis(UUID jobId) {
+        MockJob job = jobs.get(jobId);
+        return job == null ? -1 : job.durationMillis;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath().substring(BASE_PATH.length());
+            String[] segments = path.split("/");
+            String endpoint = segments[0];
+            requestCounts.computeIfAbsent(endpoint, k -> new LongAdder()).increment();
+
+            long received;
+            List<String> inputNames = List.of();
+            try (InputStream body = exchange.getRequestBody()) {
+                if ("Submit".equals(endpoint) && submitFailuresRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                    // Stop reading part-way through the upload and drop the connection
+                    body.readNBytes((int) Math.min(Integer.MAX_VALUE, failSubmitAfterBytes));
+                    throw new IOException("Simulated upload failure");
+                }
+                if ("Submit".equals(endpoint) && (archiveOutputs || captureMetadata)) {
+                    byte[] bytes = body.readAllBytes();
+                    received = bytes.length;
+                    inputNames = fileNames(bytes);
+                    if (captureMetadata) {
+                        lastSubmitMetadata = metadata(bytes, inputNames.size());
+                    }
+                } else {
+                    received = body.transferTo(OutputStream.nullOutputStream());
+                }
+                if ("Submit".equals(endpoint)) {
+                    lastSubmitBytes = received;
+                }
+            }
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            InjectedFailure failure = injectedFailures.get(endpoint);
+            if (failure != null && failure.remaining().getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                if (failure.retryAfter() != null) {
+                    exchange.getResponseHeaders().add("Retry-After", failure.retryAfter());
+                }
+                sendJson(exchange, failure.code(), "{\"success\":false,\"message\":\"Injected failure\"}");
+                return;
+            }
+            Semaphore slots = capacity;
+            if (slots != null && !serve(exchange, slots)) {
+                return;
+            }
+
+            switch (endpoint) {
+                case "Environment" -> sendJson(exchange, 200, environmentJson());
+                case "Submit" -> {
+                    UUID jobId = UUID.randomUUID();
+                    long durationMillis = queuedMillis(jobDurationMillis.getAsLong() + (long) (received / 1_048_576.0 * millisPerMegabyte));
+                    jobs.put(jobId, new MockJob(System.nanoTime(), durationMillis, inputNames));
+                    sendJson(exchange, 200, "\"" + jobId + "\"");
+                }
+                case "Status" -> {
+                    MockJob job = jobs.get(UUID.fromString(segments[1]));
+                    if (job == null) {
+                        sendJson(exchange, 404, "{\"success\":false,\"message\":\"Job not found\"}");
+                    } else {
+                        sendJson(exchange, 200, statusJson(UUID.fromString(segments[1]), job));
+                    }
+                }
+                case "Download" -> {
+                    UUID jobId = UUID.fromString(segments[1]);
+                    if (!jobs.containsKey(jobId)) {
+                        sendJson(exchange, 404, "{\"success\":false,\"message\":\"Job not found\"}");
+                        return;
+                    }
+                    byte[] archive = archiveOutputs ? archives.computeIfAbsent(jobId, k -> archive(jobs.get(k))) : null;
+                    sendDownload(exchange, jobId, archive);
+                }
+                case "Completed" -> {
+                    if (!completedEndpoint) {
+                        sendJson(exchange, 404, "{\"success\":false,\"message\":\"Unknown endpoint\"}");
+                        return;
+                    }
+                    sendJson(exchange, 200, completedJson(exchange.getRequestURI().getQuery()));
+                }
+                case "Release" -> {
+                    jobs.remove(UUID.fromString(segments[1]));
+                    archives.remove(UUID.fromString(segments[1]));
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> sendJson(exchange, 404, "{\"success\":false,\"message\":\"Unknown endpoint\"}");
+            }
+        }
+    }
+
+    // The job's processing time plus its wait for a slot when setJobSlots limits them
+    private long queuedMillis(long processingMillis) {
+        if (jobSlots <= 0) {
+            return processingMillis;
+        }
+        synchronized (slotsFreeAt) {
+            long now = System.nanoTime();
+            while (!slotsFreeAt.isEmpty() && slotsFreeAt.peek() - now <= 0) {
+                slotsFreeAt.poll();
+            }
+            long start = slotsFreeAt.size() < jobSlots ? now : slotsFreeAt.poll();
+            slotsFreeAt.add(start + processingMillis * 1_000_000);
+            return (start - now) / 1_000_000 + processingMillis;
+        }
+    }
+
+    // Holds a slot for serviceMillis, or answers 503 when too many requests are waiting for one
+    private boolean serve(HttpExchange exchange, Semaphore slots) throws IOException {
+        if (slots.availablePermits() == 0 && slots.getQueueLength() >= maxQueued) {
+            rejected.increment();
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            sendJson(exchange, 503, "{\"success\":false,\"message\":\"Server busy\"}");
+            return false;
+        }
+        slots.acquireUninterruptibly();
+        try {
+            Thread.sleep(serviceMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            slots.release();
+        }
+        return true;
+    }
+
+    private void sendDownload(HttpExchange exchange, UUID jobId, byte[] archive) throws IOException {
+        if (downloadDelayMillis > 0) {
+            try {
+                Thread.sleep(downloadDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long total = archive != null ? archive.length : payloadBytes;
+        String etag = "\"" + jobId + "-" + total + "\"";
+        var headers = exchange.getResponseHeaders();
+        headers.add("Content-Type", "application/octet-stream");
+        headers.add("Content-Disposition", "attachment; filename=\"" + jobId + (archive != null ? ".zip" : ".pdf") + "\"");
+        headers.add("ETag", etag);
+
+        long start = 0;
+        long end = total - 1;
+        int code = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (supportsRanges) {
+            headers.add("Accept-Ranges", "bytes");
+            if (range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(etag))) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                start = Long.parseLong(bounds[0]);
+                end = bounds[1].isEmpty() ? total - 1 : Math.min(Long.parseLong(bounds[1]), total - 1);
+                if (start >= total) {
+                    headers.add("Content-Range", "bytes */" + total);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                code = 206;
+                headers.add("Content-Range", "bytes " + start + "-" + end + "/" + total);
+            }
+        }
+
+        long length = end - start + 1;
+        long limit = length;
+        if (failAfterBytes >= 0 && failAfterBytes < length && failuresRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            limit = Math.min(length, failAfterBytes);
+        }
+        if (length == 0) {
+            // An empty output is sent as 204 No Content, a response without a body
+            exchange.sendResponseHeaders(204, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(code, length);
+        if (archive != null) {
+            exchange.getResponseBody().write(archive, (int) start, (int) limit);
+        } else {
+            writePayload(exchange.getResponseBody(), start, limit);
+        }
+        if (limit < length) {
+            // Abort mid-body: the client sees a connection closed before Content-Length was reached
+            throw new IOException("Simulated transfer failure");
+        }
+    }
+
+    private String environmentJson() {
+        StringBuilder repositories = new StringBuilder();
+        for (int i = 0; i < repositoryCount; i++) {
+            repositories.append(i == 0 ? "" : ",").append("{\"id\":\"").append(repositoryId(i)).append("\",\"name\":\"Mock Repository")
+                    .append(i == 0 ? "" : " " + (i + 1)).append("\",\"type\":\"Generic\",\"workspaceId\":\"").append(REPOSITORY_ID)
+                    .append("\",\"workspaceName\":\"Mock Workspace\"}");
+        }
+        return "{\"repositories\":[" + repositories + "],"
+                + "\"globalVariables\":" + globalVariables + ",\"lastChanged\":\"" + lastChanged + "\",\"success\":true,\"message\":\"\"}";
+    }
+
+    // Every job reports the first repository, so Completed lists the completed, unreleased jobs oldest first
+    private String completedJson(String query) {
+        int maxItems = 10;
+        if (query != null && query.startsWith("maxItems=")) {
+            maxItems = Integer.parseInt(query.substring("maxItems=".length()));
+        }
+        long now = System.nanoTime();
+        StringBuilder json = new StringBuilder("[");
+        jobs.entrySet().stream()
+                .filter(e -> (now - e.getValue().submittedNanos) / 1_000_000 >= e.getValue().durationMillis)
+                .sorted(Comparator.comparingLong(e -> e.getValue().submittedNanos))
+                .limit(maxItems)
+                .forEach(e -> json.append(json.length() > 1 ? "," : "").append(statusJson(e.getKey(), e.getValue())));
+        return json.append("]").toString();
+    }
+
+    private String statusJson(UUID jobId, MockJob job) {
+        long elapsed = (System.nanoTime() - job.submittedNanos) / 1_000_000;
+        long queueMillis = (long) (job.durationMillis * queueFraction);
+        String status;
+        if (elapsed >= job.durationMillis) {
+            status = "CompletedSuccessful";
+        } else if (elapsed >= queueMillis) {
+            status = "Transforming";
+        } else {
+            status = "Queued";
+        }
+        double queued = Math.min(elapsed, queueMillis) / 1000.0;
+        double processing = Math.max(0, Math.min(elapsed, job.durationMillis) - queueMillis) / 1000.0;
+        return "{\"jobId\":\"" + jobId + "\",\"repositoryId\":\"" + REPOSITORY_ID + "\",\"status\":\"" + status + "\","
+                + "\"details\":\"Mock job\",\"totalQueueTimeInSec\":" + queued + ",\"totalProcessingTimeInSec\":" + processing
+                + ",\"success\":true,\"message\":\"\"}";
+    }
+
+    private static void sendJson(HttpExchange exchange, int code, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static List<String> fileNames(byte[] body) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = FILE_NAME.matcher(new String(body, StandardCharsets.ISO_8859_1));
+        while (matcher.find()) {
+            names.add(new String(matcher.group(1).getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8));
+        }
+        return names;
+    }
+
+    private static List<Map<String, String>> metadata(byte[] body, int files) {
+        List<Map<String, String>> metadata = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            metadata.add(new LinkedHashMap<>());
+        }
+        Map<String, String> names = new HashMap<>();
+        Matcher matcher = METADATA_PART.matcher(new String(body, StandardCharsets.ISO_8859_1));
+        while (matcher.find()) {
+            String text = new String(matcher.group(4).getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+            String field = matcher.group(1) + "/" + matcher.group(2);
+            if (matcher.group(3).equals("Name")) {
+                names.put(field, text);
+            } else {
+                metadata.get(Integer.parseInt(matcher.group(1))).put(names.get(field), text);
+            }
+        }
+        return metadata;
+    }
+
+    private byte[] archive(MockJob job) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (String name : job.inputNames) {
+                int dot = name.lastIndexOf('.');
+                zip.putNextEntry(new ZipEntry((dot > 0 ? name.substring(0, dot) : name) + ".pdf"));
+                writePayload(zip, 0, payloadBytes);
+                zip.closeEntry();
+            }
+            zip.putNextEntry(new ZipEntry("job.log"));
+            zip.write("Mock job\n".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writePayload(OutputStream out, long offset, long length) throws IOException {
+        int index = (int) (offset % PATTERN.length);
+        long remaining = length;
+        while (remaining > 0) {
+            int n = (int) Math.min(PATTERN.length - index, remaining);
+            out.write(PATTERN, index, n);
+            index = 0;
+            remaining -= n;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private record MockJob(long submittedNanos, long durationMillis, List<String> inputNames) {
+    }
+
+    private record InjectedFailure(AtomicInteger remaining, int code, String retryAfter) {
+    }
+}
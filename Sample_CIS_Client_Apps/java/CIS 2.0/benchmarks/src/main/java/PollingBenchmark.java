@@ -0,0 +1,93 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Compares the fixed polling loop against the adaptive strategy on the same mock job mix.
+// Usage: PollingBenchmark [jobsPerWave] [waves] [fixedIntervalSeconds]
+public class PollingBenchmark {
+    private static final long MIN_JOB_MILLIS = 300;
+    private static final long MAX_JOB_MILLIS = 6000;
+
+    public static void main(String[] args) throws Exception {
+        int jobsPerWave = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int waves = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int fixedIntervalSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+
+        Path input = Files.createTempFile("polling-benchmark", ".pdf");
+        Files.write(input, new byte[1024]);
+
+        try (MockCisServer server = new MockCisServer()) {
+            run("fixed (" + fixedIntervalSeconds + "s)", new FixedPollingStrategy(fixedIntervalSeconds * 1000L),
+                    server, input, jobsPerWave, waves);
+            run("adaptive", new AdaptivePollingStrategy(250, 30_000, 2.0, 0.2),
+                    server, input, jobsPerWave, waves);
+        } finally {
+            Files.deleteIfExists(input);
+        }
+    }
+
+    private static void run(String name, PollingStrategy strategy, MockCisServer server, Path input,
+                            int jobsPerWave, int waves) throws Exception {
+        Random random = new Random(42);
+        server.setJobDurationMillis(() -> {
+            synchronized (random) {
+                return MIN_JOB_MILLIS + (long) (random.nextDouble() * (MAX_JOB_MILLIS - MIN_JOB_MILLIS));
+            }
+        });
+        server.resetRequestCounts();
+
+        ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+        JobPoller poller = new JobPoller(client, strategy);
+        UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+
+        List<Long> latencies = new ArrayList<>();
+        List<Long> overshoots = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int wave = 0; wave < waves; wave++) {
+                List<Future<long[]>> futures = new ArrayList<>();
+                for (int i = 0; i < jobsPerWave; i++) {
+                    futures.add(executor.submit(() -> {
+                        long start = System.nanoTime();
+                        UUID jobId = client.submit(repositoryId, List.of(input.toString()));
+                        poller.awaitCompletion(jobId, s -> {
+                        });
+                        long latency = (System.nanoTime() - start) / 1_000_000;
+                        return new long[]{latency, latency - server.getJobDurationMillis(jobId)};
+                    }));
+                }
+                for (Future<long[]> future : futures) {
+                    long[] result = future.get();
+                    latencies.add(result[0]);
+                    overshoots.add(result[1]);
+                }
+            }
+        }
+
+        int jobs = latencies.size();
+        long statusRequests = server.getRequestCount("Status");
+        System.out.printf("%-14s jobs=%d meanLatency=%dms p50Overshoot=%dms p95Overshoot=%dms statusRequests=%d (%.1f/job)%n",
+                name, jobs, mean(latencies), percentile(overshoots, 50), percentile(overshoots, 95),
+                statusRequests, statusRequests / (double) jobs);
+    }
+
+    static long mean(List<Long> values) {
+        return (long) values.stream().mapToLong(Long::longValue).average().orElse(0);
+    }
+
+    static long percentile(List<Long> values, double percentile) {
+        long[] sorted = values.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
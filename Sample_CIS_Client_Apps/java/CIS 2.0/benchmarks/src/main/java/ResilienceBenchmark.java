@@ -0,0 +1,195 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Three scenarios against the mock. Faults: jobs run while every endpoint answers a few 429, 502 and 503 responses,
+// with retries off as before and on. Breaker: the server fails every request until the breaker opens, then recovers.
+// Local errors: downloads that cannot be written fail at once, without retries and without opening the breaker.
+// Overload: `pollers` threads request Status as fast as they can from a server that works on `slots` requests at
+// once and turns away what queues beyond that, with and without the adaptive concurrency limit.
+// Exits with status 1 if a check fails.
+// Usage: ResilienceBenchmark [jobs] [pollers] [slots] [serviceMillis] [seconds]
+public class ResilienceBenchmark {
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int pollers = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int slots = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long serviceMillis = args.length > 3 ? Long.parseLong(args[3]) : 10;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+        boolean passed = true;
+
+        // Without it the mock's responses wait for the client's delayed ACK, which the latency signal would take for queueing
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        Path workDir = Files.createTempDirectory("resilience-benchmark");
+        try (MockCisServer server = new MockCisServer()) {
+            server.setJobDurationMillis(() -> 100);
+            server.setPayloadBytes(1024);
+            String input = Files.write(workDir.resolve("input.pdf"), new byte[1024]).toString();
+
+            for (int retries : new int[]{0, 4}) {
+                passed &= faults(server, workDir, input, jobs, retries);
+            }
+            passed &= breaker(server, input);
+            passed &= localErrors(server, workDir, input);
+            // The unlimited run goes last, as the server is left holding its idle connections
+            for (int maxConcurrency : new int[]{64, 0}) {
+                passed &= overload(server, input, pollers, slots, serviceMillis, seconds, maxConcurrency);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean faults(MockCisServer server, Path workDir, String input, int jobs, int retries) throws Exception {
+        ResilienceSettings settings = new ResilienceSettings();
+        settings.setRetryAttempts(retries);
+        settings.setRetryBaseMillis(50);
+        ApiClient client = client(server, settings, 50);
+        UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+        server.failRequests("Submit", 5, 429, "0");
+        server.failRequests("Status", 10, 503, "0");
+        server.failRequests("Download", 5, 502, null);
+        server.failRequests("Release", 5, 503, null);
+        Path output = Files.createDirectories(workDir.resolve("faults-" + retries));
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < jobs; i++) {
+            files.add(input);
+        }
+        int failed = 0;
+        String firstError = "";
+        try (JobRunner runner = new JobRunner(client, new FixedPollingStrategy(50), output.toString(), (message, id) -> {
+        }, "fixed", 8, 4)) {
+            for (CompletableFuture<Void> job : runner.runSeparateJobs(repositoryId, files)) {
+                try {
+                    job.join();
+                } catch (CompletionException e) {
+                    firstError = failed++ == 0 ? "; first: " + e.getCause().getMessage() : firstError;
+                }
+            }
+        }
+        System.out.printf("faults  : retries=%d, %d of %d jobs failed (%s)%s%n", retries, failed, jobs, client.describeResilience(), firstError);
+        return check("retries " + retries + " behave as expected", retries == 0 ? failed > 0 : failed == 0);
+    }
+
+    private static boolean breaker(MockCisServer server, String input) throws Exception {
+        ResilienceSettings settings = new ResilienceSettings();
+        settings.setBreakerFailures(5);
+        settings.setBreakerOpenSeconds(1);
+        settings.setRetryBaseMillis(50);
+        // Fail fast first, so the calls made while the breaker is open do not wait for it
+        settings.setRetryAttempts(0);
+        ApiClient client = client(server, settings, 50);
+        UUID jobId = client.submit(client.getEnvironment().getRepositories().get(0).getId(), List.of(input));
+        server.resetRequestCounts();
+        server.failRequests("Status", 1000, 500, null);
+        int failures = 0;
+        for (int i = 0; i < 20; i++) {
+            try {
+                client.getStatus(jobId);
+            } catch (Exception e) {
+                failures++;
+            }
+        }
+        long sent = server.getRequestCount("Status");
+        server.failRequests("Status", 0, 500, null);
+        settings.setRetryAttempts(4);
+        long start = System.nanoTime();
+        client.getStatus(jobId);
+        double recoveryMillis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("breaker : %d calls failed, %d reached the server; the next call succeeded after %.0f ms (%s)%n",
+                failures, sent, recoveryMillis, client.describeResilience());
+        boolean passed = check("an open breaker stops sending requests", failures == 20 && sent == 5);
+        return check("a call waits for the breaker instead of failing", recoveryMillis > 500) && passed;
+    }
+
+    private static boolean localErrors(MockCisServer server, Path workDir, String input) throws Exception {
+        ResilienceSettings settings = new ResilienceSettings();
+        settings.setBreakerFailures(5);
+        settings.setRetryAttempts(4);
+        settings.setRetryBaseMillis(50);
+        ApiClient client = client(server, settings, 50);
+        UUID jobId = client.submit(client.getEnvironment().getRepositories().get(0).getId(), List.of(input));
+        // A file where the download directory should be
+        String output = Files.write(workDir.resolve("not-a-directory"), new byte[1]).toString();
+        server.resetRequestCounts();
+        int failures = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            try {
+                client.download(jobId, output);
+            } catch (Exception e) {
+                failures++;
+            }
+        }
+        double elapsedMillis = (System.nanoTime() - start) / 1e6;
+        long sent = server.getRequestCount("Download");
+        System.out.printf("local   : %d downloads failed after %d requests in %.0f ms (%s)%n", failures, sent, elapsedMillis,
+                client.describeResilience());
+        boolean passed = check("a local error is not retried", failures == 20 && sent <= 20);
+        return check("a local error does not open the breaker", client.describeResilience().contains("opened 0 times")) && passed;
+    }
+
+    private static boolean overload(MockCisServer server, String input, int pollers, int slots, long serviceMillis, int seconds,
+            int maxConcurrency) throws Exception {
+        ResilienceSettings settings = new ResilienceSettings();
+        settings.setMaxConcurrency(maxConcurrency);
+        settings.setRetryAttempts(0);
+        settings.setBreakerFailures(0);
+        ApiClient client = client(server, settings, pollers);
+        UUID jobId = client.submit(client.getEnvironment().getRepositories().get(0).getId(), List.of(input));
+        server.setCapacity(slots, serviceMillis, slots);
+        long rejectedBefore = server.getRejectedCount();
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder ok = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < pollers; i++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        client.getStatus(jobId);
+                        latency.recordValue((System.nanoTime() - start) / 1000);
+                        ok.increment();
+                    } catch (Exception e) {
+                        errors.increment();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        server.setCapacity(0, 0, 0);
+        System.out.printf("overload: %-14s %6.0f ok/s, %6d rejected with 503, latency p50 %.1f ms p99 %.1f ms (%s)%n",
+                maxConcurrency > 0 ? "adaptive limit" : "no limit", ok.sum() / (double) seconds, server.getRejectedCount() - rejectedBefore,
+                latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0, client.describeResilience());
+        return maxConcurrency == 0 || check("the limiter keeps rejections rare", errors.sum() < ok.sum() / 50);
+    }
+
+    private static ApiClient client(MockCisServer server, ResilienceSettings settings, int connections) {
+        ConnectionPoolSettings pool = new ConnectionPoolSettings();
+        pool.setMaxConnectionsPerRoute(connections);
+        pool.setMaxConnectionsTotal(connections);
+        return new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false, pool, new DownloadSettings(), new UploadSettings(), settings);
+    }
+
+    private static boolean check(String name, boolean ok) {
+        if (!ok) {
+            System.out.println("FAILED: " + name);
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,175 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// A bulk load routed to one repository and a few urgent jobs routed to another, through the pipeline. Compares how
+// long the urgent jobs take when all jobs are started in order from one thread, as before routing, against
+// JobRunner.runRoutedJobs, where each repository's jobs are queued separately and taken in turn. Then checks that
+// files are routed by their folder, that the bulk repository's MaxInFlight quota holds while the other repository
+// keeps going, and that every job completes. Exits with status 1 if a check fails.
+// Usage: RoutingBenchmark [bulkJobs] [urgentJobs] [maxInFlight] [jobMillis]
+public class RoutingBenchmark {
+    private static final Pattern IN_FLIGHT = Pattern.compile("cis_repository_in_flight_jobs\\{repository=\"Mock Repository\"} (\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        int bulkJobs = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int urgentJobs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long jobMillis = args.length > 3 ? Long.parseLong(args[3]) : 200;
+        boolean passed = true;
+
+        Path workDir = Files.createTempDirectory("routing-benchmark");
+        Path input = workDir.resolve("Input");
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < bulkJobs; i++) {
+            files.add(write(input.resolve("bulk").resolve("scan" + i + ".pdf")));
+        }
+        for (int i = 0; i < urgentJobs; i++) {
+            files.add(write(input.resolve("urgent").resolve("claim" + i + ".pdf")));
+        }
+
+        try (MockCisServer server = new MockCisServer()) {
+            server.setRepositoryCount(2);
+            server.setJobDurationMillis(() -> jobMillis);
+            server.setPayloadBytes(1024);
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            EnvironmentSettings environmentSettings = new EnvironmentSettings();
+            environmentSettings.setCacheFile("");
+            environmentSettings.setRefreshSeconds(0);
+            UUID bulkId = MockCisServer.repositoryId(0);
+            UUID urgentId = MockCisServer.repositoryId(1);
+
+            PipelineSettings pipelineSettings = new PipelineSettings();
+            pipelineSettings.setSubmitThreads(4);
+            pipelineSettings.setDownloadThreads(4);
+            pipelineSettings.setReleaseThreads(4);
+            pipelineSettings.setQueueCapacity(16);
+            pipelineSettings.setMaxTrackedJobs(64);
+            pipelineSettings.setStatsIntervalSeconds(0);
+
+            try (EnvironmentCache environment = EnvironmentCache.open(client::getEnvironment, environmentSettings, server.getBaseUrl(), "benchmark")) {
+                RoutingSettings routing = new RoutingSettings();
+                routing.setRoutes(List.of(route("bulk/**", "Mock Repository"), route("urgent/**", "mock repository 2")));
+                RepositoryRouter router = new RepositoryRouter(routing, environment, input);
+                Map<UUID, List<String>> routed = router.group(files);
+                passed &= check("files are routed by folder", routed.size() == 2
+                        && routed.get(bulkId).size() == bulkJobs && routed.get(urgentId).size() == urgentJobs);
+                Map<UUID, List<List<String>>> jobs = new LinkedHashMap<>();
+                routed.forEach((id, group) -> jobs.put(id, group.stream().map(List::of).toList()));
+
+                for (String mode : new String[]{"in order", "routed"}) {
+                    Path output = Files.createDirectories(workDir.resolve(mode.replace(' ', '-')));
+                    try (JobRunner runner = new JobRunner(client, new FixedPollingStrategy(50), output.toString(), (message, id) -> {
+                    }, "pipeline", 4, 4, pipelineSettings)) {
+                        runner.setRouter(router);
+                        long start = System.nanoTime();
+                        List<CompletableFuture<Void>> futures = new ArrayList<>();
+                        List<CompletableFuture<Void>> urgent;
+                        if (mode.equals("routed")) {
+                            futures = runner.runRoutedJobs(jobs, 0);
+                            urgent = futures.subList(bulkJobs, futures.size());
+                        } else {
+                            // Enqueue blocks while the submit queue is full, so the urgent jobs wait behind the bulk load
+                            futures.addAll(runner.runJobs(bulkId, jobs.get(bulkId), 0));
+                            urgent = runner.runJobs(urgentId, jobs.get(urgentId), bulkJobs);
+                            futures.addAll(urgent);
+                        }
+                        CompletableFuture.allOf(urgent.toArray(new CompletableFuture[0])).join();
+                        double urgentSeconds = (System.nanoTime() - start) / 1e9;
+                        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+                        double allSeconds = (System.nanoTime() - start) / 1e9;
+                        System.out.printf("%-8s: %d urgent jobs done after %.2fs, all %d jobs after %.2fs%n", mode, urgentJobs, urgentSeconds,
+                                futures.size(), allSeconds);
+                        if (mode.equals("routed")) {
+                            passed &= check("urgent jobs finish well before the bulk load", urgentSeconds < allSeconds / 2);
+                        }
+                    }
+                }
+
+                // The bulk repository may only have maxInFlight jobs between submission and release
+                QuotaSettings quota = new QuotaSettings();
+                quota.setRepository("Mock Repository");
+                quota.setMaxInFlight(maxInFlight);
+                routing.setQuotas(List.of(quota));
+                RepositoryRouter limited = new RepositoryRouter(routing, environment, input);
+                MetricsSettings metricsSettings = new MetricsSettings();
+                Metrics metrics = new Metrics(metricsSettings);
+                Path output = Files.createDirectories(workDir.resolve("quota"));
+                AtomicLong peak = new AtomicLong();
+                AtomicBoolean sampling = new AtomicBoolean(true);
+                Thread sampler = Thread.ofVirtual().start(() -> {
+                    while (sampling.get()) {
+                        Matcher matcher = IN_FLIGHT.matcher(metrics.scrape());
+                        if (matcher.find()) {
+                            peak.accumulateAndGet(Long.parseLong(matcher.group(1)), Math::max);
+                        }
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+                try (JobRunner runner = new JobRunner(client, new FixedPollingStrategy(50), output.toString(), (message, id) -> {
+                }, "pipeline", 4, 4, pipelineSettings)) {
+                    runner.setMetrics(metrics);
+                    runner.setRouter(limited);
+                    long start = System.nanoTime();
+                    List<CompletableFuture<Void>> futures = runner.runRoutedJobs(jobs, 0);
+                    List<CompletableFuture<Void>> urgent = futures.subList(bulkJobs, futures.size());
+                    CompletableFuture.allOf(urgent.toArray(new CompletableFuture[0])).join();
+                    double urgentSeconds = (System.nanoTime() - start) / 1e9;
+                    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+                    double allSeconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("quota   : MaxInFlight %d on the bulk repository, peak %d in flight; urgent jobs done after %.2fs, all after %.2fs%n",
+                            maxInFlight, peak.get(), urgentSeconds, allSeconds);
+                    System.out.println("  " + runner.describePipeline());
+                    passed &= check("bulk repository stays within MaxInFlight", peak.get() > 0 && peak.get() <= maxInFlight);
+                    passed &= check("urgent jobs are not held by the bulk repository's quota", urgentSeconds < allSeconds / 2);
+                    passed &= check("every job is counted as released", metrics.scrape()
+                            .contains("cis_repository_jobs_total{repository=\"Mock Repository\"} " + bulkJobs));
+                } finally {
+                    sampling.set(false);
+                    sampler.join();
+                }
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static String write(Path file) throws Exception {
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[1024]);
+        return file.toString();
+    }
+
+    private static RouteSettings route(String match, String repository) {
+        RouteSettings route = new RouteSettings();
+        route.setMatch(match);
+        route.setRepository(repository);
+        return route;
+    }
+
+    private static boolean check(String name, boolean ok) {
+        if (!ok) {
+            System.out.println("FAILED: " + name);
+        }
+        return ok;
+    }
+}
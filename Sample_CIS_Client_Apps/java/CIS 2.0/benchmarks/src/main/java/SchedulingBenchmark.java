@@ -0,0 +1,152 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+// Starts a bulk backlog against a mock server that processes `slots` jobs at once, then a trickle of urgent jobs, once
+// in the order they arrive and once through a JobScheduler that reserves room for urgent jobs. Reports each class's
+// latency percentiles from queueing to release and the time until the last job was released. Then checks that a class
+// over its MaxQueued rejects jobs and that a sidecar file overrides the class a path matches.
+// Exits with status 1 if urgent jobs are not faster with the scheduler, the backlog takes much longer or a check fails.
+// Usage: SchedulingBenchmark [bulkJobs] [urgentJobs] [jobMillis] [slots]
+public class SchedulingBenchmark {
+    public static void main(String[] args) throws Exception {
+        int bulkJobs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int urgentJobs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long jobMillis = args.length > 2 ? Long.parseLong(args[2]) : 200;
+        int slots = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        boolean passed = true;
+
+        Path input = Files.createTempDirectory("scheduling-benchmark");
+        try (MockCisServer server = new MockCisServer()) {
+            List<String> bulk = createFiles(input.resolve("bulk"), bulkJobs);
+            List<String> urgent = createFiles(input.resolve("urgent"), urgentJobs);
+            server.setJobDurationMillis(() -> jobMillis);
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+
+            double[] fifo = run("in order", null, server, client, repositoryId, bulk, urgent, slots);
+            JobScheduler scheduler = new JobScheduler(settings(slots * 2, slots * 2 - 2, 0), input);
+            double[] scheduled = run("scheduled", scheduler, server, client, repositoryId, bulk, urgent, slots);
+            System.out.println("Scheduler: " + scheduler.describe());
+            scheduler.close();
+            passed &= check("urgent jobs finish at least 4x sooner at p90 with the scheduler", scheduled[0] * 4 < fifo[0]);
+            passed &= check("the backlog takes at most 25% longer with the scheduler", scheduled[1] < fifo[1] * 1.25);
+
+            // At most two urgent jobs run and five wait; the rest of a burst of 20 is turned away. Fewer than two may have
+            // started by the time the burst is queued, so between 13 and 15 are rejected.
+            server.setJobSlots(0);
+            try (JobScheduler admission = new JobScheduler(settings(2, 0, 5), input);
+                 JobRunner runner = new JobRunner(client, new FixedPollingStrategy(100), input.resolve("Output").toString(),
+                         (message, id) -> {
+                         }, "fixed", 4, 2)) {
+                runner.setScheduler(admission);
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (int i = 0; i < urgent.size(); i++) {
+                    futures.add(runner.runJob(repositoryId, List.of(urgent.get(i)), i));
+                }
+                int rejected = 0;
+                for (CompletableFuture<Void> future : futures) {
+                    try {
+                        future.join();
+                    } catch (Exception e) {
+                        rejected++;
+                    }
+                }
+                System.out.println("Admission: " + rejected + " of " + urgent.size() + " jobs rejected (" + admission.describe() + ")");
+                passed &= check("a burst beyond MaxQueued is rejected and the rest complete", rejected >= urgent.size() - 7 && rejected <= urgent.size() - 5);
+            }
+
+            Path flagged = Path.of(bulk.get(0) + ".priority");
+            Files.writeString(flagged, "urgent\n");
+            try (JobScheduler classes = new JobScheduler(settings(4, 0, 0), input)) {
+                passed &= check("paths select the class", classes.classify(List.of(bulk.get(1))).equals("bulk")
+                        && classes.classify(List.of(urgent.get(0))).equals("urgent"));
+                passed &= check("a sidecar overrides the path", classes.classify(List.of(bulk.get(0))).equals("urgent")
+                        && classes.isSidecar(flagged.toString()));
+                passed &= check("a job takes its most urgent file's class", classes.classify(List.of(bulk.get(1), urgent.get(0))).equals("urgent"));
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(input)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static SchedulingSettings settings(int maxActive, int bulkMaxActive, int urgentMaxQueued) {
+        PriorityClassSettings urgent = new PriorityClassSettings();
+        urgent.setName("urgent");
+        urgent.setMatch("urgent/**");
+        urgent.setDeadlineSeconds(5);
+        urgent.setMaxQueued(urgentMaxQueued);
+        PriorityClassSettings bulk = new PriorityClassSettings();
+        bulk.setName("bulk");
+        bulk.setDeadlineSeconds(3600);
+        bulk.setMaxActive(bulkMaxActive);
+        SchedulingSettings settings = new SchedulingSettings();
+        settings.setEnabled(true);
+        settings.setMaxActive(maxActive);
+        settings.setClasses(List.of(urgent, bulk));
+        return settings;
+    }
+
+    // Returns the urgent jobs' p90 latency and the seconds until the last job was released
+    private static double[] run(String name, JobScheduler scheduler, MockCisServer server, ApiClient client, UUID repositoryId,
+                                List<String> bulk, List<String> urgent, int slots) throws Exception {
+        server.setJobSlots(slots);
+        LatencyHistogram bulkLatency = new LatencyHistogram();
+        LatencyHistogram urgentLatency = new LatencyHistogram();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        Path output = Files.createDirectories(Path.of(bulk.get(0)).getParent().resolveSibling("Output"));
+        long start = System.nanoTime();
+        try (JobRunner runner = new JobRunner(client, new FixedPollingStrategy(200), output.toString(), (message, id) -> {
+        }, "fixed", 8, 4)) {
+            runner.setScheduler(scheduler);
+            for (String file : bulk) {
+                futures.add(timed(runner.runJob(repositoryId, List.of(file), futures.size()), bulkLatency));
+            }
+            Thread.sleep(1000);
+            for (String file : urgent) {
+                futures.add(timed(runner.runJob(repositoryId, List.of(file), futures.size()), urgentLatency));
+                Thread.sleep(250);
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-9s: last job released after %.1fs | bulk %s | urgent %s%n", name, seconds, percentiles(bulkLatency),
+                percentiles(urgentLatency));
+        return new double[]{urgentLatency.getValueAtPercentile(90) / 1e6, seconds};
+    }
+
+    private static CompletableFuture<Void> timed(CompletableFuture<Void> job, LatencyHistogram latency) {
+        long start = System.nanoTime();
+        return job.whenComplete((result, error) -> latency.recordValue((System.nanoTime() - start) / 1000));
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("p50=%.2fs p90=%.2fs p99=%.2fs", histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(90) / 1e6, histogram.getValueAtPercentile(99) / 1e6);
+    }
+
+    private static List<String> createFiles(Path dir, int count) throws Exception {
+        Files.createDirectories(dir);
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(Files.write(dir.resolve(dir.getFileName() + "-" + i + ".pdf"), new byte[1024]).toString());
+        }
+        return files;
+    }
+
+    private static boolean check(String name, boolean ok) {
+        if (!ok) {
+            System.out.println("FAILED: " + name);
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,158 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Tracks a growing number of running mock jobs through one JobTracker, polling each every pollMillis, first with one
+// Status request per check and then through a StatusBatcher. Reports requests per second sent to the mock and the
+// process's CPU time per tracked job (the mock runs in the same process, so its share is included). Then checks that
+// jobs finishing while they are tracked complete through the batcher, with the Completed endpoint and without it, and
+// that a repository whose Completed page comes back full is asked one by one for a while instead of paying for a
+// Completed request at every flush. Exits with status 1 if a check fails.
+// Usage: StatusBatchBenchmark [jobCounts] [seconds] [pollMillis]
+public class StatusBatchBenchmark {
+    public static void main(String[] args) throws Exception {
+        String[] jobCounts = (args.length > 0 ? args[0] : "100,1000,4000").split(",");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long pollMillis = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+        boolean passed = true;
+
+        // Without it the mock's responses wait for the client's delayed ACK, which caps the single requests
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        var os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        Path input = Files.createTempFile("status-batch-benchmark", ".pdf");
+        Files.write(input, new byte[1024]);
+        try (MockCisServer server = new MockCisServer()) {
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+            StatusBatchSettings settings = new StatusBatchSettings();
+
+            for (String count : jobCounts) {
+                int jobs = Integer.parseInt(count.trim());
+                // Long enough that every job is still running when the measurement ends
+                server.setJobDurationMillis(() -> seconds * 10_000L);
+                List<UUID> jobIds = submit(client, repositoryId, input, jobs);
+                for (String mode : new String[]{"single", "batched"}) {
+                    StatusBatcher batcher = mode.equals("batched") ? new StatusBatcher(client, settings) : null;
+                    try (JobTracker tracker = new JobTracker(client, new FixedPollingStrategy(pollMillis), settings.getMaxParallel())) {
+                        if (batcher != null) {
+                            tracker.setStatusLookup(batcher::getStatus);
+                        }
+                        server.resetRequestCounts();
+                        long cpuBefore = os.getProcessCpuTime();
+                        long start = System.nanoTime();
+                        for (UUID jobId : jobIds) {
+                            tracker.track(jobId, s -> {
+                            });
+                        }
+                        Thread.sleep(seconds * 1000L);
+                        double elapsed = (System.nanoTime() - start) / 1e9;
+                        double cpuMillis = (os.getProcessCpuTime() - cpuBefore) / 1e6;
+                        long status = server.getRequestCount("Status");
+                        long completed = server.getRequestCount("Completed");
+                        System.out.printf("%5d jobs, %-7s: %7.0f requests/s (Status %d, Completed %d), CPU %6.3f ms per job per second%n",
+                                jobs, mode, (status + completed) / elapsed, status, completed, cpuMillis / jobs / elapsed);
+                        if (batcher != null) {
+                            System.out.println("  " + batcher.describe());
+                            passed &= check("batching needs fewer requests than jobs checked", completed > 0 && status + completed < jobs * 2L);
+                        }
+                    } finally {
+                        if (batcher != null) {
+                            batcher.close();
+                        }
+                    }
+                }
+            }
+
+            for (boolean completedEndpoint : new boolean[]{true, false}) {
+                server.setCompletedEndpoint(completedEndpoint);
+                server.setJobDurationMillis(() -> 1500);
+                server.resetRequestCounts();
+                List<UUID> jobIds = submit(client, repositoryId, input, 200);
+                try (StatusBatcher batcher = new StatusBatcher(client, settings);
+                     JobTracker tracker = new JobTracker(client, new FixedPollingStrategy(200), settings.getMaxParallel())) {
+                    tracker.setStatusLookup(batcher::getStatus);
+                    List<CompletableFuture<JobStatusResponse>> futures = new ArrayList<>();
+                    for (UUID jobId : jobIds) {
+                        futures.add(tracker.track(jobId, s -> {
+                        }));
+                    }
+                    long done = futures.stream().map(CompletableFuture::join).filter(s -> s.getStatus().equals("CompletedSuccessful")).count();
+                    System.out.printf("completion, Completed endpoint %s: %d of %d jobs completed (%s)%n",
+                            completedEndpoint ? "on " : "off", done, jobIds.size(), batcher.describe());
+                    passed &= check("every job completes with the Completed endpoint " + (completedEndpoint ? "on" : "off"), done == jobIds.size());
+                }
+                for (UUID jobId : jobIds) {
+                    client.release(jobId);
+                }
+            }
+            server.setCompletedEndpoint(true);
+            passed &= fullPageBacksOff(server, client, repositoryId, input);
+        } finally {
+            Files.deleteIfExists(input);
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // More completed, unreleased jobs than MaxItems fill every Completed page, so running jobs tracked alongside them
+    // would cost a Completed request plus a Status request each at every flush
+    private static boolean fullPageBacksOff(MockCisServer server, ApiClient client, UUID repositoryId, Path input) throws Exception {
+        StatusBatchSettings settings = new StatusBatchSettings();
+        settings.setMaxItems(10);
+        server.setJobDurationMillis(() -> 0);
+        List<UUID> finished = submit(client, repositoryId, input, 20);
+        server.setJobDurationMillis(() -> 60_000);
+        List<UUID> running = submit(client, repositoryId, input, 20);
+        server.resetRequestCounts();
+        try (StatusBatcher batcher = new StatusBatcher(client, settings);
+             JobTracker tracker = new JobTracker(client, new FixedPollingStrategy(200), settings.getMaxParallel())) {
+            tracker.setStatusLookup(batcher::getStatus);
+            for (UUID jobId : running) {
+                tracker.track(jobId, s -> {
+                });
+            }
+            Thread.sleep(3000);
+            long status = server.getRequestCount("Status");
+            long completed = server.getRequestCount("Completed");
+            System.out.printf("full Completed page: Status %d, Completed %d (%s)%n", status, completed, batcher.describe());
+            return check("a full Completed page is not asked for again at every flush", completed == 1 && status > running.size());
+        } finally {
+            for (UUID jobId : finished) {
+                client.release(jobId);
+            }
+        }
+    }
+
+    private static List<UUID> submit(ApiClient client, UUID repositoryId, Path input, int jobs) {
+        ExecutorService submitters = Executors.newFixedThreadPool(16);
+        try {
+            List<CompletableFuture<UUID>> futures = new ArrayList<>();
+            for (int i = 0; i < jobs; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return client.submit(repositoryId, List.of(input.toString()));
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, submitters));
+            }
+            return futures.stream().map(CompletableFuture::join).toList();
+        } finally {
+            submitters.shutdown();
+        }
+    }
+
+    private static boolean check(String name, boolean ok) {
+        if (!ok) {
+            System.out.println("FAILED: " + name);
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,98 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Tracks a large number of concurrent mock jobs through one JobTracker and reports platform thread usage, then checks
+// that closing the tracker while status checks are completing fails every job still tracked.
+// Exits with status 1 if a job is left waiting after close.
+// Usage: TrackerBenchmark [jobs] [statusThreads] [maxJobSeconds]
+public class TrackerBenchmark {
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int statusThreads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int maxJobSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Path input = Files.createTempFile("tracker-benchmark", ".pdf");
+        Files.write(input, new byte[1024]);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        try (MockCisServer server = new MockCisServer()) {
+            server.setJobDurationMillis(() -> ThreadLocalRandom.current().nextLong(1000, maxJobSeconds * 1000L));
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+            AdaptivePollingStrategy strategy = new AdaptivePollingStrategy(250, 30_000, 2.0, 0.2);
+
+            ExecutorService submitters = Executors.newFixedThreadPool(16);
+            long start = System.nanoTime();
+            int peakTracked = 0;
+            try (JobTracker tracker = new JobTracker(client, strategy, statusThreads)) {
+                List<CompletableFuture<JobStatusResponse>> futures = new ArrayList<>();
+                for (int i = 0; i < jobs; i++) {
+                    futures.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return client.submit(repositoryId, List.of(input.toString()));
+                        } catch (Exception e) {
+                            throw new CompletionException(e);
+                        }
+                    }, submitters).thenCompose(jobId -> tracker.track(jobId, s -> {
+                    })));
+                }
+                CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+                while (!all.isDone()) {
+                    peakTracked = Math.max(peakTracked, tracker.getTrackedCount());
+                    Thread.sleep(100);
+                }
+                all.join();
+            } finally {
+                submitters.shutdown();
+            }
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            long statusRequests = server.getRequestCount("Status");
+            System.out.printf("jobs=%d elapsed=%dms peakTracked=%d statusRequests=%d (%.1f/job) peakPlatformThreads=%d%n",
+                    jobs, elapsedMillis, peakTracked, statusRequests, statusRequests / (double) jobs, threads.getPeakThreadCount());
+        } finally {
+            Files.deleteIfExists(input);
+        }
+        if (!closeFailsEveryJob(1000)) {
+            System.exit(1);
+        }
+    }
+
+    // Each status response takes a few milliseconds, so most jobs have one in flight when close() runs and are queued
+    // again after it
+    private static boolean closeFailsEveryJob(int jobs) throws Exception {
+        ExecutorService responders = Executors.newFixedThreadPool(4);
+        List<CompletableFuture<JobStatusResponse>> futures = new ArrayList<>();
+        try {
+            JobTracker tracker = new JobTracker(jobId -> CompletableFuture.supplyAsync(() -> {
+                JobStatusResponse status = new JobStatusResponse();
+                status.setStatus("Running");
+                return status;
+            }, CompletableFuture.delayedExecutor(5, TimeUnit.MILLISECONDS, responders)), new FixedPollingStrategy(1));
+            for (int i = 0; i < jobs; i++) {
+                futures.add(tracker.track(UUID.randomUUID(), s -> {
+                }));
+            }
+            Thread.sleep(200);
+            tracker.close();
+            Thread.sleep(1000);
+        } finally {
+            responders.shutdownNow();
+        }
+        long waiting = futures.stream().filter(f -> !f.isDone()).count();
+        System.out.println("Close with status checks in flight: " + (waiting == 0 ? "OK" : "FAILED") + " (" + waiting + " of "
+                + jobs + " jobs left waiting)");
+        return waiting == 0;
+    }
+}
@@ -0,0 +1,192 @@
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+// Upload throughput, peak open file descriptors and heap allocation of the previous MultipartEntityBuilder submit
+// (every file opened up front as an InputStream) against MultipartUploadEntity, followed by a retry check and a check
+// that AsyncApiClient streams the same body.
+// Usage: UploadBenchmark [fileCounts] [fileKb]
+public class UploadBenchmark {
+    public static void main(String[] args) throws Exception {
+        String[] fileCounts = (args.length > 0 ? args[0] : "5,500,5000").split(",");
+        int fileKb = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        var os = (UnixOperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        Path workDir = Files.createTempDirectory("upload-benchmark");
+        try (MockCisServer server = new MockCisServer();
+             CloseableHttpClient rawClient = HttpClients.createDefault()) {
+            ApiClient client = new ApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false);
+            UUID repositoryId = client.getEnvironment().getRepositories().get(0).getId();
+
+            System.out.printf("%-8s %-22s %10s %12s %14s%n", "files", "variant", "MB/s", "peak fds", "KB allocated");
+            for (String count : fileCounts) {
+                List<String> files = createFiles(workDir, Integer.parseInt(count), fileKb);
+                for (int round = 0; round < 2; round++) {
+                    // The first round only warms up the JIT
+                    boolean report = round > 0;
+                    measure(report, count, "MultipartEntityBuilder", server, os, threads, () -> legacySubmit(rawClient, server, repositoryId, files));
+                    measure(report, count, "MultipartUploadEntity", server, os, threads, () -> client.submit(repositoryId, files));
+                }
+            }
+
+            // Large enough that the body cannot sit entirely in socket buffers when the mock stops reading
+            List<String> files = createFiles(workDir, 20, 1024);
+            server.failSubmits(2, 100 * 1024);
+            server.resetRequestCounts();
+            UploadResult result = client.upload(repositoryId, files);
+            boolean retried = server.getRequestCount("Submit") == 3 && server.getLastSubmitBytes() == result.bytes();
+            System.out.println("Retry after two broken uploads: " + (retried ? "OK" : "FAILED") + " ("
+                    + server.getRequestCount("Submit") + " attempts, " + server.getLastSubmitBytes() + " of " + result.bytes() + " bytes received)");
+            boolean streamed = asyncBodyMatches(server, repositoryId, files);
+            if (!retried || !streamed) {
+                System.exit(1);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static List<String> createFiles(Path workDir, int count, int fileKb) throws Exception {
+        Path dir = Files.createDirectories(workDir.resolve("files" + count));
+        byte[] content = new byte[fileKb * 1024];
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = dir.resolve("input" + i + ".pdf");
+            if (!Files.exists(file)) {
+                Files.write(file, content);
+            }
+            files.add(file.toString());
+        }
+        return files;
+    }
+
+    // The submit implementation before MultipartUploadEntity
+    private static void legacySubmit(CloseableHttpClient httpClient, MockCisServer server, UUID repositoryId, List<String> files) throws Exception {
+        HttpPost post = new HttpPost(server.getBaseUrl() + "/api/v2/ClientIntegration/Submit");
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addTextBody("RepositoryId", repositoryId.toString());
+        List<InputStream> streams = new ArrayList<>();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                Path path = Path.of(files.get(i));
+                InputStream is = Files.newInputStream(path);
+                streams.add(is);
+                builder.addBinaryBody("InputFiles[" + i + "].InputFile", is, ContentType.APPLICATION_OCTET_STREAM, path.getFileName().toString());
+                builder.addTextBody("InputFiles[" + i + "].FileMetadata[0].Name", "Java Sample App Submission");
+                builder.addTextBody("InputFiles[" + i + "].FileMetadata[0].Value", "Test file uploaded via Java sample app");
+            }
+            post.setEntity(builder.build());
+            try (CloseableHttpResponse response = httpClient.execute(post)) {
+                EntityUtils.consume(response.getEntity());
+            }
+        } finally {
+            for (InputStream s : streams) {
+                s.close();
+            }
+        }
+    }
+
+    // Feeds the async producer to a connection that takes a few KB at a time and compares the result with writeTo, then
+    // submits through AsyncApiClient
+    private static boolean asyncBodyMatches(MockCisServer server, UUID repositoryId, List<String> files) throws Exception {
+        MultipartUploadEntity entity = new MultipartUploadEntity(repositoryId, files, new UploadSettings());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        entity.writeTo(expected);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        AtomicBoolean ended = new AtomicBoolean();
+        DataStreamChannel channel = new DataStreamChannel() {
+            @Override
+            public void requestOutput() {
+            }
+
+            @Override
+            public int write(ByteBuffer src) {
+                int length = Math.min(src.remaining(), 7000);
+                byte[] slice = new byte[length];
+                src.get(slice);
+                streamed.write(slice, 0, length);
+                return length;
+            }
+
+            @Override
+            public void endStream() {
+                ended.set(true);
+            }
+
+            @Override
+            public void endStream(List<? extends Header> trailers) {
+                ended.set(true);
+            }
+        };
+        AsyncEntityProducer producer = entity.asyncProducer();
+        while (!ended.get()) {
+            producer.produce(channel);
+        }
+        producer.releaseResources();
+        boolean same = Arrays.equals(expected.toByteArray(), streamed.toByteArray());
+
+        long received;
+        try (AsyncApiClient asyncClient = new AsyncApiClient(server.getBaseUrl(), "X-Api-Key", "benchmark", false)) {
+            asyncClient.submit(repositoryId, files).join();
+            received = server.getLastSubmitBytes();
+        }
+        boolean passed = same && received == entity.getContentLength();
+        System.out.println("Async producer: " + (passed ? "OK" : "FAILED") + " (" + streamed.size() + " of " + expected.size()
+                + " bytes streamed " + (same ? "identical" : "different") + ", " + received + " bytes received by the server)");
+        return passed;
+    }
+
+    private static void measure(boolean report, String count, String name, MockCisServer server, UnixOperatingSystemMXBean os,
+                                com.sun.management.ThreadMXBean threads, DownloadBenchmark.BenchmarkAction action) throws Exception {
+        AtomicLong peakFds = new AtomicLong(os.getOpenFileDescriptorCount());
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (running.get()) {
+                peakFds.accumulateAndGet(os.getOpenFileDescriptorCount(), Math::max);
+                LockSupport.parkNanos(200_000);
+            }
+        });
+        long baseFds = os.getOpenFileDescriptorCount();
+
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        action.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        running.set(false);
+        sampler.join();
+
+        if (report) {
+            System.out.printf("%-8s %-22s %10.1f %12d %14.1f%n", count, name, server.getLastSubmitBytes() / 1_048_576.0 / seconds,
+                    peakFds.get() - baseFds, allocated / 1024.0);
+        }
+    }
+}
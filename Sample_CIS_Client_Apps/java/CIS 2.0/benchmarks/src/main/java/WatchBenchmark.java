@@ -0,0 +1,135 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Measures how quickly InputWatcher hands out new files in a folder that already holds many settled ones: the time
+// for the startup listing, the delay from a rename-in to the file being handed out, and the delay from the last
+// write of a slowly written file. Also checks that a file is never handed out while it is still being written, even
+// by a writer that keeps its modification time in the past or one that starts right after a temporary file is deleted.
+// Exits with status 1 if a partial file is handed out or a file is missed.
+// Usage: WatchBenchmark [existingFiles] [newFiles] [stableMillis]
+public class WatchBenchmark {
+    public static void main(String[] args) throws Exception {
+        int existingFiles = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int newFiles = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long stableMillis = args.length > 2 ? Long.parseLong(args[2]) : 500;
+        boolean passed = true;
+
+        Path dir = Files.createTempDirectory("watch-benchmark");
+        try {
+            FileTime settled = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+            for (int i = 0; i < existingFiles; i++) {
+                Files.setLastModifiedTime(Files.write(dir.resolve("existing" + i + ".pdf"), new byte[16]), settled);
+            }
+
+            WatchSettings settings = new WatchSettings();
+            settings.setStableMillis(stableMillis);
+            settings.setFlushMillis(0);
+            try (InputWatcher watcher = new InputWatcher(dir, settings)) {
+                long start = System.nanoTime();
+                watcher.start();
+                int found = 0;
+                while (found < existingFiles) {
+                    found += watcher.take().size();
+                }
+                System.out.printf("Startup listing of %d files: %.0f ms%n", existingFiles, (System.nanoTime() - start) / 1e6);
+
+                // Written under a temporary name and renamed into place, as a well-behaved producer does. The pause lets
+                // the watcher see the finished temporary file; one renamed before it was looked at waits StableMillis.
+                List<Long> latencies = new ArrayList<>();
+                for (int i = 0; i < newFiles; i++) {
+                    Path temp = Files.write(dir.resolve("new" + i + ".pdf.tmp"), new byte[64 * 1024]);
+                    Thread.sleep(20);
+                    long renamed = System.nanoTime();
+                    Files.move(temp, dir.resolve("new" + i + ".pdf"), StandardCopyOption.ATOMIC_MOVE);
+                    List<String> files = watcher.take();
+                    latencies.add(System.nanoTime() - renamed);
+                    if (files.size() != 1 || !files.get(0).endsWith("new" + i + ".pdf")) {
+                        System.out.println("FAILED: expected new" + i + ".pdf but got " + files);
+                        passed = false;
+                    }
+                }
+                latencies.sort(Comparator.naturalOrder());
+                System.out.printf("Rename-in to hand-out over %d files: p50=%.2f ms p99=%.2f ms max=%.2f ms%n", newFiles,
+                        latencies.get(latencies.size() / 2) / 1e6, latencies.get(latencies.size() * 99 / 100) / 1e6,
+                        latencies.get(latencies.size() - 1) / 1e6);
+
+                // Written in place in chunks, with pauses shorter than the settle time
+                Path slow = dir.resolve("slow.pdf");
+                long lastWrite = 0;
+                for (int chunk = 0; chunk < 5; chunk++) {
+                    Files.write(slow, new byte[256 * 1024], StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    lastWrite = System.nanoTime();
+                    List<String> early = watcher.poll(stableMillis * 2 / 3, TimeUnit.MILLISECONDS);
+                    if (!early.isEmpty()) {
+                        System.out.println("FAILED: handed out " + early + " while it was still being written");
+                        passed = false;
+                    }
+                }
+                List<String> files = watcher.take();
+                long settle = System.nanoTime() - lastWrite;
+                System.out.printf("Slow writer handed out %.0f ms after its last write (StableMillis %d)%n", settle / 1e6, stableMillis);
+                if (Files.size(slow) != 5 * 256 * 1024 || !files.equals(List.of(slow.toString()))) {
+                    System.out.println("FAILED: expected only the complete slow.pdf but got " + files);
+                    passed = false;
+                }
+
+                // Copied in place by a tool that keeps the source's modification time
+                Path copied = dir.resolve("copied.pdf");
+                for (int chunk = 0; chunk < 3; chunk++) {
+                    Files.write(copied, new byte[256 * 1024], StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    Files.setLastModifiedTime(copied, settled);
+                    List<String> early = watcher.poll(stableMillis * 2 / 3, TimeUnit.MILLISECONDS);
+                    if (!early.isEmpty()) {
+                        System.out.println("FAILED: handed out " + early + " while it was still being copied");
+                        passed = false;
+                    }
+                }
+                files = watcher.take();
+                if (Files.size(copied) != 3 * 256 * 1024 || !files.equals(List.of(copied.toString()))) {
+                    System.out.println("FAILED: expected only the complete copied.pdf but got " + files);
+                    passed = false;
+                }
+
+                // A temporary file deleted instead of renamed, directly followed by an unrelated file that arrives with
+                // its first chunk (moved in from a subfolder the watcher does not look at) and is still being written
+                Path staging = Files.createDirectory(dir.resolve("staging"));
+                Path discarded = Files.write(dir.resolve("discarded.pdf.tmp"), new byte[64 * 1024]);
+                Thread.sleep(50);
+                Path unrelated = dir.resolve("unrelated.pdf");
+                Path started = Files.write(staging.resolve("unrelated.pdf"), new byte[256 * 1024]);
+                Files.delete(discarded);
+                Files.move(started, unrelated, StandardCopyOption.ATOMIC_MOVE);
+                for (int chunk = 0; chunk < 3; chunk++) {
+                    if (chunk > 0) {
+                        Files.write(unrelated, new byte[256 * 1024], StandardOpenOption.APPEND);
+                    }
+                    List<String> early = watcher.poll(stableMillis * 2 / 3, TimeUnit.MILLISECONDS);
+                    if (!early.isEmpty()) {
+                        System.out.println("FAILED: handed out " + early + " after a temporary file was deleted, while it was still being written");
+                        passed = false;
+                    }
+                }
+                files = watcher.take();
+                if (Files.size(unrelated) != 3 * 256 * 1024 || !files.equals(List.of(unrelated.toString()))) {
+                    System.out.println("FAILED: expected only the complete unrelated.pdf but got " + files);
+                    passed = false;
+                }
+                System.out.println("Watcher: " + watcher.describe());
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.out.println(passed ? "OK" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+}
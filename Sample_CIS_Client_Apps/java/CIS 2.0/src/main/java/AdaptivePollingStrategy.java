@@ -0,0 +1,85 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AdaptivePollingStrategy implements PollingStrategy {
+    // Weight given to the most recent completed job when updating the expected job duration
+    private static final double SMOOTHING = 0.2;
+    // Probe slightly before the predicted finish so a fast job is not overshot
+    private static final double PREDICTION_LEAD = 0.9;
+
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+    private final double jitter;
+    // Moving average of queue + processing time reported by completed jobs, stored as double bits (NaN = no data yet)
+    private final AtomicLong expectedSecondsBits = new AtomicLong(Double.doubleToLongBits(Double.NaN));
+
+    public AdaptivePollingStrategy(long minDelayMillis, long maxDelayMillis, double multiplier, double jitter) {
+        if (minDelayMillis <= 0 || maxDelayMillis < minDelayMillis) {
+            throw new IllegalArgumentException("Polling delays must satisfy 0 < min <= max");
+        }
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.multiplier = Math.max(1.0, multiplier);
+        this.jitter = Math.min(Math.max(jitter, 0.0), 1.0);
+    }
+
+    @Override
+    public long firstDelayMillis() {
+        double expected = getExpectedSeconds();
+        if (Double.isNaN(expected)) {
+            return withJitter(minDelayMillis);
+        }
+        return withJitter(clamp((long) (expected * 1000 * PREDICTION_LEAD)));
+    }
+
+    @Override
+    public long nextDelayMillis(int attempt, long elapsedMillis, JobStatusResponse lastStatus) {
+        double expected = getExpectedSeconds();
+        if (!Double.isNaN(expected)) {
+            // The server totals may lag behind for queued jobs, so never assume less time passed than we measured
+            double elapsed = elapsedMillis / 1000.0;
+            if (lastStatus != null) {
+                elapsed = Math.max(elapsed, lastStatus.getTotalQueueTimeInSec() + lastStatus.getTotalProcessingTimeInSec());
+            }
+            double remaining = expected - elapsed;
+            if (remaining > 0) {
+                return withJitter(clamp((long) (remaining * 1000)));
+            }
+            // Overdue: grow the delay geometrically with how far past the prediction the job is
+            return withJitter(clamp(minDelayMillis + (long) (-remaining * 1000 * (multiplier - 1))));
+        }
+
+        double backoff = minDelayMillis * Math.pow(multiplier, Math.max(0, attempt - 1));
+        return withJitter(clamp((long) Math.min(backoff, maxDelayMillis)));
+    }
+
+    @Override
+    public void onCompleted(JobStatusResponse status) {
+        double observed = status.getTotalQueueTimeInSec() + status.getTotalProcessingTimeInSec();
+        if (observed <= 0) {
+            return;
+        }
+        expectedSecondsBits.updateAndGet(bits -> {
+            double current = Double.longBitsToDouble(bits);
+            double updated = Double.isNaN(current) ? observed : current + SMOOTHING * (observed - current);
+            return Double.doubleToLongBits(updated);
+        });
+    }
+
+    public double getExpectedSeconds() {
+        return Double.longBitsToDouble(expectedSecondsBits.get());
+    }
+
+    private long clamp(long delayMillis) {
+        return Math.min(maxDelayMillis, Math.max(minDelayMillis, delayMillis));
+    }
+
+    private long withJitter(long delayMillis) {
+        if (jitter == 0) {
+            return delayMillis;
+        }
+        double factor = 1.0 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return clamp((long) (delayMillis * factor));
+    }
+}
@@ -1,17 +1,26 @@
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import javax.net.ssl.SSLContext;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
@@ -19,33 +28,62 @@ import org.apache.hc.client5.http.classic.methods.HttpPut;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
 import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
-import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
 import org.apache.hc.client5.http.ssl.TrustAllStrategy;
-import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.ParseException;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.pool.PoolStats;
 import org.apache.hc.core5.ssl.SSLContextBuilder;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.hc.core5.util.TimeValue;
 
 
 public class ApiClient {
     private final CloseableHttpClient httpClient;
+    private final PoolingHttpClientConnectionManager connectionManager;
     private final String apiKeyHeader;
     private final String apiKey;
     private final String basePath;
-    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final UploadSettings uploadSettings;
+    private final DownloadSettings downloadSettings;
+    private final DownloadEngine downloadEngine;
+    private final Resilience resilience;
+    private Metrics metrics;
+    private MetadataIndex metadata = MetadataIndex.DEFAULT;
 
     public ApiClient(String baseUrl, String apiKeyHeader, String apiKey, boolean trustCerts) {
+        this(baseUrl, apiKeyHeader, apiKey, trustCerts, new ConnectionPoolSettings(), new DownloadSettings());
+    }
+
+    public ApiClient(String baseUrl, String apiKeyHeader, String apiKey, boolean trustCerts, ConnectionPoolSettings poolSettings,
+            DownloadSettings downloadSettings) {
+        this(baseUrl, apiKeyHeader, apiKey, trustCerts, poolSettings, downloadSettings, new UploadSettings());
+    }
+
+    public ApiClient(String baseUrl, String apiKeyHeader, String apiKey, boolean trustCerts, ConnectionPoolSettings poolSettings,
+            DownloadSettings downloadSettings, UploadSettings uploadSettings) {
+        this(baseUrl, apiKeyHeader, apiKey, trustCerts, poolSettings, downloadSettings, uploadSettings, new ResilienceSettings());
+    }
+
+    public ApiClient(String baseUrl, String apiKeyHeader, String apiKey, boolean trustCerts, ConnectionPoolSettings poolSettings,
+            DownloadSettings downloadSettings, UploadSettings uploadSettings, ResilienceSettings resilienceSettings) {
         this.apiKeyHeader = apiKeyHeader;
+        this.resilience = new Resilience(resilienceSettings);
+        this.uploadSettings = uploadSettings;
+        this.downloadSettings = downloadSettings;
+        this.downloadEngine = new DownloadEngine(downloadSettings);
         this.apiKey = apiKey;
         this.basePath = baseUrl.endsWith("/") ? baseUrl + "api/v2/ClientIntegration/" : baseUrl + "/api/v2/ClientIntegration/";
 
-        var connectionManagerBuilder = PoolingHttpClientConnectionManagerBuilder.create();
+        var connectionManagerBuilder = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(poolSettings.getMaxConnectionsPerRoute())
+                .setMaxConnTotal(poolSettings.getMaxConnectionsTotal())
+                .setDefaultConnectionConfig(poolSettings.toConnectionConfig());
 
         if (trustCerts) {
             // Bypass SSL certificate validation and hostname verification
@@ -65,129 +103,425 @@ public class ApiClient {
             connectionManagerBuilder.setTlsSocketStrategy(tlsStrategy);
         }
 
-        var connectionManager = connectionManagerBuilder.build();
+        this.connectionManager = connectionManagerBuilder.build();
 
-        this.httpClient = HttpClients.custom()
+        var clientBuilder = HttpClients.custom()
                 .setConnectionManager(connectionManager)
-                .build();
+                .setDefaultRequestConfig(poolSettings.toRequestConfig())
+                // Retries are left to Resilience, which knows which requests are safe to repeat
+                .disableAutomaticRetries()
+                .evictExpiredConnections();
+        if (poolSettings.getIdleEvictionSeconds() > 0) {
+            clientBuilder.evictIdleConnections(TimeValue.ofSeconds(poolSettings.getIdleEvictionSeconds()));
+        }
+        this.httpClient = clientBuilder.build();
+    }
+
+    // Leased, pending and available connections across all routes
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    // Where the metadata sent with each file comes from; every file gets the sample pair until this is set
+    public void setMetadata(MetadataIndex metadata) {
+        this.metadata = metadata;
+    }
+
+    // Records every request and transfer from now on
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        resilience.setMetrics(metrics);
+    }
+
+    // Retries, circuit breaker state and concurrency limit so far
+    public String describeResilience() {
+        return resilience.describe();
     }
 
     public EnvironmentResponse getEnvironment() throws IOException, ParseException {
-        HttpGet get = new HttpGet(basePath + "Environment");
-        get.addHeader(apiKeyHeader, apiKey);
+        return resilience.call("Environment", true, () -> {
+            HttpGet get = new HttpGet(basePath + "Environment");
+            get.addHeader(apiKeyHeader, apiKey);
 
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            if (response.getCode() < 200 || response.getCode() > 204) {
-                throw new IOException("Failed : HTTP error code : " + response.getCode());
+            try (CloseableHttpResponse response = execute(get, "Environment")) {
+                checkStatus(response);
+                return readJson(response, JsonReaders.ENVIRONMENT);
             }
-            String body = EntityUtils.toString(response.getEntity());
-            return objectMapper.readValue(body, EnvironmentResponse.class);
-        }
+        });
     }
 
     public UUID submit(UUID repositoryId, List<String> inputFilePaths) throws IOException, ParseException {
-        HttpPost post = new HttpPost(basePath + "Submit");
-        post.addHeader(apiKeyHeader, apiKey);
-
-        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-        builder.addTextBody("RepositoryId", repositoryId.toString());
+        return upload(repositoryId, inputFilePaths).jobId();
+    }
 
-        // Use InputStreams so the multipart entity can stream the file content
-        // Keep references to streams so we can close them after the request completes
-        List<java.io.InputStream> streams = new java.util.ArrayList<>();
-        try {
-            for (int i = 0; i < inputFilePaths.size(); i++) {
-                Path path = Paths.get(inputFilePaths.get(i));
-                String fileName = path.getFileName().toString();
-                java.io.InputStream is = Files.newInputStream(path);
-                streams.add(is);
-                builder.addBinaryBody("InputFiles[" + i + "].InputFile", is, ContentType.APPLICATION_OCTET_STREAM, fileName);
-                builder.addTextBody("InputFiles[" + i + "].FileMetadata[0].Name", "Java Sample App Submission");
-                builder.addTextBody("InputFiles[" + i + "].FileMetadata[0].Value", "Test file uploaded via Java sample app");
-
-                // or if you want to add more metadata, repeat the above two lines with different indices when 1:1 size ratio of lists
-                /*
-                List<List<Metadata>> m = new ArrayList<>();
-                m.add(new ArrayList<Metadata>(new Metadata("Name1", "Value1")));
-
-                for (int j = 0; j < m.get(i).size(); j++) {
-                    builder.addTextBody("InputFiles[" + i + "].FileMetadata[" + j + "].Name", m.get(i).get(j).getName());
-                    builder.addTextBody("InputFiles[" + i + "].FileMetadata[" + j + "].Value", m.get(i).get(j).getValue());
-                }
-                */
-            }
+    // Streams every input file as one multipart request. The body is repeatable, so an upload that broke off before the
+    // server received all of it is sent again; once the whole body went out a failure is reported instead, because
+    // the server may already have created the job. A submission the server turned away with 429 or 503 is sent again
+    // once it asks for.
+    public UploadResult upload(UUID repositoryId, List<String> inputFilePaths) throws IOException, ParseException {
+        MultipartUploadEntity entity = new MultipartUploadEntity(repositoryId, inputFilePaths, metadata, uploadSettings);
+        return resilience.call("Submit", false, () -> upload(entity));
+    }
 
-            HttpEntity entity = builder.build();
+    private UploadResult upload(MultipartUploadEntity entity) throws IOException, ParseException {
+        for (int attempt = 0; ; attempt++) {
+            HttpPost post = new HttpPost(basePath + "Submit");
+            post.addHeader(apiKeyHeader, apiKey);
             post.setEntity(entity);
 
-            try (CloseableHttpResponse response = httpClient.execute(post)) {
-                if (response.getCode() < 200 || response.getCode() > 204) {
-                    throw new IOException("Failed : HTTP error code : " + response.getCode());
+            long startNanos = System.nanoTime();
+            CloseableHttpResponse response;
+            try {
+                response = execute(post, "Submit");
+            } catch (IOException e) {
+                if (entity.isFullyWritten() || attempt >= uploadSettings.getRetryAttempts()) {
+                    throw e;
                 }
-                String body = EntityUtils.toString(response.getEntity());
-                return objectMapper.readValue(body, UUID.class);
+                continue;
             }
-        } finally {
-            // Ensure all streams are closed to avoid resource leaks
-            for (java.io.InputStream s : streams) {
-                try {
-                    if (s != null) s.close();
-                } catch (IOException ignored) {
+            try (response) {
+                checkStatus(response);
+                UUID jobId = readJson(response, JsonReaders.JOB_ID);
+                UploadResult result = new UploadResult(jobId, entity.getContentLength(), System.nanoTime() - startNanos);
+                if (metrics != null) {
+                    metrics.recordTransfer("upload", result.bytes(), result.elapsedNanos());
                 }
+                return result;
             }
         }
     }
 
     public JobStatusResponse getStatus(UUID jobId) throws IOException, ParseException {
-        HttpGet get = new HttpGet(basePath + "Status/" + jobId);
-        get.addHeader(apiKeyHeader, apiKey);
+        return resilience.call("Status", true, () -> {
+            HttpGet get = new HttpGet(basePath + "Status/" + jobId);
+            get.addHeader(apiKeyHeader, apiKey);
 
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            if (response.getCode() < 200 || response.getCode() > 204) {
-                throw new IOException("Failed : HTTP error code : " + response.getCode());
+            try (CloseableHttpResponse response = execute(get, "Status")) {
+                checkStatus(response);
+                return readJson(response, JsonReaders.STATUS);
             }
-            String body = EntityUtils.toString(response.getEntity());
-            return objectMapper.readValue(body, JobStatusResponse.class);
+        });
+    }
+
+    // Completed jobs of the repository that have not been released yet, at most maxItems of them
+    public List<JobStatusResponse> getCompleted(UUID repositoryId, int maxItems) throws IOException, ParseException {
+        return resilience.call("Completed", true, () -> {
+            HttpGet get = new HttpGet(basePath + "Completed/" + repositoryId + "?maxItems=" + maxItems);
+            get.addHeader(apiKeyHeader, apiKey);
+
+            try (CloseableHttpResponse response = execute(get, "Completed")) {
+                checkStatus(response);
+                return readJson(response, JsonReaders.COMPLETED);
+            }
+        });
+    }
+
+    // Interrupted transfers are continued from the ".part" file with a Range request when the settings allow it. A
+    // download that failed in another way is started again by Resilience, which also continues from the ".part" file.
+    public DownloadResult download(UUID jobId, String downloadDirectory) throws IOException {
+        try {
+            return resilience.call("Download", true, () -> download(jobId, Paths.get(downloadDirectory)));
+        } catch (ParseException e) {
+            // Downloads parse no response body
+            throw new IOException(e);
         }
     }
 
-    public void download(UUID jobId, String downloadDirectory) throws IOException {
-        HttpGet get = new HttpGet(basePath + "Download/" + jobId);
-        get.addHeader(apiKeyHeader, apiKey);
+    private DownloadResult download(UUID jobId, Path directory) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                DownloadResult result = downloadOnce(jobId, directory);
+                if (metrics != null) {
+                    metrics.recordTransfer("download", result.bytes(), result.elapsedNanos());
+                }
+                return result;
+            } catch (IOException e) {
+                // Only retry when the failed attempt left progress behind that the next one can continue from
+                if (!downloadSettings.isResumable() || attempt >= downloadSettings.getResumeAttempts()
+                        || PartialDownload.find(directory) == null) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private DownloadResult downloadOnce(UUID jobId, Path directory) throws IOException {
+        PartialDownload partial = downloadSettings.isResumable() ? PartialDownload.find(directory) : null;
+        if (partial != null && partial.getValidator() == null) {
+            partial.discard(directory);
+            partial = null;
+        }
+        if (partial != null) {
+            return partial.isSegmented() ? downloadSegments(jobId, directory, partial, System.nanoTime()) : resumeDownload(jobId, directory, partial);
+        }
 
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            if (response.getCode() < 200 || response.getCode() > 204) {
-                throw new IOException("Failed : HTTP error code : " + response.getCode());
+        int segments = downloadSettings.getParallelSegments();
+        long startNanos = System.nanoTime();
+        HttpGet get = downloadRequest(jobId);
+        if (segments > 1) {
+            // A one-byte range tells us the size and whether the server accepts ranges before splitting the file
+            get.addHeader("Range", "bytes=0-0");
+        }
+        PartialDownload segmented = null;
+        try (CloseableHttpResponse response = execute(get, "Download")) {
+            checkDownloadStatus(response);
+            if (response.getCode() != 206) {
+                // Either no probe was sent or the server ignored the range; the body is the whole file
+                return streamDownload(response, jobId, directory, null);
             }
+            long total = totalBytes(response);
+            if (total >= segments && total >= downloadSettings.getParallelThresholdMb() * 1024L * 1024L) {
+                segmented = new PartialDownload(fileName(response, jobId), validator(response), total, segments);
+            }
+        }
+        if (segmented == null) {
+            return downloadWhole(jobId, directory);
+        }
+        return downloadSegments(jobId, directory, segmented, startNanos);
+    }
 
-            String fileName = jobId + ".unknown";
-            Header cdHeader = response.getFirstHeader("Content-Disposition");
-            String contentDisposition = cdHeader != null ? cdHeader.getValue() : null;
-            if (contentDisposition != null) {
-                String[] parts = contentDisposition.split(";");
-                for (String part : parts) {
-                    if (part.trim().startsWith("filename=")) {
-                        fileName = part.trim().substring("filename=".length()).replace("\"", "");
-                        break;
+    // One plain GET for the whole file
+    private DownloadResult downloadWhole(UUID jobId, Path directory) throws IOException {
+        try (CloseableHttpResponse response = execute(downloadRequest(jobId), "Download")) {
+            checkDownloadStatus(response);
+            return streamDownload(response, jobId, directory, null);
+        }
+    }
+
+    private DownloadResult resumeDownload(UUID jobId, Path directory, PartialDownload partial) throws IOException {
+        Path target = partial.target(directory);
+        Path partFile = DownloadEngine.partFileFor(target);
+        long offset = Files.exists(partFile) ? Files.size(partFile) : 0;
+
+        HttpGet get = downloadRequest(jobId);
+        get.addHeader("Range", "bytes=" + offset + "-");
+        get.addHeader("If-Range", partial.getValidator());
+        try (CloseableHttpResponse response = execute(get, "Download")) {
+            if (response.getCode() == 416 && offset == partial.getTotalBytes()) {
+                // Every byte arrived before the previous attempt failed; only the rename is missing
+                DownloadResult result = downloadEngine.commitPart(target, System.nanoTime());
+                partial.delete(directory);
+                return result;
+            }
+            if (response.getCode() != 416) {
+                checkDownloadStatus(response);
+                if (response.getCode() != 206 || rangeStart(response) == offset) {
+                    return streamDownload(response, jobId, directory, partial);
+                }
+            }
+        }
+        // The ".part" file does not fit what the server has: it is longer than the file, or the server answered with
+        // another range. Start again from the first byte.
+        partial.discard(directory);
+        return downloadWhole(jobId, directory);
+    }
+
+    // Writes a 200 response as a new file, or a 206 response onto the end of the resumed ".part" file
+    private DownloadResult streamDownload(CloseableHttpResponse response, UUID jobId, Path directory, PartialDownload resumed)
+            throws IOException {
+        boolean append = resumed != null && response.getCode() == 206;
+        // A 204 has no entity; it is written as an empty file
+        HttpEntity entity = response.getEntity();
+        PartialDownload partial = resumed;
+        if (!append) {
+            if (resumed != null) {
+                // The server sent the whole file again because it changed since the previous attempt
+                resumed.discard(directory);
+            }
+            partial = new PartialDownload(fileName(response, jobId), validator(response), entity != null ? entity.getContentLength() : 0, 1);
+            if (downloadSettings.isResumable() && partial.getValidator() != null) {
+                partial.save(directory);
+            }
+        }
+
+        DownloadResult result;
+        try (InputStream is = entity != null ? entity.getContent() : InputStream.nullInputStream()) {
+            result = downloadEngine.copy(is, partial.target(directory), append);
+        }
+        partial.delete(directory);
+        return result;
+    }
+
+    // Fetches each byte range on its own virtual thread and writes it at its offset of a preallocated ".part" file
+    private DownloadResult downloadSegments(UUID jobId, Path directory, PartialDownload partial, long startNanos) throws IOException {
+        Path target = partial.target(directory);
+        Path partFile = DownloadEngine.partFileFor(target);
+        if (downloadSettings.isResumable()) {
+            partial.save(directory);
+        }
+
+        AtomicBoolean changed = new AtomicBoolean();
+        IOException failure = null;
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() < partial.getTotalBytes()) {
+                channel.write(ByteBuffer.wrap(new byte[1]), partial.getTotalBytes() - 1);
+            }
+            List<Future<Long>> futures = new ArrayList<>();
+            try (ExecutorService segmentExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < partial.getSegmentCount(); i++) {
+                    int segment = i;
+                    if (partial.nextOffset(segment) <= partial.segmentEnd(segment)) {
+                        futures.add(segmentExecutor.submit(() -> downloadSegment(jobId, partial, segment, channel, changed)));
+                    }
+                }
+            }
+            for (Future<Long> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException | InterruptedException e) {
+                    IOException cause = e.getCause() instanceof IOException io ? io : new IOException(e.getCause() != null ? e.getCause() : e);
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
                     }
                 }
             }
+        }
+
+        if (failure != null) {
+            if (downloadSettings.isResumable() && !changed.get()) {
+                partial.save(directory);
+            } else {
+                partial.discard(directory);
+            }
+            throw failure;
+        }
+        DownloadResult result = downloadEngine.commitPart(target, startNanos);
+        partial.delete(directory);
+        return result;
+    }
 
-            Path filePath = Paths.get(downloadDirectory, fileName);
+    private long downloadSegment(UUID jobId, PartialDownload partial, int segment, FileChannel channel, AtomicBoolean changed)
+            throws IOException {
+        long offset = partial.nextOffset(segment);
+        HttpGet get = downloadRequest(jobId);
+        get.addHeader("Range", "bytes=" + offset + "-" + partial.segmentEnd(segment));
+        get.addHeader("If-Range", partial.getValidator());
+        try (CloseableHttpResponse response = execute(get, "Download")) {
+            if (response.getCode() != 206) {
+                // A full response means the file changed on the server, so the bytes already written are stale
+                changed.set(true);
+                throw new ApiException(response.getCode(), retryAfter(response), " for byte range starting at " + offset);
+            }
             try (InputStream is = response.getEntity().getContent()) {
-                Files.copy(is, filePath);
+                return downloadEngine.copyAt(is, channel, offset, written -> partial.addWritten(segment, written));
             }
         }
     }
 
+    private HttpGet downloadRequest(UUID jobId) {
+        HttpGet get = new HttpGet(basePath + "Download/" + jobId);
+        get.addHeader(apiKeyHeader, apiKey);
+        return get;
+    }
+
+    private static void checkDownloadStatus(CloseableHttpResponse response) throws ApiException {
+        if (response.getCode() < 200 || response.getCode() > 206) {
+            throw new ApiException(response.getCode(), retryAfter(response));
+        }
+    }
+
+    private static void checkStatus(CloseableHttpResponse response) throws ApiException {
+        if (response.getCode() < 200 || response.getCode() > 204) {
+            throw new ApiException(response.getCode(), retryAfter(response));
+        }
+    }
+
+    // Parses the body as it arrives; what is left after the JSON value is consumed so the connection can be reused
+    private static <T> T readJson(CloseableHttpResponse response, ObjectReader reader) throws IOException {
+        HttpEntity entity = response.getEntity();
+        try (InputStream body = entity.getContent()) {
+            return reader.readValue(body);
+        } finally {
+            EntityUtils.consume(entity);
+        }
+    }
+
+    private static String retryAfter(CloseableHttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        return header != null ? header.getValue() : null;
+    }
+
+    private static String fileName(CloseableHttpResponse response, UUID jobId) {
+        Header cdHeader = response.getFirstHeader("Content-Disposition");
+        return fileNameFromContentDisposition(cdHeader != null ? cdHeader.getValue() : null, jobId);
+    }
+
+    // Strong ETag, falling back to Last-Modified; either is accepted by If-Range
+    private static String validator(CloseableHttpResponse response) {
+        Header etag = response.getFirstHeader("ETag");
+        if (etag != null && !etag.getValue().startsWith("W/")) {
+            return etag.getValue();
+        }
+        Header lastModified = response.getFirstHeader("Last-Modified");
+        return lastModified != null ? lastModified.getValue() : null;
+    }
+
+    // "Content-Range: bytes 0-0/12345" -> 12345
+    private static long totalBytes(CloseableHttpResponse response) {
+        Header contentRange = response.getFirstHeader("Content-Range");
+        if (contentRange == null) {
+            return -1;
+        }
+        String total = contentRange.getValue().substring(contentRange.getValue().indexOf('/') + 1).trim();
+        return "*".equals(total) ? -1 : Long.parseLong(total);
+    }
+
+    private static long rangeStart(CloseableHttpResponse response) {
+        Header contentRange = response.getFirstHeader("Content-Range");
+        if (contentRange == null) {
+            return -1;
+        }
+        String value = contentRange.getValue();
+        return Long.parseLong(value.substring(value.indexOf(' ') + 1, value.indexOf('-')).trim());
+    }
+
     public void release(UUID jobId) throws IOException {
-        HttpPut put = new HttpPut(basePath + "Release/" + jobId);
-        put.addHeader(apiKeyHeader, apiKey);
+        try {
+            resilience.call("Release", true, () -> {
+                HttpPut put = new HttpPut(basePath + "Release/" + jobId);
+                put.addHeader(apiKeyHeader, apiKey);
+
+                try (CloseableHttpResponse response = execute(put, "Release")) {
+                    checkStatus(response);
+                }
+                return null;
+            });
+        } catch (ParseException e) {
+            // Release has no response body to parse
+            throw new IOException(e);
+        }
+    }
 
-        try (CloseableHttpResponse response = httpClient.execute(put)) {
-            if (response.getCode() < 200 || response.getCode() > 204) {
-                throw new IOException("Failed : HTTP error code : " + response.getCode());
+    // Records the endpoint, the status code and the time until the response headers arrived
+    private CloseableHttpResponse execute(ClassicHttpRequest request, String endpoint) throws IOException {
+        long startNanos = System.nanoTime();
+        try {
+            CloseableHttpResponse response = httpClient.execute(request);
+            if (metrics != null) {
+                metrics.recordRequest(endpoint, response.getCode(), System.nanoTime() - startNanos);
+            }
+            return response;
+        } catch (IOException e) {
+            if (metrics != null) {
+                metrics.recordRequest(endpoint, 0, System.nanoTime() - startNanos);
+            }
+            throw e;
+        }
+    }
+
+    static String fileNameFromContentDisposition(String contentDisposition, UUID jobId) {
+        String fileName = jobId + ".unknown";
+        if (contentDisposition != null) {
+            String[] parts = contentDisposition.split(";");
+            for (String part : parts) {
+                if (part.trim().startsWith("filename=")) {
+                    fileName = part.trim().substring("filename=".length()).replace("\"", "");
+                    break;
+                }
             }
         }
+        return fileName;
     }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// A CIS response with an unsuccessful status code. Keeps the code and the server's Retry-After, so the caller can tell
+// a server asking us to slow down from a request that can never succeed.
+public class ApiException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int code;
+    private final long retryAfterMillis;
+
+    public ApiException(int code, String retryAfter) {
+        this(code, retryAfter, "");
+    }
+
+    // detail is appended to the message, e.g. the byte range a download segment asked for
+    public ApiException(int code, String retryAfter, String detail) {
+        super("Failed : HTTP error code : " + code + detail);
+        this.code = code;
+        this.retryAfterMillis = parseRetryAfter(retryAfter);
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    // -1 when the response had no usable Retry-After
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    // Request timeout, rate limiting, and a gateway or server that is overloaded or restarting
+    public boolean isTransient() {
+        return code == 408 || code == 429 || code == 502 || code == 503 || code == 504;
+    }
+
+    // The server turned the request away before handling it, so even a submission can be sent again
+    public boolean isRejected() {
+        return code == 429 || code == 503;
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date
+    static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.client5.http.ssl.TrustAllStrategy;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.core5.util.TimeValue;
+
+// Non-blocking counterpart of ApiClient. Every call returns a CompletableFuture and no thread waits on the network.
+// With HTTPS the client negotiates HTTP/2 through ALPN, so many concurrent requests share a few connections.
+public class AsyncApiClient implements AutoCloseable {
+    private final CloseableHttpAsyncClient httpClient;
+    private final PoolingAsyncClientConnectionManager connectionManager;
+    private final String apiKeyHeader;
+    private final String apiKey;
+    private final String basePath;
+    private final UploadSettings uploadSettings;
+    private final DownloadEngine downloadEngine;
+    private final Resilience resilience;
+    private Metrics metrics;
+    private MetadataIndex metadata = MetadataIndex.DEFAULT;
+
+    public AsyncApiClient(String baseUrl, String apiKeyHeader, String apiKey, boolean trustCerts) {
+        this(baseUrl, apiKeyHeader, apiKey, trustCerts, new ConnectionPoolSettings(), new DownloadSettings());
+    }
+
+    public AsyncApiClient(String baseUrl, String apiKeyHeader, String apiKey, boolean trustCerts, ConnectionPoolSettings poolSettings,
+            DownloadSettings downloadSettings) {
+        this(baseUrl, apiKeyHeader, apiKey, trustCerts, poolSettings, downloadSettings, new UploadSettings());
+    }
+
+    public AsyncApiClient(String baseUrl, String apiKeyHeader, String apiKey, boolean trustCerts, ConnectionPoolSettings poolSettings,
+            DownloadSettings downloadSettings, UploadSettings uploadSettings) {
+        this(baseUrl, apiKeyHeader, apiKey, trustCerts, poolSettings, downloadSettings, uploadSettings, new ResilienceSettings());
+    }
+
+    public AsyncApiClient(String baseUrl, String apiKeyHeader, String apiKey, boolean trustCerts, ConnectionPoolSettings poolSettings,
+            DownloadSettings downloadSettings, UploadSettings uploadSettings, ResilienceSettings resilienceSettings) {
+        this.apiKeyHeader = apiKeyHeader;
+        this.resilience = new Resilience(resilienceSettings);
+        this.uploadSettings = uploadSettings;
+        this.downloadEngine = new DownloadEngine(downloadSettings);
+        this.apiKey = apiKey;
+        this.basePath = baseUrl.endsWith("/") ? baseUrl + "api/v2/ClientIntegration/" : baseUrl + "/api/v2/ClientIntegration/";
+
+        var connectionManagerBuilder = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(poolSettings.getMaxConnectionsPerRoute())
+                .setMaxConnTotal(poolSettings.getMaxConnectionsTotal())
+                .setDefaultConnectionConfig(poolSettings.toConnectionConfig())
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                        .build())
+                .setMessageMultiplexing(true);
+
+        if (trustCerts) {
+            // Bypass SSL certificate validation and hostname verification
+            SSLContext sslContext;
+            try {
+                sslContext = SSLContextBuilder.create()
+                        .loadTrustMaterial(TrustAllStrategy.INSTANCE)
+                        .build();
+            } catch (NoSuchAlgorithmException | KeyStoreException | KeyManagementException e) {
+                throw new RuntimeException("Failed to create SSL context", e);
+            }
+
+            connectionManagerBuilder.setTlsStrategy(ClientTlsStrategyBuilder.create()
+                    .setSslContext(sslContext)
+                    .setHostnameVerifier(NoopHostnameVerifier.INSTANCE)
+                    .buildAsync());
+        }
+
+        this.connectionManager = connectionManagerBuilder.build();
+
+        var clientBuilder = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(poolSettings.toRequestConfig())
+                // Retries are left to Resilience, which knows which requests are safe to repeat
+                .disableAutomaticRetries()
+                .evictExpiredConnections();
+        if (poolSettings.getIdleEvictionSeconds() > 0) {
+            clientBuilder.evictIdleConnections(TimeValue.ofSeconds(poolSettings.getIdleEvictionSeconds()));
+        }
+        this.httpClient = clientBuilder.build();
+        this.httpClient.start();
+    }
+
+    // Leased, pending and available connections across all routes
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    // Where the metadata sent with each file comes from; every file gets the sample pair until this is set
+    public void setMetadata(MetadataIndex metadata) {
+        this.metadata = metadata;
+    }
+
+    // Records every request and transfer from now on
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        resilience.setMetrics(metrics);
+    }
+
+    // Retries, circuit breaker state and concurrency limit so far
+    public String describeResilience() {
+        return resilience.describe();
+    }
+
+    public CompletableFuture<EnvironmentResponse> getEnvironment() {
+        return resilience.callAsync("Environment", true, () -> {
+            SimpleHttpRequest get = SimpleRequestBuilder.get(basePath + "Environment")
+                    .addHeader(apiKeyHeader, apiKey)
+                    .build();
+            return executeJson(get, "Environment", JsonReaders.ENVIRONMENT);
+        });
+    }
+
+    public CompletableFuture<UUID> submit(UUID repositoryId, List<String> inputFilePaths) {
+        return upload(repositoryId, inputFilePaths).thenApply(UploadResult::jobId);
+    }
+
+    // Only sent again when the server turned the submission away with 429 or 503. The multipart body is streamed from
+    // the input files as the connection takes it, without spooling it first.
+    public CompletableFuture<UploadResult> upload(UUID repositoryId, List<String> inputFilePaths) {
+        MultipartUploadEntity entity;
+        try {
+            entity = new MultipartUploadEntity(repositoryId, inputFilePaths, metadata, uploadSettings);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return resilience.callAsync("Submit", false, () -> {
+            AsyncRequestProducer producer = AsyncRequestBuilder.post(basePath + "Submit")
+                    .addHeader(apiKeyHeader, apiKey)
+                    .setEntity(entity.asyncProducer())
+                    .build();
+            long startNanos = System.nanoTime();
+            return execute(producer, "Submit", SimpleResponseConsumer.create())
+                    .thenApply(response -> {
+                        UploadResult result = new UploadResult(readJson(response, JsonReaders.JOB_ID), entity.getContentLength(), System.nanoTime() - startNanos);
+                        if (metrics != null) {
+                            metrics.recordTransfer("upload", result.bytes(), result.elapsedNanos());
+                        }
+                        return result;
+                    });
+        });
+    }
+
+    public CompletableFuture<JobStatusResponse> getStatus(UUID jobId) {
+        return resilience.callAsync("Status", true, () -> {
+            SimpleHttpRequest get = SimpleRequestBuilder.get(basePath + "Status/" + jobId)
+                    .addHeader(apiKeyHeader, apiKey)
+                    .build();
+            return executeJson(get, "Status", JsonReaders.STATUS);
+        });
+    }
+
+    // Completed jobs of the repository that have not been released yet, at most maxItems of them
+    public CompletableFuture<List<JobStatusResponse>> getCompleted(UUID repositoryId, int maxItems) {
+        return resilience.callAsync("Completed", true, () -> {
+            SimpleHttpRequest get = SimpleRequestBuilder.get(basePath + "Completed/" + repositoryId + "?maxItems=" + maxItems)
+                    .addHeader(apiKeyHeader, apiKey)
+                    .build();
+            return executeJson(get, "Completed", JsonReaders.COMPLETED);
+        });
+    }
+
+    // Streams the response body straight to disk as it arrives; a failed download starts over
+    public CompletableFuture<DownloadResult> download(UUID jobId, String downloadDirectory) {
+        return resilience.callAsync("Download", true, () -> {
+            SimpleHttpRequest get = SimpleRequestBuilder.get(basePath + "Download/" + jobId)
+                    .addHeader(apiKeyHeader, apiKey)
+                    .build();
+            return execute(SimpleRequestProducer.create(get), "Download", new FileResponseConsumer(downloadEngine, jobId, downloadDirectory))
+                    .thenApply(result -> {
+                        if (metrics != null) {
+                            metrics.recordTransfer("download", result.bytes(), result.elapsedNanos());
+                        }
+                        return result;
+                    });
+        });
+    }
+
+    public CompletableFuture<Void> release(UUID jobId) {
+        return resilience.callAsync("Release", true, () -> {
+            SimpleHttpRequest put = SimpleRequestBuilder.put(basePath + "Release/" + jobId)
+                    .addHeader(apiKeyHeader, apiKey)
+                    .build();
+            return execute(SimpleRequestProducer.create(put), "Release", SimpleResponseConsumer.create())
+                    .thenApply(response -> {
+                        checkStatus(response);
+                        return null;
+                    });
+        });
+    }
+
+    private <T> CompletableFuture<T> executeJson(SimpleHttpRequest request, String endpoint, ObjectReader reader) {
+        return execute(SimpleRequestProducer.create(request), endpoint, SimpleResponseConsumer.create())
+                .thenApply(response -> readJson(response, reader));
+    }
+
+    // Records the endpoint, the status code and the time until the response was complete. A download only completes
+    // with a successful status; its failures are recorded as errors, like requests that got no response.
+    private <T> CompletableFuture<T> execute(AsyncRequestProducer producer, String endpoint, AsyncResponseConsumer<T> consumer) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long startNanos = System.nanoTime();
+        httpClient.execute(producer, consumer, new FutureCallback<>() {
+            @Override
+            public void completed(T result) {
+                if (metrics != null) {
+                    metrics.recordRequest(endpoint, result instanceof HttpResponse response ? response.getCode() : 200, System.nanoTime() - startNanos);
+                }
+                future.complete(result);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                if (metrics != null) {
+                    metrics.recordRequest(endpoint, 0, System.nanoTime() - startNanos);
+                }
+                future.completeExceptionally(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    // The body is already buffered, so it is parsed from its bytes
+    private static <T> T readJson(SimpleHttpResponse response, ObjectReader reader) {
+        try {
+            checkStatus(response);
+            return reader.readValue(response.getBodyBytes());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void checkStatus(HttpResponse response) {
+        if (response.getCode() < 200 || response.getCode() > 204) {
+            throw new CompletionException(new ApiException(response.getCode(), retryAfter(response)));
+        }
+    }
+
+    private static String retryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        return header != null ? header.getValue() : null;
+    }
+
+    @Override
+    public void close() {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+
+    private static final class FileResponseConsumer extends AbstractBinResponseConsumer<DownloadResult> {
+        private final DownloadEngine engine;
+        private final UUID jobId;
+        private final String downloadDirectory;
+        private DownloadEngine.Sink sink;
+        private DownloadResult result;
+
+        private FileResponseConsumer(DownloadEngine engine, UUID jobId, String downloadDirectory) {
+            this.engine = engine;
+            this.jobId = jobId;
+            this.downloadDirectory = downloadDirectory;
+        }
+
+        @Override
+        protected void start(HttpResponse response, ContentType contentType) throws IOException {
+            if (response.getCode() < 200 || response.getCode() > 204) {
+                throw new ApiException(response.getCode(), retryAfter(response));
+            }
+            Header cdHeader = response.getFirstHeader("Content-Disposition");
+            String fileName = ApiClient.fileNameFromContentDisposition(cdHeader != null ? cdHeader.getValue() : null, jobId);
+            sink = engine.open(Paths.get(downloadDirectory, fileName));
+            // A response without a body gets no data() call, only completed(); like the classic client, it is an empty file
+            if (contentType == null) {
+                result = sink.commit();
+            }
+        }
+
+        @Override
+        protected int capacityIncrement() {
+            return 64 * 1024;
+        }
+
+        @Override
+        protected void data(ByteBuffer src, boolean endOfStream) throws IOException {
+            sink.write(src);
+            if (endOfStream) {
+                result = sink.commit();
+            }
+        }
+
+        @Override
+        protected DownloadResult buildResult() {
+            return result;
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            releaseResources();
+        }
+
+        @Override
+        public void releaseResources() {
+            if (sink != null) {
+                try {
+                    sink.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Writes log lines from any number of threads through one background writer. Callers only claim a slot in a lock-free
+// ring and return; the writer takes every line that has arrived since its last pass, formats them with a timestamp
+// cached per second, and appends them with one write per file, so a burst from hundreds of jobs costs a handful of
+// system calls instead of an open, write and close per line. Files stay open between writes.
+public class AsyncLogger implements AutoCloseable {
+    private static final DateTimeFormatter TEXT_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter JSON_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
+    // Lines taken per pass at most, so a steady stream still gets written regularly
+    private static final int MAX_BATCH = 4096;
+
+    private record Event(long millis, Path file, String level, int id, String message, String console) {
+    }
+
+    private final Ring ring;
+    private final boolean json;
+    private final long flushNanos;
+    private final PrintStream console;
+    private final Thread writer;
+    private final Map<Path, FileChannel> channels;
+    private final Map<Path, StringBuilder> pending = new LinkedHashMap<>();
+    private final StringBuilder consolePending = new StringBuilder();
+    private volatile boolean running = true;
+    private volatile boolean writerSleeping;
+    private volatile long written;
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTime;
+    private final LongAdder fullWaits = new LongAdder();
+    private long lines;
+    private long writes;
+
+    public AsyncLogger(LogSettings settings, PrintStream console) {
+        this.ring = new Ring(Integer.highestOneBit(settings.getBufferSize() - 1) << 1);
+        this.json = "json".equalsIgnoreCase(settings.getFormat());
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(settings.getFlushMillis());
+        this.console = console;
+        int maxOpenFiles = settings.getMaxOpenFiles();
+        this.channels = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, FileChannel> eldest) {
+                if (size() <= maxOpenFiles) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+        this.writer = JobTracker.daemonFactory("log-writer").newThread(this::run);
+        writer.start();
+    }
+
+    // Appends the message to the file and prints the console text, if any, once the writer gets to it
+    public void log(Path file, String level, int id, String message, String console) {
+        Event event = new Event(System.currentTimeMillis(), file, level, id, message, console);
+        if (!running) {
+            writeNow(event);
+            return;
+        }
+        if (!ring.offer(event)) {
+            fullWaits.increment();
+            do {
+                if (!running) {
+                    writeNow(event);
+                    return;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(20_000);
+            } while (!ring.offer(event));
+        }
+        if (writerSleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    // Returns once every line logged before the call has been written
+    public void flush() {
+        long target = ring.claimed();
+        while (written < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    public synchronized String describe() {
+        return String.format("lines=%d writes=%d lines-per-write=%.1f full-waits=%d open-files=%d",
+                lines, writes, writes == 0 ? 0.0 : (double) lines / writes, fullWaits.sum(), channels.size());
+    }
+
+    private void run() {
+        List<Event> batch = new ArrayList<>();
+        long consumed = 0;
+        while (true) {
+            Event event = ring.poll();
+            if (event == null) {
+                if (!running) {
+                    break;
+                }
+                writerSleeping = true;
+                // Checked again after announcing the sleep, so a line added in between is not left waiting
+                if (ring.isEmpty() && running) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                writerSleeping = false;
+                continue;
+            }
+            if (flushNanos > 0) {
+                LockSupport.parkNanos(flushNanos);
+            }
+            do {
+                batch.add(event);
+            } while (batch.size() < MAX_BATCH && (event = ring.poll()) != null);
+            write(batch);
+            consumed += batch.size();
+            written = consumed;
+            batch.clear();
+        }
+        // Lines that were claimed just before close are still published, so wait for them
+        while (consumed < ring.claimed()) {
+            Event event = ring.poll();
+            if (event == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            batch.add(event);
+            consumed++;
+        }
+        write(batch);
+        written = consumed;
+    }
+
+    private void writeNow(Event event) {
+        write(List.of(event));
+    }
+
+    private synchronized void write(List<Event> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (Event event : batch) {
+            StringBuilder line = pending.computeIfAbsent(event.file(), f -> new StringBuilder());
+            format(line, event);
+            if (event.console() != null) {
+                consolePending.append(event.console()).append(System.lineSeparator());
+            }
+        }
+        if (!consolePending.isEmpty()) {
+            console.print(consolePending);
+            console.flush();
+            consolePending.setLength(0);
+        }
+        for (Map.Entry<Path, StringBuilder> entry : pending.entrySet()) {
+            StringBuilder text = entry.getValue();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+                FileChannel channel = channel(entry.getKey());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                writes++;
+            } catch (IOException e) {
+                console.println("Failed to log: " + e.getMessage());
+                closeQuietly(channels.remove(entry.getKey()));
+            }
+        }
+        // Not kept for the next pass, so a run with thousands of job files does not hold a builder for each
+        pending.clear();
+        lines += batch.size();
+    }
+
+    private void format(StringBuilder line, Event event) {
+        long second = Math.floorDiv(event.millis(), 1000);
+        if (second != cachedSecond) {
+            Instant instant = Instant.ofEpochSecond(second);
+            cachedTime = json ? JSON_TIME.format(instant) : TEXT_TIME.format(instant);
+            cachedSecond = second;
+        }
+        if (!json) {
+            line.append(cachedTime).append(": ").append(event.message()).append('\n');
+            return;
+        }
+        int millis = Math.floorMod(event.millis(), 1000);
+        line.append("{\"time\":\"").append(cachedTime).append('.')
+                .append((char) ('0' + millis / 100)).append((char) ('0' + millis / 10 % 10)).append((char) ('0' + millis % 10))
+                .append("\",\"level\":\"").append(event.level()).append('"');
+        if (event.id() >= 0) {
+            line.append(",\"job\":").append(event.id());
+        }
+        line.append(",\"message\":\"");
+        appendEscaped(line, event.message());
+        line.append("\"}\n");
+    }
+
+    private static void appendEscaped(StringBuilder line, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+    }
+
+    private FileChannel channel(Path file) throws IOException {
+        FileChannel channel = channels.get(file);
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channels.put(file, channel);
+        }
+        return channel;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Waits for every line already logged to be written; later lines are written by the calling thread
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // A caller that saw the logger running just before close may have added a line after the writer's last pass
+        List<Event> rest = new ArrayList<>();
+        Event event;
+        while ((event = ring.poll()) != null) {
+            rest.add(event);
+        }
+        write(rest);
+        synchronized (this) {
+            for (FileChannel channel : channels.values()) {
+                closeQuietly(channel);
+            }
+            channels.clear();
+        }
+    }
+
+    // Bounded multi-producer, single-consumer queue. Each slot carries a sequence number: a producer claims a position
+    // with one CAS on the tail and publishes its event by advancing the slot's sequence, so producers never wait for
+    // each other and the consumer never takes a lock.
+    private static final class Ring {
+        private final Event[] slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private final int mask;
+        // Only touched by the consumer
+        private long head;
+
+        private Ring(int capacity) {
+            this.slots = new Event[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        private boolean offer(Event event) {
+            while (true) {
+                long position = tail.get();
+                int index = (int) position & mask;
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots[index] = event;
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                } else if (difference < 0) {
+                    // The consumer has not freed this slot from the previous lap yet
+                    return false;
+                }
+            }
+        }
+
+        private Event poll() {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                return null;
+            }
+            Event event = slots[index];
+            slots[index] = null;
+            sequences.lazySet(index, head + slots.length);
+            head++;
+            return event;
+        }
+
+        private boolean isEmpty() {
+            return sequences.get((int) head & mask) != head + 1;
+        }
+
+        private long claimed() {
+            return tail.get();
+        }
+    }
+}
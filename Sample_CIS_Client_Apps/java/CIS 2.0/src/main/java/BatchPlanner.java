@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Groups input files into jobs of at most maxFilesPerJob files and maxBytesPerJob bytes. Files are placed largest
+// first into the currently smallest batch that still has room, so batches come out close to the same size. A file
+// larger than maxBytesPerJob gets a job of its own.
+public class BatchPlanner {
+    public record Batch(List<String> files, long bytes) {
+    }
+
+    private final int maxFilesPerJob;
+    private final long maxBytesPerJob;
+
+    public BatchPlanner(int maxFilesPerJob, long maxBytesPerJob) {
+        this.maxFilesPerJob = maxFilesPerJob;
+        this.maxBytesPerJob = maxBytesPerJob;
+    }
+
+    public List<Batch> plan(List<String> inputFiles) throws IOException {
+        List<SizedFile> files = new ArrayList<>(inputFiles.size());
+        long totalBytes = 0;
+        for (String file : inputFiles) {
+            long size = Files.size(Paths.get(file));
+            files.add(new SizedFile(file, size));
+            totalBytes += size;
+        }
+        files.sort(Comparator.comparingLong(SizedFile::size).reversed());
+
+        // Start with the fewest batches both limits allow; more are opened only when a file fits nowhere
+        long minimumBatches = Math.max(ceilDiv(files.size(), maxFilesPerJob), ceilDiv(totalBytes, maxBytesPerJob));
+        PriorityQueue<OpenBatch> open = new PriorityQueue<>(Comparator.comparingLong((OpenBatch b) -> b.bytes).thenComparingInt(b -> b.index));
+        List<OpenBatch> all = new ArrayList<>();
+        for (int i = 0; i < minimumBatches; i++) {
+            OpenBatch batch = new OpenBatch(all.size());
+            all.add(batch);
+            open.add(batch);
+        }
+
+        for (SizedFile file : files) {
+            OpenBatch smallest = open.poll();
+            // The smallest open batch has the most room, so if the file does not fit there it fits nowhere
+            if (smallest == null || (smallest.bytes + file.size > maxBytesPerJob && !smallest.files.isEmpty())) {
+                if (smallest != null) {
+                    open.add(smallest);
+                }
+                smallest = new OpenBatch(all.size());
+                all.add(smallest);
+            }
+            smallest.files.add(file.path);
+            smallest.bytes += file.size;
+            if (smallest.files.size() < maxFilesPerJob) {
+                open.add(smallest);
+            }
+        }
+
+        List<Batch> batches = new ArrayList<>(all.size());
+        for (OpenBatch batch : all) {
+            if (!batch.files.isEmpty()) {
+                batches.add(new Batch(batch.files, batch.bytes));
+            }
+        }
+        return batches;
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private record SizedFile(String path, long size) {
+    }
+
+    private static final class OpenBatch {
+        private final int index;
+        private final List<String> files = new ArrayList<>();
+        private long bytes;
+
+        private OpenBatch(int index) {
+            this.index = index;
+        }
+    }
+}
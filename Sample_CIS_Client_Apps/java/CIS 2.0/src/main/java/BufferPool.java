@@ -0,0 +1,40 @@
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A small pool of equally sized buffers, so a thousand virtual threads that each copied a file once do not each keep a
+// buffer. A caller that finds the pool empty allocates its own, which is dropped on release if the pool is full.
+// Uploads and the content cache share one heap pool per buffer size; each DownloadEngine keeps its own, as it may
+// use direct buffers.
+public final class BufferPool {
+    private static final int POOLED_BUFFERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final Map<Integer, BufferPool> HEAP = new ConcurrentHashMap<>();
+
+    private final int bufferSize;
+    private final boolean direct;
+    private final BlockingQueue<ByteBuffer> buffers = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+    public BufferPool(int bufferSize, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+    }
+
+    public static BufferPool heap(int bufferSize) {
+        return HEAP.computeIfAbsent(bufferSize, size -> new BufferPool(size, false));
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+}
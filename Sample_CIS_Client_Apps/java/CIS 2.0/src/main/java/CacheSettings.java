@@ -0,0 +1,54 @@
+// Output cache: a job whose inputs, repository and metadata match an earlier job reuses that job's output
+public class CacheSettings {
+    private boolean enabled;
+    private String directory = "Cache";
+    // Least recently used entries are removed once the cached outputs exceed this size
+    private int maxMegabytes = 2048;
+    private String hashAlgorithm = "SHA-256";
+    // Hard-link cached outputs into Output instead of copying them; falls back to a copy across file systems
+    private boolean hardLinks = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getMaxMegabytes() {
+        return maxMegabytes;
+    }
+
+    public void setMaxMegabytes(int maxMegabytes) {
+        this.maxMegabytes = maxMegabytes;
+    }
+
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public void setHashAlgorithm(String hashAlgorithm) {
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
+    public boolean isHardLinks() {
+        return hardLinks;
+    }
+
+    public void setHardLinks(boolean hardLinks) {
+        this.hardLinks = hardLinks;
+    }
+
+    public boolean hasValidValues() {
+        return directory != null && !directory.isEmpty() && maxMegabytes > 0 && hashAlgorithm != null && !hashAlgorithm.isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.IOException;
+
+// Stops sending requests after BreakerFailures consecutive failures, so a server that is down or drowning is not
+// hammered by every job's retries. After BreakerOpenSeconds one request is let through; its success closes the
+// breaker and its failure opens it again.
+public class CircuitBreaker {
+    // Thrown instead of sending a request while the breaker is open
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterMillis;
+        private final boolean testing;
+
+        private OpenException(long retryAfterMillis, boolean testing) {
+            super("Circuit breaker open, CIS failed too many requests in a row; retrying in " + retryAfterMillis + "ms");
+            this.retryAfterMillis = retryAfterMillis;
+            this.testing = testing;
+        }
+
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+
+        // Another request is testing whether the server is back
+        public boolean isTesting() {
+            return testing;
+        }
+    }
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final ResilienceSettings settings;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntilNanos;
+    private long opened;
+
+    public CircuitBreaker(ResilienceSettings settings) {
+        this.settings = settings;
+    }
+
+    // Throws while open, and while the request testing a half-open breaker has not come back
+    public synchronized void acquire() throws OpenException {
+        if (state == State.OPEN) {
+            long remaining = openUntilNanos - System.nanoTime();
+            if (remaining > 0) {
+                throw new OpenException(Math.max(1, remaining / 1_000_000), false);
+            }
+            state = State.HALF_OPEN;
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            throw new OpenException(settings.getRetryBaseMillis(), true);
+        }
+    }
+
+    // The server answered, even if with a client error such as 404
+    public synchronized void success() {
+        failures = 0;
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            System.out.println("Circuit breaker closed, CIS is answering again.");
+        }
+    }
+
+    // No response, 429 or 5xx
+    public synchronized void failure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && settings.getBreakerFailures() > 0 && failures >= settings.getBreakerFailures())) {
+            state = State.OPEN;
+            openUntilNanos = System.nanoTime() + settings.getBreakerOpenSeconds() * 1_000_000_000L;
+            opened++;
+            System.out.println("Circuit breaker open for " + settings.getBreakerOpenSeconds() + "s after " + failures + " failed requests in a row.");
+        }
+    }
+
+    // The request ended without telling anything about the server, e.g. because its thread was interrupted
+    public synchronized void cancelled() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openUntilNanos = System.nanoTime();
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    public synchronized String describe() {
+        return state.name().toLowerCase().replace('_', '-') + ", opened " + opened + " times";
+    }
+}
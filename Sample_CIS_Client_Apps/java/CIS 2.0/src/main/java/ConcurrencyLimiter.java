@@ -0,0 +1,137 @@
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+// Caps the requests in flight at a limit that adapts to the server (additive increase, multiplicative decrease). Each
+// response that arrives while the limit is in use raises it by 1/limit, so about one per round of requests. A sign of
+// overload (429, 503, 504, a timeout, or small requests taking far longer on average over a round than the lowest
+// latency seen recently) multiplies it by BackoffRatio, once per round: requests sent before the last decrease do not
+// decrease it again.
+// The limit thereby settles just below the point where CIS starts queueing requests. Permits are handed out in
+// arrival order, as futures so AsyncApiClient never blocks a thread on one.
+public class ConcurrencyLimiter {
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+    // The lowest latency is taken over this many samples, so a server that became slower for good is adapted to
+    private static final int LATENCY_WINDOW = 500;
+    // Jitter below this is never taken for overload, which matters against a server answering within a millisecond
+    private static final long LATENCY_SLACK_NANOS = 10_000_000;
+
+    private final ResilienceSettings settings;
+    private final ArrayDeque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long roundSumNanos;
+    private int roundSamples;
+    private long decreases;
+    private long lastDecreaseNanos = System.nanoTime();
+
+    public ConcurrencyLimiter(ResilienceSettings settings) {
+        this.settings = settings;
+        this.limit = settings.getInitialConcurrency();
+    }
+
+    // Completes once the request may be sent
+    public synchronized CompletableFuture<Void> acquire() {
+        if (waiting.isEmpty() && inFlight < (int) limit) {
+            inFlight++;
+            return GRANTED;
+        }
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        waiting.add(permit);
+        return permit;
+    }
+
+    public void acquireBlocking() throws InterruptedIOException {
+        CompletableFuture<Void> permit = acquire();
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                if (!waiting.remove(permit)) {
+                    // Granted just now, so it is handed on
+                    inFlight--;
+                }
+            }
+            grantWaiting();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request slot");
+        } catch (ExecutionException e) {
+            // Permits are never completed exceptionally
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // latencyNanos is only compared against earlier samples for small requests, where it reflects the server's load
+    // rather than the size of a transfer
+    public void release(long latencyNanos, boolean overloaded, boolean latencySample) {
+        synchronized (this) {
+            boolean wasBusy = inFlight * 2 >= limit;
+            inFlight--;
+            if (latencySample && !overloaded) {
+                overloaded = isSlow(latencyNanos);
+            }
+            long now = System.nanoTime();
+            if (overloaded) {
+                if (now - latencyNanos - lastDecreaseNanos > 0) {
+                    limit = Math.max(settings.getMinConcurrency(), limit * settings.getBackoffRatio());
+                    lastDecreaseNanos = now;
+                    decreases++;
+                }
+            } else if (wasBusy) {
+                limit = Math.min(settings.getMaxConcurrency(), limit + 1 / limit);
+            }
+        }
+        grantWaiting();
+    }
+
+    private void grantWaiting() {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            while (!waiting.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                granted.add(waiting.poll());
+            }
+        }
+        // Outside the lock, as completing a permit runs the waiting request's next step
+        for (CompletableFuture<Void> permit : granted) {
+            permit.complete(null);
+        }
+    }
+
+    // Judged on the average of a round of samples, as a single slow response is more often a pause than a queue
+    private boolean isSlow(long latencyNanos) {
+        windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+        if (++windowSamples >= LATENCY_WINDOW) {
+            minLatencyNanos = windowMinNanos;
+            windowMinNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+        roundSumNanos += latencyNanos;
+        if (++roundSamples < limit) {
+            return false;
+        }
+        long averageNanos = roundSumNanos / roundSamples;
+        roundSumNanos = 0;
+        roundSamples = 0;
+        return averageNanos > minLatencyNanos * settings.getLatencyTolerance() && averageNanos - minLatencyNanos > LATENCY_SLACK_NANOS;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized String describe() {
+        return "limit=" + (int) limit + " in-flight=" + inFlight + " waiting=" + waiting.size() + " decreases=" + decreases;
+    }
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 public class Config {
     private String baseUrl;
@@ -12,7 +13,37 @@ public class Config {
     private String apiKeyHeader;
     private int errorCloseSeconds;
     private int pollingRateSeconds;
+    private String pollingMode = "adaptive";
+    private long minPollingMillis = 250;
+    private int maxPollingSeconds = 30;
+    private double pollingBackoffMultiplier = 2.0;
+    private double pollingJitter = 0.2;
     private boolean separateJobs;
+    // Pack the input files into jobs of at most MaxFilesPerJob files and MaxMegabytesPerJob MB
+    private boolean batchJobs;
+    private int maxFilesPerJob = 500;
+    private int maxMegabytesPerJob = 200;
+    private int statusPollThreads = 4;
+    private int jobThreads = 8;
+    private String executorMode = "fixed";
+    private String clientMode = "classic";
+    private ConnectionPoolSettings connectionPool = new ConnectionPoolSettings();
+    private PipelineSettings pipeline = new PipelineSettings();
+    private UploadSettings upload = new UploadSettings();
+    private DownloadSettings download = new DownloadSettings();
+    private WatchSettings watch = new WatchSettings();
+    private JournalSettings journal = new JournalSettings();
+    private CacheSettings cache = new CacheSettings();
+    private LogSettings logging = new LogSettings();
+    private LoadSettings load = new LoadSettings();
+    private MetricsSettings metrics = new MetricsSettings();
+    private EnvironmentSettings environment = new EnvironmentSettings();
+    private RoutingSettings routing = new RoutingSettings();
+    private ResilienceSettings resilience = new ResilienceSettings();
+    private StatusBatchSettings statusBatch = new StatusBatchSettings();
+    private PostProcessSettings postProcess = new PostProcessSettings();
+    private SchedulingSettings scheduling = new SchedulingSettings();
+    private MetadataSettings metadata = new MetadataSettings();
     private boolean trustCerts;
 
     public String getBaseUrl() {
@@ -55,6 +86,46 @@ public class Config {
         this.pollingRateSeconds = pollingRateSeconds;
     }
 
+    public String getPollingMode() {
+        return pollingMode;
+    }
+
+    public void setPollingMode(String pollingMode) {
+        this.pollingMode = pollingMode;
+    }
+
+    public long getMinPollingMillis() {
+        return minPollingMillis;
+    }
+
+    public void setMinPollingMillis(long minPollingMillis) {
+        this.minPollingMillis = minPollingMillis;
+    }
+
+    public int getMaxPollingSeconds() {
+        return maxPollingSeconds;
+    }
+
+    public void setMaxPollingSeconds(int maxPollingSeconds) {
+        this.maxPollingSeconds = maxPollingSeconds;
+    }
+
+    public double getPollingBackoffMultiplier() {
+        return pollingBackoffMultiplier;
+    }
+
+    public void setPollingBackoffMultiplier(double pollingBackoffMultiplier) {
+        this.pollingBackoffMultiplier = pollingBackoffMultiplier;
+    }
+
+    public double getPollingJitter() {
+        return pollingJitter;
+    }
+
+    public void setPollingJitter(double pollingJitter) {
+        this.pollingJitter = pollingJitter;
+    }
+
     public boolean isSeparateJobs() {
         return separateJobs;
     }
@@ -63,6 +134,198 @@ public class Config {
         this.separateJobs = separateJobs;
     }
 
+    public boolean isBatchJobs() {
+        return batchJobs;
+    }
+
+    public void setBatchJobs(boolean batchJobs) {
+        this.batchJobs = batchJobs;
+    }
+
+    public int getMaxFilesPerJob() {
+        return maxFilesPerJob;
+    }
+
+    public void setMaxFilesPerJob(int maxFilesPerJob) {
+        this.maxFilesPerJob = maxFilesPerJob;
+    }
+
+    public int getMaxMegabytesPerJob() {
+        return maxMegabytesPerJob;
+    }
+
+    public void setMaxMegabytesPerJob(int maxMegabytesPerJob) {
+        this.maxMegabytesPerJob = maxMegabytesPerJob;
+    }
+
+    public int getStatusPollThreads() {
+        return statusPollThreads;
+    }
+
+    public void setStatusPollThreads(int statusPollThreads) {
+        this.statusPollThreads = statusPollThreads;
+    }
+
+    public int getJobThreads() {
+        return jobThreads;
+    }
+
+    public void setJobThreads(int jobThreads) {
+        this.jobThreads = jobThreads;
+    }
+
+    public String getExecutorMode() {
+        return executorMode;
+    }
+
+    public void setExecutorMode(String executorMode) {
+        this.executorMode = executorMode;
+    }
+
+    public String getClientMode() {
+        return clientMode;
+    }
+
+    public void setClientMode(String clientMode) {
+        this.clientMode = clientMode;
+    }
+
+    public ConnectionPoolSettings getConnectionPool() {
+        return connectionPool;
+    }
+
+    public void setConnectionPool(ConnectionPoolSettings connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    public PipelineSettings getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(PipelineSettings pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public UploadSettings getUpload() {
+        return upload;
+    }
+
+    public void setUpload(UploadSettings upload) {
+        this.upload = upload;
+    }
+
+    public DownloadSettings getDownload() {
+        return download;
+    }
+
+    public void setDownload(DownloadSettings download) {
+        this.download = download;
+    }
+
+    public WatchSettings getWatch() {
+        return watch;
+    }
+
+    public void setWatch(WatchSettings watch) {
+        this.watch = watch;
+    }
+
+    public JournalSettings getJournal() {
+        return journal;
+    }
+
+    public void setJournal(JournalSettings journal) {
+        this.journal = journal;
+    }
+
+    public CacheSettings getCache() {
+        return cache;
+    }
+
+    public void setCache(CacheSettings cache) {
+        this.cache = cache;
+    }
+
+    public LogSettings getLogging() {
+        return logging;
+    }
+
+    public void setLogging(LogSettings logging) {
+        this.logging = logging;
+    }
+
+    public LoadSettings getLoad() {
+        return load;
+    }
+
+    public void setLoad(LoadSettings load) {
+        this.load = load;
+    }
+
+    public MetricsSettings getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(MetricsSettings metrics) {
+        this.metrics = metrics;
+    }
+
+    public EnvironmentSettings getEnvironment() {
+        return environment;
+    }
+
+    public void setEnvironment(EnvironmentSettings environment) {
+        this.environment = environment;
+    }
+
+    public RoutingSettings getRouting() {
+        return routing;
+    }
+
+    public void setRouting(RoutingSettings routing) {
+        this.routing = routing;
+    }
+
+    public ResilienceSettings getResilience() {
+        return resilience;
+    }
+
+    public void setResilience(ResilienceSettings resilience) {
+        this.resilience = resilience;
+    }
+
+    public StatusBatchSettings getStatusBatch() {
+        return statusBatch;
+    }
+
+    public void setStatusBatch(StatusBatchSettings statusBatch) {
+        this.statusBatch = statusBatch;
+    }
+
+    public PostProcessSettings getPostProcess() {
+        return postProcess;
+    }
+
+    public void setPostProcess(PostProcessSettings postProcess) {
+        this.postProcess = postProcess;
+    }
+
+    public SchedulingSettings getScheduling() {
+        return scheduling;
+    }
+
+    public void setScheduling(SchedulingSettings scheduling) {
+        this.scheduling = scheduling;
+    }
+
+    public MetadataSettings getMetadata() {
+        return metadata;
+    }
+
+    public void setMetadata(MetadataSettings metadata) {
+        this.metadata = metadata;
+    }
+
     public boolean isTrustCerts() {
         return trustCerts;
     }
@@ -108,6 +371,98 @@ public class Config {
                 System.out.println("Invalid " + configFile + ". Ensure BaseUrl, ApiKey, ApiKeyHeader, ErrorCloseSeconds, and PollingRateSeconds are valid.");
                 return null;
             }
+            if (!"fixed".equalsIgnoreCase(config.getPollingMode()) && !"adaptive".equalsIgnoreCase(config.getPollingMode())) {
+                System.out.println("Invalid " + configFile + ". PollingMode must be either fixed or adaptive.");
+                return null;
+            }
+            if (config.getMinPollingMillis() <= 0 || config.getMaxPollingSeconds() * 1000L < config.getMinPollingMillis()) {
+                System.out.println("Invalid " + configFile + ". Ensure MinPollingMillis is positive and not larger than MaxPollingSeconds.");
+                return null;
+            }
+            if (config.getStatusPollThreads() <= 0 || config.getJobThreads() <= 0) {
+                System.out.println("Invalid " + configFile + ". Ensure StatusPollThreads and JobThreads are positive.");
+                return null;
+            }
+            if (!List.of("forkjoin", "fixed", "virtual", "pipeline").contains(String.valueOf(config.getExecutorMode()).toLowerCase())) {
+                System.out.println("Invalid " + configFile + ". ExecutorMode must be one of forkjoin, fixed, virtual or pipeline.");
+                return null;
+            }
+            if (!List.of("classic", "async").contains(String.valueOf(config.getClientMode()).toLowerCase())) {
+                System.out.println("Invalid " + configFile + ". ClientMode must be either classic or async.");
+                return null;
+            }
+            if (config.getConnectionPool() == null || !config.getConnectionPool().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure ConnectionPool limits and timeouts are positive and MaxConnectionsTotal is at least MaxConnectionsPerRoute.");
+                return null;
+            }
+            if (config.getMaxFilesPerJob() <= 0 || config.getMaxMegabytesPerJob() <= 0) {
+                System.out.println("Invalid " + configFile + ". Ensure MaxFilesPerJob and MaxMegabytesPerJob are positive.");
+                return null;
+            }
+            if (config.getPipeline() == null || !config.getPipeline().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Pipeline thread counts, QueueCapacity and MaxTrackedJobs are positive and StatsIntervalSeconds is not negative.");
+                return null;
+            }
+            if (config.getUpload() == null || !config.getUpload().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Upload BufferSizeKb is positive and RetryAttempts is not negative.");
+                return null;
+            }
+            if (config.getDownload() == null || !config.getDownload().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Download BufferSizeKb and ParallelSegments are positive, ResumeAttempts and ParallelThresholdMb are not negative, and ChecksumAlgorithm is set.");
+                return null;
+            }
+            if (config.getWatch() == null || !config.getWatch().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Watch StableMillis and FlushMillis are not negative.");
+                return null;
+            }
+            if (config.getJournal() == null || !config.getJournal().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Journal Directory is set, SegmentMb is positive, SyncIntervalMillis is not negative and CompactAfterSegments is at least 2.");
+                return null;
+            }
+            if (config.getCache() == null || !config.getCache().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Cache Directory and HashAlgorithm are set and MaxMegabytes is positive.");
+                return null;
+            }
+            if (config.getLogging() == null || !config.getLogging().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Logging Format is text or json, BufferSize is at least 2, FlushMillis is not negative and MaxOpenFiles is positive.");
+                return null;
+            }
+            if (config.getLoad() == null || !config.getLoad().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Load Mode is open or closed, RatePerSecond is positive in open mode, Concurrency, DurationSeconds, MaxInFlight, FilesPerJob, FileKb and SyntheticFiles are positive, WarmupSeconds is not negative and ReportFile is set.");
+                return null;
+            }
+            if (config.getMetrics() == null || !config.getMetrics().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Metrics Port is between 0 and 65535, File is set (empty for none) and IntervalSeconds is positive.");
+                return null;
+            }
+            if (config.getEnvironment() == null || !config.getEnvironment().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Environment Repository and CacheFile are set (empty for the first repository and no file) and RefreshSeconds is not negative.");
+                return null;
+            }
+            if (config.getRouting() == null || !config.getRouting().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure every Routing route has Match and Repository, and every quota has a Repository and MaxConcurrent and MaxInFlight that are not negative.");
+                return null;
+            }
+            if (config.getResilience() == null || !config.getResilience().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Resilience RetryAttempts, BreakerFailures and MaxConcurrency are not negative, RetryBaseMillis and BreakerOpenSeconds are positive, RetryMaxMillis is at least RetryBaseMillis, MinConcurrency <= InitialConcurrency <= MaxConcurrency, BackoffRatio is between 0 and 1 and LatencyTolerance is above 1.");
+                return null;
+            }
+            if (config.getStatusBatch() == null || !config.getStatusBatch().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure StatusBatch WindowMillis and FullPageBackoffSeconds are not negative and MinBatch, MaxItems and MaxParallel are positive.");
+                return null;
+            }
+            if (config.getPostProcess() == null || !config.getPostProcess().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure PostProcess Threads is positive, ManifestFile is set and IndexFile is set (empty for no index).");
+                return null;
+            }
+            if (config.getScheduling() == null || !config.getScheduling().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure Scheduling MaxActive and DefaultDeadlineSeconds are positive, DefaultClass and SidecarSuffix are set (empty for no sidecars), and every class has a unique Name, a Match (empty for sidecars only), a positive DeadlineSeconds and MaxActive and MaxQueued that are not negative.");
+                return null;
+            }
+            if (config.getMetadata() == null || !config.getMetadata().hasValidValues()) {
+                System.out.println("Invalid " + configFile + ". Ensure every Metadata default has a Name and a Value, and CsvFile and SidecarSuffix are set (empty for none).");
+                return null;
+            }
             return config;
         } catch (IOException ex) {
             System.out.println("Failed to read or parse " + configFile + ": " + ex.getMessage());
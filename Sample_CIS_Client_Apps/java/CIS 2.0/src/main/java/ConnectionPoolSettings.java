@@ -0,0 +1,113 @@
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+public class ConnectionPoolSettings {
+    private int maxConnectionsPerRoute = 50;
+    private int maxConnectionsTotal = 200;
+    private int connectTimeoutSeconds = 30;
+    private int socketTimeoutSeconds = 300;
+    private int responseTimeoutSeconds = 300;
+    private int idleEvictionSeconds = 60;
+    // 0 keeps connections alive for as long as the server allows
+    private int connectionTtlSeconds = 0;
+    private int validateAfterInactivitySeconds = 2;
+    // 0 disables the periodic pool statistics output
+    private int statsIntervalSeconds = 0;
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+    }
+
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds;
+    }
+
+    public void setConnectTimeoutSeconds(int connectTimeoutSeconds) {
+        this.connectTimeoutSeconds = connectTimeoutSeconds;
+    }
+
+    public int getSocketTimeoutSeconds() {
+        return socketTimeoutSeconds;
+    }
+
+    public void setSocketTimeoutSeconds(int socketTimeoutSeconds) {
+        this.socketTimeoutSeconds = socketTimeoutSeconds;
+    }
+
+    public int getResponseTimeoutSeconds() {
+        return responseTimeoutSeconds;
+    }
+
+    public void setResponseTimeoutSeconds(int responseTimeoutSeconds) {
+        this.responseTimeoutSeconds = responseTimeoutSeconds;
+    }
+
+    public int getIdleEvictionSeconds() {
+        return idleEvictionSeconds;
+    }
+
+    public void setIdleEvictionSeconds(int idleEvictionSeconds) {
+        this.idleEvictionSeconds = idleEvictionSeconds;
+    }
+
+    public int getConnectionTtlSeconds() {
+        return connectionTtlSeconds;
+    }
+
+    public void setConnectionTtlSeconds(int connectionTtlSeconds) {
+        this.connectionTtlSeconds = connectionTtlSeconds;
+    }
+
+    public int getValidateAfterInactivitySeconds() {
+        return validateAfterInactivitySeconds;
+    }
+
+    public void setValidateAfterInactivitySeconds(int validateAfterInactivitySeconds) {
+        this.validateAfterInactivitySeconds = validateAfterInactivitySeconds;
+    }
+
+    public int getStatsIntervalSeconds() {
+        return statsIntervalSeconds;
+    }
+
+    public void setStatsIntervalSeconds(int statsIntervalSeconds) {
+        this.statsIntervalSeconds = statsIntervalSeconds;
+    }
+
+    // Not a bean getter, so it stays out of the serialized settings
+    public boolean hasValidValues() {
+        return maxConnectionsPerRoute > 0 && maxConnectionsTotal >= maxConnectionsPerRoute
+                && connectTimeoutSeconds > 0 && socketTimeoutSeconds > 0 && responseTimeoutSeconds > 0
+                && idleEvictionSeconds >= 0 && connectionTtlSeconds >= 0 && validateAfterInactivitySeconds >= 0
+                && statsIntervalSeconds >= 0;
+    }
+
+    ConnectionConfig toConnectionConfig() {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofSeconds(connectTimeoutSeconds))
+                .setSocketTimeout(Timeout.ofSeconds(socketTimeoutSeconds))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(validateAfterInactivitySeconds))
+                .setTimeToLive(connectionTtlSeconds > 0 ? TimeValue.ofSeconds(connectionTtlSeconds) : TimeValue.NEG_ONE_MILLISECOND)
+                .build();
+    }
+
+    RequestConfig toRequestConfig() {
+        return RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofSeconds(responseTimeoutSeconds))
+                .build();
+    }
+}
@@ -0,0 +1,368 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Content-addressed store of job outputs. The key is a hash of the repository, the upload metadata and the content of
+// every input file, so the same documents sent again are answered from disk without a submission or a server-side
+// transform. Each entry is a directory of output files named by its key plus a "<key>.properties" file describing it;
+// an entry is only visible once both exist. Entries are evicted least recently used first once MaxMegabytes is
+// exceeded, and a hit refreshes the entry's modification time so the order survives a restart. The lock only guards
+// the entry map; files are linked, moved and deleted outside it, so one large store or eviction does not hold up
+// every other job's lookup.
+public class ContentCache {
+    private static final int HASH_BUFFER_SIZE = 256 * 1024;
+    private static final BufferPool BUFFERS = BufferPool.heap(HASH_BUFFER_SIZE);
+
+    // Output size, the input bytes the original job uploaded and how long the server spent on it
+    private record Entry(long bytes, long inputBytes, double serverSeconds) {
+    }
+
+    private final Path directory;
+    private final CacheSettings settings;
+    private final long maxBytes;
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    // Keys whose files are being written or deleted; a store of one of them is skipped rather than racing it
+    private final Set<String> busy = new HashSet<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder hashedBytes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder savedInputBytes = new LongAdder();
+    private final LongAdder savedServerMillis = new LongAdder();
+    private MetadataIndex metadata = MetadataIndex.DEFAULT;
+    private String leftOut = "";
+
+    private ContentCache(Path directory, CacheSettings settings) {
+        this.directory = directory;
+        this.settings = settings;
+        this.maxBytes = settings.getMaxMegabytes() * 1024L * 1024L;
+    }
+
+    // Loads the entries in the cache directory, oldest access first, and removes any left unfinished by a crash
+    public static ContentCache open(CacheSettings settings) throws IOException {
+        try {
+            MessageDigest.getInstance(settings.getHashAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unknown cache hash algorithm: " + settings.getHashAlgorithm(), e);
+        }
+        Path directory = Paths.get(settings.getDirectory());
+        Files.createDirectories(directory);
+        ContentCache cache = new ContentCache(directory, settings);
+
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (Files.isDirectory(path) && !name.contains(".")) {
+                    if (Files.exists(cache.propertiesFile(name))) {
+                        found.add(path);
+                    } else {
+                        deleteTree(path);
+                    }
+                } else if (name.contains(".tmp")) {
+                    deleteTree(path);
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(ContentCache::lastModified));
+        for (Path path : found) {
+            String key = path.getFileName().toString();
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(cache.propertiesFile(key))) {
+                properties.load(in);
+            }
+            Entry entry = new Entry(Long.parseLong(properties.getProperty("bytes", "0")),
+                    Long.parseLong(properties.getProperty("inputBytes", "0")),
+                    Double.parseDouble(properties.getProperty("serverSeconds", "0")));
+            cache.entries.put(key, entry);
+            cache.totalBytes += entry.bytes();
+        }
+        List<String> victims;
+        synchronized (cache) {
+            victims = cache.evict();
+        }
+        cache.delete(victims);
+        return cache;
+    }
+
+    // The metadata sent with each file is part of its key, so the same document with other metadata is submitted again
+    public void setMetadata(MetadataIndex metadata) {
+        this.metadata = metadata;
+    }
+
+    // A file at the top of each output folder that is neither stored nor restored, e.g. the post-processing manifest,
+    // which names the job and the inputs it was written for; set before the first store or restore
+    public void setLeftOut(String fileName) {
+        this.leftOut = fileName;
+    }
+
+    // Streams every input through the digest; file names and boundaries are part of the hash, as the outputs are named
+    // after the inputs and splitting a file changes the job
+    public String key(UUID repositoryId, List<String> files) throws IOException {
+        long start = System.nanoTime();
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(settings.getHashAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        update(digest, repositoryId.toString());
+        ByteBuffer pooled = BUFFERS.acquire();
+        long total = 0;
+        try {
+            byte[] buffer = pooled.array();
+            for (String file : files) {
+                Path path = Paths.get(file);
+                update(digest, path.getFileName().toString());
+                for (MetadataDto field : metadata.forFile(file)) {
+                    update(digest, field.getName());
+                    update(digest, field.getValue());
+                }
+                update(digest, Long.toString(Files.size(path)));
+                try (InputStream in = Files.newInputStream(path)) {
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        digest.update(buffer, 0, read);
+                        total += read;
+                    }
+                }
+            }
+        } finally {
+            BUFFERS.release(pooled);
+        }
+        hashedBytes.add(total);
+        hashNanos.add(System.nanoTime() - start);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Links (or copies) the cached output for the key into the target directory. Returns false on a miss. The entry is
+    // taken and moved to the most recently used end under the lock, and linked outside it; if it is evicted meanwhile,
+    // what was linked is removed again and the lookup counts as a miss.
+    public boolean restore(String key, Path target) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.increment();
+            return false;
+        }
+        Path source = directory.resolve(key);
+        List<Path> linked = new ArrayList<>();
+        boolean restored;
+        try {
+            Files.createDirectories(target);
+            try (Stream<Path> files = Files.walk(source)) {
+                for (Path file : (Iterable<Path>) files.filter(file -> isCached(source, file))::iterator) {
+                    Path destination = target.resolve(source.relativize(file).toString());
+                    Files.createDirectories(destination.getParent());
+                    link(file, destination);
+                    linked.add(destination);
+                }
+            }
+            Files.setLastModifiedTime(source, FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized (this) {
+                restored = entries.get(key) == entry;
+            }
+        } catch (NoSuchFileException e) {
+            restored = false;
+        } catch (UncheckedIOException e) {
+            if (!(e.getCause() instanceof NoSuchFileException)) {
+                throw e.getCause();
+            }
+            restored = false;
+        }
+        if (!restored) {
+            for (Path file : linked) {
+                Files.deleteIfExists(file);
+            }
+            misses.increment();
+            return false;
+        }
+        hits.increment();
+        savedInputBytes.add(entry.inputBytes());
+        savedServerMillis.add(Math.round(entry.serverSeconds() * 1000));
+        return true;
+    }
+
+    // Adds a finished job's output directory under the key. The files are linked into a temporary directory that is
+    // renamed into place, and the properties file is written last, so a crash never leaves a partial entry in use. The
+    // key is reserved while its files are written, and the entry is only added to the map, picking any entries to
+    // evict, once they are in place; the evicted entries' files are deleted after the lock is let go.
+    public void store(String key, Path output, long inputBytes, double serverSeconds) throws IOException {
+        synchronized (this) {
+            if (entries.containsKey(key) || !busy.add(key)) {
+                return;
+            }
+        }
+        Path temporary = directory.resolve(key + ".tmp-" + UUID.randomUUID());
+        List<String> victims = null;
+        try {
+            long bytes = 0;
+            try (Stream<Path> files = Files.walk(output)) {
+                for (Path file : (Iterable<Path>) files.filter(file -> isCached(output, file))::iterator) {
+                    Path destination = temporary.resolve(output.relativize(file).toString());
+                    Files.createDirectories(destination.getParent());
+                    link(file, destination);
+                    bytes += Files.size(file);
+                }
+            }
+            if (bytes > maxBytes) {
+                return;
+            }
+
+            Path entryDirectory = directory.resolve(key);
+            deleteTree(entryDirectory);
+            Files.move(temporary, entryDirectory, StandardCopyOption.ATOMIC_MOVE);
+            Properties properties = new Properties();
+            properties.setProperty("bytes", Long.toString(bytes));
+            properties.setProperty("inputBytes", Long.toString(inputBytes));
+            properties.setProperty("serverSeconds", Double.toString(serverSeconds));
+            Path propertiesTemporary = directory.resolve(key + ".properties.tmp");
+            try (OutputStream out = Files.newOutputStream(propertiesTemporary)) {
+                properties.store(out, null);
+            }
+            Files.move(propertiesTemporary, propertiesFile(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                busy.remove(key);
+                entries.put(key, new Entry(bytes, inputBytes, serverSeconds));
+                totalBytes += bytes;
+                stores.increment();
+                victims = evict();
+            }
+        } finally {
+            if (victims == null) {
+                try {
+                    deleteTree(temporary);
+                } finally {
+                    synchronized (this) {
+                        busy.remove(key);
+                    }
+                }
+            }
+        }
+        delete(victims);
+    }
+
+    public String describe() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        long hashed = hashedBytes.sum();
+        long hashMillis = hashNanos.sum() / 1_000_000;
+        int entryCount;
+        long size;
+        synchronized (this) {
+            entryCount = entries.size();
+            size = totalBytes;
+        }
+        return String.format("hits=%d misses=%d hit-rate=%.1f%% entries=%d size=%.1fMB evictions=%d stores=%d"
+                        + " upload-saved=%.1fMB server-time-saved=%.1fs hashed=%.1fMB at %.0fMB/s",
+                hitCount, lookups - hitCount, lookups == 0 ? 0.0 : 100.0 * hitCount / lookups, entryCount, size / 1_048_576.0,
+                evictions.sum(), stores.sum(), savedInputBytes.sum() / 1_048_576.0, savedServerMillis.sum() / 1000.0,
+                hashed / 1_048_576.0, hashMillis == 0 ? 0.0 : hashed / 1_048_576.0 / (hashMillis / 1000.0));
+    }
+
+    // Takes the least recently used entries off the map until the cache fits, called under the lock. Their keys stay
+    // busy until delete() has removed the files.
+    private List<String> evict() {
+        List<String> victims = new ArrayList<>();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> entry = eldest.next();
+            victims.add(entry.getKey());
+            busy.add(entry.getKey());
+            totalBytes -= entry.getValue().bytes();
+            eldest.remove();
+            evictions.increment();
+        }
+        return victims;
+    }
+
+    private void delete(List<String> victims) throws IOException {
+        try {
+            for (String key : victims) {
+                // The properties file goes first so a crash part-way leaves a directory that is cleaned up on open
+                Files.deleteIfExists(propertiesFile(key));
+                deleteTree(directory.resolve(key));
+            }
+        } finally {
+            synchronized (this) {
+                victims.forEach(busy::remove);
+            }
+        }
+    }
+
+    private boolean isCached(Path folder, Path file) {
+        return Files.isRegularFile(file) && (leftOut.isEmpty() || !file.equals(folder.resolve(leftOut)));
+    }
+
+    private void link(Path existing, Path link) throws IOException {
+        if (settings.isHardLinks()) {
+            try {
+                Files.createLink(link, existing);
+                return;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // Different file system, or links are not supported there
+            }
+        }
+        Files.copy(existing, link, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path propertiesFile(String key) {
+        return directory.resolve(key + ".properties");
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteTree(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path entry : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+// Writes downloaded content to disk through a FileChannel using buffers taken from a small pool, so a thousand
+// virtual threads that downloaded once do not each keep a buffer. The content goes to a ".part" file next to the
+// target, is checksummed while it streams, and is renamed into place only once complete.
+// When downloads are resumable a failed transfer leaves the ".part" file behind so it can be continued later.
+public class DownloadEngine {
+    static final String PART_SUFFIX = ".part";
+
+    private final DownloadSettings settings;
+    private final BufferPool buffers;
+
+    public DownloadEngine(DownloadSettings settings) {
+        this.settings = settings;
+        this.buffers = new BufferPool(settings.getBufferSizeKb() * 1024, settings.isDirectBuffers());
+    }
+
+    public DownloadResult copy(InputStream in, Path target) throws IOException {
+        return copy(in, target, false);
+    }
+
+    // With append set, the bytes are added to an existing ".part" file, e.g. the body of a 206 Partial Content response
+    public DownloadResult copy(InputStream in, Path target, boolean append) throws IOException {
+        try (Sink sink = open(target, append)) {
+            readInto(in, sink::write);
+            return sink.commit();
+        }
+    }
+
+    // Writes the stream at a fixed offset of an open channel; used for byte-range segments of one file
+    public long copyAt(InputStream in, FileChannel channel, long position, LongConsumer onProgress) throws IOException {
+        long[] offset = {position};
+        readInto(in, buffer -> {
+            while (buffer.hasRemaining()) {
+                int written = channel.write(buffer, offset[0]);
+                offset[0] += written;
+                onProgress.accept(written);
+            }
+        });
+        return offset[0] - position;
+    }
+
+    // Renames a fully written ".part" file into place; the checksum is computed by reading the file back because
+    // segments arrive out of order
+    public DownloadResult commitPart(Path target, long startNanos) throws IOException {
+        Path partFile = partFileFor(target);
+        try (Sink sink = new Sink(target, false, true)) {
+            sink.readFrom(partFile);
+            return sink.commit(startNanos);
+        }
+    }
+
+    public boolean isResumable() {
+        return settings.isResumable();
+    }
+
+    static Path partFileFor(Path target) {
+        return target.resolveSibling(target.getFileName() + PART_SUFFIX);
+    }
+
+    // A heap buffer is filled through its array; a direct buffer has none and is filled through a channel on the stream
+    private void readInto(InputStream in, BufferWriter writer) throws IOException {
+        ByteBuffer buffer = buffers.acquire();
+        try {
+            ReadableByteChannel source = buffer.hasArray() ? null : Channels.newChannel(in);
+            while (true) {
+                buffer.clear();
+                int read = source != null ? source.read(buffer) : in.read(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                if (read < 0) {
+                    break;
+                }
+                if (source != null) {
+                    buffer.flip();
+                } else {
+                    buffer.limit(read);
+                }
+                if (read > 0) {
+                    writer.write(buffer);
+                }
+            }
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    public Sink open(Path target) throws IOException {
+        return open(target, false);
+    }
+
+    public Sink open(Path target, boolean append) throws IOException {
+        return new Sink(target, append, false);
+    }
+
+    private interface BufferWriter {
+        void write(ByteBuffer buffer) throws IOException;
+    }
+
+    public final class Sink implements Closeable {
+        private final Path target;
+        private final Path partFile;
+        private final FileChannel channel;
+        private final Checksum checksum;
+        private final MessageDigest digest;
+        private final long startNanos = System.nanoTime();
+        private long bytes;
+        private boolean committed;
+
+        private Sink(Path target, boolean append, boolean checksumOnly) throws IOException {
+            this.target = target;
+            this.partFile = partFileFor(target);
+            String algorithm = settings.getChecksumAlgorithm();
+            if ("none".equalsIgnoreCase(algorithm)) {
+                checksum = null;
+                digest = null;
+            } else if ("crc32c".equalsIgnoreCase(algorithm)) {
+                checksum = new CRC32C();
+                digest = null;
+            } else {
+                checksum = null;
+                try {
+                    digest = MessageDigest.getInstance(algorithm);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IOException("Unsupported checksum algorithm: " + algorithm, e);
+                }
+            }
+            if (checksumOnly) {
+                this.channel = null;
+            } else if (append && Files.exists(partFile)) {
+                this.channel = FileChannel.open(partFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                // Feed what is already on disk through the checksum so it covers the whole file
+                readFrom(partFile);
+            } else {
+                this.channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            }
+        }
+
+        // Feeds a file through the checksum, counting its bytes, without writing anything
+        private void readFrom(Path file) throws IOException {
+            ByteBuffer buffer = buffers.acquire();
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (in.read(buffer) >= 0) {
+                    buffer.flip();
+                    update(buffer);
+                    bytes += buffer.remaining();
+                    buffer.clear();
+                }
+            } finally {
+                buffers.release(buffer);
+            }
+        }
+
+        public void write(ByteBuffer src) throws IOException {
+            update(src);
+            while (src.hasRemaining()) {
+                bytes += channel.write(src);
+            }
+        }
+
+        private void update(ByteBuffer src) {
+            int position = src.position();
+            if (checksum != null) {
+                checksum.update(src);
+                src.position(position);
+            } else if (digest != null) {
+                digest.update(src);
+                src.position(position);
+            }
+        }
+
+        public DownloadResult commit() throws IOException {
+            return commit(startNanos);
+        }
+
+        // Moves the completed file into place. A target that already exists was committed by an earlier attempt whose
+        // job was not journaled as downloaded before a crash: when its size and checksum match it is kept and the new
+        // copy dropped, otherwise the new copy replaces it.
+        private DownloadResult commit(long startedAt) throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+            String value = value();
+            if (Files.exists(target) && matchesTarget(value)) {
+                Files.delete(partFile);
+            } else {
+                Files.move(partFile, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            committed = true;
+            return new DownloadResult(target, bytes, settings.getChecksumAlgorithm(), value, System.nanoTime() - startedAt);
+        }
+
+        private String value() {
+            if (checksum != null) {
+                return String.format("%08x", checksum.getValue());
+            } else if (digest != null) {
+                return HexFormat.of().formatHex(digest.digest());
+            }
+            return "";
+        }
+
+        // Without a checksum algorithm the two files are compared byte by byte
+        private boolean matchesTarget(String value) throws IOException {
+            if (Files.size(target) != bytes) {
+                return false;
+            }
+            if (checksum == null && digest == null) {
+                return Files.mismatch(partFile, target) == -1;
+            }
+            try (Sink existing = new Sink(target, false, true)) {
+                existing.readFrom(target);
+                return value.equals(existing.value());
+            }
+        }
+
+        // Closing without a commit keeps the partial file for a later resume, or discards it if resuming is disabled
+        @Override
+        public void close() throws IOException {
+            if (!committed && channel != null) {
+                channel.close();
+                if (!settings.isResumable()) {
+                    Files.deleteIfExists(partFile);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+import java.nio.file.Path;
+
+public record DownloadResult(Path path, long bytes, String checksumAlgorithm, String checksum, long elapsedNanos) {
+    public double megabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : (bytes / 1_048_576.0) / (elapsedNanos / 1e9);
+    }
+}
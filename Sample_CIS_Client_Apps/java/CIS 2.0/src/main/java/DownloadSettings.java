@@ -0,0 +1,73 @@
+public class DownloadSettings {
+    private int bufferSizeKb = 1024;
+    private boolean directBuffers = false;
+    // CRC32C, SHA-256 (or any MessageDigest name), or None
+    private String checksumAlgorithm = "CRC32C";
+    // Keep partial files after a failed transfer and continue them with a Range request on the next attempt
+    private boolean resumable = true;
+    private int resumeAttempts = 3;
+    // Split large outputs into this many byte ranges fetched in parallel (1 = single stream)
+    private int parallelSegments = 1;
+    private int parallelThresholdMb = 64;
+
+    public int getBufferSizeKb() {
+        return bufferSizeKb;
+    }
+
+    public void setBufferSizeKb(int bufferSizeKb) {
+        this.bufferSizeKb = bufferSizeKb;
+    }
+
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    public void setDirectBuffers(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+    }
+
+    public String getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    public void setChecksumAlgorithm(String checksumAlgorithm) {
+        this.checksumAlgorithm = checksumAlgorithm;
+    }
+
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    public int getResumeAttempts() {
+        return resumeAttempts;
+    }
+
+    public void setResumeAttempts(int resumeAttempts) {
+        this.resumeAttempts = resumeAttempts;
+    }
+
+    public int getParallelSegments() {
+        return parallelSegments;
+    }
+
+    public void setParallelSegments(int parallelSegments) {
+        this.parallelSegments = parallelSegments;
+    }
+
+    public int getParallelThresholdMb() {
+        return parallelThresholdMb;
+    }
+
+    public void setParallelThresholdMb(int parallelThresholdMb) {
+        this.parallelThresholdMb = parallelThresholdMb;
+    }
+
+    public boolean hasValidValues() {
+        return bufferSizeKb > 0 && checksumAlgorithm != null && !checksumAlgorithm.isEmpty()
+                && resumeAttempts >= 0 && parallelSegments > 0 && parallelThresholdMb >= 0;
+    }
+}
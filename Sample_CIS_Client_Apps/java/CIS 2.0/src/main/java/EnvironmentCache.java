@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the Environment response in memory with its repositories indexed by name and ID, so jobs resolve their
+// repository without a request. A background thread fetches the environment again every RefreshSeconds; the indexes
+// are only rebuilt, and the cache file only rewritten, when the server's lastChanged differs from the one held.
+// Lookups read one volatile reference and never wait for a refresh.
+public class EnvironmentCache implements AutoCloseable {
+    private record Snapshot(EnvironmentResponse environment, Map<String, RepositoryDto> byName, Map<UUID, RepositoryDto> byId) {
+    }
+
+    // The cache file. The key is kept as a hash, and only used to tell whether the file was saved with the same one.
+    record CacheFile(String baseUrl, String apiKeySha256, EnvironmentResponse environment) {
+    }
+
+    private final Callable<EnvironmentResponse> fetcher;
+    private final EnvironmentSettings settings;
+    private final String baseUrl;
+    private final String apiKeySha256;
+    private final ScheduledExecutorService refresher;
+    private volatile Snapshot snapshot;
+    private volatile boolean fromFile;
+    private volatile long fetches;
+    private volatile long rebuilds;
+    private volatile Instant lastFetched;
+    private volatile String lastError;
+
+    private EnvironmentCache(Callable<EnvironmentResponse> fetcher, EnvironmentSettings settings, String baseUrl, String apiKey) {
+        this.fetcher = fetcher;
+        this.settings = settings;
+        this.baseUrl = baseUrl;
+        this.apiKeySha256 = sha256(apiKey);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(JobTracker.daemonFactory("environment-refresh"));
+    }
+
+    // Starts from the cache file when there is one saved for this server and key, and fetches in the background;
+    // otherwise fetches before returning
+    public static EnvironmentCache open(Callable<EnvironmentResponse> fetcher, EnvironmentSettings settings, String baseUrl,
+                                        String apiKey) throws Exception {
+        EnvironmentCache cache = new EnvironmentCache(fetcher, settings, baseUrl, apiKey);
+        EnvironmentResponse saved = cache.load();
+        if (saved != null) {
+            cache.snapshot = index(saved);
+            cache.fromFile = true;
+        } else {
+            cache.refresh();
+        }
+        if (settings.getRefreshSeconds() > 0) {
+            cache.refresher.scheduleWithFixedDelay(cache::refreshQuietly, saved != null ? 0 : settings.getRefreshSeconds(),
+                    settings.getRefreshSeconds(), TimeUnit.SECONDS);
+        } else if (saved != null) {
+            cache.refresher.execute(cache::refreshQuietly);
+        }
+        return cache;
+    }
+
+    // Fetches the environment now and returns whether it changed
+    public synchronized boolean refresh() throws Exception {
+        EnvironmentResponse environment = fetcher.call();
+        fetches++;
+        lastFetched = Instant.now();
+        lastError = null;
+        Snapshot current = snapshot;
+        // Without a lastChanged there is nothing to compare, so the environment is always taken
+        if (current != null && environment.getLastChanged() != null
+                && Objects.equals(environment.getLastChanged(), current.environment().getLastChanged())) {
+            fromFile = false;
+            return false;
+        }
+        snapshot = index(environment);
+        fromFile = false;
+        rebuilds++;
+        save(environment);
+        return true;
+    }
+
+    public EnvironmentResponse getEnvironment() {
+        return snapshot.environment();
+    }
+
+    public List<RepositoryDto> getRepositories() {
+        return snapshot.environment().getRepositories();
+    }
+
+    // Names are matched ignoring case; null when there is no such repository
+    public RepositoryDto findByName(String name) {
+        return snapshot.byName().get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public RepositoryDto findById(UUID id) {
+        return snapshot.byId().get(id);
+    }
+
+    // The repository named in the settings, or the first one when no name is set. Jobs go there, so one loaded from the
+    // cache file is confirmed with the server first: it may have been recreated under a new ID since the file was saved.
+    // The file's copy is only used if that request fails.
+    public RepositoryDto getDefaultRepository() throws Exception {
+        confirmFromFile();
+        if (settings.getRepository().isEmpty()) {
+            List<RepositoryDto> repositories = getRepositories();
+            if (repositories.isEmpty()) {
+                throw new Exception("No repositories available.");
+            }
+            return repositories.get(0);
+        }
+        return getByName(settings.getRepository());
+    }
+
+    // Like findByName, but fails when there is no such repository. An environment loaded from the cache file may
+    // predate the repository, so it is fetched once before giving up.
+    public RepositoryDto getByName(String name) throws Exception {
+        RepositoryDto repository = findByName(name);
+        if (repository == null && fromFile) {
+            refresh();
+            repository = findByName(name);
+        }
+        if (repository == null) {
+            throw new Exception("Repository not found: " + name);
+        }
+        return repository;
+    }
+
+    // Waits for the background fetch that open started rather than sending another request
+    private synchronized void confirmFromFile() {
+        if (!fromFile) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            System.out.println("Failed to refresh the environment, using " + settings.getCacheFile() + ": " + e.getMessage());
+        }
+    }
+
+    public String describe() {
+        Snapshot current = snapshot;
+        String source = fromFile ? " from " + settings.getCacheFile() : "";
+        String error = lastError != null ? ", last refresh failed: " + lastError : "";
+        return current.environment().getRepositories().size() + " repositories" + source + ", lastChanged="
+                + current.environment().getLastChanged() + ", fetches=" + fetches + ", rebuilds=" + rebuilds
+                + (lastFetched != null ? ", last fetched " + lastFetched : "") + error;
+    }
+
+    // A failed background refresh keeps the environment held so far
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            if (refresher.isShutdown()) {
+                // Interrupted by close
+                return;
+            }
+            lastError = e.getMessage();
+            System.out.println("Failed to refresh the environment: " + e.getMessage());
+        }
+    }
+
+    private static Snapshot index(EnvironmentResponse environment) {
+        Map<String, RepositoryDto> byName = new HashMap<>();
+        Map<UUID, RepositoryDto> byId = new HashMap<>();
+        for (RepositoryDto repository : environment.getRepositories()) {
+            // The first of several repositories with the same name wins, matching the order the server lists them in
+            byName.putIfAbsent(repository.getName().toLowerCase(Locale.ROOT), repository);
+            byId.put(repository.getId(), repository);
+        }
+        return new Snapshot(environment, Map.copyOf(byName), Map.copyOf(byId));
+    }
+
+    // An unreadable cache file, or one saved for another server or key, is ignored; the environment is then fetched as
+    // if there were none
+    private EnvironmentResponse load() {
+        if (settings.getCacheFile().isEmpty() || !Files.exists(Paths.get(settings.getCacheFile()))) {
+            return null;
+        }
+        CacheFile saved;
+        try {
+            saved = JsonReaders.MAPPER.readValue(Paths.get(settings.getCacheFile()).toFile(), CacheFile.class);
+        } catch (IOException e) {
+            System.out.println("Ignoring " + settings.getCacheFile() + ": " + e.getMessage());
+            return null;
+        }
+        String mismatch = saved.environment() == null ? "no environment"
+                : !baseUrl.equals(saved.baseUrl()) ? "saved for " + saved.baseUrl()
+                : !apiKeySha256.equals(saved.apiKeySha256()) ? "saved with another API key" : null;
+        if (mismatch != null) {
+            System.out.println("Ignoring " + settings.getCacheFile() + ": " + mismatch);
+            return null;
+        }
+        return saved.environment();
+    }
+
+    // Written beside the file and renamed over it, so a crash never leaves half a file
+    private void save(EnvironmentResponse environment) throws IOException {
+        if (settings.getCacheFile().isEmpty()) {
+            return;
+        }
+        Path file = Paths.get(settings.getCacheFile()).toAbsolutePath();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        JsonReaders.MAPPER.writeValue(temporary.toFile(), new CacheFile(baseUrl, apiKeySha256, environment));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
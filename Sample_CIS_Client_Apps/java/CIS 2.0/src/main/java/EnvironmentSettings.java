@@ -0,0 +1,37 @@
+// The Environment response is kept in memory and refreshed in the background instead of being requested per use
+public class EnvironmentSettings {
+    // Repository jobs are submitted to, by name; empty for the first one the server lists
+    private String repository = "";
+    // How often the environment is fetched again in the background, 0 to fetch it only at startup
+    private int refreshSeconds = 300;
+    // Where the last environment is saved so the next start can use it before the server answers; empty for none
+    private String cacheFile = "environment.json";
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
+    public int getRefreshSeconds() {
+        return refreshSeconds;
+    }
+
+    public void setRefreshSeconds(int refreshSeconds) {
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    public String getCacheFile() {
+        return cacheFile;
+    }
+
+    public void setCacheFile(String cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    public boolean hasValidValues() {
+        return repository != null && refreshSeconds >= 0 && cacheFile != null;
+    }
+}
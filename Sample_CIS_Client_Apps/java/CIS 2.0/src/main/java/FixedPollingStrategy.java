@@ -0,0 +1,17 @@
+public class FixedPollingStrategy implements PollingStrategy {
+    private final long intervalMillis;
+
+    public FixedPollingStrategy(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public long firstDelayMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public long nextDelayMillis(int attempt, long elapsedMillis, JobStatusResponse lastStatus) {
+        return intervalMillis;
+    }
+}
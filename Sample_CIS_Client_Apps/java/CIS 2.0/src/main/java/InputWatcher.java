@@ -0,0 +1,365 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Discovers input files as they arrive. The directory is listed once at startup and after that only the file named
+// by each WatchService event is looked at, so a folder holding 100k processed files costs nothing per new file. A
+// file is handed out once its size and modification time have held still for StableMillis, so a file that is still
+// being written is never submitted; only a file already there at startup whose modification time is StableMillis old
+// is handed out without waiting. A file renamed from a temporary name (IgnoredSuffixes, or hidden) to its final
+// name in the folder is handed out as soon as the rename is seen, provided it has the size and modification time last
+// seen under the temporary name; otherwise it waits like any other file. The directory is only listed again if the event
+// queue overflows. When recursive, subfolders are watched too, each registered as soon as it is created.
+public class InputWatcher implements AutoCloseable {
+    private static final List<String> CLOSED = new ArrayList<>();
+
+    private final Path directory;
+    private final WatchSettings settings;
+    private final long stableNanos;
+    private final long flushNanos;
+    private final BlockingQueue<List<String>> ready = new LinkedBlockingQueue<>();
+    // Only touched by the watcher thread
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private final PriorityQueue<Pending> checks = new PriorityQueue<>(Comparator.comparingLong((Pending p) -> p.checkAt));
+    // Modification time of every file already handed out, so a file replaced under the same name is picked up again
+    private final Map<Path, FileTime> handedOut = new HashMap<>();
+    private final Set<Path> directories = new HashSet<>();
+    private boolean recursive;
+    private final List<String> flushing = new ArrayList<>();
+    private long flushAt;
+    // Size and modification time of each temporary file as last seen, to recognise it when it is renamed into place
+    private final Map<Path, Pending> temporaries = new HashMap<>();
+    // A rename within the folder arrives as the delete of the old name directly followed by the create of the new one,
+    // not always in the same batch of events
+    private Pending temporaryRemoved;
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean running = true;
+    private volatile long events;
+    private volatile long discovered;
+    private volatile int waiting;
+    private volatile long overflows;
+
+    public InputWatcher(Path directory, WatchSettings settings) {
+        this.directory = directory;
+        this.settings = settings;
+        this.stableNanos = TimeUnit.MILLISECONDS.toNanos(settings.getStableMillis());
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(settings.getFlushMillis());
+    }
+
+    // Also hand out files in subfolders, e.g. when Routing matches on them; set before start
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    // Registers the directory before the initial listing so no file created in between is missed
+    public void start() throws IOException {
+        watchService = directory.getFileSystem().newWatchService();
+        register(directory);
+        thread = JobTracker.daemonFactory("input-watcher").newThread(this::run);
+        thread.start();
+    }
+
+    // Blocks until files are ready and returns their paths, or null once the watcher is closed
+    public List<String> take() throws InterruptedException {
+        List<String> files = ready.take();
+        if (files == CLOSED) {
+            ready.offer(CLOSED);
+            return null;
+        }
+        return files;
+    }
+
+    // Like take, but returns an empty list if no file became ready within the timeout
+    public List<String> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        List<String> files = ready.poll(timeout, unit);
+        if (files == CLOSED) {
+            ready.offer(CLOSED);
+            return null;
+        }
+        return files == null ? List.of() : files;
+    }
+
+    public String describe() {
+        return "events=" + events + " discovered=" + discovered + " waiting-to-settle=" + waiting + " overflows=" + overflows;
+    }
+
+    private void run() {
+        try {
+            scan(directory, true);
+            while (running) {
+                long now = System.nanoTime();
+                long wakeAt = Long.MAX_VALUE;
+                if (!checks.isEmpty()) {
+                    wakeAt = checks.peek().checkAt;
+                }
+                if (!flushing.isEmpty()) {
+                    wakeAt = Math.min(wakeAt, flushAt);
+                }
+                WatchKey key = wakeAt == Long.MAX_VALUE
+                        ? watchService.take()
+                        : watchService.poll(Math.max(0, wakeAt - now), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    handle(key);
+                }
+                checkPending();
+                if (!flushing.isEmpty() && System.nanoTime() - flushAt >= 0) {
+                    flush();
+                }
+                waiting = pending.size();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        } catch (IOException e) {
+            System.out.println("Input watcher stopped: " + e.getMessage());
+        } finally {
+            running = false;
+            ready.offer(CLOSED);
+        }
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        Path watched = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            events++;
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were dropped, so the listing is the only way to find out what arrived
+                overflows++;
+                scan(directory, false);
+                temporaries.keySet().removeIf(file -> !Files.exists(file, LinkOption.NOFOLLOW_LINKS));
+                temporaryRemoved = null;
+                continue;
+            }
+            Path path = watched.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.remove(path);
+                handedOut.remove(path);
+                temporaryRemoved = temporaries.remove(path);
+                if (directories.remove(path)) {
+                    handedOut.keySet().removeIf(file -> file.startsWith(path));
+                    temporaries.keySet().removeIf(file -> file.startsWith(path));
+                }
+            } else if (recursive && !isTemporary(path) && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // Files may have been written into the folder before it was registered
+                if (!directories.contains(path)) {
+                    register(path);
+                    scan(path, false);
+                }
+                temporaryRemoved = null;
+            } else if (isTemporary(path)) {
+                BasicFileAttributes attributes = readAttributes(path);
+                if (attributes != null && attributes.isRegularFile()) {
+                    temporaries.put(path, new Pending(path, attributes));
+                }
+                temporaryRemoved = null;
+            } else {
+                // A file renamed from a temporary name was complete before it was renamed
+                consider(path, event.kind() == StandardWatchEventKinds.ENTRY_CREATE ? temporaryRemoved : null, false);
+                temporaryRemoved = null;
+            }
+        }
+        if (!key.reset()) {
+            if (watched.equals(directory)) {
+                throw new IOException(directory + " is no longer accessible");
+            }
+            // A subfolder was deleted or moved away
+            directories.remove(watched);
+        }
+    }
+
+    private void register(Path folder) throws IOException {
+        folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        directories.add(folder);
+    }
+
+    private void scan(Path folder, boolean startup) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path path : stream) {
+                if (recursive && !isTemporary(path) && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    if (!directories.contains(path)) {
+                        register(path);
+                    }
+                    scan(path, startup);
+                } else {
+                    consider(path, null, startup);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            if (folder.equals(directory)) {
+                throw e;
+            }
+            // Removed again before it could be listed
+        }
+    }
+
+    // renamedFrom is the temporary file deleted just before this one was created, if any
+    private void consider(Path path, Pending renamedFrom, boolean startup) {
+        if (isTemporary(path)) {
+            return;
+        }
+
+        Pending existing = pending.get(path);
+        if (existing != null) {
+            // Still changing; the scheduled check looks at it again once it has been quiet for StableMillis
+            existing.lastChange = System.nanoTime();
+            return;
+        }
+        BasicFileAttributes attributes = readAttributes(path);
+        if (attributes == null || !attributes.isRegularFile() || attributes.lastModifiedTime().equals(handedOut.get(path))) {
+            return;
+        }
+        if (attributes.size() > 0 && (isRenameOf(attributes, renamedFrom) || startup && isSettled(attributes))) {
+            handOut(path, attributes.lastModifiedTime());
+            return;
+        }
+        Pending added = new Pending(path, attributes);
+        added.checkAt = added.lastChange + stableNanos;
+        pending.put(path, added);
+        checks.add(added);
+    }
+
+    // A rename keeps the size and modification time, so a file that has other ones is a new file created right after
+    // an unrelated temporary file was deleted, e.g. a copy that has just started
+    private static boolean isRenameOf(BasicFileAttributes attributes, Pending renamedFrom) {
+        return renamedFrom != null && attributes.size() == renamedFrom.size && attributes.lastModifiedTime().equals(renamedFrom.modified);
+    }
+
+    // Only used for the files found at startup, which were written while nothing was watching. Some writers do not
+    // update the modification time on every write and a network share's clock can run behind, so any other file waits
+    // for one observed quiet period with unchanged size and time.
+    private boolean isSettled(BasicFileAttributes attributes) {
+        return System.currentTimeMillis() - attributes.lastModifiedTime().toMillis() >= settings.getStableMillis();
+    }
+
+    private boolean isTemporary(Path path) {
+        String name = path.getFileName().toString();
+        if (name.startsWith(".")) {
+            return true;
+        }
+        for (String suffix : settings.getIgnoredSuffixes()) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkPending() {
+        long now = System.nanoTime();
+        while (!checks.isEmpty() && checks.peek().checkAt - now <= 0) {
+            Pending file = checks.poll();
+            if (pending.get(file.path) != file) {
+                // Deleted while waiting
+                continue;
+            }
+            long quietUntil = file.lastChange + stableNanos;
+            if (quietUntil - now > 0) {
+                // Another event arrived since this check was scheduled
+                reschedule(file, quietUntil);
+                continue;
+            }
+            BasicFileAttributes attributes = readAttributes(file.path);
+            if (attributes == null) {
+                pending.remove(file.path);
+            } else if (attributes.size() != file.size || !attributes.lastModifiedTime().equals(file.modified) || attributes.size() == 0) {
+                // Changed without an event (some file systems only report the creation), or nothing written yet
+                file.size = attributes.size();
+                file.modified = attributes.lastModifiedTime();
+                file.lastChange = now;
+                reschedule(file, now + stableNanos);
+            } else {
+                pending.remove(file.path);
+                handOut(file.path, file.modified);
+            }
+        }
+    }
+
+    private void reschedule(Pending file, long checkAt) {
+        file.checkAt = checkAt;
+        checks.add(file);
+    }
+
+    private void handOut(Path path, FileTime modified) {
+        handedOut.put(path, modified);
+        discovered++;
+        if (flushing.isEmpty()) {
+            flushAt = System.nanoTime() + flushNanos;
+        }
+        flushing.add(path.toString());
+        if (flushNanos == 0) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        ready.offer(new ArrayList<>(flushing));
+        flushing.clear();
+    }
+
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.out.println("Failed to read attributes of " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to close input watcher: " + e.getMessage());
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Pending {
+        private final Path path;
+        private long size;
+        private FileTime modified;
+        private long lastChange = System.nanoTime();
+        private long checkAt;
+
+        private Pending(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime();
+        }
+    }
+}
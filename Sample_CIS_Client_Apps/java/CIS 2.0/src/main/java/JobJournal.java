@@ -0,0 +1,613 @@
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+// Append-only record of every job's progress (submitted, completed, downloaded, released) so a restarted run can pick up
+// the jobs a crash left on the server and skip the inputs that were already processed. Each line is a CRC32C followed by
+// a JSON entry; a line torn by a crash fails its checksum and is cut off on the next start. A record is only reported
+// as written once it has been fsynced, and records from concurrent jobs share one fsync. The journal is split into
+// segments; once there are CompactAfterSegments of them they are replaced by a single snapshot of the live state, so
+// its size follows the jobs in flight and the inputs still in the input folder rather than every job ever run. Only
+// the writes to the active segment are made under the lock: the sync thread forces, rolls and compacts segments
+// outside it, so a job's virtual thread never waits on the disk while holding a monitor.
+public class JobJournal implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SUCCESS = "CompletedSuccessful";
+    // Inputs per entry when a snapshot lists the processed inputs
+    private static final int SNAPSHOT_BATCH = 500;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private static final ObjectWriter WRITER = MAPPER.writerFor(Entry.class);
+    private static final ObjectReader READER = MAPPER.readerFor(Entry.class);
+
+    // A job that was submitted but not yet released when the journal was opened; download is the downloaded file,
+    // null until it was downloaded or when an older journal did not record it
+    public record PendingJob(UUID jobId, List<String> files, boolean downloaded, String download) {
+    }
+
+    private record Entry(String type, UUID jobId, String status, List<Input> inputs, String path) {
+        private Entry(String type, UUID jobId, String status, List<Input> inputs) {
+            this(type, jobId, status, inputs, null);
+        }
+    }
+
+    // An input as it was when submitted; a file changed since then no longer matches and is processed again
+    private record Input(String path, long size, long modified) {
+    }
+
+    private static final class JobState {
+        private final List<Input> inputs;
+        private String status;
+        private boolean downloaded;
+        private String download;
+
+        private JobState(List<Input> inputs) {
+            this.inputs = inputs;
+        }
+    }
+
+    private final Path directory;
+    private final JournalSettings settings;
+    private final long maxSegmentBytes;
+    private final Map<UUID, JobState> inFlight = new LinkedHashMap<>();
+    private final Map<String, Input> inFlightInputs = new HashMap<>();
+    private final Map<String, Input> processed = new HashMap<>();
+    private final List<PendingJob> pendingAtOpen = new ArrayList<>();
+    private final Thread flusher;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when a record is appended or the journal is closed, and when records have been synced
+    private final Condition appendedOrClosed = lock.newCondition();
+    private final Condition syncedOrFailed = lock.newCondition();
+    private Thread compactor;
+    private FileChannel channel;
+    private long segment;
+    private int segmentCount;
+    private long segmentBytes;
+    private long appended;
+    private long synced;
+    private long syncs;
+    private long compactions;
+    private IOException failure;
+    private boolean closed;
+
+    private JobJournal(Path directory, JournalSettings settings) {
+        this.directory = directory;
+        this.settings = settings;
+        this.maxSegmentBytes = settings.getSegmentMb() * 1024L * 1024L;
+        this.flusher = JobTracker.daemonFactory("journal-sync").newThread(this::runFlusher);
+    }
+
+    // Replays the journal in the directory, repairing a torn last record, and opens it for appending
+    public static JobJournal open(JournalSettings settings) throws IOException {
+        Path directory = Paths.get(settings.getDirectory());
+        Files.createDirectories(directory);
+        JobJournal journal = new JobJournal(directory, settings);
+        journal.replay();
+        journal.flusher.start();
+        return journal;
+    }
+
+    public List<PendingJob> getPendingJobs() {
+        return pendingAtOpen;
+    }
+
+    // True if this file, unchanged, was already submitted by a job that is still running or has finished
+    public boolean isProcessed(String file) {
+        Input current = describe(file);
+        if (current == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            return current.equals(processed.get(current.path())) || current.equals(inFlightInputs.get(current.path()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void submitted(UUID jobId, List<String> files) throws IOException {
+        List<Input> inputs = new ArrayList<>(files.size());
+        for (String file : files) {
+            Input input = describe(file);
+            if (input != null) {
+                inputs.add(input);
+            }
+        }
+        append(new Entry("submitted", jobId, null, inputs));
+    }
+
+    // A job that finished unsuccessfully is final: it is not resumed and its inputs are not submitted again
+    public void completed(UUID jobId, String status) throws IOException {
+        append(new Entry("completed", jobId, status, null));
+    }
+
+    // Recorded as soon as the download is in place, before anything is done with it
+    public void downloaded(UUID jobId, Path download) throws IOException {
+        append(new Entry("downloaded", jobId, null, null, download.toString()));
+    }
+
+    public void released(UUID jobId) throws IOException {
+        append(new Entry("released", jobId, null, null));
+    }
+
+    public String describe() {
+        lock.lock();
+        try {
+            return "records=" + appended + " syncs=" + syncs + " compactions=" + compactions + " segments=" + segmentCount
+                    + " in-flight=" + inFlight.size() + " processed-inputs=" + processed.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(Entry entry) throws IOException {
+        byte[] line = encode(entry);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Journal is closed");
+            }
+            write(channel, line);
+            segmentBytes += line.length;
+            apply(entry);
+            long sequence = ++appended;
+            appendedOrClosed.signal();
+            awaitSync(sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held; awaiting releases it until the flusher has synced the record
+    private void awaitSync(long sequence) throws IOException {
+        while (synced < sequence) {
+            if (failure != null) {
+                throw new IOException("Failed to sync journal: " + failure.getMessage(), failure);
+            }
+            try {
+                syncedOrFailed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the journal to sync", e);
+            }
+        }
+    }
+
+    // Group commit: one fsync covers every record appended while the previous one was running or during the sync
+    // interval. A full segment is rolled here too, so appending never waits for it.
+    private void runFlusher() {
+        try {
+            while (true) {
+                boolean full;
+                lock.lock();
+                try {
+                    while (synced == appended && !closed) {
+                        appendedOrClosed.await();
+                    }
+                    if (synced == appended) {
+                        return;
+                    }
+                    full = segmentBytes >= maxSegmentBytes;
+                } finally {
+                    lock.unlock();
+                }
+                if (full) {
+                    roll();
+                    continue;
+                }
+                if (settings.getSyncIntervalMillis() > 0) {
+                    Thread.sleep(settings.getSyncIntervalMillis());
+                }
+                long target;
+                FileChannel syncing;
+                lock.lock();
+                try {
+                    target = appended;
+                    syncing = channel;
+                } finally {
+                    lock.unlock();
+                }
+                // Forced without the lock so the next group of records can be written meanwhile
+                syncing.force(false);
+                markSynced(target);
+            }
+        } catch (InterruptedException e) {
+            // Closing
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+                syncedOrFailed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void markSynced(long target) {
+        lock.lock();
+        try {
+            synced = Math.max(synced, target);
+            syncs++;
+            syncedOrFailed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void apply(Entry entry) {
+        switch (entry.type()) {
+            case "submitted" -> {
+                inFlight.put(entry.jobId(), new JobState(entry.inputs()));
+                for (Input input : entry.inputs()) {
+                    inFlightInputs.put(input.path(), input);
+                }
+            }
+            case "completed" -> {
+                JobState job = inFlight.get(entry.jobId());
+                if (job != null) {
+                    job.status = entry.status();
+                    if (!SUCCESS.equals(entry.status())) {
+                        finish(entry.jobId());
+                    }
+                }
+            }
+            case "downloaded" -> {
+                JobState job = inFlight.get(entry.jobId());
+                if (job != null) {
+                    job.downloaded = true;
+                    job.download = entry.path();
+                }
+            }
+            case "released" -> finish(entry.jobId());
+            case "processed" -> {
+                for (Input input : entry.inputs()) {
+                    processed.put(input.path(), input);
+                }
+            }
+            default -> System.out.println("Ignoring unknown journal entry: " + entry.type());
+        }
+    }
+
+    private void finish(UUID jobId) {
+        JobState job = inFlight.remove(jobId);
+        if (job == null) {
+            return;
+        }
+        for (Input input : job.inputs) {
+            inFlightInputs.remove(input.path(), input);
+            processed.put(input.path(), input);
+        }
+    }
+
+    private void replay() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(segmentNumber(path), path);
+                } else {
+                    // A snapshot that was not finished before a crash; the segments it was built from are still there
+                    Files.delete(path);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Path> segmentFile : segments.entrySet()) {
+            boolean last = segmentFile.getKey().equals(segments.lastKey());
+            long validBytes = replaySegment(segmentFile.getValue(), last);
+            if (last && validBytes < Files.size(segmentFile.getValue())) {
+                System.out.println("Journal: discarding a torn record at the end of " + segmentFile.getValue().getFileName());
+                try (FileChannel repair = FileChannel.open(segmentFile.getValue(), StandardOpenOption.WRITE)) {
+                    repair.truncate(validBytes);
+                    repair.force(true);
+                }
+            }
+        }
+        for (Map.Entry<UUID, JobState> job : inFlight.entrySet()) {
+            List<String> files = new ArrayList<>();
+            for (Input input : job.getValue().inputs) {
+                files.add(input.path());
+            }
+            pendingAtOpen.add(new PendingJob(job.getKey(), files, job.getValue().downloaded, job.getValue().download));
+        }
+
+        segment = segments.isEmpty() ? 1 : segments.lastKey();
+        segmentCount = Math.max(1, segments.size());
+        openSegment(segment);
+        if (segmentCount >= settings.getCompactAfterSegments()) {
+            roll();
+        }
+    }
+
+    // Applies every valid record and returns the length of the segment up to the last one that could be read
+    private long replaySegment(Path path, boolean last) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            Entry entry = end < bytes.length ? decode(bytes, start, end) : null;
+            if (entry == null) {
+                if (last) {
+                    return start;
+                }
+                System.out.println("Journal: skipping a damaged record in " + path.getFileName() + " at byte " + start);
+            } else {
+                apply(entry);
+            }
+            start = end + 1;
+        }
+        return bytes.length;
+    }
+
+    // Switches appending to a new segment, then forces and closes the full one. Only the flusher, or open before the
+    // flusher starts, rolls segments. When compaction is due the number after the full segment is kept for the snapshot.
+    private void roll() throws IOException {
+        long next;
+        boolean compact;
+        lock.lock();
+        try {
+            compact = compactor == null && segmentCount + 1 >= settings.getCompactAfterSegments();
+            next = segment + (compact ? 2 : 1);
+        } finally {
+            lock.unlock();
+        }
+        FileChannel opened = FileChannel.open(segmentPath(next), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        FileChannel full;
+        long target;
+        List<Input> processedInputs = null;
+        List<Entry> inFlightEntries = null;
+        lock.lock();
+        try {
+            full = channel;
+            target = appended;
+            channel = opened;
+            segment = next;
+            segmentBytes = opened.size();
+            segmentCount++;
+            if (compact) {
+                // The live state as of the end of the full segment, which is what the snapshot replaces
+                processedInputs = new ArrayList<>(processed.values());
+                inFlightEntries = snapshotInFlight();
+            }
+        } finally {
+            lock.unlock();
+        }
+        full.force(false);
+        full.close();
+        markSynced(target);
+        if (compact) {
+            List<Input> inputs = processedInputs;
+            List<Entry> entries = inFlightEntries;
+            Thread thread = JobTracker.daemonFactory("journal-compact").newThread(() -> compact(next - 1, inputs, entries));
+            lock.lock();
+            try {
+                compactor = thread;
+            } finally {
+                lock.unlock();
+            }
+            thread.start();
+        }
+    }
+
+    // Called with the lock held
+    private List<Entry> snapshotInFlight() {
+        List<Entry> entries = new ArrayList<>();
+        for (Map.Entry<UUID, JobState> job : inFlight.entrySet()) {
+            entries.add(new Entry("submitted", job.getKey(), null, job.getValue().inputs));
+            if (job.getValue().status != null) {
+                entries.add(new Entry("completed", job.getKey(), job.getValue().status, null));
+            }
+            if (job.getValue().downloaded) {
+                entries.add(new Entry("downloaded", job.getKey(), null, null, job.getValue().download));
+            }
+        }
+        return entries;
+    }
+
+    // Writes the live state to segment number snapshot, makes it durable, then deletes the segments before it. Runs on
+    // its own thread while records go on being appended to the segment after it. A crash before the rename leaves the
+    // old segments in place; a crash after it replays them followed by the snapshot, which restates the same state.
+    private void compact(long snapshot, List<Input> processedInputs, List<Entry> inFlightEntries) {
+        Path temporary = directory.resolve(SEGMENT_PREFIX + snapshot + ".tmp");
+        List<Input> stale = new ArrayList<>();
+        int replaced = 0;
+        try {
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                // Inputs that were deleted or changed since they were processed would never match again
+                List<Input> batch = new ArrayList<>();
+                for (Input input : processedInputs) {
+                    if (!input.equals(describe(input.path()))) {
+                        stale.add(input);
+                        continue;
+                    }
+                    batch.add(input);
+                    if (batch.size() == SNAPSHOT_BATCH) {
+                        write(out, encode(new Entry("processed", null, null, batch)));
+                        batch = new ArrayList<>();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    write(out, encode(new Entry("processed", null, null, batch)));
+                }
+                for (Entry entry : inFlightEntries) {
+                    write(out, encode(entry));
+                }
+                out.force(true);
+            }
+            Files.move(temporary, segmentPath(snapshot), StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path path : stream) {
+                    if (segmentNumber(path) < snapshot) {
+                        Files.delete(path);
+                        replaced++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Journal compaction failed, keeping the segments: " + e.getMessage());
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Deleted on the next start
+            }
+        } finally {
+            lock.lock();
+            try {
+                for (Input input : stale) {
+                    processed.remove(input.path(), input);
+                }
+                if (replaced > 0) {
+                    compactions++;
+                    segmentCount -= replaced - 1;
+                }
+                compactor = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        segment = number;
+        channel = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentBytes = channel.size();
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%012d", number) + SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Makes the rename durable; not every platform can open a directory, and there the rename is durable already
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        byte[] json = WRITER.writeValueAsBytes(entry);
+        CRC32C crc = new CRC32C();
+        crc.update(json);
+        byte[] prefix = String.format("%08x ", crc.getValue()).getBytes(StandardCharsets.US_ASCII);
+        byte[] line = new byte[prefix.length + json.length + 1];
+        System.arraycopy(prefix, 0, line, 0, prefix.length);
+        System.arraycopy(json, 0, line, prefix.length, json.length);
+        line[line.length - 1] = '\n';
+        return line;
+    }
+
+    private static Entry decode(byte[] bytes, int start, int end) {
+        if (end - start < 10 || bytes[start + 8] != ' ') {
+            return null;
+        }
+        try {
+            long expected = Long.parseLong(new String(bytes, start, 8, StandardCharsets.US_ASCII), 16);
+            CRC32C crc = new CRC32C();
+            crc.update(bytes, start + 9, end - start - 9);
+            if (crc.getValue() != expected) {
+                return null;
+            }
+            return READER.readValue(bytes, start + 9, end - start - 9);
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void write(FileChannel out, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static Input describe(String file) {
+        Path path = Paths.get(file).toAbsolutePath().normalize();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Input(path.toString(), attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.out.println("Failed to read attributes of " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appendedOrClosed.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            // The flusher syncs whatever is still waiting before it stops
+            flusher.join();
+            Thread compacting;
+            lock.lock();
+            try {
+                compacting = compactor;
+            } finally {
+                lock.unlock();
+            }
+            if (compacting != null) {
+                compacting.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Failed to close journal: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
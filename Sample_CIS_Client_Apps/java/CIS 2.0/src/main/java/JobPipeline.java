@@ -0,0 +1,463 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Runs jobs through separate submit, poll, download and release stages. Each stage has its own threads and a bounded
+// queue in front of it; when a queue is full the stage feeding it blocks, so a slow disk holds back downloads without
+// stopping uploads until the backlog reaches the submit stage. Jobs between submit and download are limited by
+// MaxTrackedJobs, which caps how many of our jobs sit in the server's queue at once. Jobs wait for the submit stage in
+// one queue per repository, taken from in turn, so one repository's backlog or quota never holds up the others.
+public final class JobPipeline implements AutoCloseable {
+    // The work done for a job in each stage
+    public interface Operations {
+        // Returns null when the job needs no submission, e.g. its output came from the cache
+        UUID submit(UUID repositoryId, List<String> files, int id) throws Exception;
+
+        void onStatus(UUID jobId, JobStatusResponse status, int id);
+
+        void download(UUID jobId, JobStatusResponse status, int id) throws Exception;
+
+        void release(UUID jobId, int id) throws Exception;
+    }
+
+    private interface StageWork {
+        // Returns the stage the job moves to next, or null after the last stage or when the work hands the job on itself
+        Stage run(PipelineJob job) throws Exception;
+    }
+
+    // The jobs waiting in front of a stage
+    private interface JobQueue {
+        void put(PipelineJob job) throws InterruptedException;
+
+        PipelineJob take() throws InterruptedException;
+
+        int size();
+    }
+
+    private final Operations operations;
+    private final JobTracker tracker;
+    private final Semaphore trackedSlots;
+    private final int maxTrackedJobs;
+    private final FairQueue submitQueue;
+    private final Stage submitStage;
+    private final Stage downloadStage;
+    private final Stage releaseStage;
+    private final AtomicInteger awaitingDownload = new AtomicInteger();
+    private final LongAdder polled = new LongAdder();
+    private final LongAdder pollNanos = new LongAdder();
+    private final ScheduledExecutorService reporter;
+    private volatile boolean running = true;
+    private RepositoryRouter router;
+    private Metrics metrics;
+
+    public JobPipeline(Operations operations, JobTracker tracker, PipelineSettings settings, JobRunner.JobLog jobLog) {
+        this.operations = operations;
+        this.tracker = tracker;
+        this.maxTrackedJobs = settings.getMaxTrackedJobs();
+        this.trackedSlots = new Semaphore(maxTrackedJobs);
+        this.releaseStage = new Stage("release", settings.getReleaseThreads(), new FifoQueue(settings.getQueueCapacity()), null, this::release);
+        this.downloadStage = new Stage("download", settings.getDownloadThreads(), new FifoQueue(settings.getQueueCapacity()), null, this::download);
+        this.submitQueue = new FairQueue(settings.getQueueCapacity());
+        this.submitStage = new Stage("submit", settings.getSubmitThreads(), submitQueue, trackedSlots, this::submit);
+
+        if (settings.getStatsIntervalSeconds() > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(JobTracker.daemonFactory("pipeline-stats"));
+            reporter.scheduleAtFixedRate(() -> jobLog.log("Pipeline " + describe(), -1),
+                    settings.getStatsIntervalSeconds(), settings.getStatsIntervalSeconds(), TimeUnit.SECONDS);
+        } else {
+            reporter = null;
+        }
+    }
+
+    // Names repositories in the statistics and applies their quotas; set before the first job is enqueued
+    public void setRouter(RepositoryRouter router) {
+        this.router = router;
+    }
+
+    // Exports each repository's queued and in-flight jobs and its released count; set before the first job is enqueued
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Blocks while the repository's submit queue is full; the future completes once the job has been released
+    public CompletableFuture<Void> enqueue(UUID repositoryId, List<String> files, int id) throws InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("JobPipeline is closed");
+        }
+        PipelineJob job = new PipelineJob(repositoryId, files, id);
+        submitStage.put(job);
+        return job.done;
+    }
+
+    // One line per stage: queued and active jobs, completed count, and mean queue wait / work / blocked-on-next-stage times
+    public String describe() {
+        long completedPolls = polled.sum();
+        return submitStage.describe()
+                + " | poll: tracked=" + (maxTrackedJobs - trackedSlots.availablePermits()) + "/" + maxTrackedJobs
+                + " awaiting-download=" + awaitingDownload.get()
+                + " done=" + completedPolls
+                + " time=" + millis(pollNanos.sum(), completedPolls) + "ms"
+                + " | " + downloadStage.describe()
+                + " | " + releaseStage.describe()
+                + submitQueue.describe();
+    }
+
+    private Stage submit(PipelineJob job) throws Exception {
+        try {
+            job.jobId = operations.submit(job.repositoryId, job.files, job.id);
+        } catch (Exception e) {
+            trackedSlots.release();
+            throw e;
+        } finally {
+            submitQueue.submitted(job.lane);
+        }
+        if (job.jobId == null) {
+            trackedSlots.release();
+            job.done.complete(null);
+            return null;
+        }
+        long trackedAt = System.nanoTime();
+        tracker.track(job.jobId, status -> operations.onStatus(job.jobId, status, job.id)).whenComplete((status, error) -> {
+            pollNanos.add(System.nanoTime() - trackedAt);
+            polled.increment();
+            if (error != null) {
+                trackedSlots.release();
+                job.done.completeExceptionally(error);
+                return;
+            }
+            job.status = status;
+            // Wait for room in the download queue on a virtual thread so the tracker's threads never block. The job
+            // keeps its tracked slot until then, which is what stops the submit stage when downloads fall behind.
+            awaitingDownload.incrementAndGet();
+            Thread.ofVirtual().start(() -> {
+                try {
+                    downloadStage.put(job);
+                } catch (InterruptedException e) {
+                    job.done.completeExceptionally(e);
+                } finally {
+                    awaitingDownload.decrementAndGet();
+                    trackedSlots.release();
+                }
+            });
+        });
+        return null;
+    }
+
+    private Stage download(PipelineJob job) throws Exception {
+        operations.download(job.jobId, job.status, job.id);
+        return releaseStage;
+    }
+
+    private Stage release(PipelineJob job) throws Exception {
+        operations.release(job.jobId, job.id);
+        return null;
+    }
+
+    private static long millis(long nanos, long count) {
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos / count);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        submitStage.stop();
+        downloadStage.stop();
+        releaseStage.stop();
+    }
+
+    private static final class PipelineJob {
+        private final UUID repositoryId;
+        private final List<String> files;
+        private final int id;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile UUID jobId;
+        private volatile JobStatusResponse status;
+        private volatile long enqueuedNanos;
+        private Lane lane;
+
+        private PipelineJob(UUID repositoryId, List<String> files, int id) {
+            this.repositoryId = repositoryId;
+            this.files = files;
+            this.id = id;
+        }
+    }
+
+    private static final class FifoQueue implements JobQueue {
+        private final BlockingQueue<PipelineJob> queue;
+
+        private FifoQueue(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void put(PipelineJob job) throws InterruptedException {
+            queue.put(job);
+        }
+
+        @Override
+        public PipelineJob take() throws InterruptedException {
+            return queue.take();
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+    }
+
+    // One repository's jobs in the submit queue. Only changed under the FairQueue's lock; volatile for the statistics.
+    private static final class Lane {
+        private final String name;
+        private final int maxConcurrent;
+        private final int maxInFlight;
+        private final ArrayDeque<PipelineJob> jobs = new ArrayDeque<>();
+        private final long createdNanos = System.nanoTime();
+        private final LongAdder released = new LongAdder();
+        private volatile int queued;
+        private volatile int submitting;
+        private volatile int inFlight;
+
+        private Lane(String name, QuotaSettings quota) {
+            this.name = name;
+            this.maxConcurrent = quota != null && quota.getMaxConcurrent() > 0 ? quota.getMaxConcurrent() : Integer.MAX_VALUE;
+            this.maxInFlight = quota != null && quota.getMaxInFlight() > 0 ? quota.getMaxInFlight() : Integer.MAX_VALUE;
+        }
+
+        private boolean isReady() {
+            return queued > 0 && submitting < maxConcurrent && inFlight < maxInFlight;
+        }
+
+        private String describe() {
+            double seconds = (System.nanoTime() - createdNanos) / 1e9;
+            return name + ": queued=" + queued + " submitting=" + submitting
+                    + " in-flight=" + inFlight + (maxInFlight == Integer.MAX_VALUE ? "" : "/" + maxInFlight)
+                    + " released=" + released.sum() + String.format(" (%.2f jobs/s)", released.sum() / Math.max(seconds, 1e-3));
+        }
+    }
+
+    // The submit stage's queue. Workers take from the repositories in turn, skipping any at its MaxConcurrent or
+    // MaxInFlight quota, so a repository with a long backlog or a slow server cannot hold up the others. Each
+    // repository can queue QueueCapacity jobs, and enqueue only blocks while the job's own repository is full.
+    private final class FairQueue implements JobQueue {
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final List<Lane> lanes = new ArrayList<>();
+        private final Map<UUID, Lane> byRepository = new HashMap<>();
+        private int next;
+        private int size;
+
+        private FairQueue(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void put(PipelineJob job) throws InterruptedException {
+            lock.lock();
+            try {
+                Lane lane = byRepository.computeIfAbsent(job.repositoryId, this::addLane);
+                while (lane.queued >= capacity) {
+                    changed.await();
+                }
+                job.lane = lane;
+                lane.jobs.add(job);
+                lane.queued++;
+                size++;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // A job counts against its repository's quotas from here until it is released or fails
+        @Override
+        public PipelineJob take() throws InterruptedException {
+            lock.lock();
+            try {
+                while (true) {
+                    for (int i = 0; i < lanes.size(); i++) {
+                        int index = (next + i) % lanes.size();
+                        Lane lane = lanes.get(index);
+                        if (lane.isReady()) {
+                            next = index + 1;
+                            PipelineJob job = lane.jobs.poll();
+                            lane.queued--;
+                            size--;
+                            lane.submitting++;
+                            lane.inFlight++;
+                            job.done.whenComplete((result, error) -> finished(lane, error == null));
+                            // An enqueue may be waiting for room in this repository's queue
+                            changed.signalAll();
+                            return job;
+                        }
+                    }
+                    changed.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private void submitted(Lane lane) {
+            lock.lock();
+            try {
+                lane.submitting--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void finished(Lane lane, boolean released) {
+            lock.lock();
+            try {
+                lane.inFlight--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (released) {
+                lane.released.increment();
+                if (metrics != null) {
+                    metrics.recordRepositoryJob(lane.name);
+                }
+            }
+        }
+
+        private Lane addLane(UUID repositoryId) {
+            Lane lane = router != null
+                    ? new Lane(router.name(repositoryId), router.quota(repositoryId))
+                    : new Lane(repositoryId.toString(), null);
+            lanes.add(lane);
+            if (metrics != null) {
+                metrics.registerRepository(lane.name, () -> lane.queued, () -> lane.inFlight);
+            }
+            return lane;
+        }
+
+        // Per-repository statistics, only once jobs have gone to more than one repository
+        private String describe() {
+            lock.lock();
+            try {
+                if (lanes.size() < 2) {
+                    return "";
+                }
+                StringBuilder text = new StringBuilder(" | repositories: ");
+                for (int i = 0; i < lanes.size(); i++) {
+                    text.append(i == 0 ? "" : ", ").append(lanes.get(i).describe());
+                }
+                return text.toString();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final class Stage {
+        private final String name;
+        private final JobQueue queue;
+        private final Semaphore admission;
+        private final List<Thread> workers = new ArrayList<>();
+        private final AtomicInteger active = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder workNanos = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+
+        private Stage(String name, int threads, JobQueue queue, Semaphore admission, StageWork work) {
+            this.name = name;
+            this.queue = queue;
+            this.admission = admission;
+            for (int i = 0; i < threads; i++) {
+                Thread worker = JobTracker.daemonFactory("pipeline-" + name).newThread(() -> runWorker(work));
+                workers.add(worker);
+                worker.start();
+            }
+        }
+
+        private void put(PipelineJob job) throws InterruptedException {
+            job.enqueuedNanos = System.nanoTime();
+            queue.put(job);
+        }
+
+        private void runWorker(StageWork work) {
+            while (running) {
+                PipelineJob job;
+                try {
+                    job = queue.take();
+                    long takenAt = System.nanoTime();
+                    waitNanos.add(takenAt - job.enqueuedNanos);
+                    if (admission != null) {
+                        admission.acquire();
+                        blockedNanos.add(System.nanoTime() - takenAt);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                active.incrementAndGet();
+                long start = System.nanoTime();
+                boolean finished = false;
+                try {
+                    Stage next = work.run(job);
+                    finished = this == releaseStage;
+                    long worked = System.nanoTime();
+                    workNanos.add(worked - start);
+                    if (next != null) {
+                        next.put(job);
+                        blockedNanos.add(System.nanoTime() - worked);
+                    }
+                } catch (InterruptedException e) {
+                    job.done.completeExceptionally(e);
+                    return;
+                } catch (Exception e) {
+                    workNanos.add(System.nanoTime() - start);
+                    job.done.completeExceptionally(e);
+                } finally {
+                    active.decrementAndGet();
+                    completed.increment();
+                }
+                // Completed after the bookkeeping so the statistics already include the job when its caller resumes
+                if (finished) {
+                    job.done.complete(null);
+                }
+            }
+        }
+
+        private String describe() {
+            long done = completed.sum();
+            return name + ": queued=" + queue.size() + " active=" + active.get() + " done=" + done
+                    + " wait=" + millis(waitNanos.sum(), done) + "ms"
+                    + " work=" + millis(workNanos.sum(), done) + "ms"
+                    + " blocked=" + millis(blockedNanos.sum(), done) + "ms";
+        }
+
+        private void stop() {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.io.IOException;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.apache.hc.core5.http.ParseException;
+
+public class JobPoller {
+    private final ApiClient client;
+    private final StatusBatcher batcher;
+    private final PollingStrategy strategy;
+
+    public JobPoller(ApiClient client, PollingStrategy strategy) {
+        this.client = client;
+        this.batcher = null;
+        this.strategy = strategy;
+    }
+
+    // Each check joins the batcher's next batch instead of sending its own request
+    public JobPoller(StatusBatcher batcher, PollingStrategy strategy) {
+        this.client = null;
+        this.batcher = batcher;
+        this.strategy = strategy;
+    }
+
+    // Blocks until the job reaches a Completed* status and returns that final status
+    public JobStatusResponse awaitCompletion(UUID jobId, Consumer<JobStatusResponse> onStatus)
+            throws IOException, ParseException, InterruptedException {
+        long start = System.nanoTime();
+        Thread.sleep(strategy.firstDelayMillis());
+
+        int attempt = 0;
+        JobStatusResponse status;
+        while (true) {
+            status = batcher != null ? batcher.awaitStatus(jobId) : client.getStatus(jobId);
+            attempt++;
+            onStatus.accept(status);
+            if (status.getStatus().startsWith("Completed")) {
+                break;
+            }
+            Thread.sleep(strategy.nextDelayMillis(attempt, (System.nanoTime() - start) / 1_000_000, status));
+        }
+
+        strategy.onCompleted(status);
+        return status;
+    }
+}
@@ -0,0 +1,630 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+// Runs the submit -> poll -> download -> release workflow for one or many jobs
+public class JobRunner implements AutoCloseable {
+    // Batched jobs can hold hundreds of files; only the first few are named in the log
+    private static final int MAX_LOGGED_FILES = 10;
+
+    public interface JobLog {
+        void log(String message, int id);
+    }
+
+    // The cache key of a submitted job's inputs and how many bytes its upload took
+    private record CacheEntry(String key, long inputBytes) {
+    }
+
+    private final ApiClient client;
+    private final AsyncApiClient asyncClient;
+    private final PollingStrategy pollingStrategy;
+    private final String downloadDirectory;
+    private final JobLog jobLog;
+    private final String executorMode;
+    private final ExecutorService workers;
+    private final JobTracker tracker;
+    private final JobPipeline pipeline;
+    private StatusBatcher statusBatcher;
+    private JobJournal journal;
+    private ContentCache cache;
+    private final Map<UUID, CacheEntry> cacheEntries = new ConcurrentHashMap<>();
+    private Metrics metrics;
+    // When the upload of each job in progress started, for the end-to-end time
+    private final Map<UUID, Long> jobStarts = new ConcurrentHashMap<>();
+    private PostProcessor postProcessor;
+    private JobScheduler scheduler;
+    // The input files of each job in progress, for its manifest
+    private final Map<UUID, List<String>> jobInputs = new ConcurrentHashMap<>();
+
+    public JobRunner(ApiClient client, PollingStrategy pollingStrategy, String downloadDirectory, JobLog jobLog,
+                     String executorMode, int jobThreads, int statusPollThreads) {
+        this(client, pollingStrategy, downloadDirectory, jobLog, executorMode, jobThreads, statusPollThreads, new PipelineSettings());
+    }
+
+    public JobRunner(ApiClient client, PollingStrategy pollingStrategy, String downloadDirectory, JobLog jobLog,
+                     String executorMode, int jobThreads, int statusPollThreads, PipelineSettings pipelineSettings) {
+        this.client = client;
+        this.asyncClient = null;
+        this.pollingStrategy = pollingStrategy;
+        this.downloadDirectory = downloadDirectory;
+        this.jobLog = jobLog;
+        this.executorMode = executorMode;
+        this.workers = isPipeline() ? null : createExecutor(executorMode, jobThreads);
+        // Virtual threads can afford to block while polling, so only the pooled modes need the shared tracker
+        this.tracker = isVirtual() ? null : new JobTracker(client, pollingStrategy, statusPollThreads);
+        this.pipeline = isPipeline() ? new JobPipeline(new StageOperations(), tracker, pipelineSettings, jobLog) : null;
+    }
+
+    // Runs jobs on the non-blocking client; the workers only run the short continuations between requests
+    public JobRunner(AsyncApiClient asyncClient, PollingStrategy pollingStrategy, String downloadDirectory, JobLog jobLog,
+                     String executorMode, int jobThreads) {
+        this(asyncClient, pollingStrategy, downloadDirectory, jobLog, executorMode, jobThreads, new PipelineSettings());
+    }
+
+    public JobRunner(AsyncApiClient asyncClient, PollingStrategy pollingStrategy, String downloadDirectory, JobLog jobLog,
+                     String executorMode, int jobThreads, PipelineSettings pipelineSettings) {
+        this.client = null;
+        this.asyncClient = asyncClient;
+        this.pollingStrategy = pollingStrategy;
+        this.downloadDirectory = downloadDirectory;
+        this.jobLog = jobLog;
+        this.executorMode = executorMode;
+        this.workers = isPipeline() ? null : createExecutor(executorMode, jobThreads);
+        this.tracker = new JobTracker(asyncClient::getStatus, pollingStrategy);
+        this.pipeline = isPipeline() ? new JobPipeline(new StageOperations(), tracker, pipelineSettings, jobLog) : null;
+    }
+
+    // Records every job's progress so a later run can resume it; set before the first job is started
+    public void setJournal(JobJournal journal) {
+        this.journal = journal;
+    }
+
+    // Answers jobs whose inputs were processed before from the cache, and adds every downloaded output to it
+    public void setCache(ContentCache cache) {
+        this.cache = cache;
+        leaveManifestOutOfCache();
+    }
+
+    private void leaveManifestOutOfCache() {
+        if (cache != null && postProcessor != null) {
+            cache.setLeftOut(postProcessor.getManifestFile());
+        }
+    }
+
+    // Records every job's final status, server-reported queue and processing times, and time until release
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        if (pipeline != null) {
+            pipeline.setMetrics(metrics);
+        }
+    }
+
+    // Answers the status checks that fall due together with shared requests; set before the first job is started
+    public void setStatusBatching(StatusBatchSettings settings) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        statusBatcher = asyncClient != null ? new StatusBatcher(asyncClient, settings) : new StatusBatcher(client, settings);
+        if (tracker != null) {
+            tracker.setStatusLookup(statusBatcher::getStatus);
+        }
+    }
+
+    // Extracts archive outputs and writes each job's manifest after it is downloaded; set before the first job is started
+    public void setPostProcessing(PostProcessSettings settings) {
+        if (settings.isEnabled()) {
+            postProcessor = new PostProcessor(settings, Paths.get(downloadDirectory));
+            leaveManifestOutOfCache();
+        }
+    }
+
+    // Starts new jobs by priority class and deadline; set before the first job is started. Jobs resumed from the
+    // journal are already on the server and bypass it.
+    public void setScheduler(JobScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    // Names repositories in the pipeline statistics and applies the Routing quotas
+    public void setRouter(RepositoryRouter router) {
+        if (pipeline != null) {
+            pipeline.setRouter(router);
+        }
+    }
+
+    public static ExecutorService createExecutor(String executorMode, int threads) {
+        return switch (executorMode.toLowerCase()) {
+            case "forkjoin" -> ForkJoinPool.commonPool();
+            case "virtual" -> Executors.newVirtualThreadPerTaskExecutor();
+            case "fixed" -> Executors.newFixedThreadPool(threads, JobTracker.daemonFactory("job-worker"));
+            default -> throw new IllegalArgumentException("Unknown executor mode: " + executorMode);
+        };
+    }
+
+    // Starts one job per file; each future completes once that job has been downloaded and released
+    public List<CompletableFuture<Void>> runSeparateJobs(UUID repositoryId, List<String> inputFiles) {
+        return runSeparateJobs(repositoryId, inputFiles, 0);
+    }
+
+    public List<CompletableFuture<Void>> runSeparateJobs(UUID repositoryId, List<String> inputFiles, int firstId) {
+        List<List<String>> jobs = new ArrayList<>();
+        for (String file : inputFiles) {
+            jobs.add(List.of(file));
+        }
+        return runJobs(repositoryId, jobs, firstId);
+    }
+
+    // Starts one job per group of files, all running concurrently on the workers
+    public List<CompletableFuture<Void>> runJobs(UUID repositoryId, List<List<String>> jobs) {
+        return runJobs(repositoryId, jobs, 0);
+    }
+
+    // Job IDs are numbered from firstId, e.g. after jobs resumed from the journal
+    public List<CompletableFuture<Void>> runJobs(UUID repositoryId, List<List<String>> jobs, int firstId) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            futures.add(runJob(repositoryId, jobs.get(i), firstId + i));
+        }
+        return futures;
+    }
+
+    // Starts the jobs of several repositories, numbered from firstId in the order given. Each repository's jobs are
+    // started by a thread of its own, so a repository whose pipeline queue is full does not hold up the others.
+    public List<CompletableFuture<Void>> runRoutedJobs(Map<UUID, List<List<String>>> jobs, int firstId) {
+        if (jobs.size() == 1) {
+            Map.Entry<UUID, List<List<String>>> only = jobs.entrySet().iterator().next();
+            return runJobs(only.getKey(), only.getValue(), firstId);
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<UUID, List<List<String>>> entry : jobs.entrySet()) {
+            List<CompletableFuture<Void>> started = new ArrayList<>();
+            for (int i = 0; i < entry.getValue().size(); i++) {
+                started.add(new CompletableFuture<>());
+            }
+            int first = firstId + futures.size();
+            Thread.ofVirtual().name("enqueue-" + entry.getKey()).start(() -> {
+                for (int i = 0; i < started.size(); i++) {
+                    CompletableFuture<Void> future = started.get(i);
+                    try {
+                        runJob(entry.getKey(), entry.getValue().get(i), first + i).whenComplete((result, e) -> {
+                            if (e != null) {
+                                future.completeExceptionally(e);
+                            } else {
+                                future.complete(null);
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+            futures.addAll(started);
+        }
+        return futures;
+    }
+
+    public CompletableFuture<Void> runJob(UUID repositoryId, List<String> files, int id) {
+        if (scheduler != null) {
+            return scheduler.schedule(files, () -> startJob(repositoryId, files, id));
+        }
+        return startJob(repositoryId, files, id);
+    }
+
+    private CompletableFuture<Void> startJob(UUID repositoryId, List<String> files, int id) {
+        if (pipeline != null) {
+            try {
+                return pipeline.enqueue(repositoryId, files, id);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        if (asyncClient != null) {
+            return runAsyncJob(repositoryId, files, id);
+        }
+        if (isVirtual()) {
+            return CompletableFuture.runAsync(() -> unchecked(() -> {
+                processJob(repositoryId, files, id);
+                return null;
+            }), workers);
+        }
+        return CompletableFuture
+                .supplyAsync(() -> unchecked(() -> submitJob(repositoryId, files, id)), workers)
+                .thenCompose(jobId -> jobId == null ? CompletableFuture.completedFuture(null) : tracker
+                        .track(jobId, s -> jobLog.log("Status: " + s.getStatus() + ". ID: " + jobId, id))
+                        .thenAcceptAsync(status -> unchecked(() -> {
+                            completeJob(jobId, status, id);
+                            return null;
+                        }), workers));
+    }
+
+    private CompletableFuture<Void> runAsyncJob(UUID repositoryId, List<String> files, int id) {
+        if (cache == null) {
+            return uploadAsyncJob(repositoryId, files, id, null);
+        }
+        // Hashing reads every input, so it runs on the workers rather than the caller
+        return CompletableFuture
+                .supplyAsync(() -> unchecked(() -> {
+                    String key = cache.key(repositoryId, files);
+                    return restoreFromCache(key, files, id) ? null : key;
+                }), workers)
+                .thenCompose(key -> key == null ? CompletableFuture.completedFuture(null) : uploadAsyncJob(repositoryId, files, id, key));
+    }
+
+    private CompletableFuture<Void> uploadAsyncJob(UUID repositoryId, List<String> files, int id, String cacheKey) {
+        long startNanos = System.nanoTime();
+        logSubmitting(files, id);
+        return asyncClient.upload(repositoryId, files).thenComposeAsync(upload -> {
+            UUID jobId = upload.jobId();
+            logSubmitted(upload, id);
+            rememberStart(jobId, startNanos);
+            rememberCacheKey(upload, cacheKey);
+            rememberInputs(jobId, files);
+            unchecked(() -> {
+                journalSubmitted(jobId, files);
+                return null;
+            });
+            return tracker
+                    .track(jobId, s -> jobLog.log("Status: " + s.getStatus() + ". ID: " + jobId, id))
+                    .thenComposeAsync(status -> {
+                        String location = unchecked(() -> prepareDownload(jobId, status, id));
+                        return asyncClient.download(jobId, location).thenComposeAsync(result -> {
+                            logDownloaded(result, location, id);
+                            unchecked(() -> {
+                                journalDownloaded(jobId, result);
+                                postProcess(jobId, location, result, id);
+                                return null;
+                            });
+                            storeInCache(jobId, location, status, id);
+                            jobLog.log("Releasing Job: " + jobId, id);
+                            return asyncClient.release(jobId);
+                        }, workers);
+                    }, workers)
+                    // release() completes on the I/O reactor, which must not wait for the journal's fsync
+                    .thenRunAsync(() -> {
+                        unchecked(() -> {
+                            journalReleased(jobId);
+                            return null;
+                        });
+                        recordReleased(jobId);
+                        jobLog.log("Job Released.\n", id);
+                    }, workers);
+        }, workers);
+    }
+
+    // Finishes a job a previous run left on the server: waits for it, downloads it unless that was already done, and
+    // releases it. Runs on its own virtual thread so it does not take a place in the pipeline or worker queues.
+    public CompletableFuture<Void> resumeJob(JobJournal.PendingJob job, int id) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Thread.ofVirtual().name("resume-" + id).start(() -> {
+            try {
+                UUID jobId = job.jobId();
+                jobLog.log("Resuming Job: " + jobId + " (" + job.files().size() + " files)", id);
+                if (!job.downloaded()) {
+                    rememberInputs(jobId, job.files());
+                    JobStatusResponse status = tracker != null
+                            ? tracker.track(jobId, s -> jobLog.log("Status: " + s.getStatus() + ". ID: " + jobId, id)).join()
+                            : poller().awaitCompletion(jobId, s -> jobLog.log("Status: " + s.getStatus() + ". ID: " + jobId, id));
+                    downloadJob(jobId, status, id);
+                } else {
+                    finishPostProcess(job, id);
+                }
+                releaseJob(jobId, id);
+                future.complete(null);
+            } catch (Exception e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof ApiException api && api.getCode() == 404) {
+                    // Released before the crash, but the release had not been recorded yet
+                    jobLog.log("Job " + job.jobId() + " is no longer on the server.\n", id);
+                    try {
+                        journalReleased(job.jobId());
+                        future.complete(null);
+                    } catch (IOException journalError) {
+                        future.completeExceptionally(journalError);
+                    }
+                } else {
+                    future.completeExceptionally(cause);
+                }
+            }
+        });
+        return future;
+    }
+
+    // Runs the whole workflow on the calling thread
+    public void processJob(UUID repositoryId, List<String> files, int id) throws Exception {
+        if (asyncClient != null || pipeline != null) {
+            try {
+                (pipeline != null ? runJob(repositoryId, files, id) : runAsyncJob(repositoryId, files, id)).join();
+                return;
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        UUID jobId = submitJob(repositoryId, files, id);
+        if (jobId == null) {
+            return;
+        }
+
+        // 3. Poll Status
+        JobPoller poller = poller();
+        JobStatusResponse status = poller.awaitCompletion(jobId, s -> jobLog.log("Status: " + s.getStatus() + ". ID: " + jobId, id));
+
+        completeJob(jobId, status, id);
+    }
+
+    // Returns null when the output was restored from the cache and nothing was submitted
+    private UUID submitJob(UUID repositoryId, List<String> files, int id) throws Exception {
+        String cacheKey = cache != null ? cache.key(repositoryId, files) : null;
+        if (cacheKey != null && restoreFromCache(cacheKey, files, id)) {
+            return null;
+        }
+        long startNanos = System.nanoTime();
+        logSubmitting(files, id);
+        UploadResult upload = asyncClient != null ? asyncClient.upload(repositoryId, files).join() : client.upload(repositoryId, files);
+        logSubmitted(upload, id);
+        rememberStart(upload.jobId(), startNanos);
+        rememberCacheKey(upload, cacheKey);
+        rememberInputs(upload.jobId(), files);
+        journalSubmitted(upload.jobId(), files);
+        return upload.jobId();
+    }
+
+    // A hit gets its own output folder, since there is no job ID to name it after
+    private boolean restoreFromCache(String cacheKey, List<String> files, int id) throws IOException {
+        Path location = Paths.get(downloadDirectory, "cached-" + UUID.randomUUID());
+        if (!cache.restore(cacheKey, location)) {
+            return false;
+        }
+        String name = files.size() == 1 ? Paths.get(files.get(0)).getFileName().toString() : files.size() + " files";
+        jobLog.log("Output for " + name + " restored from cache. Location: " + location + "\n", id);
+        if (postProcessor != null) {
+            // The cached output has no manifest, since the original job's names other inputs
+            PostProcessor.Manifest manifest = postProcessor.processRestored(location, files);
+            long matched = manifest.outputs().stream().filter(o -> o.input() != null).count();
+            jobLog.log("Post-processed: " + manifest.outputs().size() + " outputs, " + matched + " matched to an input.\n", id);
+        }
+        if (metrics != null) {
+            metrics.recordCached();
+        }
+        return true;
+    }
+
+    private void rememberStart(UUID jobId, long startNanos) {
+        if (metrics != null) {
+            jobStarts.put(jobId, startNanos);
+        }
+    }
+
+    // Jobs resumed from the journal have no start time and are left out of the end-to-end time
+    private void recordReleased(UUID jobId) {
+        Long startNanos = jobStarts.remove(jobId);
+        if (startNanos != null) {
+            metrics.recordJob(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void rememberInputs(UUID jobId, List<String> files) {
+        if (postProcessor != null) {
+            jobInputs.put(jobId, files);
+        }
+    }
+
+    private void rememberCacheKey(UploadResult upload, String cacheKey) {
+        if (cacheKey != null) {
+            cacheEntries.put(upload.jobId(), new CacheEntry(cacheKey, upload.bytes()));
+        }
+    }
+
+    // The job has already succeeded, so a failure here is only logged
+    private void storeInCache(UUID jobId, String location, JobStatusResponse status, int id) {
+        CacheEntry entry = cacheEntries.remove(jobId);
+        if (entry == null) {
+            return;
+        }
+        try {
+            cache.store(entry.key(), Paths.get(location), entry.inputBytes(), status.getTotalProcessingTimeInSec());
+        } catch (IOException e) {
+            jobLog.log("Failed to add the output of Job " + jobId + " to the cache: " + e.getMessage(), id);
+        }
+    }
+
+    // A crash between the server accepting a submission and this record being written still loses that job. A download
+    // is recorded as soon as it is in place, and what follows it is safe to repeat: a resumed run finishes
+    // post-processing from the recorded file, and a download that was in place but not yet recorded is fetched again
+    // and kept if it matches
+    private void journalSubmitted(UUID jobId, List<String> files) throws IOException {
+        if (journal != null) {
+            journal.submitted(jobId, files);
+        }
+    }
+
+    private void journalDownloaded(UUID jobId, DownloadResult result) throws IOException {
+        if (journal != null) {
+            journal.downloaded(jobId, result.path());
+        }
+    }
+
+    private void journalReleased(UUID jobId) throws IOException {
+        if (journal != null) {
+            journal.released(jobId);
+        }
+    }
+
+    private void logSubmitted(UploadResult upload, int id) {
+        jobLog.log(String.format("Submitted. Job ID: %s (%d bytes, %.1f MB/s)\n", upload.jobId(), upload.bytes(), upload.megabytesPerSecond()), id);
+    }
+
+    private void logSubmitting(List<String> files, int id) {
+        // 2. Submit files
+        String submitMessage = files.size() == 1
+                ? "Submitting file: " + Paths.get(files.get(0)).getFileName() + "..."
+                : files.size() <= MAX_LOGGED_FILES
+                ? "Submitting " + files.size() + " files (" + String.join(", ", files) + ") "
+                : "Submitting " + files.size() + " files (" + String.join(", ", files.subList(0, MAX_LOGGED_FILES)) + ", ...) ";
+        jobLog.log(submitMessage, id);
+    }
+
+    // Checks the final status and creates the job's output folder, returning its location
+    private String prepareDownload(UUID jobId, JobStatusResponse status, int id) throws Exception {
+        if (journal != null) {
+            journal.completed(jobId, status.getStatus());
+        }
+        if (metrics != null) {
+            metrics.recordCompleted(status);
+        }
+        if (!"CompletedSuccessful".equals(status.getStatus())) {
+            cacheEntries.remove(jobId);
+            jobStarts.remove(jobId);
+            jobInputs.remove(jobId);
+            throw new Exception("Job completed with status: " + status.getStatus() + ". Details: " + status.getDetails());
+        }
+        jobLog.log("Job " + jobId + " completed successfully.\n", id);
+
+        // 4. Download
+        String location = Paths.get(downloadDirectory, jobId.toString()).toString();
+        Files.createDirectories(Paths.get(location));
+
+        jobLog.log("Downloading files from Job: " + jobId, id);
+        return location;
+    }
+
+    private void completeJob(UUID jobId, JobStatusResponse status, int id) throws Exception {
+        downloadJob(jobId, status, id);
+        releaseJob(jobId, id);
+    }
+
+    private void downloadJob(UUID jobId, JobStatusResponse status, int id) throws Exception {
+        String location = prepareDownload(jobId, status, id);
+        DownloadResult result = asyncClient != null ? asyncClient.download(jobId, location).join() : client.download(jobId, location);
+        logDownloaded(result, location, id);
+        journalDownloaded(jobId, result);
+        postProcess(jobId, location, result, id);
+        storeInCache(jobId, location, status, id);
+    }
+
+    // Runs before the output is cached, so a cache hit restores the extracted files; the manifest is left out of the
+    // cache and written again for the hit, see restoreFromCache. The download
+    // is journaled first, so a job whose post-processing failed or was cut short by a crash is finished by a resumed
+    // run from the file already on disk, see finishPostProcess.
+    private void postProcess(UUID jobId, String location, DownloadResult result, int id) throws IOException {
+        List<String> inputs = jobInputs.remove(jobId);
+        if (postProcessor == null) {
+            return;
+        }
+        PostProcessor.Manifest manifest = postProcessor.process(jobId, Paths.get(location), result.path(), inputs != null ? inputs : List.of());
+        long matched = manifest.outputs().stream().filter(o -> o.input() != null).count();
+        jobLog.log("Post-processed: " + manifest.outputs().size() + " outputs, " + matched + " matched to an input.\n", id);
+    }
+
+    // A job journaled as downloaded whose folder has no manifest was interrupted while being post-processed. The
+    // output cache is not filled for resumed jobs, since their cache key was not journaled.
+    private void finishPostProcess(JobJournal.PendingJob job, int id) throws IOException {
+        Path location = Paths.get(downloadDirectory, job.jobId().toString());
+        if (postProcessor == null || job.download() == null || postProcessor.isProcessed(location)) {
+            return;
+        }
+        PostProcessor.Manifest manifest = postProcessor.reprocess(job.jobId(), location, Paths.get(job.download()), job.files());
+        jobLog.log("Post-processed after resuming: " + manifest.outputs().size() + " outputs.\n", id);
+    }
+
+    private void releaseJob(UUID jobId, int id) throws Exception {
+        // 5. Release
+        jobLog.log("Releasing Job: " + jobId, id);
+        if (asyncClient != null) {
+            asyncClient.release(jobId).join();
+        } else {
+            client.release(jobId);
+        }
+        journalReleased(jobId);
+        recordReleased(jobId);
+        jobLog.log("Job Released.\n", id);
+    }
+
+    private void logDownloaded(DownloadResult result, String location, int id) {
+        String checksum = result.checksum().isEmpty() ? "" : ", " + result.checksumAlgorithm() + ": " + result.checksum();
+        jobLog.log(String.format("Download complete. Location: %s (%d bytes, %.1f MB/s%s)\n", location, result.bytes(), result.megabytesPerSecond(), checksum), id);
+    }
+
+    private JobPoller poller() {
+        return statusBatcher != null ? new JobPoller(statusBatcher, pollingStrategy) : new JobPoller(client, pollingStrategy);
+    }
+
+    private boolean isVirtual() {
+        return "virtual".equalsIgnoreCase(executorMode);
+    }
+
+    private boolean isPipeline() {
+        return "pipeline".equalsIgnoreCase(executorMode);
+    }
+
+    // Per-stage statistics while running in pipeline mode, otherwise null
+    public String describePipeline() {
+        return pipeline != null ? pipeline.describe() : null;
+    }
+
+    // The same steps as the other modes, with each one run by its own pipeline stage
+    private final class StageOperations implements JobPipeline.Operations {
+        @Override
+        public UUID submit(UUID repositoryId, List<String> files, int id) throws Exception {
+            return submitJob(repositoryId, files, id);
+        }
+
+        @Override
+        public void onStatus(UUID jobId, JobStatusResponse status, int id) {
+            jobLog.log("Status: " + status.getStatus() + ". ID: " + jobId, id);
+        }
+
+        @Override
+        public void download(UUID jobId, JobStatusResponse status, int id) throws Exception {
+            downloadJob(jobId, status, id);
+        }
+
+        @Override
+        public void release(UUID jobId, int id) throws Exception {
+            releaseJob(jobId, id);
+        }
+    }
+
+    private static <T> T unchecked(Callable<T> call) {
+        try {
+            return call.call();
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pipeline != null) {
+            jobLog.log("Pipeline " + pipeline.describe(), -1);
+            pipeline.close();
+        }
+        if (tracker != null) {
+            tracker.close();
+        }
+        if (statusBatcher != null) {
+            jobLog.log("Status batching: " + statusBatcher.describe(), -1);
+            statusBatcher.close();
+        }
+        if (postProcessor != null) {
+            jobLog.log("Post-processing: " + postProcessor.describe(), -1);
+            postProcessor.close();
+        }
+        // The common pool ignores shutdown, so this is safe for every mode
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Decides when new jobs start. Every job belongs to a priority class, taken from a sidecar file next to an input, the
+// first class whose Match glob fits its path under Input, or DefaultClass; a job of several files takes the most urgent
+// class among them. A job's deadline is when it was queued plus its class's DeadlineSeconds, and while fewer than
+// MaxActive jobs are running the queued job with the earliest deadline starts next. An urgent job therefore overtakes
+// a bulk backlog at once, while bulk jobs still start once they have waited long enough to be the most overdue. A
+// class's MaxActive keeps it from taking every slot, so limiting bulk leaves room that urgent jobs never wait for, and
+// a class's MaxQueued turns further jobs away rather than letting its queue grow without end.
+public class JobScheduler implements AutoCloseable {
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private record QueuedJob(JobClass jobClass, long sequence, long queuedNanos, long deadlineNanos,
+                             Supplier<CompletableFuture<Void>> start, CompletableFuture<Void> done) {
+    }
+
+    // Earliest deadline first, then first come first served
+    private static final Comparator<QueuedJob> EARLIEST_DEADLINE = (a, b) -> a.deadlineNanos() != b.deadlineNanos()
+            ? Long.compare(a.deadlineNanos() - b.deadlineNanos(), 0) : Long.compare(a.sequence(), b.sequence());
+
+    // queue and active are only used under the scheduler's lock
+    private static final class JobClass {
+        private final String name;
+        private final PathMatcher matcher;
+        private final long deadlineNanos;
+        private final int maxActive;
+        private final int maxQueued;
+        private final PriorityQueue<QueuedJob> queue = new PriorityQueue<>(EARLIEST_DEADLINE);
+        private int active;
+        // From being queued until released or failed, and until started
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram wait = new LatencyHistogram();
+        private final LongAdder released = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder late = new LongAdder();
+
+        private JobClass(String name, String match, int deadlineSeconds, int maxActive, int maxQueued) {
+            this.name = name;
+            this.matcher = match.isEmpty() ? null : FileSystems.getDefault().getPathMatcher("glob:" + match);
+            this.deadlineNanos = TimeUnit.SECONDS.toNanos(deadlineSeconds);
+            this.maxActive = maxActive > 0 ? maxActive : Integer.MAX_VALUE;
+            this.maxQueued = maxQueued > 0 ? maxQueued : Integer.MAX_VALUE;
+        }
+    }
+
+    private final int maxActive;
+    private final String sidecarSuffix;
+    private final Path inputDirectory;
+    private final Map<String, JobClass> classes = new LinkedHashMap<>();
+    private final JobClass defaultClass;
+    // Starts jobs off the threads that finish them, since starting one can block, e.g. on a full pipeline queue
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(JobTracker.daemonFactory("job-scheduler"));
+    private int active;
+    private long sequence;
+    private Metrics metrics;
+
+    public JobScheduler(SchedulingSettings settings, Path inputDirectory) {
+        this.maxActive = settings.getMaxActive();
+        this.sidecarSuffix = settings.getSidecarSuffix();
+        this.inputDirectory = inputDirectory.toAbsolutePath().normalize();
+        for (PriorityClassSettings c : settings.getClasses()) {
+            classes.put(c.getName().toLowerCase(Locale.ROOT),
+                    new JobClass(c.getName(), c.getMatch(), c.getDeadlineSeconds(), c.getMaxActive(), c.getMaxQueued()));
+        }
+        JobClass listed = classes.get(settings.getDefaultClass().toLowerCase(Locale.ROOT));
+        if (listed == null) {
+            listed = new JobClass(settings.getDefaultClass(), "", settings.getDefaultDeadlineSeconds(), 0, 0);
+            classes.put(settings.getDefaultClass().toLowerCase(Locale.ROOT), listed);
+        }
+        this.defaultClass = listed;
+    }
+
+    // Exports each class's queued and active jobs, outcomes and latency; set before the first job is scheduled
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null) {
+            for (JobClass jobClass : classes.values()) {
+                metrics.registerClass(jobClass.name, () -> queued(jobClass), () -> active(jobClass));
+            }
+        }
+    }
+
+    // Sidecar files describe inputs and are not submitted themselves
+    public boolean isSidecar(String file) {
+        return !sidecarSuffix.isEmpty() && file.endsWith(sidecarSuffix);
+    }
+
+    // The name of the class the files' job would belong to
+    public String classify(List<String> files) {
+        return classOf(files).name;
+    }
+
+    // The files split by class, classes in the order first seen, so batches do not mix urgent and bulk files
+    public Map<String, List<String>> group(List<String> files) {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String file : files) {
+            groups.computeIfAbsent(classOf(file).name, k -> new ArrayList<>()).add(file);
+        }
+        return groups;
+    }
+
+    // Queues the job and returns a future that completes with the one start returns, or fails at once when the
+    // job's class already has MaxQueued jobs waiting
+    public CompletableFuture<Void> schedule(List<String> files, Supplier<CompletableFuture<Void>> start) {
+        JobClass jobClass = classOf(files);
+        QueuedJob job;
+        synchronized (this) {
+            if (jobClass.queue.size() >= jobClass.maxQueued) {
+                jobClass.rejected.increment();
+                if (metrics != null) {
+                    metrics.recordClassJob(jobClass.name, "rejected", -1);
+                }
+                return CompletableFuture.failedFuture(new RejectedExecutionException(
+                        "Job rejected: " + jobClass.maxQueued + " jobs of class " + jobClass.name + " are already waiting"));
+            }
+            long now = System.nanoTime();
+            job = new QueuedJob(jobClass, sequence++, now, now + jobClass.deadlineNanos, start, new CompletableFuture<>());
+            jobClass.queue.add(job);
+        }
+        dispatcher.execute(this::dispatch);
+        return job.done();
+    }
+
+    // One line per class: queued, active, released, failed, rejected and late jobs and latency percentiles
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        for (JobClass jobClass : classes.values()) {
+            text.append(text.isEmpty() ? "" : " | ").append(jobClass.name)
+                    .append(": queued=").append(queued(jobClass))
+                    .append(" active=").append(active(jobClass))
+                    .append(" released=").append(jobClass.released.sum())
+                    .append(" failed=").append(jobClass.failed.sum())
+                    .append(" rejected=").append(jobClass.rejected.sum())
+                    .append(" late=").append(jobClass.late.sum())
+                    .append(" latency").append(percentiles(jobClass.latency))
+                    .append(" wait").append(percentiles(jobClass.wait));
+        }
+        return text.toString();
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        StringBuilder text = new StringBuilder();
+        for (double percentile : PERCENTILES) {
+            text.append(text.isEmpty() ? " p" : "/p").append((int) percentile);
+        }
+        text.append('=');
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            text.append(i == 0 ? "" : "/").append(String.format("%.2f", histogram.getValueAtPercentile(PERCENTILES[i]) / 1e6));
+        }
+        return text.append('s').toString();
+    }
+
+    private synchronized int queued(JobClass jobClass) {
+        return jobClass.queue.size();
+    }
+
+    private synchronized int active(JobClass jobClass) {
+        return jobClass.active;
+    }
+
+    // Starts queued jobs, earliest deadline first among the classes below their MaxActive, until MaxActive are running
+    private void dispatch() {
+        while (true) {
+            QueuedJob next = null;
+            synchronized (this) {
+                if (active >= maxActive) {
+                    return;
+                }
+                for (JobClass jobClass : classes.values()) {
+                    QueuedJob head = jobClass.queue.peek();
+                    if (head != null && jobClass.active < jobClass.maxActive && (next == null || EARLIEST_DEADLINE.compare(head, next) < 0)) {
+                        next = head;
+                    }
+                }
+                if (next == null) {
+                    return;
+                }
+                next.jobClass().queue.poll();
+                next.jobClass().active++;
+                active++;
+            }
+            start(next);
+        }
+    }
+
+    private void start(QueuedJob job) {
+        job.jobClass().wait.recordValue((System.nanoTime() - job.queuedNanos()) / 1000);
+        CompletableFuture<Void> started;
+        try {
+            started = job.start().get();
+        } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((result, error) -> finished(job, error));
+    }
+
+    private void finished(QueuedJob job, Throwable error) {
+        JobClass jobClass = job.jobClass();
+        synchronized (this) {
+            jobClass.active--;
+            active--;
+        }
+        long now = System.nanoTime();
+        long nanos = now - job.queuedNanos();
+        jobClass.latency.recordValue(nanos / 1000);
+        if (now - job.deadlineNanos() > 0) {
+            jobClass.late.increment();
+        }
+        (error == null ? jobClass.released : jobClass.failed).increment();
+        if (metrics != null) {
+            metrics.recordClassJob(jobClass.name, error == null ? "released" : "failed", nanos);
+        }
+        // Completed after the bookkeeping so the statistics already include the job when its caller resumes
+        if (error == null) {
+            job.done().complete(null);
+        } else {
+            job.done().completeExceptionally(error);
+        }
+        dispatcher.execute(this::dispatch);
+    }
+
+    // The most urgent class among the files', i.e. the one with the shortest deadline
+    private JobClass classOf(List<String> files) {
+        JobClass urgent = null;
+        for (String file : files) {
+            JobClass jobClass = classOf(file);
+            if (urgent == null || jobClass.deadlineNanos < urgent.deadlineNanos) {
+                urgent = jobClass;
+            }
+        }
+        return urgent != null ? urgent : defaultClass;
+    }
+
+    private JobClass classOf(String file) {
+        if (!sidecarSuffix.isEmpty()) {
+            Path sidecar = Paths.get(file + sidecarSuffix);
+            if (Files.isRegularFile(sidecar)) {
+                try {
+                    JobClass named = classes.get(Files.readString(sidecar).trim().toLowerCase(Locale.ROOT));
+                    if (named != null) {
+                        return named;
+                    }
+                } catch (IOException ignored) {
+                    // An unreadable sidecar leaves the file to Match like one without a sidecar
+                }
+            }
+        }
+        Path absolute = Paths.get(file).toAbsolutePath().normalize();
+        Path relative = absolute.startsWith(inputDirectory) ? inputDirectory.relativize(absolute) : absolute.getFileName();
+        for (JobClass jobClass : classes.values()) {
+            if (jobClass.matcher != null && jobClass.matcher.matches(relative)) {
+                return jobClass;
+            }
+        }
+        return defaultClass;
+    }
+
+    @Override
+    public void close() {
+        dispatcher.shutdownNow();
+    }
+}
@@ -0,0 +1,187 @@
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Tracks every outstanding job in a single delay queue. One scheduler thread waits for the next job that is due
+// for a status check and hands the request off, so thousands of jobs can be polled without a thread per job.
+public class JobTracker implements AutoCloseable {
+    private final DelayQueue<TrackedJob> queue = new DelayQueue<>();
+    private volatile Function<UUID, CompletableFuture<JobStatusResponse>> statusLookup;
+    private final PollingStrategy strategy;
+    private final ExecutorService statusPool;
+    private final Thread scheduler;
+    private final AtomicInteger trackedCount = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public JobTracker(ApiClient client, PollingStrategy strategy, int statusThreads) {
+        this.strategy = strategy;
+        this.statusPool = Executors.newFixedThreadPool(statusThreads, daemonFactory("job-tracker-status"));
+        this.statusLookup = jobId -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.getStatus(jobId);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, statusPool);
+        this.scheduler = startScheduler();
+    }
+
+    public JobTracker(Function<UUID, CompletableFuture<JobStatusResponse>> statusLookup, PollingStrategy strategy) {
+        this.strategy = strategy;
+        this.statusPool = null;
+        this.statusLookup = statusLookup;
+        this.scheduler = startScheduler();
+    }
+
+    // Starts polling the job; the returned future completes with the job's final Completed* status
+    public CompletableFuture<JobStatusResponse> track(UUID jobId, Consumer<JobStatusResponse> onStatus) {
+        if (!running) {
+            throw new IllegalStateException("JobTracker is closed");
+        }
+        TrackedJob job = new TrackedJob(jobId, onStatus);
+        job.dueNanos = job.startNanos + TimeUnit.MILLISECONDS.toNanos(strategy.firstDelayMillis());
+        trackedCount.incrementAndGet();
+        schedule(job);
+        return job.future;
+    }
+
+    // Asks for statuses through the given lookup from now on, e.g. StatusBatcher::getStatus
+    public void setStatusLookup(Function<UUID, CompletableFuture<JobStatusResponse>> statusLookup) {
+        this.statusLookup = statusLookup;
+    }
+
+    public int getTrackedCount() {
+        return trackedCount.get();
+    }
+
+    private Thread startScheduler() {
+        Thread thread = new Thread(() -> {
+            while (running) {
+                try {
+                    poll(queue.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, "job-tracker-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void poll(TrackedJob job) {
+        CompletableFuture<JobStatusResponse> request;
+        try {
+            request = statusLookup.apply(job.jobId);
+        } catch (RuntimeException e) {
+            finish(job, null, e);
+            return;
+        }
+
+        request.whenComplete((status, error) -> {
+            if (error != null) {
+                finish(job, null, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                return;
+            }
+            job.attempt++;
+            try {
+                job.onStatus.accept(status);
+            } catch (RuntimeException e) {
+                finish(job, null, e);
+                return;
+            }
+            if (status.getStatus().startsWith("Completed")) {
+                strategy.onCompleted(status);
+                finish(job, status, null);
+                return;
+            }
+            long now = System.nanoTime();
+            long delay = strategy.nextDelayMillis(job.attempt, TimeUnit.NANOSECONDS.toMillis(now - job.startNanos), status);
+            job.dueNanos = now + TimeUnit.MILLISECONDS.toNanos(delay);
+            schedule(job);
+        });
+    }
+
+    // A job queued while close() was draining the queue would never be polled again, so whichever of the two takes it
+    // out of the queue fails it
+    private void schedule(TrackedJob job) {
+        if (!running) {
+            finishClosed(job);
+            return;
+        }
+        queue.put(job);
+        if (!running && queue.remove(job)) {
+            finishClosed(job);
+        }
+    }
+
+    private void finishClosed(TrackedJob job) {
+        finish(job, null, new IllegalStateException("JobTracker closed before job " + job.jobId + " completed"));
+    }
+
+    private void finish(TrackedJob job, JobStatusResponse status, Throwable error) {
+        trackedCount.decrementAndGet();
+        if (error != null) {
+            job.future.completeExceptionally(error);
+        } else {
+            job.future.complete(status);
+        }
+    }
+
+    static ThreadFactory daemonFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        scheduler.interrupt();
+        if (statusPool != null) {
+            statusPool.shutdownNow();
+        }
+        for (TrackedJob job : queue) {
+            if (queue.remove(job)) {
+                finishClosed(job);
+            }
+        }
+    }
+
+    private static final class TrackedJob implements Delayed {
+        private final UUID jobId;
+        private final Consumer<JobStatusResponse> onStatus;
+        private final CompletableFuture<JobStatusResponse> future = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private volatile long dueNanos;
+        private int attempt;
+
+        private TrackedJob(UUID jobId, Consumer<JobStatusResponse> onStatus) {
+            this.jobId = jobId;
+            this.onStatus = onStatus;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((TrackedJob) other).dueNanos);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+// Crash recovery: every job state change is appended to a journal so a restarted run resumes jobs instead of resubmitting
+public class JournalSettings {
+    private boolean enabled;
+    private String directory = "Journal";
+    // Extra time the first waiting record is held so more records can share its fsync. Records written while an fsync
+    // is running always share the next one, so this only helps on disks where an fsync is very slow.
+    private int syncIntervalMillis = 0;
+    private int segmentMb = 16;
+    // Rewrite the journal down to the live state once it has grown to this many segments
+    private int compactAfterSegments = 4;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public void setSyncIntervalMillis(int syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    public int getSegmentMb() {
+        return segmentMb;
+    }
+
+    public void setSegmentMb(int segmentMb) {
+        this.segmentMb = segmentMb;
+    }
+
+    public int getCompactAfterSegments() {
+        return compactAfterSegments;
+    }
+
+    public void setCompactAfterSegments(int compactAfterSegments) {
+        this.compactAfterSegments = compactAfterSegments;
+    }
+
+    public boolean hasValidValues() {
+        return directory != null && !directory.isEmpty() && syncIntervalMillis >= 0 && segmentMb > 0 && compactAfterSegments > 1;
+    }
+}
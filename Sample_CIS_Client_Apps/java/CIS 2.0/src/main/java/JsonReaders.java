@@ -0,0 +1,19 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.util.UUID;
+
+// Readers for the CIS responses, built once and shared by both clients and the environment cache. An ObjectReader is
+// immutable and keeps the deserializers it resolved, so a response is parsed straight from the entity's stream or
+// bytes without looking the type up again or decoding the body to a String first.
+public final class JsonReaders {
+    public static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+    public static final ObjectReader STATUS = MAPPER.readerFor(JobStatusResponse.class);
+    public static final ObjectReader ENVIRONMENT = MAPPER.readerFor(EnvironmentResponse.class);
+    public static final ObjectReader JOB_ID = MAPPER.readerFor(UUID.class);
+    public static final ObjectReader COMPLETED = MAPPER.readerForListOf(JobStatusResponse.class);
+
+    private JsonReaders() {
+    }
+}
@@ -0,0 +1,394 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Capacity test: runs the full submit, poll, download and release workflow against the server in appsettings.json at
+// a target rate (open loop) or concurrency (closed loop) and reports documents per hour with latency percentiles per
+// phase. Latencies are measured from when a job was scheduled to start, not from when it actually started, so a
+// client or server stall shows up as the delay every scheduled job saw rather than hiding as fewer samples.
+// Unpaced closed-loop runs, which have no schedule, add the samples a stall kept from being taken instead.
+// Usage: java -cp CIS-2.0-1.0-SNAPSHOT.jar LoadGenerator (settings in the Load section of appsettings.json)
+public class LoadGenerator {
+    private static final String[] PHASES = {"submit", "queue", "processing", "wait", "download", "release", "total"};
+    private static final int PROGRESS_SECONDS = 10;
+
+    private final ApiClient client;
+    private final PollingStrategy pollingStrategy;
+    private final LoadSettings settings;
+    private final UUID repositoryId;
+    private final List<String> inputs;
+    private final Path outputDirectory;
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    // Job latency during the warm-up, used as the expected interval of an unpaced closed loop
+    private final LatencyHistogram warmupTotal = new LatencyHistogram();
+    private volatile long expectedIntervalMicros = -1;
+    private final AtomicLong nextInput = new AtomicLong();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    // Releases that failed, counted apart from the jobs as a job that released badly may still have succeeded
+    private final LongAdder releaseFailed = new LongAdder();
+    // Throughput counts the jobs released between the end of the warm-up and the end of the run
+    private final LongAdder measuredCompleted = new LongAdder();
+    private final LongAdder measuredDocuments = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder downloadedBytes = new LongAdder();
+    private volatile long measureStart;
+    private volatile long measureEnd = Long.MAX_VALUE;
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final AtomicLong inFlight = new AtomicLong();
+    private volatile boolean stopping;
+
+    public LoadGenerator(ApiClient client, PollingStrategy pollingStrategy, LoadSettings settings, UUID repositoryId,
+                         List<String> inputs, Path outputDirectory) {
+        this.client = client;
+        this.pollingStrategy = pollingStrategy;
+        this.settings = settings;
+        this.repositoryId = repositoryId;
+        this.inputs = inputs;
+        this.outputDirectory = outputDirectory;
+        for (String phase : PHASES) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    public static void main(String[] args) {
+        Config config = Config.loadConfig();
+        if (config == null) {
+            System.exit(1);
+        }
+        LoadSettings load = config.getLoad();
+        ApiClient client = new ApiClient(config.getBaseUrl(), config.getApiKeyHeader(), config.getApiKey(), config.isTrustCerts(),
+                config.getConnectionPool(), config.getDownload(), config.getUpload(), config.getResilience());
+        Path synthesized = null;
+        Path output = null;
+        boolean succeeded = false;
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicBoolean shuttingDown = new AtomicBoolean();
+        try {
+            RepositoryDto repository;
+            try (EnvironmentCache environment = EnvironmentCache.open(client::getEnvironment, config.getEnvironment(),
+                    config.getBaseUrl(), config.getApiKey())) {
+                repository = environment.getDefaultRepository();
+            }
+
+            List<String> inputs;
+            if (load.getInputDirectory().isEmpty()) {
+                synthesized = Files.createTempDirectory("cis-load-input");
+                inputs = synthesize(synthesized, load.getSyntheticFiles(), load.getFileKb());
+            } else {
+                try (Stream<Path> files = Files.list(Paths.get(load.getInputDirectory()))) {
+                    inputs = files.filter(Files::isRegularFile).map(Path::toString).sorted().collect(Collectors.toList());
+                }
+                if (inputs.isEmpty()) {
+                    throw new Exception("No files in " + load.getInputDirectory() + " to submit.");
+                }
+            }
+            output = Files.createTempDirectory("cis-load-output");
+
+            LoadGenerator generator = new LoadGenerator(client, PollingStrategy.fromConfig(config), load, repository.getId(), inputs, output);
+            System.out.println("Load test against " + config.getBaseUrl() + " using repository " + repository.getName());
+            System.out.println(generator.describeSettings() + "\n");
+
+            // On Ctrl+C stop starting jobs and report on what has run so far once the jobs in flight are done
+            Thread shutdownHook = new Thread(() -> {
+                shuttingDown.set(true);
+                generator.stop();
+                try {
+                    finished.await();
+                } catch (InterruptedException ignored) {
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+            generator.run();
+            String report = "Load test against " + config.getBaseUrl() + "\n" + generator.report();
+            System.out.println("\n" + report);
+            Files.writeString(Paths.get(load.getReportFile()), report);
+            System.out.println("Report written to " + load.getReportFile());
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignored) {
+                // Already shutting down
+            }
+            succeeded = true;
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        } finally {
+            deleteTree(synthesized);
+            deleteTree(output);
+            finished.countDown();
+        }
+        // System.exit would wait forever for the shutdown hook that is waiting for this thread
+        if (!shuttingDown.get()) {
+            System.exit(succeeded ? 0 : 1);
+        }
+    }
+
+    // Stops starting jobs; the ones in flight still finish and are reported
+    public void stop() {
+        stopping = true;
+        measureEnd = Math.min(measureEnd, System.nanoTime());
+    }
+
+    public void run() throws InterruptedException {
+        long begin = System.nanoTime();
+        long warmupEnd = begin + TimeUnit.SECONDS.toNanos(settings.getWarmupSeconds());
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+        measureStart = warmupEnd;
+        measureEnd = end;
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(JobTracker.daemonFactory("load-progress"));
+        progress.scheduleAtFixedRate(() -> System.out.println(describeProgress(begin, warmupEnd)), PROGRESS_SECONDS, PROGRESS_SECONDS, TimeUnit.SECONDS);
+        try {
+            if ("open".equalsIgnoreCase(settings.getMode())) {
+                runOpen(begin, warmupEnd, end);
+            } else {
+                runClosed(begin, warmupEnd, end);
+            }
+        } finally {
+            progress.shutdownNow();
+        }
+    }
+
+    // Starts a job every 1 / RatePerSecond seconds whether or not earlier ones have finished
+    private void runOpen(long begin, long warmupEnd, long end) throws InterruptedException {
+        long periodNanos = (long) (1e9 / settings.getRatePerSecond());
+        Semaphore slots = new Semaphore(settings.getMaxInFlight());
+        for (long i = 0; ; i++) {
+            long intended = begin + i * periodNanos;
+            if (intended >= end || stopping) {
+                break;
+            }
+            parkUntil(intended);
+            slots.acquire();
+            boolean measured = intended >= warmupEnd;
+            Thread.ofVirtual().name("load-job-" + i).start(() -> {
+                try {
+                    runJob(intended, measured, 0);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+        slots.acquire(settings.getMaxInFlight());
+    }
+
+    // Keeps Concurrency jobs going, each worker starting its next job once the last one has been released
+    private void runClosed(long begin, long warmupEnd, long end) throws InterruptedException {
+        int workers = settings.getConcurrency();
+        long intervalNanos = settings.getRatePerSecond() > 0 ? (long) (1e9 * workers / settings.getRatePerSecond()) : 0;
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            // Paced workers are spread over the interval so they do not all submit at once
+            long workerBegin = begin + (intervalNanos * w) / workers;
+            threads.add(Thread.ofVirtual().name("load-worker-" + w).start(() -> {
+                for (long k = 0; ; k++) {
+                    long intended = intervalNanos > 0 ? workerBegin + k * intervalNanos : System.nanoTime();
+                    if (intended >= end || stopping) {
+                        break;
+                    }
+                    parkUntil(intended);
+                    boolean measured = intended >= warmupEnd;
+                    runJob(intended, measured, intervalNanos > 0 || !measured ? 0 : expectedInterval());
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void runJob(long intended, boolean measured, long expectedIntervalMicros) {
+        started.increment();
+        inFlight.incrementAndGet();
+        Path location = null;
+        UUID jobId = null;
+        boolean releasing = false;
+        try {
+            List<String> files = nextFiles();
+            UploadResult upload = client.upload(repositoryId, files);
+            long submitted = System.nanoTime();
+            jobId = upload.jobId();
+            JobStatusResponse status = new JobPoller(client, pollingStrategy).awaitCompletion(jobId, s -> {
+            });
+            long finished = System.nanoTime();
+            if (!"CompletedSuccessful".equals(status.getStatus())) {
+                throw new IOException("Job completed with status: " + status.getStatus());
+            }
+            location = Files.createDirectories(outputDirectory.resolve(jobId.toString()));
+            DownloadResult download = client.download(jobId, location.toString());
+            long downloaded = System.nanoTime();
+            releasing = true;
+            if (!release(jobId)) {
+                return;
+            }
+            long released = System.nanoTime();
+            completed.increment();
+            if (released >= measureStart && released < measureEnd) {
+                measuredCompleted.increment();
+                measuredDocuments.add(files.size());
+                uploadedBytes.add(upload.bytes());
+                downloadedBytes.add(download.bytes());
+            }
+
+            long total = micros(released - intended);
+            if (!measured) {
+                warmupTotal.recordValue(total);
+                return;
+            }
+            histograms.get("submit").recordValue(micros(submitted - intended));
+            histograms.get("queue").recordValue((long) (status.getTotalQueueTimeInSec() * 1e6));
+            histograms.get("processing").recordValue((long) (status.getTotalProcessingTimeInSec() * 1e6));
+            histograms.get("wait").recordValue(micros(finished - submitted));
+            histograms.get("download").recordValue(micros(downloaded - finished));
+            histograms.get("release").recordValue(micros(released - downloaded));
+            histograms.get("total").recordValueWithExpectedInterval(total, expectedIntervalMicros);
+        } catch (Exception e) {
+            failed.increment();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            errors.computeIfAbsent(String.valueOf(e.getMessage()), k -> new LongAdder()).increment();
+        } finally {
+            // A job that failed after it was submitted is released too, so it does not stay on the server
+            if (jobId != null && !releasing) {
+                release(jobId);
+            }
+            inFlight.decrementAndGet();
+            deleteTree(location);
+        }
+    }
+
+    private boolean release(UUID jobId) {
+        try {
+            client.release(jobId);
+            return true;
+        } catch (Exception e) {
+            releaseFailed.increment();
+            errors.computeIfAbsent("Release: " + e.getMessage(), k -> new LongAdder()).increment();
+            return false;
+        }
+    }
+
+    // The median job latency of the warm-up, fixed when the first measured job of an unpaced closed loop starts
+    private long expectedInterval() {
+        if (expectedIntervalMicros < 0) {
+            expectedIntervalMicros = warmupTotal.getValueAtPercentile(50);
+        }
+        return expectedIntervalMicros;
+    }
+
+    private List<String> nextFiles() {
+        List<String> files = new ArrayList<>(settings.getFilesPerJob());
+        for (int i = 0; i < settings.getFilesPerJob(); i++) {
+            files.add(inputs.get((int) (nextInput.getAndIncrement() % inputs.size())));
+        }
+        return files;
+    }
+
+    public String describeSettings() {
+        String source = settings.getInputDirectory().isEmpty()
+                ? inputs.size() + " synthesized " + settings.getFileKb() + " KB files"
+                : inputs.size() + " files from " + settings.getInputDirectory();
+        String load = "open".equalsIgnoreCase(settings.getMode())
+                ? "open loop at " + settings.getRatePerSecond() + " jobs/s (at most " + settings.getMaxInFlight() + " in flight)"
+                : "closed loop with " + settings.getConcurrency() + " concurrent jobs"
+                + (settings.getRatePerSecond() > 0 ? " paced to " + settings.getRatePerSecond() + " jobs/s" : "");
+        return "Mode: " + load + ", " + settings.getFilesPerJob() + " files per job from " + source
+                + "\nDuration: " + settings.getDurationSeconds() + "s after a " + settings.getWarmupSeconds() + "s warm-up";
+    }
+
+    private String describeProgress(long begin, long warmupEnd) {
+        long now = System.nanoTime();
+        return String.format("%4ds %s started=%d completed=%d failed=%d release-failed=%d in-flight=%d",
+                TimeUnit.NANOSECONDS.toSeconds(now - begin), now < warmupEnd ? "(warm-up)" : "", started.sum(), completed.sum(),
+                failed.sum(), releaseFailed.sum(), inFlight.get());
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(describeSettings()).append('\n');
+        report.append(String.format("Jobs: %d started, %d completed, %d failed, %d failed to release (%d released in the measured period)%n",
+                started.sum(), completed.sum(), failed.sum(), releaseFailed.sum(), measuredCompleted.sum()));
+        double seconds = Math.max(1, measureEnd - measureStart) / 1e9;
+        report.append(String.format("Throughput: %.2f jobs/s, %.0f documents/hour, upload %.1f MB/s, download %.1f MB/s%n",
+                measuredCompleted.sum() / seconds, measuredDocuments.sum() * 3600 / seconds,
+                uploadedBytes.sum() / 1_048_576.0 / seconds, downloadedBytes.sum() / 1_048_576.0 / seconds));
+        String correction;
+        if ("open".equalsIgnoreCase(settings.getMode()) || settings.getRatePerSecond() > 0) {
+            correction = "submit and total are measured from each job's scheduled start";
+        } else if (expectedIntervalMicros > 0) {
+            correction = String.format("total includes samples for stalls longer than the warm-up median of %.1f ms", expectedIntervalMicros / 1000.0);
+        } else {
+            correction = "none (no warm-up to estimate the expected interval from)";
+        }
+        report.append("Coordinated omission correction: ").append(correction).append('\n');
+        report.append(String.format("%n%-11s %8s %10s %10s %10s %10s %10s %10s%n", "phase (ms)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            report.append(String.format("%-11s %8d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), histogram.getCount(),
+                    histogram.getMean() / 1000, histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMax() / 1000.0));
+        }
+        if (!errors.isEmpty()) {
+            report.append("\nErrors:\n");
+            errors.entrySet().stream()
+                    .sorted(Map.Entry.<String, LongAdder>comparingByValue(Comparator.comparingLong(LongAdder::sum)).reversed())
+                    .forEach(e -> report.append(String.format("%8d x %s%n", e.getValue().sum(), e.getKey())));
+        }
+        return report.toString();
+    }
+
+    private static void parkUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static List<String> synthesize(Path directory, int count, int fileKb) throws IOException {
+        // Distinct content per file, so nothing between client and server can answer a job from a cache
+        Random random = new Random();
+        byte[] content = new byte[fileKb * 1024];
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(content);
+            files.add(Files.write(directory.resolve("load" + i + ".pdf"), content).toString());
+        }
+        return files;
+    }
+
+    private static void deleteTree(Path path) {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            System.out.println("Failed to delete " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+// Load generator: submits synthesized or existing input files to the configured server at a target rate or concurrency
+public class LoadSettings {
+    // "open" starts jobs at RatePerSecond however long earlier ones take; "closed" keeps Concurrency jobs running
+    private String mode = "open";
+    private double ratePerSecond = 1.0;
+    // In closed mode a RatePerSecond above 0 paces each of the Concurrency workers, which is what lets stalls be
+    // corrected for; at 0 every worker starts its next job as soon as the last one is released
+    private int concurrency = 8;
+    private int durationSeconds = 60;
+    // Jobs started during the warm-up are run but not measured
+    private int warmupSeconds = 10;
+    // Open mode stops starting jobs on time once this many are in flight; the delay is still counted in their latency
+    private int maxInFlight = 1000;
+    private int filesPerJob = 1;
+    // Input files are taken in turn from this folder, or synthesized when it is empty
+    private String inputDirectory = "";
+    private int fileKb = 256;
+    private int syntheticFiles = 100;
+    private String reportFile = "load-report.txt";
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public void setRatePerSecond(double ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public void setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getFilesPerJob() {
+        return filesPerJob;
+    }
+
+    public void setFilesPerJob(int filesPerJob) {
+        this.filesPerJob = filesPerJob;
+    }
+
+    public String getInputDirectory() {
+        return inputDirectory;
+    }
+
+    public void setInputDirectory(String inputDirectory) {
+        this.inputDirectory = inputDirectory;
+    }
+
+    public int getFileKb() {
+        return fileKb;
+    }
+
+    public void setFileKb(int fileKb) {
+        this.fileKb = fileKb;
+    }
+
+    public int getSyntheticFiles() {
+        return syntheticFiles;
+    }
+
+    public void setSyntheticFiles(int syntheticFiles) {
+        this.syntheticFiles = syntheticFiles;
+    }
+
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    public boolean hasValidValues() {
+        boolean open = "open".equalsIgnoreCase(mode);
+        return (open || "closed".equalsIgnoreCase(mode))
+                && (open ? ratePerSecond > 0 : ratePerSecond >= 0)
+                && concurrency > 0 && durationSeconds > 0 && warmupSeconds >= 0 && maxInFlight > 0
+                && filesPerJob > 0 && fileKb > 0 && syntheticFiles > 0 && inputDirectory != null
+                && reportFile != null && !reportFile.isEmpty();
+    }
+}
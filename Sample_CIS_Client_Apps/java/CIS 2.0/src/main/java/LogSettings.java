@@ -0,0 +1,48 @@
+// Job and error logs are written by one background thread; callers only add the line to a queue
+public class LogSettings {
+    // "text" for the "yyyy-MM-dd HH:mm:ss: message" lines, or "json" for one JSON object per line
+    private String format = "text";
+    // Lines that can wait to be written; callers block while it is full. Rounded up to a power of two.
+    private int bufferSize = 65536;
+    // Extra time the writer waits after the first line so more lines share each write
+    private int flushMillis = 0;
+    // Job log files kept open between writes; the least recently written is closed first
+    private int maxOpenFiles = 64;
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getFlushMillis() {
+        return flushMillis;
+    }
+
+    public void setFlushMillis(int flushMillis) {
+        this.flushMillis = flushMillis;
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    public boolean hasValidValues() {
+        return ("text".equalsIgnoreCase(format) || "json".equalsIgnoreCase(format))
+                && bufferSize > 1 && bufferSize <= (1 << 30) && flushMillis >= 0 && maxOpenFiles > 0;
+    }
+}
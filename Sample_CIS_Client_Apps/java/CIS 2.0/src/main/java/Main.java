@@ -1,16 +1,25 @@
 
 
+import org.apache.hc.core5.pool.PoolStats;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -20,109 +29,430 @@ public class Main {
     private static final String INPUT_DIRECTORY = "Input";
     private static final String DOWNLOAD_DIRECTORY = "Output";
     private static Config appSettings;
+    private static PollingStrategy pollingStrategy;
+    private static AsyncLogger logger;
+    private static JobScheduler scheduler;
 
     public static void main(String[] args) {
         if (!startupTasks()) {
             return;
         }
 
-        List<String> inputFiles;
-        try (Stream<Path> stream = Files.list(Paths.get(INPUT_DIRECTORY))) {
-            inputFiles = stream.filter(Files::isRegularFile)
-                    .map(Path::toString)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            handleError("Failed to list input files: " + e.getMessage());
-            return;
+        if (appSettings.getScheduling().isEnabled()) {
+            scheduler = new JobScheduler(appSettings.getScheduling(), Paths.get(INPUT_DIRECTORY));
+        }
+        boolean watchMode = appSettings.getWatch().isEnabled();
+        List<String> inputFiles = List.of();
+        if (!watchMode) {
+            try (Stream<Path> stream = listInput()) {
+                inputFiles = stream.filter(Files::isRegularFile)
+                        .map(Path::toString)
+                        .filter(file -> !isSidecar(file))
+                        .collect(Collectors.toList());
+            } catch (IOException e) {
+                handleError("Failed to list input files: " + e.getMessage());
+                return;
+            }
         }
 
-        ApiClient client = new ApiClient(appSettings.getBaseUrl(), appSettings.getApiKeyHeader(), appSettings.getApiKey(), appSettings.isTrustCerts());
+        boolean useAsyncClient = "async".equalsIgnoreCase(appSettings.getClientMode());
+        ConnectionPoolSettings pool = appSettings.getConnectionPool();
+        ApiClient client = useAsyncClient ? null : new ApiClient(appSettings.getBaseUrl(), appSettings.getApiKeyHeader(), appSettings.getApiKey(), appSettings.isTrustCerts(), pool, appSettings.getDownload(), appSettings.getUpload(), appSettings.getResilience());
+        AsyncApiClient asyncClient = useAsyncClient ? new AsyncApiClient(appSettings.getBaseUrl(), appSettings.getApiKeyHeader(), appSettings.getApiKey(), appSettings.isTrustCerts(), pool, appSettings.getDownload(), appSettings.getUpload(), appSettings.getResilience()) : null;
+        ScheduledExecutorService poolStatsReporter = null;
+        JobJournal journal = null;
+        ContentCache cache = null;
+        Metrics metrics = null;
+        EnvironmentCache environment = null;
+        MetadataIndex metadata = null;
+        int failedJobs = 0;
 
         try {
             System.out.println("SETTINGS");
             System.out.println("Url: " + appSettings.getBaseUrl());
             System.out.println("Submit as Separate Jobs: " + (appSettings.isSeparateJobs() ? "Yes" : "No"));
+            if (appSettings.isBatchJobs()) {
+                System.out.println("Batch Jobs: up to " + appSettings.getMaxFilesPerJob() + " files, " + appSettings.getMaxMegabytesPerJob() + " MB per job");
+            }
+            System.out.println("Client Mode: " + appSettings.getClientMode());
+            System.out.println("Executor Mode: " + appSettings.getExecutorMode());
+            if ("pipeline".equalsIgnoreCase(appSettings.getExecutorMode())) {
+                PipelineSettings stages = appSettings.getPipeline();
+                System.out.println("Pipeline: " + stages.getSubmitThreads() + " submit, " + stages.getDownloadThreads() + " download, "
+                        + stages.getReleaseThreads() + " release threads, queues of " + stages.getQueueCapacity() + ", up to " + stages.getMaxTrackedJobs() + " tracked jobs");
+            }
+            System.out.println("Connection Pool: " + pool.getMaxConnectionsPerRoute() + " per route, " + pool.getMaxConnectionsTotal() + " total");
+            ResilienceSettings resilience = appSettings.getResilience();
+            System.out.println("Resilience: " + resilience.getRetryAttempts() + " retries, breaker after " + resilience.getBreakerFailures() + " failures, "
+                    + (resilience.getMaxConcurrency() > 0 ? "concurrency limit " + resilience.getMinConcurrency() + "-" + resilience.getMaxConcurrency() : "no concurrency limit"));
+            StatusBatchSettings statusBatch = appSettings.getStatusBatch();
+            System.out.println("Status Batching: " + (statusBatch.isEnabled() ? statusBatch.getWindowMillis() + "ms window, Completed from "
+                    + statusBatch.getMinBatch() + " jobs, up to " + statusBatch.getMaxParallel() + " Status requests at once" : "off"));
+            PostProcessSettings postProcess = appSettings.getPostProcess();
+            System.out.println("Post-Processing: " + (postProcess.isEnabled() ? (postProcess.isExtractArchives() ? "extract archives with "
+                    + postProcess.getThreads() + " threads, " : "") + "manifest " + postProcess.getManifestFile() : "off"));
+            SchedulingSettings scheduling = appSettings.getScheduling();
+            System.out.println("Scheduling: " + (scheduling.isEnabled() ? scheduling.getClasses().size() + " priority classes besides "
+                    + scheduling.getDefaultClass() + ", up to " + scheduling.getMaxActive() + " active jobs" : "off"));
+            MetadataSettings metadataSettings = appSettings.getMetadata();
+            System.out.println("Metadata: " + (metadataSettings.isEnabled() ? metadataSettings.getDefaults().size() + " default fields"
+                    + (metadataSettings.getCsvFile().isEmpty() ? "" : ", CSV " + metadataSettings.getCsvFile())
+                    + (metadataSettings.getSidecarSuffix().isEmpty() ? "" : ", sidecars *" + metadataSettings.getSidecarSuffix()) : "off"));
             System.out.println("Skip Cert Verification: " + (appSettings.isTrustCerts() ? "Yes" : "No"));
-            System.out.println("Polling Rate: " + appSettings.getPollingRateSeconds() + "s\n");
+            System.out.println("Polling Mode: " + appSettings.getPollingMode());
+            if ("fixed".equalsIgnoreCase(appSettings.getPollingMode())) {
+                System.out.println("Polling Rate: " + appSettings.getPollingRateSeconds() + "s\n");
+            } else {
+                System.out.println("Polling Range: " + appSettings.getMinPollingMillis() + "ms - " + appSettings.getMaxPollingSeconds() + "s\n");
+            }
+
+            if (watchMode) {
+                System.out.println("Watch Mode: files are submitted once unchanged for " + appSettings.getWatch().getStableMillis() + "ms\n");
+            } else {
+                System.out.println("Press enter to start...");
+                new Scanner(System.in).nextLine();
+            }
 
-            System.out.println("Press enter to start...");
-            new Scanner(System.in).nextLine();
 
+            if (pool.getStatsIntervalSeconds() > 0) {
+                poolStatsReporter = Executors.newSingleThreadScheduledExecutor(JobTracker.daemonFactory("pool-stats"));
+                poolStatsReporter.scheduleAtFixedRate(() -> {
+                    PoolStats stats = useAsyncClient ? asyncClient.getPoolStats() : client.getPoolStats();
+                    System.out.println("Connection Pool: leased=" + stats.getLeased() + ", pending=" + stats.getPending()
+                            + ", available=" + stats.getAvailable() + ", max=" + stats.getMax());
+                }, pool.getStatsIntervalSeconds(), pool.getStatsIntervalSeconds(), TimeUnit.SECONDS);
+            }
+
+            if (appSettings.getMetrics().isEnabled()) {
+                metrics = new Metrics(appSettings.getMetrics());
+                metrics.start();
+                if (useAsyncClient) {
+                    asyncClient.setMetrics(metrics);
+                } else {
+                    client.setMetrics(metrics);
+                }
+                if (scheduler != null) {
+                    scheduler.setMetrics(metrics);
+                }
+                System.out.println("Metrics: " + metrics.describe());
+            }
 
             // 1. Get Environment
-            EnvironmentResponse env = client.getEnvironment();
-            if (env.getRepositories().isEmpty()) {
-                throw new Exception("No repositories available.");
-            }
-            UUID repositoryId = env.getRepositories().get(0).getId(); // Assume only one repository for simplicity
-            System.out.println("Using repository: " + env.getRepositories().get(0).getName() + " (ID: " + repositoryId + ")");
-
-            if (appSettings.isSeparateJobs() && inputFiles.size() > 1) {
-                System.out.println("Submitting as multiple jobs.\n");
-                // Process each file as a separate job in parallel
-                List<CompletableFuture<Void>> futures = new ArrayList<>();
-                for (int i = 0; i < inputFiles.size(); i++) {
-                    int finalI = i;
-                    List<String> singleFile = List.of(inputFiles.get(i));
-                    futures.add(CompletableFuture.runAsync(() -> {
-                        try {
-                            processJob(client, repositoryId, singleFile, finalI);
-                        } catch (Exception e) {
-                            handleError("Error in job " + finalI + ": " + e.getMessage());
-                        }
-                    }));
+            environment = EnvironmentCache.open(useAsyncClient ? () -> asyncClient.getEnvironment().get() : client::getEnvironment,
+                    appSettings.getEnvironment(), appSettings.getBaseUrl(), appSettings.getApiKey());
+            System.out.println("Environment: " + environment.describe());
+            RepositoryDto repository = environment.getDefaultRepository();
+            UUID repositoryId = repository.getId();
+            System.out.println("Using repository: " + repository.getName() + " (ID: " + repositoryId + ")");
+            if (metadataSettings.isEnabled()) {
+                metadata = MetadataIndex.open(metadataSettings, Paths.get(INPUT_DIRECTORY), environment.getEnvironment().getGlobalVariables());
+                if (useAsyncClient) {
+                    asyncClient.setMetadata(metadata);
+                } else {
+                    client.setMetadata(metadata);
+                }
+                System.out.println("Metadata: " + metadata.describe());
+            }
+            RepositoryRouter router = new RepositoryRouter(appSettings.getRouting(), environment, Paths.get(INPUT_DIRECTORY));
+            if (router.hasRoutes() || router.hasQuotas()) {
+                System.out.println("Routing: " + appSettings.getRouting().getRoutes().size() + " routes, "
+                        + appSettings.getRouting().getQuotas().size() + " quotas, other files go to " + repository.getName());
+                if (router.hasQuotas() && !"pipeline".equalsIgnoreCase(appSettings.getExecutorMode())) {
+                    System.out.println("Routing quotas only apply with ExecutorMode pipeline and are ignored.");
                 }
-                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
-            } else {
-                System.out.println("Submitting as same job.\n");
-                // Process all files as one job
-                processJob(client, repositoryId, inputFiles, -1);
             }
 
-            System.out.println("Demo Completed Successfully.");
+            List<JobJournal.PendingJob> pendingJobs = List.of();
+            if (appSettings.getJournal().isEnabled()) {
+                journal = JobJournal.open(appSettings.getJournal());
+                pendingJobs = journal.getPendingJobs();
+                System.out.println("Journal: " + journal.describe());
+                int submitted = inputFiles.size();
+                inputFiles = withoutProcessed(journal, inputFiles);
+                if (inputFiles.size() < submitted) {
+                    System.out.println("Skipping " + (submitted - inputFiles.size()) + " input files already processed or in progress.");
+                }
+            }
+            if (appSettings.getCache().isEnabled()) {
+                cache = ContentCache.open(appSettings.getCache());
+                if (metadata != null) {
+                    cache.setMetadata(metadata);
+                }
+                System.out.println("Cache: " + cache.describe());
+            }
+
+            try (JobRunner runner = useAsyncClient
+                    ? new JobRunner(asyncClient, pollingStrategy, DOWNLOAD_DIRECTORY, Main::log, appSettings.getExecutorMode(), appSettings.getJobThreads(),
+                    appSettings.getPipeline())
+                    : new JobRunner(client, pollingStrategy, DOWNLOAD_DIRECTORY, Main::log,
+                    appSettings.getExecutorMode(), appSettings.getJobThreads(), appSettings.getStatusPollThreads(), appSettings.getPipeline())) {
+                runner.setJournal(journal);
+                runner.setCache(cache);
+                runner.setMetrics(metrics);
+                runner.setRouter(router);
+                runner.setStatusBatching(appSettings.getStatusBatch());
+                runner.setPostProcessing(appSettings.getPostProcess());
+                runner.setScheduler(scheduler);
+                // Jobs a previous run left on the server are finished alongside the new ones; they take the first job IDs
+                List<CompletableFuture<Void>> resumed = new ArrayList<>();
+                if (!pendingJobs.isEmpty()) {
+                    System.out.println("Resuming " + pendingJobs.size() + " jobs from the previous run.\n");
+                    for (JobJournal.PendingJob pending : pendingJobs) {
+                        resumed.add(runner.resumeJob(pending, resumed.size()));
+                    }
+                }
+
+                Map<UUID, List<String>> routed = router.group(inputFiles);
+                if (watchMode) {
+                    watchInput(runner, router, journal, resumed);
+                } else if (inputFiles.isEmpty()) {
+                    System.out.println("No new input files to submit.\n");
+                } else if (routed.size() > 1) {
+                    Map<UUID, List<List<String>>> jobs = planJobs(routed);
+                    int count = jobs.values().stream().mapToInt(List::size).sum();
+                    System.out.println("Submitting " + inputFiles.size() + " files to " + routed.size() + " repositories as " + count + " jobs.\n");
+                    // Each repository's jobs run in parallel with the others'
+                    failedJobs += awaitJobs(runner.runRoutedJobs(jobs, resumed.size()), resumed.size());
+                } else if (!routed.containsKey(repositoryId)) {
+                    // Every file is routed to the same repository, which is not the default one
+                    System.out.println("Submitting all files to " + router.name(routed.keySet().iterator().next()) + ".\n");
+                    failedJobs += awaitJobs(runner.runRoutedJobs(planJobs(routed), resumed.size()), resumed.size());
+                } else if (appSettings.isSeparateJobs() && inputFiles.size() > 1) {
+                    System.out.println("Submitting as multiple jobs.\n");
+                    // Process each file as a separate job in parallel
+                    failedJobs += awaitJobs(runner.runSeparateJobs(repositoryId, inputFiles, resumed.size()), resumed.size());
+                } else if (appSettings.isBatchJobs() && inputFiles.size() > 1) {
+                    List<List<String>> batches = new ArrayList<>();
+                    for (List<String> files : byClass(inputFiles)) {
+                        batches.addAll(planBatches(files));
+                    }
+                    System.out.println("Submitting " + inputFiles.size() + " files as " + batches.size() + " batched jobs.\n");
+                    // Process each batch as a separate job in parallel
+                    failedJobs += awaitJobs(runner.runJobs(repositoryId, batches, resumed.size()), resumed.size());
+                } else {
+                    System.out.println("Submitting as same job.\n");
+                    // Process all files as one job
+                    runner.processJob(repositoryId, inputFiles, -1);
+                }
+                if (!watchMode) {
+                    failedJobs += awaitJobs(resumed, 0);
+                }
+            }
+
+            logger.flush();
+            if (watchMode) {
+                System.out.println("Stopped watching for input files.");
+            } else if (failedJobs > 0) {
+                System.out.println("Demo Completed with " + failedJobs + " failed jobs, see " + LOG_FILE_PATH + ".");
+            } else {
+                System.out.println("Demo Completed Successfully.");
+            }
         } catch (Exception e) {
             handleError("Error: " + e.getMessage());
+        } finally {
+            if (poolStatsReporter != null) {
+                poolStatsReporter.shutdownNow();
+            }
+            if (asyncClient != null) {
+                asyncClient.close();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            if (cache != null) {
+                System.out.println("Cache: " + cache.describe());
+            }
+            if (metadata != null) {
+                System.out.println("Metadata: " + metadata.describe());
+            }
+            if (scheduler != null) {
+                System.out.println("Scheduling: " + scheduler.describe());
+                scheduler.close();
+            }
+            System.out.println("Resilience: " + (useAsyncClient ? asyncClient.describeResilience() : client.describeResilience()));
+            if (metrics != null) {
+                metrics.close();
+            }
+            if (environment != null) {
+                environment.close();
+            }
+            logger.close();
+        }
+
+        if (!watchMode) {
+            System.out.println("Press enter to close...");
+            new Scanner(System.in).nextLine();
+        }
+        if (failedJobs > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Daemon mode: submits files as they settle in the input folder until the process is stopped. Each group of files
+    // that settles together is split into jobs the same way a one-off run would split the whole folder.
+    private static void watchInput(JobRunner runner, RepositoryRouter router, JobJournal journal, List<CompletableFuture<Void>> resumed)
+            throws Exception {
+        Set<CompletableFuture<Void>> inProgress = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < resumed.size(); i++) {
+            track(inProgress, resumed.get(i), i);
+        }
+        Thread mainThread = Thread.currentThread();
+        InputWatcher watcher = new InputWatcher(Paths.get(INPUT_DIRECTORY), appSettings.getWatch());
+        watcher.setRecursive(isInputRecursive());
+        // On Ctrl+C stop looking for new files, then let the jobs already submitted finish before the JVM exits
+        Thread shutdownHook = new Thread(() -> {
+            watcher.close();
+            try {
+                mainThread.join();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        try {
+            watcher.start();
+            System.out.println("Watching " + INPUT_DIRECTORY + " for new files. Press Ctrl+C to stop.\n");
+
+            int nextId = resumed.size();
+            List<String> files;
+            while ((files = watcher.take()) != null) {
+                files = files.stream().filter(file -> !isSidecar(file)).toList();
+                if (files.isEmpty()) {
+                    continue;
+                }
+                if (journal != null) {
+                    files = withoutProcessed(journal, files);
+                    if (files.isEmpty()) {
+                        continue;
+                    }
+                }
+                Map<UUID, List<List<String>>> jobs = planJobs(router.group(files));
+                List<CompletableFuture<Void>> started = new ArrayList<>();
+                if (jobs.size() == 1) {
+                    Map.Entry<UUID, List<List<String>>> only = jobs.entrySet().iterator().next();
+                    log("Found " + files.size() + " new input files, submitting as " + only.getValue().size() + " jobs.", -1);
+                    for (List<String> job : only.getValue()) {
+                        // Blocks while the pipeline is full, which is fine: the watcher keeps collecting files meanwhile
+                        started.add(runner.runJob(only.getKey(), job, nextId + started.size()));
+                    }
+                } else {
+                    started = runner.runRoutedJobs(jobs, nextId);
+                    log("Found " + files.size() + " new input files, submitting to " + jobs.size() + " repositories as "
+                            + started.size() + " jobs.", -1);
+                }
+                for (CompletableFuture<Void> future : started) {
+                    int id = nextId++;
+                    track(inProgress, future, id);
+                }
+            }
+
+            log("Input watcher stopped (" + watcher.describe() + "). Waiting for " + inProgress.size() + " jobs in progress.", -1);
+            CompletableFuture.allOf(inProgress.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignored) {
+                // Already shutting down
+            }
+            watcher.close();
+        }
+    }
+
+    // Keeps the future in the set until it completes, logging a failure instead of exiting
+    private static void track(Set<CompletableFuture<Void>> inProgress, CompletableFuture<Void> future, int id) {
+        inProgress.add(future);
+        future.whenComplete((result, e) -> {
+            inProgress.remove(future);
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                logError("Error in job " + id + ": " + cause.getMessage());
+            }
+        });
+    }
+
+    private static List<String> withoutProcessed(JobJournal journal, List<String> files) {
+        List<String> remaining = new ArrayList<>(files.size());
+        for (String file : files) {
+            if (!journal.isProcessed(file)) {
+                remaining.add(file);
+            }
         }
+        return remaining;
+    }
 
-        System.out.println("Press enter to close...");
-        new Scanner(System.in).nextLine();
+    // Splits each repository's files into jobs the same way a one-off run splits the whole folder
+    private static Map<UUID, List<List<String>>> planJobs(Map<UUID, List<String>> routed) throws IOException {
+        Map<UUID, List<List<String>>> jobs = new LinkedHashMap<>();
+        for (Map.Entry<UUID, List<String>> entry : routed.entrySet()) {
+            List<List<String>> repositoryJobs = new ArrayList<>();
+            for (List<String> files : byClass(entry.getValue())) {
+                if (appSettings.isSeparateJobs() || files.size() == 1) {
+                    for (String file : files) {
+                        repositoryJobs.add(List.of(file));
+                    }
+                } else if (appSettings.isBatchJobs()) {
+                    repositoryJobs.addAll(planBatches(files));
+                } else {
+                    repositoryJobs.add(files);
+                }
+            }
+            jobs.put(entry.getKey(), repositoryJobs);
+        }
+        return jobs;
     }
 
-    private static void processJob(ApiClient client, UUID repositoryId, List<String> files, int id) throws Exception {
-        // 2. Submit files
-        String submitMessage = files.size() == 1
-                ? "Submitting file: " + Paths.get(files.get(0)).getFileName() + "..."
-                : "Submitting " + files.size() + " files (" + String.join(", ", files) + ") ";
-        log(submitMessage, id);
-
-        UUID jobId = client.submit(repositoryId, files);
-        log("Submitted. Job ID: " + jobId + "\n", id);
-
-        // 3. Poll Status
-        JobStatusResponse status;
-        do {
-            Thread.sleep(appSettings.getPollingRateSeconds() * 1000L);
-            status = client.getStatus(jobId);
-            log("Status: " + status.getStatus() + ". ID: " + jobId, id);
-        } while (!status.getStatus().startsWith("Completed"));
-
-        if (!"CompletedSuccessful".equals(status.getStatus())) {
-            throw new Exception("Job completed with status: " + status.getStatus() + ". Details: " + status.getDetails());
-        }
-        log("Job " + jobId + " completed successfully.\n", id);
-
-        // 4. Download
-        String location = Paths.get(DOWNLOAD_DIRECTORY, jobId.toString()).toString();
-        Files.createDirectories(Paths.get(location));
-
-        log("Downloading files from Job: " + jobId, id);
-        client.download(jobId, location);
-        log("Download complete. Location: " + location + "\n", id);
-
-        // 5. Release
-        log("Releasing Job: " + jobId, id);
-        client.release(jobId);
-        log("Job Released.\n", id);
+    // The files of each priority class, so an urgent file is never batched with bulk ones
+    private static List<List<String>> byClass(List<String> files) {
+        return scheduler == null ? List.of(files) : new ArrayList<>(scheduler.group(files).values());
+    }
+
+    // Sidecar files describe inputs and are not submitted themselves, nor is a metadata CSV kept in Input
+    private static boolean isSidecar(String file) {
+        if (scheduler != null && scheduler.isSidecar(file)) {
+            return true;
+        }
+        MetadataSettings metadata = appSettings.getMetadata();
+        if (!metadata.isEnabled()) {
+            return false;
+        }
+        if (!metadata.getSidecarSuffix().isEmpty() && file.endsWith(metadata.getSidecarSuffix())) {
+            return true;
+        }
+        return !metadata.getCsvFile().isEmpty()
+                && Paths.get(file).toAbsolutePath().normalize().equals(Paths.get(metadata.getCsvFile()).toAbsolutePath().normalize());
+    }
+
+    // Files directly in Input, or in any subfolder when Routing routes or Scheduling classes can match them
+    private static Stream<Path> listInput() throws IOException {
+        return isInputRecursive() ? Files.walk(Paths.get(INPUT_DIRECTORY)) : Files.list(Paths.get(INPUT_DIRECTORY));
+    }
+
+    private static boolean isInputRecursive() {
+        SchedulingSettings scheduling = appSettings.getScheduling();
+        return !appSettings.getRouting().getRoutes().isEmpty() || (scheduling.isEnabled() && !scheduling.getClasses().isEmpty());
+    }
+
+    private static List<List<String>> planBatches(List<String> inputFiles) throws IOException {
+        BatchPlanner planner = new BatchPlanner(appSettings.getMaxFilesPerJob(), appSettings.getMaxMegabytesPerJob() * 1024L * 1024L);
+        List<List<String>> batches = new ArrayList<>();
+        for (BatchPlanner.Batch batch : planner.plan(inputFiles)) {
+            batches.add(batch.files());
+        }
+        return batches;
+    }
+
+    // Waits for every job; a failed job is logged and the others carry on. Returns how many failed.
+    private static int awaitJobs(List<CompletableFuture<Void>> futures, int firstId) {
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).join();
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                logError("Error in job " + (firstId + i) + ": " + cause.getMessage());
+                failed++;
+            }
+        }
+        return failed;
     }
 
     private static boolean startupTasks() {
@@ -137,6 +467,9 @@ public class Main {
         if (appSettings == null) {
             return false;
         }
+        pollingStrategy = PollingStrategy.fromConfig(appSettings);
+        // Log files are opened on their first line, after the job log folder below has been cleared
+        logger = new AsyncLogger(appSettings.getLogging(), System.out);
 
         Path inputDir = Paths.get(INPUT_DIRECTORY);
         if (!Files.exists(inputDir)) {
@@ -171,7 +504,10 @@ public class Main {
             }
         }
 
-        try (Stream<Path> stream = Files.list(inputDir)) {
+        if (appSettings.getWatch().isEnabled()) {
+            return true;
+        }
+        try (Stream<Path> stream = listInput()) {
             if (stream.noneMatch(Files::isRegularFile)) {
                 handleError("No files in Input folder to submit. Exiting.");
                 return false;
@@ -185,34 +521,17 @@ public class Main {
     }
 
     private static void log(String message, int id) {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        String logMessage = timestamp + ": " + message.trim() + "\n";
-
         if (id == -1) {
-            System.out.println(message);
-            try {
-                Files.writeString(Paths.get(JOB_LOG_FILE_PATH, "joblog.txt"), logMessage, java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
-            } catch (IOException e) {
-                System.out.println("Failed to log: " + e.getMessage());
-            }
+            logger.log(Paths.get(JOB_LOG_FILE_PATH, "joblog.txt"), "INFO", id, message.trim(), message);
         } else {
-            System.out.println("Thread: " + id + ", " + message);
-            try {
-                Files.writeString(Paths.get(JOB_LOG_FILE_PATH, "joblog_" + id + ".txt"), logMessage, java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
-            } catch (IOException e) {
-                System.out.println("Failed to log: " + e.getMessage());
-            }
+            logger.log(Paths.get(JOB_LOG_FILE_PATH, "joblog_" + id + ".txt"), "INFO", id, message.trim(), "Thread: " + id + ", " + message);
         }
     }
 
     private static void handleError(String message) {
-        System.out.println(message);
-        try {
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            Files.writeString(Paths.get(LOG_FILE_PATH), timestamp + ": " + message + "\n", java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            System.out.println("Failed to log error: " + e.getMessage());
-        }
+        logError(message);
+        // Everything logged so far is written before the process exits
+        logger.close();
 
         for (int i = appSettings.getErrorCloseSeconds(); i >= 0; i--) {
             System.out.print("\rClosing in " + i + " seconds...");
@@ -225,4 +544,9 @@ public class Main {
         }
         System.exit(1);
     }
+
+    // Records an error without exiting, for failures that only affect one job of a long-running watch
+    private static void logError(String message) {
+        logger.log(Paths.get(LOG_FILE_PATH), "ERROR", -1, message, message);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// The metadata of every input file, resolved once: Defaults and the CSV rows when the index is opened, a sidecar the
+// first time its file is looked up. {{Name}} placeholders are replaced with global variables at the same time, so a
+// submission only looks up finished lists. Rows with the same values share one list, which keeps the index small when
+// thousands of files carry the same few fields. A file is looked up when its cache key is computed and again when it
+// is uploaded, so the last few thousand sidecars read are kept with the size and modification time they were read at;
+// one that has changed since, e.g. rewritten in watch mode, is read again.
+public class MetadataIndex {
+    // The pair the sample has always sent with each file
+    static final List<MetadataDto> SAMPLE = List.of(metadata("Java Sample App Submission", "Test file uploaded via Java sample app"));
+
+    // Every file gets the sample pair, as when Metadata is disabled
+    static final MetadataIndex DEFAULT = new MetadataIndex(SAMPLE, Map.of(), "", Map.of());
+
+    private static final int MAX_SIDECARS = 4096;
+
+    // A sidecar's resolved metadata and the file's size and modification time when it was read
+    private record Sidecar(long size, FileTime modified, List<MetadataDto> metadata) {
+    }
+
+    private final List<MetadataDto> defaults;
+    // CSV rows by the absolute path of their input
+    private final Map<String, List<MetadataDto>> rows;
+    private final String sidecarSuffix;
+    // Global variables by lower-case key
+    private final Map<String, String> variables;
+    // Access-ordered, so iteration starts at the least recently used sidecar
+    private final LinkedHashMap<String, Sidecar> sidecars = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder sidecarsRead = new LongAdder();
+    private int distinctRows;
+
+    private MetadataIndex(List<MetadataDto> defaults, Map<String, List<MetadataDto>> rows, String sidecarSuffix,
+                          Map<String, String> variables) {
+        this.defaults = defaults;
+        this.rows = rows;
+        this.sidecarSuffix = sidecarSuffix;
+        this.variables = variables;
+    }
+
+    // Resolves Defaults and reads CsvFile. Fails when a value names a global variable the environment does not have.
+    public static MetadataIndex open(MetadataSettings settings, Path inputDirectory, List<GlobalVariableDto> globalVariables)
+            throws IOException {
+        Map<String, String> variables = new HashMap<>();
+        for (GlobalVariableDto variable : globalVariables) {
+            variables.putIfAbsent(variable.getKey().toLowerCase(Locale.ROOT), variable.getValue());
+        }
+        Map<String, String> defaults = new LinkedHashMap<>();
+        for (MetadataDto metadata : settings.getDefaults()) {
+            defaults.put(metadata.getName(), resolve(metadata.getValue(), variables, "Metadata Defaults"));
+        }
+        MetadataIndex index = new MetadataIndex(toList(defaults), new HashMap<>(), settings.getSidecarSuffix(), variables);
+        if (!settings.getCsvFile().isEmpty()) {
+            index.readCsv(Paths.get(settings.getCsvFile()), inputDirectory.toAbsolutePath().normalize(), defaults);
+        }
+        return index;
+    }
+
+    // The metadata to send with the file, in order
+    public List<MetadataDto> forFile(String file) throws IOException {
+        List<MetadataDto> row = rows.isEmpty() ? defaults : rows.getOrDefault(key(file), defaults);
+        if (sidecarSuffix.isEmpty()) {
+            return row;
+        }
+        Path sidecar = Paths.get(file + sidecarSuffix);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(sidecar, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            attributes = null;
+        }
+        if (attributes == null || !attributes.isRegularFile()) {
+            synchronized (sidecars) {
+                sidecars.remove(file);
+            }
+            return row;
+        }
+        synchronized (sidecars) {
+            Sidecar cached = sidecars.get(file);
+            if (cached != null && cached.size() == attributes.size() && cached.modified().equals(attributes.lastModifiedTime())) {
+                return cached.metadata();
+            }
+        }
+        List<MetadataDto> metadata = readSidecar(sidecar, row);
+        synchronized (sidecars) {
+            sidecars.put(file, new Sidecar(attributes.size(), attributes.lastModifiedTime(), metadata));
+            if (sidecars.size() > MAX_SIDECARS) {
+                Iterator<String> eldest = sidecars.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return metadata;
+    }
+
+    public String describe() {
+        return defaults.size() + " default fields, " + rows.size() + " CSV rows (" + distinctRows + " distinct), "
+                + sidecarsRead.sum() + " sidecars read (" + cachedSidecars() + " kept), " + variables.size() + " global variables";
+    }
+
+    private int cachedSidecars() {
+        synchronized (sidecars) {
+            return sidecars.size();
+        }
+    }
+
+    // Header "File,<name>,<name>...", one row per input. Rows with the same values share the list built for the first.
+    private void readCsv(Path csvFile, Path inputDirectory, Map<String, String> defaults) throws IOException {
+        List<List<String>> lines = parseCsv(Files.readString(csvFile, StandardCharsets.UTF_8));
+        if (lines.isEmpty() || !lines.get(0).get(0).trim().equalsIgnoreCase("File")) {
+            throw new IOException("Invalid metadata CSV " + csvFile + ": the first column must be File");
+        }
+        List<String> names = lines.get(0).stream().map(String::trim).toList();
+        Map<List<String>, List<MetadataDto>> distinct = new HashMap<>();
+        for (int line = 1; line < lines.size(); line++) {
+            List<String> cells = lines.get(line);
+            if (cells.get(0).isBlank()) {
+                continue;
+            }
+            if (cells.size() > names.size()) {
+                throw new IOException("Invalid metadata CSV " + csvFile + ": row " + line + " has more cells than the header");
+            }
+            Map<String, String> values = new LinkedHashMap<>(defaults);
+            for (int i = 1; i < cells.size(); i++) {
+                if (!cells.get(i).isEmpty()) {
+                    values.put(names.get(i), resolve(cells.get(i), variables, csvFile.toString()));
+                }
+            }
+            List<String> key = new ArrayList<>(values.size() * 2);
+            values.forEach((name, value) -> {
+                key.add(name);
+                key.add(value);
+            });
+            List<MetadataDto> metadata = distinct.computeIfAbsent(key, k -> toList(values));
+            String file = inputDirectory.resolve(cells.get(0).trim()).normalize().toString();
+            if (rows.put(file, metadata) != null) {
+                throw new IOException("Invalid metadata CSV " + csvFile + ": " + cells.get(0).trim() + " is listed twice");
+            }
+        }
+        distinctRows = distinct.size();
+    }
+
+    // A JSON object of names to values; null removes a name the file would otherwise get
+    private List<MetadataDto> readSidecar(Path sidecar, List<MetadataDto> row) throws IOException {
+        JsonNode json = JsonReaders.MAPPER.readTree(sidecar.toFile());
+        if (json == null || !json.isObject()) {
+            throw new IOException("Invalid metadata sidecar " + sidecar + ": expected an object of names to values");
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (MetadataDto metadata : row) {
+            values.put(metadata.getName(), metadata.getValue());
+        }
+        for (Map.Entry<String, JsonNode> field : json.properties()) {
+            if (field.getValue().isNull()) {
+                values.remove(field.getKey());
+            } else if (field.getValue().isValueNode()) {
+                values.put(field.getKey(), resolve(field.getValue().asText(), variables, sidecar.toString()));
+            } else {
+                throw new IOException("Invalid metadata sidecar " + sidecar + ": " + field.getKey() + " is not a single value");
+            }
+        }
+        sidecarsRead.increment();
+        return toList(values);
+    }
+
+    private static String resolve(String value, Map<String, String> variables, String source) throws IOException {
+        int start = value.indexOf("{{");
+        if (start < 0) {
+            return value;
+        }
+        StringBuilder resolved = new StringBuilder(value.length() + 16);
+        int from = 0;
+        while (start >= 0) {
+            int end = value.indexOf("}}", start + 2);
+            if (end < 0) {
+                break;
+            }
+            String name = value.substring(start + 2, end).trim();
+            String variable = variables.get(name.toLowerCase(Locale.ROOT));
+            if (variable == null) {
+                throw new IOException("Unknown global variable {{" + name + "}} in " + source);
+            }
+            resolved.append(value, from, start).append(variable);
+            from = end + 2;
+            start = value.indexOf("{{", from);
+        }
+        return resolved.append(value, from, value.length()).toString();
+    }
+
+    // RFC 4180: cells separated by commas, optionally quoted, with "" for a quote and line breaks allowed inside quotes
+    private static List<List<String>> parseCsv(String text) {
+        List<List<String>> lines = new ArrayList<>();
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        int i = text.startsWith("\uFEFF") ? 1 : 0;
+        for (; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                cells.add(cell.toString());
+                cell.setLength(0);
+                lines.add(cells);
+                cells = new ArrayList<>();
+            } else {
+                cell.append(c);
+            }
+        }
+        if (!cell.isEmpty() || !cells.isEmpty()) {
+            cells.add(cell.toString());
+            lines.add(cells);
+        }
+        return lines;
+    }
+
+    private static String key(String file) {
+        return Paths.get(file).toAbsolutePath().normalize().toString();
+    }
+
+    private static List<MetadataDto> toList(Map<String, String> values) {
+        List<MetadataDto> list = new ArrayList<>(values.size());
+        values.forEach((name, value) -> list.add(metadata(name, value)));
+        return List.copyOf(list);
+    }
+
+    static MetadataDto metadata(String name, String value) {
+        MetadataDto metadata = new MetadataDto();
+        metadata.setName(name);
+        metadata.setValue(value);
+        return metadata;
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Metadata sent with each input file. Every file gets Defaults, then the values of its row in CsvFile, then those of
+// its JSON sidecar, each replacing values of the same name. Values may contain {{Name}} to insert a global variable.
+public class MetadataSettings {
+    private boolean enabled = false;
+    // Name/Value pairs sent with every file
+    private List<MetadataDto> defaults = new ArrayList<>(MetadataIndex.SAMPLE);
+    // A CSV file whose header is File followed by metadata names, with one row per input; File is relative to Input
+    // and an empty cell leaves that name out (empty for none)
+    private String csvFile = "";
+    // A JSON object of names to values next to an input, in a file named after it with this suffix added (empty for none)
+    private String sidecarSuffix = ".metadata.json";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<MetadataDto> getDefaults() {
+        return defaults;
+    }
+
+    public void setDefaults(List<MetadataDto> defaults) {
+        this.defaults = defaults;
+    }
+
+    public String getCsvFile() {
+        return csvFile;
+    }
+
+    public void setCsvFile(String csvFile) {
+        this.csvFile = csvFile;
+    }
+
+    public String getSidecarSuffix() {
+        return sidecarSuffix;
+    }
+
+    public void setSidecarSuffix(String sidecarSuffix) {
+        this.sidecarSuffix = sidecarSuffix;
+    }
+
+    public boolean hasValidValues() {
+        if (defaults == null || csvFile == null || sidecarSuffix == null) {
+            return false;
+        }
+        for (MetadataDto metadata : defaults) {
+            if (metadata == null || metadata.getName() == null || metadata.getName().isEmpty() || metadata.getValue() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,279 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Counters and latency summaries for the CIS requests, transfers and jobs of a run, exported in the Prometheus text
+// format. Recording takes a map lookup and a few atomic updates, so it is safe from any number of job threads.
+// Summaries cover the whole run; their quantiles come from a LatencyHistogram and are within 2% of the exact value.
+public class Metrics implements AutoCloseable {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Family requests = new Family("cis_client_requests_total", "counter",
+            "Requests sent to the CIS API by endpoint and HTTP status code (error when no response arrived)", "endpoint", "code");
+    private final Family requestSeconds = new Family("cis_client_request_seconds", "summary",
+            "Time from sending a request until its response arrived: the headers, or the whole body with the async client", "endpoint");
+    private final Family retries = new Family("cis_client_retries_total", "counter",
+            "Requests sent again after a transient failure or while the circuit breaker was open", "endpoint");
+    private final Family concurrencyLimit = new Family("cis_client_concurrency_limit", "gauge",
+            "Requests the adaptive limiter currently lets in flight at once (0 when it is off)");
+    private final Family circuitOpen = new Family("cis_client_circuit_open", "gauge",
+            "1 while the circuit breaker holds requests back, else 0");
+    private final Family transferBytes = new Family("cis_client_transfer_bytes_total", "counter",
+            "Bytes uploaded with submissions and downloaded as outputs", "direction");
+    private final Family transferSeconds = new Family("cis_client_transfer_seconds", "summary",
+            "Time to upload the inputs or download the output of a job", "direction");
+    private final Family jobs = new Family("cis_jobs_total", "counter",
+            "Jobs by final status; Cached for jobs answered from the output cache", "status");
+    private final Family queueSeconds = new Family("cis_job_queue_seconds", "summary",
+            "Time jobs waited in the server's queue, as reported by the server");
+    private final Family processingSeconds = new Family("cis_job_processing_seconds", "summary",
+            "Time the server spent processing jobs, as reported by the server");
+    private final Family jobSeconds = new Family("cis_job_seconds", "summary",
+            "Time from the start of a job's upload until it was released");
+    private final Family repositoryJobs = new Family("cis_repository_jobs_total", "counter",
+            "Jobs released per repository by ExecutorMode pipeline", "repository");
+    private final Family repositoryQueued = new Family("cis_repository_queued_jobs", "gauge",
+            "Jobs waiting for the submit stage per repository", "repository");
+    private final Family repositoryInFlight = new Family("cis_repository_in_flight_jobs", "gauge",
+            "Jobs taken for submission and not yet released per repository", "repository");
+    private final Family classJobs = new Family("cis_class_jobs_total", "counter",
+            "Jobs per Scheduling priority class by outcome: released, failed or rejected", "class", "outcome");
+    private final Family classSeconds = new Family("cis_class_job_seconds", "summary",
+            "Time from a job being queued by the scheduler until it was released or failed, per priority class", "class");
+    private final Family classQueued = new Family("cis_class_queued_jobs", "gauge",
+            "Jobs waiting for the scheduler to start them per priority class", "class");
+    private final Family classActive = new Family("cis_class_active_jobs", "gauge",
+            "Jobs started by the scheduler and not yet released per priority class", "class");
+    private final List<Family> families = List.of(requests, requestSeconds, retries, concurrencyLimit, circuitOpen, transferBytes,
+            transferSeconds, jobs, queueSeconds, processingSeconds, jobSeconds, repositoryJobs, repositoryQueued, repositoryInFlight,
+            classJobs, classSeconds, classQueued, classActive);
+
+    private final MetricsSettings settings;
+    private HttpServer server;
+    private ScheduledExecutorService writer;
+
+    public Metrics(MetricsSettings settings) {
+        this.settings = settings;
+    }
+
+    // Opens the HTTP endpoint and starts rewriting the file, whichever the settings ask for
+    public void start() throws IOException {
+        if (settings.getPort() > 0) {
+            server = HttpServer.create(new InetSocketAddress(settings.getPort()), 0);
+            server.createContext("/metrics", this::serve);
+            server.start();
+        }
+        if (!settings.getFile().isEmpty()) {
+            writer = Executors.newSingleThreadScheduledExecutor(JobTracker.daemonFactory("metrics-writer"));
+            writer.scheduleAtFixedRate(() -> {
+                try {
+                    writeFile();
+                } catch (IOException e) {
+                    System.out.println("Failed to write " + settings.getFile() + ": " + e.getMessage());
+                }
+            }, settings.getIntervalSeconds(), settings.getIntervalSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    // code is 0 when the request failed without a response
+    public void recordRequest(String endpoint, int code, long nanos) {
+        requests.counter(endpoint, code == 0 ? "error" : String.valueOf(code)).increment();
+        requestSeconds.summary(endpoint).recordValue(nanos / 1000);
+    }
+
+    public void recordRetry(String endpoint) {
+        retries.counter(endpoint).increment();
+    }
+
+    // The suppliers are read on every scrape
+    public void registerResilience(LongSupplier limit, LongSupplier open) {
+        concurrencyLimit.gauge(limit);
+        circuitOpen.gauge(open);
+    }
+
+    // direction is "upload" or "download"
+    public void recordTransfer(String direction, long bytes, long nanos) {
+        transferBytes.counter(direction).add(bytes);
+        transferSeconds.summary(direction).recordValue(nanos / 1000);
+    }
+
+    // The final status of a job, with the queue and processing times the server reported for it
+    public void recordCompleted(JobStatusResponse status) {
+        jobs.counter(status.getStatus()).increment();
+        queueSeconds.summary().recordValue((long) (status.getTotalQueueTimeInSec() * 1e6));
+        processingSeconds.summary().recordValue((long) (status.getTotalProcessingTimeInSec() * 1e6));
+    }
+
+    public void recordCached() {
+        jobs.counter("Cached").increment();
+    }
+
+    public void recordJob(long nanos) {
+        jobSeconds.summary().recordValue(nanos / 1000);
+    }
+
+    public void recordRepositoryJob(String repository) {
+        repositoryJobs.counter(repository).increment();
+    }
+
+    // The suppliers are read on every scrape
+    public void registerRepository(String repository, LongSupplier queued, LongSupplier inFlight) {
+        repositoryQueued.gauge(queued, repository);
+        repositoryInFlight.gauge(inFlight, repository);
+    }
+
+    // nanos is the time since the job was queued, or negative for a rejected job, which has none
+    public void recordClassJob(String priorityClass, String outcome, long nanos) {
+        classJobs.counter(priorityClass, outcome).increment();
+        if (nanos >= 0) {
+            classSeconds.summary(priorityClass).recordValue(nanos / 1000);
+        }
+    }
+
+    // The suppliers are read on every scrape
+    public void registerClass(String priorityClass, LongSupplier queued, LongSupplier active) {
+        classQueued.gauge(queued, priorityClass);
+        classActive.gauge(active, priorityClass);
+    }
+
+    // Every metric in the Prometheus text exposition format
+    public String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Family family : families) {
+            family.write(text);
+        }
+        return text.toString();
+    }
+
+    public String describe() {
+        List<String> exports = new ArrayList<>();
+        if (server != null) {
+            exports.add("serving http://localhost:" + server.getAddress().getPort() + "/metrics");
+        }
+        if (writer != null) {
+            exports.add("writing " + settings.getFile() + " every " + settings.getIntervalSeconds() + "s");
+        }
+        return String.join(", ", exports);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Written beside the file and renamed over it, so a collector never reads half a file
+    private void writeFile() throws IOException {
+        Path file = Paths.get(settings.getFile()).toAbsolutePath();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temporary, scrape());
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Stops the endpoint and writes the file one last time with the final values
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (writer != null) {
+            writer.shutdownNow();
+            try {
+                writeFile();
+            } catch (IOException e) {
+                System.out.println("Failed to write " + settings.getFile() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // One metric name with a counter, a gauge or a summary for every combination of label values seen
+    private static final class Family {
+        private final String name;
+        private final String type;
+        private final String help;
+        private final String[] labelNames;
+        private final Map<List<String>, Object> series = new ConcurrentHashMap<>();
+
+        private Family(String name, String type, String help, String... labelNames) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+            this.labelNames = labelNames;
+        }
+
+        private LongAdder counter(String... labelValues) {
+            return (LongAdder) series.computeIfAbsent(List.of(labelValues), k -> new LongAdder());
+        }
+
+        private LatencyHistogram summary(String... labelValues) {
+            return (LatencyHistogram) series.computeIfAbsent(List.of(labelValues), k -> new LatencyHistogram());
+        }
+
+        private void gauge(LongSupplier value, String... labelValues) {
+            series.put(List.of(labelValues), value);
+        }
+
+        private void write(StringBuilder text) {
+            text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            List<Map.Entry<List<String>, Object>> sorted = new ArrayList<>(series.entrySet());
+            sorted.sort(Map.Entry.comparingByKey((a, b) -> String.join("\0", a).compareTo(String.join("\0", b))));
+            for (Map.Entry<List<String>, Object> entry : sorted) {
+                String labels = labels(entry.getKey());
+                if (entry.getValue() instanceof LongAdder counter) {
+                    text.append(name).append(braces(labels)).append(' ').append(counter.sum()).append('\n');
+                    continue;
+                }
+                if (entry.getValue() instanceof LongSupplier gauge) {
+                    text.append(name).append(braces(labels)).append(' ').append(gauge.getAsLong()).append('\n');
+                    continue;
+                }
+                LatencyHistogram histogram = (LatencyHistogram) entry.getValue();
+                long count = histogram.getCount();
+                for (double quantile : QUANTILES) {
+                    String quantileLabel = "quantile=\"" + quantile + "\"";
+                    text.append(name).append(braces(labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel)).append(' ')
+                            .append(histogram.getValueAtPercentile(quantile * 100) / 1e6).append('\n');
+                }
+                text.append(name).append("_sum").append(braces(labels)).append(' ').append(histogram.getMean() * count / 1e6).append('\n');
+                text.append(name).append("_count").append(braces(labels)).append(' ').append(count).append('\n');
+            }
+        }
+
+        private String labels(List<String> values) {
+            StringBuilder labels = new StringBuilder();
+            for (int i = 0; i < labelNames.length; i++) {
+                if (i > 0) {
+                    labels.append(',');
+                }
+                String value = values.get(i).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+                labels.append(labelNames[i]).append("=\"").append(value).append('"');
+            }
+            return labels.toString();
+        }
+
+        private static String braces(String labels) {
+            return labels.isEmpty() ? "" : "{" + labels + "}";
+        }
+    }
+}
@@ -0,0 +1,40 @@
+// Request, transfer and job metrics in the Prometheus text format; recorded only when one of the exports is on
+public class MetricsSettings {
+    // Port of the embedded HTTP endpoint serving /metrics, 0 for none
+    private int port = 0;
+    // File rewritten with the metrics every IntervalSeconds, e.g. for node_exporter's textfile collector; empty for none
+    private String file = "";
+    private int intervalSeconds = 15;
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public void setIntervalSeconds(int intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    public boolean isEnabled() {
+        return port > 0 || !file.isEmpty();
+    }
+
+    public boolean hasValidValues() {
+        return port >= 0 && port <= 65535 && file != null && intervalSeconds > 0;
+    }
+}
@@ -1,3 +1,5 @@
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -124,6 +126,7 @@ class JobStatusResponse extends ResponseStatus {
         return status;
     }
 
+    @JsonDeserialize(using = StatusDeserializer.class)
     public void setStatus(String status) {
         this.status = status;
     }
@@ -0,0 +1,418 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.message.BasicNameValuePair;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+// Multipart body for Submit that is written straight from the input files. Each file is opened only while its part is
+// being written and copied through a buffer borrowed from a shared BufferPool, so memory and open file handles stay the
+// same whether a job has 5 files or 5,000. The entity is repeatable, so a failed upload can be sent again.
+// Part headers are assembled from bytes encoded once: field names like "InputFiles[12].FileMetadata[3].Name" come from
+// tables shared by every upload, and each distinct metadata list is encoded once per body however many files carry it.
+// AsyncApiClient sends the same body through asyncProducer(), which reads each file as the connection takes more.
+public class MultipartUploadEntity extends AbstractHttpEntity {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] REPOSITORY_ID = ascii("RepositoryId");
+    private static final byte[] INPUT_FILE = ascii("InputFile\"; filename=\"");
+    private static final byte[] FILE_HEADER_END = ascii("\"\r\nContent-Type: application/octet-stream\r\n\r\n");
+    private static final byte[] TEXT_HEADER_END = ascii("\"\r\nContent-Type: text/plain; charset=UTF-8\r\n\r\n");
+
+    // "InputFiles[i]." and "FileMetadata[j].Name", "FileMetadata[j].Value" by index; only ever grown
+    private static volatile byte[][] inputFields = new byte[0][];
+    private static volatile byte[][] metadataFields = new byte[0][];
+
+    private final String boundary;
+    // "--boundary", the disposition and the opening quote of the field name, shared by every part
+    private final byte[] partStart;
+    private final UUID repositoryId;
+    private final List<String> inputFilePaths;
+    private final byte[][] inputFieldNames;
+    private final byte[][] metadataFieldNames;
+    private final byte[][] fileNames;
+    // Each file's metadata as name, value, name, value..., shared by files with the same list
+    private final byte[][][] metadata;
+    // Sizes are read up front (without opening the files) so the request can carry a Content-Length
+    private final long[] fileSizes;
+    private final long contentLength;
+    private final int bufferSize;
+    private final BufferPool buffers;
+    private volatile long bytesWritten;
+
+    public MultipartUploadEntity(UUID repositoryId, List<String> inputFilePaths, UploadSettings settings) throws IOException {
+        this(repositoryId, inputFilePaths, MetadataIndex.DEFAULT, settings);
+    }
+
+    public MultipartUploadEntity(UUID repositoryId, List<String> inputFilePaths, MetadataIndex metadataIndex, UploadSettings settings)
+            throws IOException {
+        this(repositoryId, inputFilePaths, metadataIndex, settings, "httpclient_boundary_" + UUID.randomUUID());
+    }
+
+    private MultipartUploadEntity(UUID repositoryId, List<String> inputFilePaths, MetadataIndex metadataIndex, UploadSettings settings,
+                                  String boundary) throws IOException {
+        super(ContentType.MULTIPART_FORM_DATA.withParameters(new BasicNameValuePair("boundary", boundary)), null, false);
+        this.boundary = boundary;
+        this.partStart = ascii("--" + boundary + "\r\nContent-Disposition: form-data; name=\"");
+        this.repositoryId = repositoryId;
+        this.inputFilePaths = inputFilePaths;
+        this.bufferSize = settings.getBufferSizeKb() * 1024;
+        this.buffers = BufferPool.heap(bufferSize);
+        int files = inputFilePaths.size();
+        this.fileSizes = new long[files];
+        this.fileNames = new byte[files][];
+        this.metadata = new byte[files][][];
+
+        Map<List<MetadataDto>, byte[][]> encoded = new IdentityHashMap<>();
+        int maxFields = 0;
+        long length = textPartLength(REPOSITORY_ID.length, utf8Length(repositoryId.toString()));
+        for (int i = 0; i < files; i++) {
+            String file = inputFilePaths.get(i);
+            Path path = Paths.get(file);
+            fileSizes[i] = Files.size(path);
+            fileNames[i] = path.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+            metadata[i] = encoded.computeIfAbsent(metadataIndex.forFile(file), MultipartUploadEntity::encode);
+            maxFields = Math.max(maxFields, metadata[i].length);
+        }
+        this.inputFieldNames = inputFields(files);
+        this.metadataFieldNames = metadataFields(maxFields);
+        for (int i = 0; i < files; i++) {
+            length += partStart.length + inputFieldNames[i].length + INPUT_FILE.length + fileNames[i].length + FILE_HEADER_END.length
+                    + fileSizes[i] + CRLF.length;
+            for (int j = 0; j < metadata[i].length; j++) {
+                length += textPartLength(inputFieldNames[i].length + metadataFieldNames[j].length, metadata[i][j].length);
+            }
+        }
+        this.contentLength = length + utf8Length("--" + boundary + "--") + CRLF.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        bytesWritten = 0;
+        List<Object> pieces = new ArrayList<>();
+        for (int part = 0; part < partCount(); part++) {
+            pieces.clear();
+            addPieces(part, pieces);
+            for (Object piece : pieces) {
+                if (piece instanceof FilePiece file) {
+                    long copied = copy(file.path(), out);
+                    if (copied != file.size()) {
+                        throw new IOException(file.path() + " changed size during upload");
+                    }
+                } else {
+                    write(out, (byte[]) piece);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    // A producer for a non-blocking connection; each attempt to send the body takes a new one
+    public AsyncEntityProducer asyncProducer() {
+        return new Producer();
+    }
+
+    // True once the last byte of the body has been handed to the connection
+    public boolean isFullyWritten() {
+        return bytesWritten == contentLength;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public InputStream getContent() {
+        throw new UnsupportedOperationException("Multipart upload is only written with writeTo");
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // The repository ID, then one part per file followed by its metadata, then the closing boundary
+    private int partCount() {
+        return inputFilePaths.size() + 2;
+    }
+
+    // The bytes of a part in order: byte arrays, and a FilePiece where a file's content goes
+    private void addPieces(int part, List<Object> pieces) {
+        if (part == 0) {
+            pieces.add(partStart);
+            pieces.add(REPOSITORY_ID);
+            pieces.add(TEXT_HEADER_END);
+            pieces.add(repositoryId.toString().getBytes(StandardCharsets.UTF_8));
+            pieces.add(CRLF);
+        } else if (part <= inputFilePaths.size()) {
+            int i = part - 1;
+            pieces.add(partStart);
+            pieces.add(inputFieldNames[i]);
+            pieces.add(INPUT_FILE);
+            pieces.add(fileNames[i]);
+            pieces.add(FILE_HEADER_END);
+            pieces.add(new FilePiece(Paths.get(inputFilePaths.get(i)), fileSizes[i]));
+            pieces.add(CRLF);
+            for (int j = 0; j < metadata[i].length; j++) {
+                pieces.add(partStart);
+                pieces.add(inputFieldNames[i]);
+                pieces.add(metadataFieldNames[j]);
+                pieces.add(TEXT_HEADER_END);
+                pieces.add(metadata[i][j]);
+                pieces.add(CRLF);
+            }
+        } else {
+            pieces.add(("--" + boundary + "--").getBytes(StandardCharsets.UTF_8));
+            pieces.add(CRLF);
+        }
+    }
+
+    private record FilePiece(Path path, long size) {
+    }
+
+    // Fills one buffer from the pieces of each part in turn and writes it whenever the connection can take more. The
+    // connection's I/O thread reads the files, as a FileEntityProducer would.
+    private final class Producer implements AsyncEntityProducer {
+        private final List<Object> pieces = new ArrayList<>();
+        private ByteBuffer buffer;
+        private int part;
+        private int piece;
+        private byte[] bytes;
+        private int offset;
+        private FileChannel file;
+        private FilePiece reading;
+        private long remaining;
+        private boolean ended;
+
+        @Override
+        public void produce(DataStreamChannel channel) throws IOException {
+            if (buffer == null) {
+                bytesWritten = 0;
+                buffer = ByteBuffer.allocate(bufferSize);
+            }
+            while (true) {
+                fill();
+                buffer.flip();
+                bytesWritten += channel.write(buffer);
+                boolean drained = !buffer.hasRemaining();
+                buffer.compact();
+                if (!drained) {
+                    // The connection asks for more once it can take it
+                    return;
+                }
+                if (ended) {
+                    channel.endStream();
+                    return;
+                }
+            }
+        }
+
+        private void fill() throws IOException {
+            while (buffer.hasRemaining() && !ended) {
+                if (bytes != null) {
+                    int length = Math.min(buffer.remaining(), bytes.length - offset);
+                    buffer.put(bytes, offset, length);
+                    offset += length;
+                    if (offset == bytes.length) {
+                        bytes = null;
+                    }
+                } else if (file != null) {
+                    int limit = buffer.limit();
+                    if (buffer.remaining() > remaining) {
+                        // One byte past the expected size shows a file that grew
+                        buffer.limit(buffer.position() + (int) remaining + 1);
+                    }
+                    int read = file.read(buffer);
+                    buffer.limit(limit);
+                    if (read < 0 ? remaining > 0 : read > remaining) {
+                        throw new IOException(reading.path() + " changed size during upload");
+                    }
+                    if (read < 0) {
+                        file.close();
+                        file = null;
+                    } else {
+                        remaining -= read;
+                    }
+                } else if (piece < pieces.size()) {
+                    Object next = pieces.get(piece++);
+                    if (next instanceof FilePiece filePiece) {
+                        reading = filePiece;
+                        remaining = filePiece.size();
+                        file = FileChannel.open(filePiece.path(), StandardOpenOption.READ);
+                    } else {
+                        bytes = (byte[]) next;
+                        offset = 0;
+                    }
+                } else if (part < partCount()) {
+                    pieces.clear();
+                    piece = 0;
+                    addPieces(part++, pieces);
+                } else {
+                    ended = true;
+                }
+            }
+        }
+
+        @Override
+        public int available() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            releaseResources();
+        }
+
+        @Override
+        public void releaseResources() {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+                file = null;
+            }
+        }
+
+        @Override
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public String getContentType() {
+            return MultipartUploadEntity.this.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return false;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+    }
+
+    private long copy(Path path, OutputStream out) throws IOException {
+        ByteBuffer pooled = buffers.acquire();
+        long copied = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = pooled.array();
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                copied += read;
+                bytesWritten += read;
+            }
+        } finally {
+            buffers.release(pooled);
+        }
+        return copied;
+    }
+
+    private void write(OutputStream out, byte[] bytes) throws IOException {
+        out.write(bytes);
+        bytesWritten += bytes.length;
+    }
+
+    private long textPartLength(long nameLength, long valueLength) {
+        return partStart.length + nameLength + TEXT_HEADER_END.length + valueLength + CRLF.length;
+    }
+
+    private static byte[][] encode(List<MetadataDto> metadata) {
+        byte[][] encoded = new byte[metadata.size() * 2][];
+        for (int j = 0; j < metadata.size(); j++) {
+            encoded[j * 2] = metadata.get(j).getName().getBytes(StandardCharsets.UTF_8);
+            encoded[j * 2 + 1] = metadata.get(j).getValue().getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    // At least count names, doubling the table when it is too short so a 10,000-file job grows it a few times at most
+    private static byte[][] inputFields(int count) {
+        byte[][] fields = inputFields;
+        if (fields.length >= count) {
+            return fields;
+        }
+        synchronized (MultipartUploadEntity.class) {
+            fields = inputFields;
+            if (fields.length < count) {
+                fields = Arrays.copyOf(fields, Math.max(count, fields.length * 2));
+                for (int i = inputFields.length; i < fields.length; i++) {
+                    fields[i] = ascii("InputFiles[" + i + "].");
+                }
+                inputFields = fields;
+            }
+            return fields;
+        }
+    }
+
+    // Name and value fields alternate, so field 2j names the j-th metadata and 2j + 1 holds its value
+    private static byte[][] metadataFields(int count) {
+        byte[][] fields = metadataFields;
+        if (fields.length >= count) {
+            return fields;
+        }
+        synchronized (MultipartUploadEntity.class) {
+            fields = metadataFields;
+            if (fields.length < count) {
+                fields = Arrays.copyOf(fields, Math.max(count, fields.length * 2));
+                for (int i = metadataFields.length; i < fields.length; i++) {
+                    fields[i] = ascii("FileMetadata[" + i / 2 + "]." + (i % 2 == 0 ? "Name" : "Value"));
+                }
+                metadataFields = fields;
+            }
+            return fields;
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Progress of an unfinished download, stored as "<file>.part.meta" next to the ".part" file. The validator (ETag or
+// Last-Modified) is sent back as If-Range so the server only continues a transfer when the file has not changed.
+final class PartialDownload {
+    static final String META_SUFFIX = ".part.meta";
+
+    private final String fileName;
+    private final String validator;
+    private final long totalBytes;
+    private final long[] segmentStarts;
+    private final long[] segmentEnds;
+    private final AtomicLongArray segmentWritten;
+
+    PartialDownload(String fileName, String validator, long totalBytes, int segments) {
+        this.fileName = fileName;
+        this.validator = validator;
+        this.totalBytes = totalBytes;
+        this.segmentStarts = new long[segments];
+        this.segmentEnds = new long[segments];
+        this.segmentWritten = new AtomicLongArray(segments);
+        long size = totalBytes / segments;
+        for (int i = 0; i < segments; i++) {
+            segmentStarts[i] = i * size;
+            segmentEnds[i] = i == segments - 1 ? totalBytes - 1 : (i + 1) * size - 1;
+        }
+    }
+
+    // Returns the unfinished download left in the directory, or null if there is none
+    static PartialDownload find(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        try (DirectoryStream<Path> metaFiles = Files.newDirectoryStream(directory, "*" + META_SUFFIX)) {
+            for (Path metaFile : metaFiles) {
+                return load(metaFile);
+            }
+        }
+        return null;
+    }
+
+    private static PartialDownload load(Path metaFile) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(metaFile)) {
+            properties.load(in);
+        }
+        int segments = Integer.parseInt(properties.getProperty("segments", "1"));
+        PartialDownload partial = new PartialDownload(properties.getProperty("fileName"), properties.getProperty("validator"),
+                Long.parseLong(properties.getProperty("totalBytes", "-1")), segments);
+        for (int i = 0; i < segments; i++) {
+            partial.segmentStarts[i] = Long.parseLong(properties.getProperty("segment." + i + ".start", "0"));
+            partial.segmentEnds[i] = Long.parseLong(properties.getProperty("segment." + i + ".end", "-1"));
+            partial.segmentWritten.set(i, Long.parseLong(properties.getProperty("segment." + i + ".written", "0")));
+        }
+        return partial;
+    }
+
+    // Written to a temporary file and renamed so a crash never leaves a truncated meta file behind
+    synchronized void save(Path directory) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("fileName", fileName);
+        if (validator != null) {
+            properties.setProperty("validator", validator);
+        }
+        properties.setProperty("totalBytes", Long.toString(totalBytes));
+        properties.setProperty("segments", Integer.toString(segmentStarts.length));
+        for (int i = 0; i < segmentStarts.length; i++) {
+            properties.setProperty("segment." + i + ".start", Long.toString(segmentStarts[i]));
+            properties.setProperty("segment." + i + ".end", Long.toString(segmentEnds[i]));
+            properties.setProperty("segment." + i + ".written", Long.toString(segmentWritten.get(i)));
+        }
+        Path metaFile = metaFile(directory);
+        Path tempFile = metaFile.resolveSibling(metaFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            properties.store(out, null);
+        }
+        Files.move(tempFile, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void delete(Path directory) throws IOException {
+        Files.deleteIfExists(metaFile(directory));
+    }
+
+    // Drops the progress together with the bytes written so far so the next attempt starts over
+    void discard(Path directory) throws IOException {
+        Files.deleteIfExists(DownloadEngine.partFileFor(target(directory)));
+        delete(directory);
+    }
+
+    private Path metaFile(Path directory) {
+        return directory.resolve(fileName + META_SUFFIX);
+    }
+
+    Path target(Path directory) {
+        return directory.resolve(fileName);
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    String getValidator() {
+        return validator;
+    }
+
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    boolean isSegmented() {
+        return segmentStarts.length > 1;
+    }
+
+    int getSegmentCount() {
+        return segmentStarts.length;
+    }
+
+    // Next byte still missing from a segment
+    long nextOffset(int segment) {
+        return segmentStarts[segment] + segmentWritten.get(segment);
+    }
+
+    long segmentEnd(int segment) {
+        return segmentEnds[segment];
+    }
+
+    long addWritten(int segment, long bytes) {
+        return segmentWritten.addAndGet(segment, bytes);
+    }
+}
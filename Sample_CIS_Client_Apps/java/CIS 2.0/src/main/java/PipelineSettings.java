@@ -0,0 +1,64 @@
+// Stage sizes for ExecutorMode "pipeline"
+public class PipelineSettings {
+    private int submitThreads = 4;
+    private int downloadThreads = 4;
+    private int releaseThreads = 2;
+    // Jobs waiting in front of each stage before the stage upstream of it blocks
+    private int queueCapacity = 64;
+    // Jobs submitted but not yet handed to the download stage; caps the queue depth placed on the server
+    private int maxTrackedJobs = 500;
+    private int statsIntervalSeconds = 5;
+
+    public int getSubmitThreads() {
+        return submitThreads;
+    }
+
+    public void setSubmitThreads(int submitThreads) {
+        this.submitThreads = submitThreads;
+    }
+
+    public int getDownloadThreads() {
+        return downloadThreads;
+    }
+
+    public void setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
+    }
+
+    public int getReleaseThreads() {
+        return releaseThreads;
+    }
+
+    public void setReleaseThreads(int releaseThreads) {
+        this.releaseThreads = releaseThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getMaxTrackedJobs() {
+        return maxTrackedJobs;
+    }
+
+    public void setMaxTrackedJobs(int maxTrackedJobs) {
+        this.maxTrackedJobs = maxTrackedJobs;
+    }
+
+    public int getStatsIntervalSeconds() {
+        return statsIntervalSeconds;
+    }
+
+    public void setStatsIntervalSeconds(int statsIntervalSeconds) {
+        this.statsIntervalSeconds = statsIntervalSeconds;
+    }
+
+    public boolean hasValidValues() {
+        return submitThreads > 0 && downloadThreads > 0 && releaseThreads > 0 && queueCapacity > 0 && maxTrackedJobs > 0
+                && statsIntervalSeconds >= 0;
+    }
+}
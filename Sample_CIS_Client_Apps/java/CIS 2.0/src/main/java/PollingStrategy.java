@@ -0,0 +1,23 @@
+public interface PollingStrategy {
+    // Delay before the first status request after a job is submitted
+    long firstDelayMillis();
+
+    // Delay before the next status request, given how many requests were made, the time since submission
+    // and the last status seen
+    long nextDelayMillis(int attempt, long elapsedMillis, JobStatusResponse lastStatus);
+
+    // Called once a job reaches a Completed* status so strategies can learn typical job durations
+    default void onCompleted(JobStatusResponse status) {
+    }
+
+    static PollingStrategy fromConfig(Config config) {
+        if ("fixed".equalsIgnoreCase(config.getPollingMode())) {
+            return new FixedPollingStrategy(config.getPollingRateSeconds() * 1000L);
+        }
+        return new AdaptivePollingStrategy(
+                config.getMinPollingMillis(),
+                config.getMaxPollingSeconds() * 1000L,
+                config.getPollingBackoffMultiplier(),
+                config.getPollingJitter());
+    }
+}
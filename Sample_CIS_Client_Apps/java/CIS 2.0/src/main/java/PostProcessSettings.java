@@ -0,0 +1,66 @@
+// What happens to a job's output after it has been downloaded
+public class PostProcessSettings {
+    private boolean enabled = false;
+    // Unpack .zip outputs into the job's folder
+    private boolean extractArchives = true;
+    // Entries of one archive written at once
+    private int threads = 4;
+    // Keep the .zip next to what was extracted from it
+    private boolean keepArchives = false;
+    // Written to each job's folder: its inputs and which outputs came from which of them
+    private String manifestFile = "manifest.json";
+    // One line per job appended in the Output folder, pointing to its manifest; empty for none
+    private String indexFile = "index.jsonl";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isExtractArchives() {
+        return extractArchives;
+    }
+
+    public void setExtractArchives(boolean extractArchives) {
+        this.extractArchives = extractArchives;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isKeepArchives() {
+        return keepArchives;
+    }
+
+    public void setKeepArchives(boolean keepArchives) {
+        this.keepArchives = keepArchives;
+    }
+
+    public String getManifestFile() {
+        return manifestFile;
+    }
+
+    public void setManifestFile(String manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    public String getIndexFile() {
+        return indexFile;
+    }
+
+    public void setIndexFile(String indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    public boolean hasValidValues() {
+        return threads > 0 && manifestFile != null && !manifestFile.isEmpty() && indexFile != null;
+    }
+}
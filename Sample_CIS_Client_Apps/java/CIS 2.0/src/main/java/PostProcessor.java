@@ -0,0 +1,292 @@
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.ZipEntry;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+// Runs on a job's downloaded output: unpacks a .zip into the job's folder, with its entries inflated and written by
+// Threads workers at once, and writes a manifest naming every output and the input it was made from. An output belongs
+// to the input whose file name it starts with ("report.docx" -> "report.pdf" or "report.docx.pdf"); every output of a
+// single-file job belongs to that file. Each job also gets a line in the index file, so the outputs of an input can be
+// found without walking the Output folder.
+public class PostProcessor implements AutoCloseable {
+    // Outputs are listed relative to the job's folder; input is an index into the manifest's inputs, absent when the
+    // output could not be matched to one
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Output(String path, long bytes, Integer input) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Manifest(UUID jobId, List<String> inputs, String archive, List<Output> outputs) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private record IndexLine(UUID jobId, String manifest, List<String> inputs) {
+    }
+
+    private static final ObjectWriter WRITER = JsonReaders.MAPPER.writer();
+
+    private final PostProcessSettings settings;
+    private final Path outputDirectory;
+    private final ExecutorService entryWriters;
+    private final Object indexLock = new Object();
+    private final LongAdder jobs = new LongAdder();
+    private final LongAdder archives = new LongAdder();
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder extractedBytes = new LongAdder();
+    private final LongAdder renamed = new LongAdder();
+    private final LongAdder unmatched = new LongAdder();
+    private final LongAdder extractNanos = new LongAdder();
+
+    public PostProcessor(PostProcessSettings settings, Path outputDirectory) {
+        this.settings = settings;
+        this.outputDirectory = outputDirectory.toAbsolutePath().normalize();
+        this.entryWriters = Executors.newFixedThreadPool(settings.getThreads(), JobTracker.daemonFactory("extract"));
+    }
+
+    // Returns the manifest written to the job's folder
+    public Manifest process(UUID jobId, Path jobDirectory, Path downloaded, List<String> inputs) throws IOException {
+        return process(jobId, jobDirectory, downloaded, inputs, false);
+    }
+
+    public String getManifestFile() {
+        return settings.getManifestFile();
+    }
+
+    // The manifest is written after everything else but removing the archive, so a job folder without one was not
+    // finished, e.g. because of a crash, and can be processed again
+    public boolean isProcessed(Path jobDirectory) {
+        return Files.exists(jobDirectory.resolve(settings.getManifestFile()));
+    }
+
+    // Runs again on a job a crash interrupted: entries are extracted over what is there, and the index line is only
+    // appended when the interrupted run had not written it yet
+    public Manifest reprocess(UUID jobId, Path jobDirectory, Path downloaded, List<String> inputs) throws IOException {
+        return process(jobId, jobDirectory, downloaded, inputs, true);
+    }
+
+    // A cache hit's folder, restored without the manifest the original job wrote: its files are matched to the inputs
+    // of this job, and it gets a manifest and an index line without a job ID. When archives are extracted and kept, a
+    // .zip at the top of the folder is taken for the archive.
+    public Manifest processRestored(Path jobDirectory, List<String> inputs) throws IOException {
+        InputNames names = InputNames.of(inputs);
+        Path root = jobDirectory.toAbsolutePath().normalize();
+        Path manifestFile = root.resolve(settings.getManifestFile());
+        List<Output> outputs = new ArrayList<>();
+        String archive = null;
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                String path = root.relativize(file).toString().replace('\\', '/');
+                if (file.equals(manifestFile)) {
+                    continue;
+                }
+                if (archive == null && settings.isExtractArchives() && settings.isKeepArchives() && file.getParent().equals(root)
+                        && path.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+                    archive = path;
+                    continue;
+                }
+                outputs.add(new Output(path, Files.size(file), names.indexOf(path)));
+            }
+        }
+        return finish(new Manifest(null, inputs, archive, outputs), manifestFile, false);
+    }
+
+    private Manifest process(UUID jobId, Path jobDirectory, Path downloaded, List<String> inputs, boolean again) throws IOException {
+        InputNames names = InputNames.of(inputs);
+        Path root = jobDirectory.toAbsolutePath().normalize();
+        Path file = downloaded.toAbsolutePath().normalize();
+        List<Output> outputs;
+        String archive = null;
+        boolean extracted = settings.isExtractArchives() && file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip");
+        if (extracted) {
+            long start = System.nanoTime();
+            outputs = extract(file, root, root.resolve(settings.getManifestFile()), names);
+            extractNanos.add(System.nanoTime() - start);
+            archives.increment();
+            if (settings.isKeepArchives()) {
+                archive = root.relativize(file).toString();
+            }
+        } else {
+            String path = root.relativize(file).toString();
+            outputs = List.of(new Output(path, Files.size(file), names.indexOf(path)));
+        }
+
+        Manifest manifest = finish(new Manifest(jobId, inputs, archive, outputs), root.resolve(settings.getManifestFile()), again);
+        if (extracted && !settings.isKeepArchives()) {
+            Files.delete(file);
+        }
+        return manifest;
+    }
+
+    private Manifest finish(Manifest manifest, Path manifestFile, boolean again) throws IOException {
+        for (Output output : manifest.outputs()) {
+            if (output.input() == null) {
+                unmatched.increment();
+            }
+        }
+        if (!settings.getIndexFile().isEmpty()) {
+            String path = outputDirectory.relativize(manifestFile).toString().replace('\\', '/');
+            appendToIndex(new IndexLine(manifest.jobId(), path, manifest.inputs()), again);
+        }
+        WRITER.writeValue(manifestFile.toFile(), manifest);
+        jobs.increment();
+        return manifest;
+    }
+
+    public String describe() {
+        double seconds = extractNanos.sum() / 1e9;
+        return jobs.sum() + " jobs, " + archives.sum() + " archives, " + entries.sum() + " entries extracted ("
+                + String.format("%.1f MB/s", seconds == 0 ? 0 : extractedBytes.sum() / 1_048_576.0 / seconds) + ", "
+                + renamed.sum() + " renamed), " + unmatched.sum() + " outputs not matched to an input";
+    }
+
+    // ZipFile reads the central directory once and gives every entry its own stream, so entries are inflated and
+    // written in parallel rather than one after the other as a ZipInputStream would. Every target is settled before the
+    // first write: an entry named like the manifest or the archive itself, or like an earlier entry (ignoring case, as
+    // some file systems do), gets a free name instead, e.g. "report (2).pdf".
+    private List<Output> extract(Path archive, Path root, Path manifestFile, InputNames names) throws IOException {
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            Set<String> taken = new HashSet<>();
+            taken.add(key(manifestFile));
+            taken.add(key(archive));
+            List<CompletableFuture<Output>> writes = new ArrayList<>();
+            for (ZipEntry entry : zip.stream().filter(e -> !e.isDirectory()).toList()) {
+                Path target = root.resolve(entry.getName()).normalize();
+                if (!target.startsWith(root) || target.equals(root)) {
+                    throw new IOException("Archive entry outside the job's folder: " + entry.getName());
+                }
+                if (!taken.add(key(target))) {
+                    target = freeName(target, taken);
+                    renamed.increment();
+                }
+                Path destination = target;
+                writes.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return write(zip, entry, destination, root, names);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, entryWriters));
+            }
+            List<Output> outputs = new ArrayList<>(writes.size());
+            try {
+                for (CompletableFuture<Output> write : writes) {
+                    outputs.add(write.join());
+                }
+            } catch (CompletionException e) {
+                // Let the rest finish before the archive is closed under them
+                CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).exceptionally(error -> null).join();
+                throw e.getCause() instanceof UncheckedIOException io ? io.getCause() : new IOException(e.getCause());
+            }
+            return outputs;
+        }
+    }
+
+    private static String key(Path path) {
+        return path.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // "report.pdf" -> "report (2).pdf", "report (3).pdf", ... until one is not taken, which is then added
+    private static Path freeName(Path target, Set<String> taken) {
+        String name = target.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int n = 2; ; n++) {
+            Path candidate = target.resolveSibling(base + " (" + n + ")" + extension);
+            if (taken.add(key(candidate))) {
+                return candidate;
+            }
+        }
+    }
+
+    private Output write(ZipFile zip, ZipEntry entry, Path target, Path root, InputNames names) throws IOException {
+        Files.createDirectories(target.getParent());
+        long bytes;
+        try (InputStream in = zip.getInputStream(entry)) {
+            // Replaced rather than refused, since a resumed job extracts its output a second time
+            bytes = Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        entries.increment();
+        extractedBytes.add(bytes);
+        String path = root.relativize(target).toString().replace('\\', '/');
+        return new Output(path, bytes, names.indexOf(path));
+    }
+
+    // The job's input file names, looked up by every output
+    private record InputNames(int count, Map<String, Integer> byName, Map<String, Integer> byBaseName) {
+        static InputNames of(List<String> inputs) {
+            Map<String, Integer> byName = new HashMap<>();
+            Map<String, Integer> byBaseName = new HashMap<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                String name = Path.of(inputs.get(i)).getFileName().toString();
+                byName.putIfAbsent(name, i);
+                int dot = name.lastIndexOf('.');
+                byBaseName.putIfAbsent(dot > 0 ? name.substring(0, dot) : name, i);
+            }
+            return new InputNames(inputs.size(), byName, byBaseName);
+        }
+
+        // "a.docx.pdf" is tried as "a.docx.pdf", "a.docx" and "a", against input names and then names without extension
+        Integer indexOf(String output) {
+            if (count == 1) {
+                return 0;
+            }
+            String name = Path.of(output).getFileName().toString();
+            while (true) {
+                Integer index = byName.get(name);
+                if (index == null) {
+                    index = byBaseName.get(name);
+                }
+                int dot = name.lastIndexOf('.');
+                if (index != null || dot <= 0) {
+                    return index;
+                }
+                name = name.substring(0, dot);
+            }
+        }
+    }
+
+    private void appendToIndex(IndexLine line, boolean unlessPresent) throws IOException {
+        byte[] bytes = (WRITER.writeValueAsString(line) + "\n").getBytes(StandardCharsets.UTF_8);
+        Path index = outputDirectory.resolve(settings.getIndexFile());
+        synchronized (indexLock) {
+            if (unlessPresent && Files.exists(index)) {
+                String jobId = "\"jobId\":\"" + line.jobId() + "\"";
+                try (Stream<String> lines = Files.lines(index, StandardCharsets.UTF_8)) {
+                    if (lines.anyMatch(existing -> existing.contains(jobId))) {
+                        return;
+                    }
+                }
+            }
+            Files.write(index, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    @Override
+    public void close() {
+        entryWriters.shutdownNow();
+    }
+}
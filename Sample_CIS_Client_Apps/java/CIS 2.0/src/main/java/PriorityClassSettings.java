@@ -0,0 +1,57 @@
+// One priority class of the Scheduling settings
+public class PriorityClassSettings {
+    private String name = "";
+    // Glob against the path relative to Input with / separators, e.g. "urgent/**" or "**-rush.*"; empty to only
+    // assign the class through sidecar files
+    private String match = "";
+    // Time from being queued until release that the class's jobs aim for; queued jobs start earliest deadline first
+    private int deadlineSeconds = 60;
+    // Jobs of this class started and not yet released (0 for no limit beyond MaxActive)
+    private int maxActive = 0;
+    // Jobs of this class waiting to start; further jobs are rejected (0 for no limit)
+    private int maxQueued = 0;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getMatch() {
+        return match;
+    }
+
+    public void setMatch(String match) {
+        this.match = match;
+    }
+
+    public int getDeadlineSeconds() {
+        return deadlineSeconds;
+    }
+
+    public void setDeadlineSeconds(int deadlineSeconds) {
+        this.deadlineSeconds = deadlineSeconds;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public boolean hasValidValues() {
+        return name != null && !name.isEmpty() && match != null && deadlineSeconds > 0 && maxActive >= 0 && maxQueued >= 0;
+    }
+}
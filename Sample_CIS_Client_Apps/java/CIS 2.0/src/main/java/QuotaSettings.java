@@ -0,0 +1,36 @@
+// Limits on the jobs of one repository in ExecutorMode "pipeline"; 0 leaves a limit to the pipeline's own settings
+public class QuotaSettings {
+    private String repository = "";
+    // Jobs of this repository being uploaded at once
+    private int maxConcurrent = 0;
+    // Jobs of this repository submitted and not yet released
+    private int maxInFlight = 0;
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public boolean hasValidValues() {
+        return repository != null && !repository.isEmpty() && maxConcurrent >= 0 && maxInFlight >= 0;
+    }
+}
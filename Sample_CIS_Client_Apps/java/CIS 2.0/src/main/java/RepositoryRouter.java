@@ -0,0 +1,79 @@
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+// Picks the repository for each input file from the Routing routes, resolving repository names through the
+// EnvironmentCache so a route follows a repository the server has recreated under the same name
+public class RepositoryRouter {
+    private record Route(PathMatcher matcher, String repository) {
+    }
+
+    private final List<Route> routes = new ArrayList<>();
+    private final Map<String, QuotaSettings> quotas = new LinkedHashMap<>();
+    private final EnvironmentCache environment;
+    private final Path inputDirectory;
+
+    // Fails when a route or quota names a repository the server does not list
+    public RepositoryRouter(RoutingSettings settings, EnvironmentCache environment, Path inputDirectory) throws Exception {
+        this.environment = environment;
+        this.inputDirectory = inputDirectory.toAbsolutePath().normalize();
+        for (RouteSettings route : settings.getRoutes()) {
+            environment.getByName(route.getRepository());
+            routes.add(new Route(FileSystems.getDefault().getPathMatcher("glob:" + route.getMatch()), route.getRepository()));
+        }
+        for (QuotaSettings quota : settings.getQuotas()) {
+            environment.getByName(quota.getRepository());
+            quotas.put(quota.getRepository().toLowerCase(Locale.ROOT), quota);
+        }
+    }
+
+    public boolean hasRoutes() {
+        return !routes.isEmpty();
+    }
+
+    public boolean hasQuotas() {
+        return !quotas.isEmpty();
+    }
+
+    // The first route whose glob matches the file's path under Input, else the default repository
+    public UUID route(String file) throws Exception {
+        if (!routes.isEmpty()) {
+            Path absolute = Paths.get(file).toAbsolutePath().normalize();
+            Path relative = absolute.startsWith(inputDirectory) ? inputDirectory.relativize(absolute) : absolute.getFileName();
+            for (Route route : routes) {
+                if (route.matcher().matches(relative)) {
+                    return environment.getByName(route.repository()).getId();
+                }
+            }
+        }
+        return environment.getDefaultRepository().getId();
+    }
+
+    // The files of each repository in the order they were given, repositories in the order first routed to
+    public Map<UUID, List<String>> group(List<String> files) throws Exception {
+        Map<UUID, List<String>> groups = new LinkedHashMap<>();
+        for (String file : files) {
+            groups.computeIfAbsent(route(file), id -> new ArrayList<>()).add(file);
+        }
+        return groups;
+    }
+
+    // The quota set for the repository, or null when it has none
+    public QuotaSettings quota(UUID repositoryId) {
+        RepositoryDto repository = environment.findById(repositoryId);
+        return repository == null ? null : quotas.get(repository.getName().toLowerCase(Locale.ROOT));
+    }
+
+    // The repository's name for statistics, or its ID once the server no longer lists it
+    public String name(UUID repositoryId) {
+        RepositoryDto repository = environment.findById(repositoryId);
+        return repository == null ? repositoryId.toString() : repository.getName();
+    }
+}
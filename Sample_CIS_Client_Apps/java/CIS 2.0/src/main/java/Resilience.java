@@ -0,0 +1,230 @@
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.core5.http.ConnectionClosedException;
+import org.apache.hc.core5.http.MalformedChunkCodingException;
+import org.apache.hc.core5.http.NoHttpResponseException;
+import org.apache.hc.core5.http.ParseException;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Sends each CIS request through the circuit breaker and the concurrency limiter and retries it when that is safe.
+// Environment, Status, Download and Release are idempotent and retried after any transient failure; a submission is
+// only sent again when the server answered 429 or 503, as otherwise it may already have created the job. A retry
+// waits for an exponential backoff with jitter, so that jobs failing together do not come back together, and at least
+// as long as the Retry-After the server asked for. Only a failed exchange with the server is retried and counted by the
+// breaker; a local error, such as a full disk or an unreadable input, ends the request at once.
+public class Resilience {
+    public interface Attempt<T> {
+        T run() throws IOException, ParseException;
+    }
+
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+    private final ResilienceSettings settings;
+    private final CircuitBreaker breaker;
+    private final ConcurrencyLimiter limiter;
+    private final LongAdder retries = new LongAdder();
+    private Metrics metrics;
+
+    public Resilience(ResilienceSettings settings) {
+        this.settings = settings;
+        this.breaker = new CircuitBreaker(settings);
+        this.limiter = settings.getMaxConcurrency() > 0 ? new ConcurrencyLimiter(settings) : null;
+    }
+
+    // Counts retries and exports the concurrency limit and the breaker's state
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        metrics.registerResilience(() -> limiter != null ? limiter.getLimit() : 0, () -> breaker.isOpen() ? 1 : 0);
+    }
+
+    public <T> T call(String endpoint, boolean idempotent, Attempt<T> attempt) throws IOException, ParseException {
+        for (int retry = 0; ; ) {
+            try {
+                return attemptOnce(endpoint, attempt);
+            } catch (IOException e) {
+                long delay = retryDelay(e, idempotent, retry);
+                if (delay < 0) {
+                    throw e;
+                }
+                retry += countsAsRetry(e) ? 1 : 0;
+                recordRetry(endpoint);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException stopped = new InterruptedIOException("Interrupted while waiting to retry " + endpoint);
+                    stopped.addSuppressed(e);
+                    throw stopped;
+                }
+            }
+        }
+    }
+
+    // The same for AsyncApiClient: no thread waits for a permit or a backoff
+    public <T> CompletableFuture<T> callAsync(String endpoint, boolean idempotent, Supplier<CompletableFuture<T>> attempt) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(endpoint, idempotent, attempt, 0, result);
+        return result;
+    }
+
+    public String describe() {
+        return "retries=" + retries.sum() + ", breaker " + breaker.describe() + (limiter != null ? ", " + limiter.describe() : "");
+    }
+
+    private <T> T attemptOnce(String endpoint, Attempt<T> attempt) throws IOException, ParseException {
+        breaker.acquire();
+        if (limiter != null) {
+            try {
+                limiter.acquireBlocking();
+            } catch (InterruptedIOException e) {
+                breaker.cancelled();
+                throw e;
+            }
+        }
+        long startNanos = System.nanoTime();
+        try {
+            T result = attempt.run();
+            completed(endpoint, null, startNanos);
+            return result;
+        } catch (IOException | ParseException | RuntimeException e) {
+            completed(endpoint, e, startNanos);
+            throw e;
+        }
+    }
+
+    private <T> void attemptAsync(String endpoint, boolean idempotent, Supplier<CompletableFuture<T>> attempt, int retry,
+            CompletableFuture<T> result) {
+        CompletableFuture<T> sent;
+        try {
+            breaker.acquire();
+            sent = (limiter != null ? limiter.acquire() : GRANTED).thenCompose(permit -> {
+                long startNanos = System.nanoTime();
+                CompletableFuture<T> response;
+                try {
+                    response = attempt.get();
+                } catch (RuntimeException e) {
+                    response = CompletableFuture.failedFuture(e);
+                }
+                return response.whenComplete((value, error) -> completed(endpoint, unwrap(error), startNanos));
+            });
+        } catch (CircuitBreaker.OpenException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            long delay = cause instanceof IOException io ? retryDelay(io, idempotent, retry) : -1;
+            if (delay < 0) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            recordRetry(endpoint);
+            int next = retry + (countsAsRetry(cause) ? 1 : 0);
+            CompletableFuture.runAsync(() -> attemptAsync(endpoint, idempotent, attempt, next, result),
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+        });
+    }
+
+    // Tells the breaker whether the server answered and the limiter how long it took
+    private void completed(String endpoint, Throwable error, long startNanos) {
+        long latencyNanos = System.nanoTime() - startNanos;
+        if (error == null || error instanceof ApiException api && api.getCode() != 429 && api.getCode() < 500
+                || error instanceof ParseException || error instanceof JsonProcessingException) {
+            breaker.success();
+        } else if (error instanceof ApiException || isTransportError(error)) {
+            breaker.failure();
+        } else {
+            // An interruption or a local error says nothing about the server
+            breaker.cancelled();
+        }
+        if (limiter != null) {
+            boolean overloaded = error instanceof SocketTimeoutException
+                    || error instanceof ApiException api && (api.getCode() == 429 || api.getCode() == 503 || api.getCode() == 504);
+            // Transfers take as long as their size and Environment does more work, so Status, the most frequent request,
+            // is what tells how loaded the server is
+            boolean latencySample = error == null && "Status".equals(endpoint);
+            limiter.release(latencyNanos, overloaded, latencySample);
+        }
+    }
+
+    // Milliseconds to wait before the next attempt, or -1 when the failure is final
+    private long retryDelay(IOException e, boolean idempotent, int retry) {
+        if (retry >= settings.getRetryAttempts() || Thread.currentThread().isInterrupted() || isInterruption(e)) {
+            return -1;
+        }
+        if (e instanceof CircuitBreaker.OpenException open) {
+            return Math.min(open.getRetryAfterMillis(), settings.getRetryMaxMillis());
+        }
+        if (e instanceof ApiException api) {
+            if (!(idempotent ? api.isTransient() : api.isRejected())) {
+                return -1;
+            }
+            // Never sooner than the server asked, nor than the backoff, as a Retry-After of 0 would bring every job back at once
+            return Math.min(Math.max(api.getRetryAfterMillis(), backoff(retry)), settings.getRetryMaxMillis());
+        }
+        if (!isTransportError(e)) {
+            return -1;
+        }
+        // No response: a submission may have reached the server, and the upload retries what is safe itself
+        return idempotent ? backoff(retry) : -1;
+    }
+
+    // Half of the exponential step is fixed and half random
+    private long backoff(int retry) {
+        long step = Math.min(settings.getRetryMaxMillis(), settings.getRetryBaseMillis() << Math.min(retry, 20));
+        return step / 2 + ThreadLocalRandom.current().nextLong(step / 2 + 1);
+    }
+
+    // Waiting while another request tests a half-open breaker takes one round trip and does not use up a retry
+    private boolean countsAsRetry(Throwable e) {
+        return !(e instanceof CircuitBreaker.OpenException open && open.isTesting());
+    }
+
+    private void recordRetry(String endpoint) {
+        retries.increment();
+        if (metrics != null) {
+            metrics.recordRetry(endpoint);
+        }
+    }
+
+    // A socket or connect timeout is an InterruptedIOException too, but says the server is slow rather than that we gave up
+    private static boolean isInterruption(Throwable e) {
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException);
+    }
+
+    // The connection could not be made, timed out, or was closed before the response was complete, also when a
+    // download wrapped such a failure
+    private static boolean isTransportError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof ConnectTimeoutException
+                    || cause instanceof SocketException || cause instanceof UnknownHostException
+                    || cause instanceof NoHttpResponseException || cause instanceof ConnectionClosedException
+                    || cause instanceof MalformedChunkCodingException || cause instanceof SSLException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
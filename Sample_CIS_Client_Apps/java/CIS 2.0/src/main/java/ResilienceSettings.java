@@ -0,0 +1,109 @@
+// Retries, circuit breaker and adaptive concurrency limit applied to every request of ApiClient and AsyncApiClient
+public class ResilienceSettings {
+    // Retries after the first attempt of an Environment, Status, Download or Release request, and of a submission the
+    // server turned away with 429 or 503
+    private int retryAttempts = 4;
+    // First backoff, doubled per retry with jitter; a Retry-After header is used instead when the server sends one
+    private long retryBaseMillis = 250;
+    // Upper bound on a backoff and on the Retry-After honored
+    private long retryMaxMillis = 30_000;
+    // Consecutive failed requests (no response, 429 or 5xx) that open the circuit breaker, 0 to never open it
+    private int breakerFailures = 20;
+    // How long an open breaker fails requests without sending them before it lets one through to test the server
+    private int breakerOpenSeconds = 15;
+    // Bounds of the concurrency limit; requests beyond it wait. MaxConcurrency 0 turns the limiter off.
+    private int minConcurrency = 1;
+    private int initialConcurrency = 16;
+    private int maxConcurrency = 64;
+    // The limit is multiplied by this on a 429, 503, 504, timeout, or an Environment, Status or Release request
+    // slower than LatencyTolerance times the lowest recent latency; otherwise it grows by one per round of requests
+    private double backoffRatio = 0.75;
+    private double latencyTolerance = 2.0;
+
+    public int getRetryAttempts() {
+        return retryAttempts;
+    }
+
+    public void setRetryAttempts(int retryAttempts) {
+        this.retryAttempts = retryAttempts;
+    }
+
+    public long getRetryBaseMillis() {
+        return retryBaseMillis;
+    }
+
+    public void setRetryBaseMillis(long retryBaseMillis) {
+        this.retryBaseMillis = retryBaseMillis;
+    }
+
+    public long getRetryMaxMillis() {
+        return retryMaxMillis;
+    }
+
+    public void setRetryMaxMillis(long retryMaxMillis) {
+        this.retryMaxMillis = retryMaxMillis;
+    }
+
+    public int getBreakerFailures() {
+        return breakerFailures;
+    }
+
+    public void setBreakerFailures(int breakerFailures) {
+        this.breakerFailures = breakerFailures;
+    }
+
+    public int getBreakerOpenSeconds() {
+        return breakerOpenSeconds;
+    }
+
+    public void setBreakerOpenSeconds(int breakerOpenSeconds) {
+        this.breakerOpenSeconds = breakerOpenSeconds;
+    }
+
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    public void setMinConcurrency(int minConcurrency) {
+        this.minConcurrency = minConcurrency;
+    }
+
+    public int getInitialConcurrency() {
+        return initialConcurrency;
+    }
+
+    public void setInitialConcurrency(int initialConcurrency) {
+        this.initialConcurrency = initialConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public void setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    public boolean hasValidValues() {
+        return retryAttempts >= 0 && retryBaseMillis > 0 && retryMaxMillis >= retryBaseMillis && breakerFailures >= 0
+                && breakerOpenSeconds > 0 && maxConcurrency >= 0
+                && (maxConcurrency == 0 || (minConcurrency > 0 && minConcurrency <= initialConcurrency && initialConcurrency <= maxConcurrency))
+                && backoffRatio > 0 && backoffRatio < 1 && latencyTolerance > 1;
+    }
+}
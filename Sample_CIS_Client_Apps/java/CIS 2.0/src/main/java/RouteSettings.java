@@ -0,0 +1,26 @@
+// Sends the input files whose path under Input matches a glob to the named repository
+public class RouteSettings {
+    // Glob against the path relative to Input with / separators, e.g. "invoices/**" or "**.tif"
+    private String match = "";
+    private String repository = "";
+
+    public String getMatch() {
+        return match;
+    }
+
+    public void setMatch(String match) {
+        this.match = match;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
+    public boolean hasValidValues() {
+        return match != null && !match.isEmpty() && repository != null && !repository.isEmpty();
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Routes input files to repositories by path, and limits how many jobs each repository takes at once
+public class RoutingSettings {
+    // Checked in order; files no route matches go to Environment Repository
+    private List<RouteSettings> routes = new ArrayList<>();
+    private List<QuotaSettings> quotas = new ArrayList<>();
+
+    public List<RouteSettings> getRoutes() {
+        return routes;
+    }
+
+    public void setRoutes(List<RouteSettings> routes) {
+        this.routes = routes;
+    }
+
+    public List<QuotaSettings> getQuotas() {
+        return quotas;
+    }
+
+    public void setQuotas(List<QuotaSettings> quotas) {
+        this.quotas = quotas;
+    }
+
+    public boolean hasValidValues() {
+        return routes != null && quotas != null
+                && routes.stream().allMatch(r -> r != null && r.hasValidValues())
+                && quotas.stream().allMatch(q -> q != null && q.hasValidValues());
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Starts new jobs by priority class and deadline instead of in the order the files were found
+public class SchedulingSettings {
+    private boolean enabled = false;
+    // Jobs started and not yet released, across all classes
+    private int maxActive = 16;
+    // Checked in order; files no class matches belong to DefaultClass
+    private List<PriorityClassSettings> classes = new ArrayList<>();
+    // Added with DefaultDeadlineSeconds and no limits when Classes does not list it
+    private String defaultClass = "bulk";
+    private int defaultDeadlineSeconds = 3600;
+    // A file next to an input with this suffix added holds the input's class name, ahead of any Match (empty for none)
+    private String sidecarSuffix = ".priority";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    public List<PriorityClassSettings> getClasses() {
+        return classes;
+    }
+
+    public void setClasses(List<PriorityClassSettings> classes) {
+        this.classes = classes;
+    }
+
+    public String getDefaultClass() {
+        return defaultClass;
+    }
+
+    public void setDefaultClass(String defaultClass) {
+        this.defaultClass = defaultClass;
+    }
+
+    public int getDefaultDeadlineSeconds() {
+        return defaultDeadlineSeconds;
+    }
+
+    public void setDefaultDeadlineSeconds(int defaultDeadlineSeconds) {
+        this.defaultDeadlineSeconds = defaultDeadlineSeconds;
+    }
+
+    public String getSidecarSuffix() {
+        return sidecarSuffix;
+    }
+
+    public void setSidecarSuffix(String sidecarSuffix) {
+        this.sidecarSuffix = sidecarSuffix;
+    }
+
+    public boolean hasValidValues() {
+        if (maxActive <= 0 || classes == null || defaultClass == null || defaultClass.isEmpty() || defaultDeadlineSeconds <= 0
+                || sidecarSuffix == null) {
+            return false;
+        }
+        Set<String> names = new HashSet<>();
+        for (PriorityClassSettings priorityClass : classes) {
+            if (priorityClass == null || !priorityClass.hasValidValues() || !names.add(priorityClass.getName().toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+// Status checks that fall due together are answered by one Completed request per repository where possible
+public class StatusBatchSettings {
+    private boolean enabled = true;
+    // How long a status check waits for others to share a request with
+    private int windowMillis = 50;
+    // Jobs of one repository that must be due together before the Completed endpoint is asked instead of Status
+    private int minBatch = 4;
+    // maxItems of the Completed request; when that many come back, jobs not among them are asked for one by one
+    private int maxItems = 100;
+    // Status requests sent at once when jobs are asked for one by one
+    private int maxParallel = 8;
+    // After a full Completed page a repository's jobs are asked for one by one for this long, as every Completed request
+    // would come back full again until its completed jobs are released
+    private int fullPageBackoffSeconds = 30;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(int windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public int getMinBatch() {
+        return minBatch;
+    }
+
+    public void setMinBatch(int minBatch) {
+        this.minBatch = minBatch;
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public void setMaxItems(int maxItems) {
+        this.maxItems = maxItems;
+    }
+
+    public int getMaxParallel() {
+        return maxParallel;
+    }
+
+    public void setMaxParallel(int maxParallel) {
+        this.maxParallel = maxParallel;
+    }
+
+    public int getFullPageBackoffSeconds() {
+        return fullPageBackoffSeconds;
+    }
+
+    public void setFullPageBackoffSeconds(int fullPageBackoffSeconds) {
+        this.fullPageBackoffSeconds = fullPageBackoffSeconds;
+    }
+
+    public boolean hasValidValues() {
+        return windowMillis >= 0 && minBatch > 0 && maxItems > 0 && maxParallel > 0 && fullPageBackoffSeconds >= 0;
+    }
+}
@@ -0,0 +1,248 @@
+import org.apache.hc.core5.http.ParseException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Collects the status checks that fall due within WindowMillis and answers them with as few requests as it can. A
+// job's first check asks Status, which tells the job's repository. After that, when MinBatch jobs of one repository are
+// due together, one Completed request answers them all: the jobs it lists are done, and the others are still running
+// and keep the status they were last given. If Completed returns a full MaxItems, the jobs missing from it may have
+// completed beyond that, so they are asked one by one. Completed lists every completed job the repository has not
+// released, so a full page is likely to stay full; that repository is asked one by one for FullPageBackoffSeconds
+// rather than paying for a Completed request on top of the Status requests at every flush. A server without the
+// Completed endpoint is asked one by one from then on. One-by-one requests are capped at MaxParallel at once, so they reuse a few keep-alive connections rather
+// than opening one per job.
+public class StatusBatcher implements AutoCloseable {
+    private record Check(UUID jobId, CompletableFuture<JobStatusResponse> future) {
+    }
+
+    private final Function<UUID, CompletableFuture<JobStatusResponse>> statusLookup;
+    private final BiFunction<UUID, Integer, CompletableFuture<List<JobStatusResponse>>> completedLookup;
+    private final StatusBatchSettings settings;
+    private final ExecutorService requestPool;
+    private final ScheduledExecutorService flusher;
+    // The last status of every job that is not complete yet; jobs without one have not been asked about yet
+    private final Map<UUID, JobStatusResponse> lastStatus = new ConcurrentHashMap<>();
+    private final ArrayDeque<Check> due = new ArrayDeque<>();
+    private final ArrayDeque<Check> waitingForSlot = new ArrayDeque<>();
+    private int singleInFlight;
+    private volatile boolean completedSupported = true;
+    // Repositories whose last Completed request came back full, with the System.nanoTime() until which they are asked
+    // one by one
+    private final Map<UUID, Long> singleUntil = new ConcurrentHashMap<>();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder statusRequests = new LongAdder();
+    private final LongAdder completedRequests = new LongAdder();
+    private final LongAdder batchedChecks = new LongAdder();
+    private final LongAdder fullPages = new LongAdder();
+
+    // The blocking client's requests run on MaxParallel threads, plus one so a Completed request never waits behind them
+    public StatusBatcher(ApiClient client, StatusBatchSettings settings) {
+        this.settings = settings;
+        this.requestPool = Executors.newFixedThreadPool(settings.getMaxParallel() + 1, JobTracker.daemonFactory("status-batch"));
+        this.statusLookup = jobId -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.getStatus(jobId);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, requestPool);
+        this.completedLookup = (repositoryId, maxItems) -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.getCompleted(repositoryId, maxItems);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, requestPool);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(JobTracker.daemonFactory("status-batch-flush"));
+    }
+
+    public StatusBatcher(AsyncApiClient client, StatusBatchSettings settings) {
+        this.settings = settings;
+        this.requestPool = null;
+        this.statusLookup = client::getStatus;
+        this.completedLookup = client::getCompleted;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(JobTracker.daemonFactory("status-batch-flush"));
+    }
+
+    // Completes with the job's status once the batch it joined has been answered
+    public CompletableFuture<JobStatusResponse> getStatus(UUID jobId) {
+        checks.increment();
+        Check check = new Check(jobId, new CompletableFuture<>());
+        boolean first;
+        synchronized (this) {
+            first = due.isEmpty();
+            due.add(check);
+        }
+        if (first) {
+            flusher.schedule(this::flush, settings.getWindowMillis(), TimeUnit.MILLISECONDS);
+        }
+        return check.future;
+    }
+
+    // For JobPoller, whose thread waits anyway
+    public JobStatusResponse awaitStatus(UUID jobId) throws IOException, ParseException, InterruptedException {
+        try {
+            return getStatus(jobId).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof ParseException parse) {
+                throw parse;
+            }
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new CompletionException(e.getCause());
+        }
+    }
+
+    public String describe() {
+        return "status checks=" + checks.sum() + ", Status requests=" + statusRequests.sum() + ", Completed requests="
+                + completedRequests.sum() + " answering " + batchedChecks.sum() + " checks, full Completed pages=" + fullPages.sum()
+                + (completedSupported ? "" : " (Completed not supported by the server)");
+    }
+
+    private void flush() {
+        List<Check> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(due);
+            due.clear();
+        }
+        Map<UUID, List<Check>> byRepository = new HashMap<>();
+        for (Check check : batch) {
+            JobStatusResponse last = lastStatus.get(check.jobId());
+            if (last == null || last.getRepositoryId() == null || !completedSupported) {
+                sendSingle(check);
+            } else {
+                byRepository.computeIfAbsent(last.getRepositoryId(), k -> new ArrayList<>()).add(check);
+            }
+        }
+        byRepository.forEach((repositoryId, group) -> {
+            if (group.size() < settings.getMinBatch() || isBackingOff(repositoryId)) {
+                group.forEach(this::sendSingle);
+            } else {
+                sendCompleted(repositoryId, group);
+            }
+        });
+    }
+
+    private void sendCompleted(UUID repositoryId, List<Check> group) {
+        completedRequests.increment();
+        CompletableFuture<List<JobStatusResponse>> request;
+        try {
+            request = completedLookup.apply(repositoryId, settings.getMaxItems());
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((completed, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof ApiException api && (api.getCode() == 404 || api.getCode() == 405 || api.getCode() == 501)) {
+                    completedSupported = false;
+                }
+                // Status has its own retries, so a failed Completed request costs a round of single requests, not the jobs
+                group.forEach(this::sendSingle);
+                return;
+            }
+            Map<UUID, JobStatusResponse> byJob = new HashMap<>();
+            for (JobStatusResponse status : completed) {
+                byJob.put(status.getJobId(), status);
+            }
+            boolean full = completed.size() >= settings.getMaxItems();
+            if (full) {
+                fullPages.increment();
+                singleUntil.put(repositoryId, System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.getFullPageBackoffSeconds()));
+            }
+            for (Check check : group) {
+                JobStatusResponse status = byJob.get(check.jobId());
+                JobStatusResponse last = lastStatus.get(check.jobId());
+                if (status != null) {
+                    batchedChecks.increment();
+                    answer(check, status);
+                } else if (!full && last != null) {
+                    batchedChecks.increment();
+                    check.future().complete(last);
+                } else {
+                    sendSingle(check);
+                }
+            }
+        });
+    }
+
+    private boolean isBackingOff(UUID repositoryId) {
+        Long until = singleUntil.get(repositoryId);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until < 0) {
+            return true;
+        }
+        singleUntil.remove(repositoryId, until);
+        return false;
+    }
+
+    private void sendSingle(Check check) {
+        synchronized (this) {
+            if (singleInFlight >= settings.getMaxParallel()) {
+                waitingForSlot.add(check);
+                return;
+            }
+            singleInFlight++;
+        }
+        statusRequests.increment();
+        CompletableFuture<JobStatusResponse> request;
+        try {
+            request = statusLookup.apply(check.jobId());
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((status, error) -> {
+            if (error != null) {
+                lastStatus.remove(check.jobId());
+                check.future().completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                answer(check, status);
+            }
+            Check next;
+            synchronized (this) {
+                singleInFlight--;
+                next = waitingForSlot.poll();
+            }
+            if (next != null) {
+                sendSingle(next);
+            }
+        });
+    }
+
+    private void answer(Check check, JobStatusResponse status) {
+        if (status.getStatus().startsWith("Completed")) {
+            lastStatus.remove(check.jobId());
+        } else {
+            lastStatus.put(check.jobId(), status);
+        }
+        check.future().complete(status);
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdownNow();
+        if (requestPool != null) {
+            requestPool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Reads a job's status as one of the few values CIS sends, compared against the parser's characters so that a status
+// seen before costs no new String. A poll that returns "Transforming" for the thousandth time then allocates nothing
+// for it, and every tracked job holds the same instance. Unseen values are added up to MAX_VALUES; beyond that, e.g. if
+// a server put free text there, they are returned as read.
+public class StatusDeserializer extends StdDeserializer<String> {
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_VALUES = 32;
+    private static final CopyOnWriteArrayList<String> VALUES = new CopyOnWriteArrayList<>(
+            new String[]{"Queued", "Transforming", "CompletedSuccessful"});
+
+    public StatusDeserializer() {
+        super(String.class);
+    }
+
+    @Override
+    public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return parser.getValueAsString("");
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        for (String value : VALUES) {
+            if (matches(value, chars, offset, length)) {
+                return value;
+            }
+        }
+        String value = parser.getText();
+        if (VALUES.size() < MAX_VALUES) {
+            VALUES.addIfAbsent(value);
+        }
+        return value;
+    }
+
+    private static boolean matches(String value, char[] chars, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
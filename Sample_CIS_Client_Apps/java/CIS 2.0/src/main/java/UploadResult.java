@@ -0,0 +1,7 @@
+import java.util.UUID;
+
+public record UploadResult(UUID jobId, long bytes, long elapsedNanos) {
+    public double megabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : (bytes / 1_048_576.0) / (elapsedNanos / 1e9);
+    }
+}
@@ -0,0 +1,25 @@
+public class UploadSettings {
+    private int bufferSizeKb = 256;
+    // Resend a submission whose body could not be written completely, so the server cannot have created a job yet
+    private int retryAttempts = 2;
+
+    public int getBufferSizeKb() {
+        return bufferSizeKb;
+    }
+
+    public void setBufferSizeKb(int bufferSizeKb) {
+        this.bufferSizeKb = bufferSizeKb;
+    }
+
+    public int getRetryAttempts() {
+        return retryAttempts;
+    }
+
+    public void setRetryAttempts(int retryAttempts) {
+        this.retryAttempts = retryAttempts;
+    }
+
+    public boolean hasValidValues() {
+        return bufferSizeKb > 0 && retryAttempts >= 0;
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.List;
+
+// Daemon mode: keep running and submit input files as they arrive instead of making one pass over Input
+public class WatchSettings {
+    private boolean enabled;
+    // A file is submitted once its size and modification time have not changed for this long
+    private long stableMillis = 1000;
+    // Files that become ready within this window of each other are submitted together
+    private long flushMillis = 50;
+    // Names a writer uses while a file is incomplete; the file is picked up when it is renamed to its final name
+    private List<String> ignoredSuffixes = List.of(".part", ".tmp", ".crdownload", ".partial", "~");
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getStableMillis() {
+        return stableMillis;
+    }
+
+    public void setStableMillis(long stableMillis) {
+        this.stableMillis = stableMillis;
+    }
+
+    public long getFlushMillis() {
+        return flushMillis;
+    }
+
+    public void setFlushMillis(long flushMillis) {
+        this.flushMillis = flushMillis;
+    }
+
+    public List<String> getIgnoredSuffixes() {
+        return ignoredSuffixes;
+    }
+
+    public void setIgnoredSuffixes(List<String> ignoredSuffixes) {
+        this.ignoredSuffixes = ignoredSuffixes;
+    }
+
+    public boolean hasValidValues() {
+        return stableMillis >= 0 && flushMillis >= 0 && ignoredSuffixes != null;
+    }
+}